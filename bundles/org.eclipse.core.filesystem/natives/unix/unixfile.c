@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 IBM Corporation and others.
+ * Copyright (c) 2010, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -9,11 +9,14 @@
  *     IBM Corporation - initial API and implementation
  *******************************************************************************/
 
+#include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
 #include <sys/types.h>
 #include <sys/stat.h>
 #include <unistd.h>
+#include <fcntl.h>
+#include <dirent.h>
 #include <errno.h>
 #include <limits.h>
 #include <jni.h>
@@ -182,6 +185,161 @@ JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_filesystem_local_unix_Unix
 	return len;
 }
 
+/*
+ * A directory entry collected by readdir before the Java objects are created.
+ */
+typedef struct {
+	char *name;
+	char *link;
+	int linkLength;
+	struct stat info;
+} direntry;
+
+/*
+ * Creates a java byte array holding the given bytes.
+ */
+static jbyteArray newByteArray(JNIEnv *env, const char *bytes, int length)
+{
+	jbyteArray result = (*env)->NewByteArray(env, length);
+	if (result != NULL)
+		(*env)->SetByteArrayRegion(env, result, 0, length, (const jbyte*) bytes);
+	return result;
+}
+
+/*
+ * Stats the entry with the given name in the open directory. Symbolic links
+ * are followed; if the link target does not exist, the stat is zeroed and
+ * only the link target is filled in.
+ */
+static int statEntry(int dirfd, const char *dirName, direntry *entry)
+{
+	char target[PATH_MAX + 1];
+	int len;
+#ifdef AT_SYMLINK_NOFOLLOW
+	if (fstatat(dirfd, entry->name, &entry->info, AT_SYMLINK_NOFOLLOW) != 0)
+		return -1;
+	if (S_ISLNK(entry->info.st_mode)) {
+		if (fstatat(dirfd, entry->name, &entry->info, 0) != 0)
+			memset(&entry->info, 0, sizeof(struct stat));
+		len = readlinkat(dirfd, entry->name, target, PATH_MAX);
+#else
+	char path[PATH_MAX + 1];
+	if (snprintf(path, sizeof(path), "%s/%s", dirName, entry->name) >= (int) sizeof(path))
+		return -1;
+	if (lstat(path, &entry->info) != 0)
+		return -1;
+	if (S_ISLNK(entry->info.st_mode)) {
+		if (stat(path, &entry->info) != 0)
+			memset(&entry->info, 0, sizeof(struct stat));
+		len = readlink(path, target, PATH_MAX);
+#endif
+		entry->linkLength = len > 0 ? len : 0;
+		entry->link = malloc(entry->linkLength + 1);
+		if (entry->link == NULL)
+			return -1;
+		memcpy(entry->link, target, entry->linkLength);
+	}
+	return 0;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_filesystem_local_unix_UnixFileNatives
+ * Method:    readdir
+ * Signature: ([B)[Lorg/eclipse/core/internal/filesystem/local/unix/StructDirent;
+ */
+JNIEXPORT jobjectArray JNICALL Java_org_eclipse_core_internal_filesystem_local_unix_UnixFileNatives_readdir
+  (JNIEnv *env, jclass clazz, jbyteArray path)
+{
+	char *name;
+	DIR *dir;
+	struct dirent *ent;
+	direntry *entries = NULL, *grown;
+	int count = 0, capacity = 0, i, failed = 0;
+	jclass cls;
+	jmethodID init;
+	jfieldID nameFid, linkFid;
+	jobjectArray result = NULL;
+	jobject entryObject;
+	jbyteArray bytes;
+
+	name = (char*) getByteArray(env, path);
+	dir = opendir(name);
+	if (dir == NULL) {
+		free(name);
+		return NULL;
+	}
+	while (!failed && (ent = readdir(dir)) != NULL) {
+		if (strcmp(ent->d_name, ".") == 0 || strcmp(ent->d_name, "..") == 0)
+			continue;
+		if (count == capacity) {
+			capacity = capacity == 0 ? 64 : capacity * 2;
+			grown = realloc(entries, capacity * sizeof(direntry));
+			if (grown == NULL) {
+				failed = 1;
+				break;
+			}
+			entries = grown;
+		}
+		memset(&entries[count], 0, sizeof(direntry));
+		entries[count].name = strdup(ent->d_name);
+		if (entries[count].name == NULL) {
+			failed = 1;
+			break;
+		}
+		/* skip children that disappeared since the directory was read */
+		if (statEntry(dirfd(dir), name, &entries[count]) == 0)
+			count++;
+		else {
+			free(entries[count].name);
+			free(entries[count].link);
+		}
+	}
+	closedir(dir);
+	free(name);
+
+	if (!failed) {
+		cls = (*env)->FindClass(env, "org/eclipse/core/internal/filesystem/local/unix/StructDirent");
+		if (cls != NULL) {
+			init = (*env)->GetMethodID(env, cls, "<init>", "()V");
+			nameFid = (*env)->GetFieldID(env, cls, "d_name", "[B");
+			linkFid = (*env)->GetFieldID(env, cls, "d_link", "[B");
+			if (init != NULL && nameFid != NULL && linkFid != NULL)
+				result = (*env)->NewObjectArray(env, count, cls, NULL);
+		}
+		for (i = 0; result != NULL && i < count; i++) {
+			entryObject = (*env)->NewObject(env, cls, init);
+			if (entryObject == NULL || convertStatToObject(env, entries[i].info, entryObject) != 0) {
+				result = NULL;
+				break;
+			}
+			bytes = newByteArray(env, entries[i].name, strlen(entries[i].name));
+			if (bytes == NULL) {
+				result = NULL;
+				break;
+			}
+			(*env)->SetObjectField(env, entryObject, nameFid, bytes);
+			(*env)->DeleteLocalRef(env, bytes);
+			if (entries[i].link != NULL) {
+				bytes = newByteArray(env, entries[i].link, entries[i].linkLength);
+				if (bytes == NULL) {
+					result = NULL;
+					break;
+				}
+				(*env)->SetObjectField(env, entryObject, linkFid, bytes);
+				(*env)->DeleteLocalRef(env, bytes);
+			}
+			(*env)->SetObjectArrayElement(env, result, i, entryObject);
+			(*env)->DeleteLocalRef(env, entryObject);
+		}
+	}
+	for (i = 0; i < count; i++) {
+		free(entries[i].name);
+		free(entries[i].link);
+	}
+	free(entries);
+	return result;
+}
+
 /*
  * Class:     org_eclipse_core_internal_filesystem_local_unix_UnixFileNatives
  * Method:    errno
@@ -202,9 +360,10 @@ JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_filesystem_local_unix_Unix
   (JNIEnv *env, jclass clazz)
 {
 #ifdef MACOSX
+	/* readdir returns decomposed names on Mac OS X, which would not match java.io.File names */
 	return UNICODE_SUPPORTED | CHFLAGS_SUPPORTED;
 #else
-	return 0;
+	return READDIR_SUPPORTED;
 #endif
 }
 
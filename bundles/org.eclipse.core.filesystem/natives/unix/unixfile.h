@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 IBM Corporation and others.
+ * Copyright (c) 2010, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,8 @@
 #define UNICODE_SUPPORTED 1L
 #undef CHFLAGS_SUPPORTED
 #define CHFLAGS_SUPPORTED 2L
+#undef READDIR_SUPPORTED
+#define READDIR_SUPPORTED 4L
 
 /*
  * Get a null-terminated byte array from a java byte array. The returned bytearray
@@ -76,6 +78,14 @@ JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_filesystem_local_unix_Unix
 JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_filesystem_local_unix_UnixFileNatives_readlink
   (JNIEnv *, jclass, jbyteArray, jbyteArray, jlong);
 
+/*
+ * Class:     org_eclipse_core_internal_filesystem_local_unix_UnixFileNatives
+ * Method:    readdir
+ * Signature: ([B)[Lorg/eclipse/core/internal/filesystem/local/unix/StructDirent;
+ */
+JNIEXPORT jobjectArray JNICALL Java_org_eclipse_core_internal_filesystem_local_unix_UnixFileNatives_readdir
+  (JNIEnv *, jclass, jbyteArray);
+
 /*
  * Class:     org_eclipse_core_internal_filesystem_local_unix_UnixFileNatives
  * Method:    errno
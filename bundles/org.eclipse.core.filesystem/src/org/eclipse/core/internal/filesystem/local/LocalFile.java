@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -85,6 +85,14 @@ public class LocalFile extends FileStore {
 		}
 	}
 
+	public IFileInfo[] childInfos(int options, IProgressMonitor monitor) throws CoreException {
+		//list the directory and stat all children in one native call where possible
+		IFileInfo[] infos = LocalFileNativesManager.fetchChildInfos(filePath);
+		if (infos != null)
+			return infos;
+		return super.childInfos(options, monitor);
+	}
+
 	public String[] childNames(int options, IProgressMonitor monitor) {
 		String[] names = file.list();
 		return (names == null ? EMPTY_STRING_ARRAY : names);
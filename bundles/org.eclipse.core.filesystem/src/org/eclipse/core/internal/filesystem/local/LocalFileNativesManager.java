@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 IBM Corporation and others.
+ * Copyright (c) 2010, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,6 +32,16 @@ public class LocalFileNativesManager {
 		return LocalFileNatives.fetchFileInfo(fileName);
 	}
 
+	/**
+	 * Returns the infos of all children of the given directory, or <code>null</code>
+	 * if the natives cannot list the directory and stat its children in one pass.
+	 */
+	public static FileInfo[] fetchChildInfos(String dirName) {
+		if (UnixFileNatives.isUsingNatives())
+			return UnixFileNatives.fetchChildInfos(dirName);
+		return null;
+	}
+
 	public static boolean putFileInfo(String fileName, IFileInfo info, int options) {
 		if (UnixFileNatives.isUsingNatives())
 			return UnixFileNatives.putFileInfo(fileName, info, options);
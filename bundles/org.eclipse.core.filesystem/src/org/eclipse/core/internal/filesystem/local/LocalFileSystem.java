@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,6 +19,7 @@ import java.net.URI;
 import org.eclipse.core.filesystem.*;
 import org.eclipse.core.filesystem.provider.FileSystem;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.osgi.service.environment.Constants;
 
 /**
@@ -121,6 +122,19 @@ public class LocalFileSystem extends FileSystem {
 		return true;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Local trees are fetched by several threads at once, and kept in a compact
+	 * snapshot. See {@link LocalFileTree} for details.
+	 * </p>
+	 */
+	public IFileTree fetchFileTree(IFileStore root, IProgressMonitor monitor) {
+		if (!(root instanceof LocalFile))
+			return null;
+		return new LocalFileTree((LocalFile) root, monitor);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.core.filesystem.IFileSystem#fromLocalFile(java.io.File)
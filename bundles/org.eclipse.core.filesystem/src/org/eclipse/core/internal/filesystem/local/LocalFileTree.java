@@ -0,0 +1,414 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.filesystem.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import org.eclipse.core.filesystem.*;
+import org.eclipse.core.filesystem.provider.FileTree;
+import org.eclipse.core.runtime.*;
+
+/**
+ * A snapshot of a local directory tree, fetched in one pass by the calling
+ * thread and a number of walker threads. The walker threads are shared by
+ * all trees, and end once they have been idle for a while.
+ * <p>
+ * All file infos are kept in a single array in breadth-first order. The
+ * children of a directory are stored next to each other and sorted by name,
+ * so a store is found by a binary search per path segment, and a directory
+ * is described by the index of its first child and its child count.
+ * </p><p>
+ * Directories that could not be read, and symbolic links that point back to
+ * one of their ancestors, are not walked. Stores that are not in the
+ * snapshot, including those below such directories, are answered by asking
+ * the file system directly, so the tree never claims a directory is empty
+ * just because it was not walked.
+ * </p>
+ */
+public class LocalFileTree extends FileTree {
+	/** child count of a directory whose children were not fetched */
+	private static final int NOT_WALKED = -1;
+	/** index returned by lookups of stores that are not in the snapshot */
+	private static final int NOT_FOUND = -1;
+	/** number of shared threads helping the calling thread walk the file system */
+	private static final int WALKER_THREADS = 3;
+
+	/** the threads that help with all walks */
+	private static final WalkerPool POOL = new WalkerPool();
+
+	private static final IFileInfo[] NO_CHILDREN = new IFileInfo[0];
+
+	/**
+	 * Comparator that sorts file infos by name.
+	 */
+	static final Comparator NAME_COMPARATOR = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return ((IFileInfo) o1).getName().compareTo(((IFileInfo) o2).getName());
+		}
+	};
+
+	/**
+	 * A directory found by the walker, and its children once they are fetched.
+	 */
+	private static class Node {
+		final String canonicalPath;
+		IFileInfo[] childInfos;
+		Node[] children;
+		final File file;
+
+		Node(File file, String canonicalPath) {
+			this.file = file;
+			this.canonicalPath = canonicalPath;
+		}
+	}
+
+	/**
+	 * A fixed number of daemon threads that run the walkers of all trees. A
+	 * thread that finds no walker to run waits a while before it ends, so
+	 * that consecutive refreshes do not each start threads of their own.
+	 */
+	private static class WalkerPool {
+		/** how long a thread waits for another walker before it ends */
+		private static final long IDLE_TIME = 5000;
+
+		private int idle = 0;
+		private final LinkedList queue = new LinkedList();
+		private int threads = 0;
+
+		/**
+		 * Runs the given walker on a thread of the pool, as soon as one is
+		 * free.
+		 */
+		synchronized void execute(Runnable walker) {
+			queue.add(walker);
+			if (idle > 0) {
+				notify();
+			} else if (threads < WALKER_THREADS) {
+				threads++;
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						Runnable next;
+						while ((next = take()) != null)
+							next.run();
+					}
+				}, "Local file tree walker"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+
+		/**
+		 * Returns the next walker to run, or <code>null</code> if the calling
+		 * thread has been idle for too long and ends.
+		 */
+		synchronized Runnable take() {
+			if (queue.isEmpty()) {
+				idle++;
+				try {
+					wait(IDLE_TIME);
+				} catch (InterruptedException e) {
+					//end the thread
+				} finally {
+					idle--;
+				}
+			}
+			if (queue.isEmpty()) {
+				threads--;
+				return null;
+			}
+			return (Runnable) queue.removeFirst();
+		}
+	}
+
+	/**
+	 * Walks a directory tree with the calling thread and a number of pool
+	 * threads. Directories are handed out from a shared work list; the walk
+	 * is over when the list is empty and no thread is still listing a
+	 * directory. A pool thread that only gets to the walk once it is over
+	 * returns at once.
+	 */
+	private static class Walker implements Runnable {
+		private int busy = 0;
+		private boolean canceled = false;
+		private final LinkedList work = new LinkedList();
+
+		Walker(Node root) {
+			work.add(root);
+		}
+
+		synchronized void cancel() {
+			canceled = true;
+			work.clear();
+			notifyAll();
+		}
+
+		private synchronized void done(Node[] children) {
+			busy--;
+			if (!canceled && children != null) {
+				for (int i = 0; i < children.length; i++)
+					if (children[i] != null)
+						work.add(children[i]);
+			}
+			notifyAll();
+		}
+
+		private synchronized boolean isDone() {
+			return work.isEmpty() && busy == 0;
+		}
+
+		/**
+		 * Lists the given directory and returns the nodes of the child
+		 * directories to walk, with null entries for all other children.
+		 */
+		private Node[] list(Node node) {
+			IFileInfo[] infos;
+			try {
+				infos = new LocalFile(node.file).childInfos(EFS.NONE, null);
+			} catch (CoreException e) {
+				//leave the directory unwalked, it will be read on demand
+				return null;
+			}
+			Arrays.sort(infos, NAME_COMPARATOR);
+			Node[] children = new Node[infos.length];
+			for (int i = 0; i < infos.length; i++) {
+				IFileInfo info = infos[i];
+				if (!info.isDirectory())
+					continue;
+				File childFile = new File(node.file, info.getName());
+				String canonical = node.canonicalPath + File.separatorChar + info.getName();
+				if (info.getAttribute(EFS.ATTRIBUTE_SYMLINK)) {
+					try {
+						canonical = childFile.getCanonicalPath();
+					} catch (IOException e) {
+						continue;
+					}
+					//don't follow links that point to the directory itself or one of its ancestors
+					if (node.canonicalPath.equals(canonical) || node.canonicalPath.startsWith(canonical + File.separatorChar))
+						continue;
+				}
+				children[i] = new Node(childFile, canonical);
+			}
+			node.childInfos = infos;
+			node.children = children;
+			return children;
+		}
+
+		public void run() {
+			while (true) {
+				Node node;
+				synchronized (this) {
+					while (work.isEmpty() && busy > 0 && !canceled) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							//keep waiting
+						}
+					}
+					if (work.isEmpty() || canceled)
+						return;
+					node = (Node) work.removeFirst();
+					busy++;
+				}
+				Node[] children = null;
+				try {
+					children = list(node);
+				} finally {
+					done(children);
+				}
+			}
+		}
+
+		/**
+		 * Walks the tree in the calling thread, helped by the given number of
+		 * pool threads, and returns once the walk is over or the monitor is
+		 * canceled.
+		 */
+		void walk(int helpers, IProgressMonitor monitor) {
+			for (int i = 0; i < helpers; i++)
+				POOL.execute(this);
+			while (true) {
+				if (monitor.isCanceled()) {
+					cancel();
+					throw new OperationCanceledException();
+				}
+				Node node;
+				synchronized (this) {
+					if (isDone())
+						return;
+					if (work.isEmpty()) {
+						//the helpers are listing the remaining directories
+						try {
+							wait(100);
+						} catch (InterruptedException e) {
+							//check for cancelation again
+						}
+						continue;
+					}
+					node = (Node) work.removeFirst();
+					busy++;
+				}
+				Node[] children = null;
+				try {
+					children = list(node);
+				} finally {
+					done(children);
+				}
+			}
+		}
+	}
+
+	/** the number of children of each directory, or NOT_WALKED */
+	private int[] childCounts;
+	/** the index of the first child of each directory */
+	private int[] firstChildren;
+	/** the info of each file and directory, the root first */
+	private IFileInfo[] infos;
+
+	/**
+	 * Fetches a snapshot of the tree rooted at the given local file.
+	 */
+	public LocalFileTree(LocalFile root, IProgressMonitor monitor) {
+		super(root);
+		monitor = monitor == null ? new NullProgressMonitor() : monitor;
+		IFileInfo rootInfo = root.fetchInfo();
+		Node rootNode = null;
+		if (rootInfo.isDirectory()) {
+			String canonical;
+			try {
+				canonical = root.file.getCanonicalPath();
+			} catch (IOException e) {
+				canonical = root.filePath;
+			}
+			rootNode = new Node(root.file, canonical);
+			new Walker(rootNode).walk(WALKER_THREADS, monitor);
+		}
+		flatten(rootInfo, rootNode);
+	}
+
+	/**
+	 * Stores the walked nodes in the info arrays in breadth-first order.
+	 */
+	private void flatten(IFileInfo rootInfo, Node rootNode) {
+		ArrayList infoList = new ArrayList();
+		ArrayList nodeList = new ArrayList();
+		infoList.add(rootInfo);
+		nodeList.add(rootNode);
+		for (int next = 0; next < infoList.size(); next++) {
+			Node node = (Node) nodeList.get(next);
+			if (node == null || node.childInfos == null)
+				continue;
+			for (int i = 0; i < node.childInfos.length; i++) {
+				infoList.add(node.childInfos[i]);
+				nodeList.add(node.children[i]);
+			}
+		}
+		int size = infoList.size();
+		infos = (IFileInfo[]) infoList.toArray(new IFileInfo[size]);
+		firstChildren = new int[size];
+		childCounts = new int[size];
+		int first = 1;
+		for (int i = 0; i < size; i++) {
+			Node node = (Node) nodeList.get(i);
+			firstChildren[i] = first;
+			if (node == null || node.childInfos == null) {
+				//files have no children, unwalked directories are read on demand
+				childCounts[i] = infos[i].isDirectory() ? NOT_WALKED : 0;
+			} else {
+				childCounts[i] = node.childInfos.length;
+				first += childCounts[i];
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.filesystem.IFileTree#getChildInfos(org.eclipse.core.filesystem.IFileStore)
+	 */
+	public IFileInfo[] getChildInfos(IFileStore store) {
+		int index = indexOf(store);
+		if (index == NOT_FOUND || childCounts[index] == NOT_WALKED) {
+			try {
+				return store.childInfos(EFS.NONE, null);
+			} catch (CoreException e) {
+				return NO_CHILDREN;
+			}
+		}
+		int count = childCounts[index];
+		if (count == 0)
+			return NO_CHILDREN;
+		IFileInfo[] result = new IFileInfo[count];
+		System.arraycopy(infos, firstChildren[index], result, 0, count);
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.filesystem.IFileTree#getChildStores(org.eclipse.core.filesystem.IFileStore)
+	 */
+	public IFileStore[] getChildStores(IFileStore store) {
+		IFileInfo[] children = getChildInfos(store);
+		IFileStore[] result = new IFileStore[children.length];
+		for (int i = 0; i < children.length; i++)
+			result[i] = store.getChild(children[i].getName());
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.filesystem.IFileTree#getFileInfo(org.eclipse.core.filesystem.IFileStore)
+	 */
+	public IFileInfo getFileInfo(IFileStore store) {
+		int index = indexOf(store);
+		if (index == NOT_FOUND)
+			return store.fetchInfo();
+		return infos[index];
+	}
+
+	/**
+	 * Returns the index of the given store in the info array, or NOT_FOUND
+	 * if the store is not part of the snapshot.
+	 */
+	private int indexOf(IFileStore store) {
+		ArrayList names = new ArrayList();
+		IFileStore current = store;
+		while (current != null && !current.equals(treeRoot)) {
+			names.add(current.getName());
+			current = current.getParent();
+		}
+		if (current == null)
+			return NOT_FOUND;
+		int index = 0;
+		for (int i = names.size() - 1; i >= 0; i--) {
+			index = indexOfChild(index, (String) names.get(i));
+			if (index == NOT_FOUND)
+				return NOT_FOUND;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of the child with the given name of the directory
+	 * at the given index, or NOT_FOUND if there is no such child.
+	 */
+	private int indexOfChild(int parent, String name) {
+		int low = firstChildren[parent];
+		int high = low + childCounts[parent] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int comparison = infos[mid].getName().compareTo(name);
+			if (comparison < 0)
+				low = mid + 1;
+			else if (comparison > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return NOT_FOUND;
+	}
+}
@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.filesystem.local.unix;
+
+/**
+ * This class mirrors a directory entry as returned by native readdir
+ * together with the result of stat for that entry. It is used by the
+ * JNI call that lists a directory and stats all of its children at once.
+ * For symbolic links the stat fields describe the link target, and are
+ * all zero if the target does not exist.
+ */
+public class StructDirent extends StructStat {
+
+	public byte[] d_name;
+	public byte[] d_link; // Filled only for symbolic links
+
+}
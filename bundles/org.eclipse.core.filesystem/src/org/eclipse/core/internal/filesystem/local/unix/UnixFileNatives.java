@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 IBM Corporation and others.
+ * Copyright (c) 2010, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -25,6 +25,7 @@ public abstract class UnixFileNatives {
 	private static final String LIBRARY_NAME = "unixfile_1_0_0"; //$NON-NLS-1$
 	private static final int UNICODE_SUPPORTED = 1 << 0;
 	private static final int CHFLAGS_SUPPORTED = 1 << 1;
+	private static final int READDIR_SUPPORTED = 1 << 2;
 
 	private static final boolean usingNatives;
 	private static final int libattr;
@@ -88,6 +89,35 @@ public abstract class UnixFileNatives {
 		return info;
 	}
 
+	/**
+	 * Returns the infos of all children of the given directory, or
+	 * <code>null</code> if the directory cannot be listed in one pass,
+	 * either because the native library does not support it or because
+	 * the directory could not be read.
+	 */
+	public static FileInfo[] fetchChildInfos(String dirName) {
+		if (!isSupported(READDIR_SUPPORTED))
+			return null;
+		StructDirent[] entries = readdir(fileNameToBytes(dirName));
+		if (entries == null)
+			return null;
+		FileInfo[] infos = new FileInfo[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			StructDirent entry = entries[i];
+			FileInfo info;
+			if (entry.d_link != null) {
+				info = entry.st_mode != 0 ? entry.toFileInfo() : new FileInfo();
+				info.setAttribute(EFS.ATTRIBUTE_SYMLINK, true);
+				if (entry.d_link.length > 0)
+					info.setStringAttribute(EFS.ATTRIBUTE_LINK_TARGET, bytesToFileName(entry.d_link, entry.d_link.length));
+			} else
+				info = entry.toFileInfo();
+			info.setName(bytesToFileName(entry.d_name, entry.d_name.length));
+			infos[i] = info;
+		}
+		return infos;
+	}
+
 	public static boolean putFileInfo(String fileName, IFileInfo info, int options) {
 		int code = 0;
 		byte[] name = fileNameToBytes(fileName);
@@ -184,6 +214,8 @@ public abstract class UnixFileNatives {
 
 	private static final native int readlink(byte[] path, byte[] buf, long bufsiz);
 
+	private static final native StructDirent[] readdir(byte[] path);
+
 	private static final native int errno();
 
 	private static final native int libattr();
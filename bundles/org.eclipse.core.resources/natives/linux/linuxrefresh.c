@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+#include <errno.h>
+#include <limits.h>
+#include <poll.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/inotify.h>
+#include "linuxrefresh.h"
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    init
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_init
+(JNIEnv *env, jclass clazz) {
+	int fd = inotify_init();
+	return fd < 0 ? -errno : fd;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    addWatch
+ * Signature: (I[BI)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_addWatch
+(JNIEnv *env, jclass clazz, jint fd, jbyteArray path, jint mask) {
+	jint result;
+	jsize length;
+	char *name;
+
+	// copy the path bytes from the vm into a null terminated string
+	length = (*env)->GetArrayLength(env, path);
+	name = malloc(length + 1);
+	if (name == NULL)
+		return -ENOMEM;
+	(*env)->GetByteArrayRegion(env, path, 0, length, (jbyte *) name);
+	name[length] = '\0';
+
+	result = inotify_add_watch(fd, name, (uint32_t) mask);
+	if (result < 0)
+		result = -errno;
+	free(name);
+	return result;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    removeWatch
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_removeWatch
+(JNIEnv *env, jclass clazz, jint fd, jint wd) {
+	return inotify_rm_watch(fd, wd) < 0 ? -errno : 0;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    readEvents
+ * Signature: (I[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_readEvents
+(JNIEnv *env, jclass clazz, jint fd, jintArray events, jint timeout) {
+	struct pollfd pfd;
+	struct inotify_event *event;
+	jint *pairs;
+	jsize capacity;
+	size_t bufferSize;
+	char *buffer;
+	ssize_t length;
+	ssize_t offset;
+	int count = 0;
+	int ready;
+
+	pfd.fd = fd;
+	pfd.events = POLLIN;
+	pfd.revents = 0;
+	ready = poll(&pfd, 1, timeout);
+	if (ready < 0)
+		return -errno;
+	if (ready == 0)
+		return 0;
+
+	// each event is at least sizeof(struct inotify_event) bytes, so a buffer of
+	// this size can never hold more events than the array has room for. It must
+	// also be large enough for a single event with the longest possible name.
+	capacity = (*env)->GetArrayLength(env, events) / 2;
+	bufferSize = capacity * sizeof(struct inotify_event);
+	if (bufferSize < sizeof(struct inotify_event) + NAME_MAX + 1)
+		return -EINVAL;
+	buffer = malloc(bufferSize);
+	if (buffer == NULL)
+		return -ENOMEM;
+	length = read(fd, buffer, bufferSize);
+	if (length < 0) {
+		free(buffer);
+		return -errno;
+	}
+
+	pairs = (*env)->GetIntArrayElements(env, events, NULL);
+	for (offset = 0; offset < length && count < capacity; count++) {
+		event = (struct inotify_event *) (buffer + offset);
+		pairs[2 * count] = event->wd;
+		pairs[2 * count + 1] = (jint) event->mask;
+		offset += sizeof(struct inotify_event) + event->len;
+	}
+	(*env)->ReleaseIntArrayElements(env, events, pairs, 0);
+	free(buffer);
+	return count;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    close
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_close
+(JNIEnv *env, jclass clazz, jint fd) {
+	return close(fd) < 0 ? -errno : 0;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MODIFY
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MODIFY
+(JNIEnv *env, jclass clazz) {
+	return IN_MODIFY;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_ATTRIB
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1ATTRIB
+(JNIEnv *env, jclass clazz) {
+	return IN_ATTRIB;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MOVED_FROM
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MOVED_1FROM
+(JNIEnv *env, jclass clazz) {
+	return IN_MOVED_FROM;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MOVED_TO
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MOVED_1TO
+(JNIEnv *env, jclass clazz) {
+	return IN_MOVED_TO;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_CREATE
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1CREATE
+(JNIEnv *env, jclass clazz) {
+	return IN_CREATE;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_DELETE
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1DELETE
+(JNIEnv *env, jclass clazz) {
+	return IN_DELETE;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_DELETE_SELF
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1DELETE_1SELF
+(JNIEnv *env, jclass clazz) {
+	return IN_DELETE_SELF;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MOVE_SELF
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MOVE_1SELF
+(JNIEnv *env, jclass clazz) {
+	return IN_MOVE_SELF;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_ONLYDIR
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1ONLYDIR
+(JNIEnv *env, jclass clazz) {
+	return IN_ONLYDIR;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_ISDIR
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1ISDIR
+(JNIEnv *env, jclass clazz) {
+	return IN_ISDIR;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_IGNORED
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1IGNORED
+(JNIEnv *env, jclass clazz) {
+	return IN_IGNORED;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_Q_OVERFLOW
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1Q_1OVERFLOW
+(JNIEnv *env, jclass clazz) {
+	return IN_Q_OVERFLOW;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    ENOSPC
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_ENOSPC
+(JNIEnv *env, jclass clazz) {
+	return ENOSPC;
+}
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    EINTR
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_EINTR
+(JNIEnv *env, jclass clazz) {
+	return EINTR;
+}
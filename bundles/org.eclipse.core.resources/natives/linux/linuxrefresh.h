@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class org_eclipse_core_internal_resources_refresh_linux_LinuxNatives */
+
+#ifndef _Included_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+#define _Included_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    init
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_init
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    addWatch
+ * Signature: (I[BI)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_addWatch
+  (JNIEnv *, jclass, jint, jbyteArray, jint);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    removeWatch
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_removeWatch
+  (JNIEnv *, jclass, jint, jint);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    readEvents
+ * Signature: (I[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_readEvents
+  (JNIEnv *, jclass, jint, jintArray, jint);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    close
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_close
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MODIFY
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MODIFY
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_ATTRIB
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1ATTRIB
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MOVED_FROM
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MOVED_1FROM
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MOVED_TO
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MOVED_1TO
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_CREATE
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1CREATE
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_DELETE
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1DELETE
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_DELETE_SELF
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1DELETE_1SELF
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_MOVE_SELF
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1MOVE_1SELF
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_ONLYDIR
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1ONLYDIR
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_ISDIR
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1ISDIR
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_IGNORED
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1IGNORED
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    IN_Q_OVERFLOW
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_IN_1Q_1OVERFLOW
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    ENOSPC
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_ENOSPC
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_eclipse_core_internal_resources_refresh_linux_LinuxNatives
+ * Method:    EINTR
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_eclipse_core_internal_resources_refresh_linux_LinuxNatives_EINTR
+  (JNIEnv *, jclass);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
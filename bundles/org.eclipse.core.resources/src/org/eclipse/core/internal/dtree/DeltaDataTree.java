@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.core.internal.dtree;
 
+import java.util.*;
 import org.eclipse.core.internal.utils.Messages;
 import org.eclipse.core.internal.utils.StringPool;
 import org.eclipse.core.runtime.*;
@@ -226,6 +227,34 @@ public class DeltaDataTree extends AbstractDataTree {
 		return this;
 	}
 
+	/**
+	 * Returns a new mutable delta on the given parent that has the contents of
+	 * this tree below the given children of the root, and the contents of the
+	 * parent elsewhere. Only the changes between the given base and this tree
+	 * are carried over, so the parent must have the same contents as the base
+	 * below the given children.
+	 *
+	 * <p>This tree must be immutable and a descendent of the base. As a side
+	 * effect, this tree is collapsed onto the base.
+	 *
+	 * @param base an ancestor of this tree
+	 * @param newParent the parent of the new delta
+	 * @param childNames the names of the children of the root to carry over
+	 * @param comparator the comparator used to collapse this tree
+	 */
+	public DeltaDataTree rebase(DeltaDataTree base, DeltaDataTree newParent, String[] childNames, IComparator comparator) {
+		collapseTo(base, comparator);
+		Set<String> names = new HashSet<String>(Arrays.asList(childNames));
+		AbstractDataTreeNode[] children = rootNode.getChildren();
+		List<AbstractDataTreeNode> changed = new ArrayList<AbstractDataTreeNode>(childNames.length);
+		//the children stay sorted by name
+		for (int i = 0; i < children.length; i++)
+			if (names.contains(children[i].getName()))
+				changed.add(children[i]);
+		AbstractDataTreeNode newRoot = new NoDataDeltaNode(rootNode.getName(), changed.toArray(new AbstractDataTreeNode[changed.size()]));
+		return new DeltaDataTree(newRoot, newParent);
+	}
+
 	/**
 	 * Returns a DeltaDataTree that describes the differences between
 	 * this tree and "other" tree.  Each node of the returned tree
@@ -608,6 +637,51 @@ public class DeltaDataTree extends AbstractDataTree {
 		return namesOfChildren;
 	}
 
+	/**
+	 * Returns the data of the children of a node of the tree, in the same
+	 * order as the names returned by <code>getNamesOfChildren</code>. This
+	 * avoids creating a key for each child. Children whose data is only held
+	 * by a parent tree have <code>null</code> data.
+	 */
+	public Object[] getDataOfChildren(IPath parentKey) {
+		AbstractDataTreeNode[] childNodes = getChildNodes(parentKey);
+		int len = childNodes.length;
+		Object[] dataOfChildren = new Object[len];
+		for (int i = 0; i < len; ++i) {
+			if (childNodes[i].hasData())
+				dataOfChildren[i] = childNodes[i].getData();
+		}
+		return dataOfChildren;
+	}
+
+	/**
+	 * Returns the number of trees in the delta chain of this tree,
+	 * including this tree itself. A complete tree has a chain depth of one.
+	 */
+	public int getChainDepth() {
+		int depth = 1;
+		for (DeltaDataTree tree = parent; tree != null; tree = tree.parent)
+			depth++;
+		return depth;
+	}
+
+	/**
+	 * Returns the number of nodes in this tree's own layer, not counting the
+	 * nodes of its parents. For a delta, this is the number of nodes of the
+	 * delta.
+	 */
+	public int getLayerNodeCount() {
+		return countNodes(rootNode);
+	}
+
+	private static int countNodes(AbstractDataTreeNode node) {
+		int count = 1;
+		AbstractDataTreeNode[] children = node.getChildren();
+		for (int i = 0; i < children.length; i++)
+			count += countNodes(children[i]);
+		return count;
+	}
+
 	/** 
 	 * Returns the parent of the tree.
 	 */
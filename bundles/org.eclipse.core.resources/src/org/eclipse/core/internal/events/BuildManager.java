@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2011 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@
 package org.eclipse.core.internal.events;
 
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.internal.dtree.DeltaDataTree;
 import org.eclipse.core.internal.resources.*;
 import org.eclipse.core.internal.utils.Messages;
@@ -29,41 +30,71 @@ import org.osgi.framework.Bundle;
 public class BuildManager implements ICoreConstants, IManager, ILifecycleListener {
 
 	/**
-	 * Cache used to optimize the common case of an autobuild against
-	 * a workspace where only a single project has changed (and hence
-	 * only a single delta is interesting).
+	 * The state of a single builder invocation. It only applies for the
+	 * lifetime of that invocation. Builders of different project configs
+	 * may run at the same time, so this state is kept for each builder.
 	 */
-	class DeltaCache {
-		private Object delta;
-		private ElementTree newTree;
-		private ElementTree oldTree;
-		private IPath projectPath;
-
-		public void cache(IPath project, ElementTree anOldTree, ElementTree aNewTree, Object aDelta) {
-			this.projectPath = project;
-			this.oldTree = anOldTree;
-			this.newTree = aNewTree;
-			this.delta = aDelta;
+	static class BuilderInvocation {
+		final InternalBuilder builder;
+		/**
+		 * The names of the projects changed since the last build, when the
+		 * changes recorded by the workspace tree tell, or <code>null</code>.
+		 */
+		Set<String> changedProjects;
+		DeltaDataTree delta;
+		ElementTree lastBuiltTree;
+		ElementTree tree;
+		//used for debug/trace timing
+		long timeStamp = -1;
+
+		BuilderInvocation(InternalBuilder builder) {
+			this.builder = builder;
 		}
+	}
 
-		public void flush() {
-			this.projectPath = null;
-			this.oldTree = null;
-			this.newTree = null;
-			this.delta = null;
+	/**
+	 * Builds a single project config in one of the threads of a parallel build.
+	 */
+	private class BuildTask implements Callable<IStatus> {
+		private final IBuildConfiguration config;
+		private final IBuildContext context;
+		private final IProgressMonitor monitor;
+		private final int trigger;
+
+		BuildTask(IBuildConfiguration config, IBuildContext context, int trigger, IProgressMonitor monitor) {
+			this.config = config;
+			this.context = context;
+			this.trigger = trigger;
+			this.monitor = monitor;
 		}
 
-		/**
-		 * Returns the cached resource delta for the given project and trees, or
-		 * null if there is no matching delta in the cache.
-		 */
-		public Object getDelta(IPath project, ElementTree anOldTree, ElementTree aNewTree) {
-			if (delta == null)
-				return null;
-			boolean pathsEqual = projectPath == null ? project == null : projectPath.equals(project);
-			if (pathsEqual && this.oldTree == anOldTree && this.newTree == aNewTree)
-				return delta;
-			return null;
+		public IStatus call() {
+			MultiStatus status = new MultiStatus(ResourcesPlugin.PI_RESOURCES, IResourceStatus.BUILD_FAILED, Messages.events_errors, null);
+			//like the thread of a serial build, hold the workspace lock except while builders run
+			lock.acquire();
+			try {
+				basicBuild(config, trigger, context, status, monitor);
+			} finally {
+				lock.release();
+			}
+			return status;
+		}
+	}
+
+	/**
+	 * Progress monitor for the threads of a parallel build. Progress monitors
+	 * need not be thread safe, so only cancelation is passed on from the
+	 * monitor of the build.
+	 */
+	private static class BuildTaskMonitor extends NullProgressMonitor {
+		private final IProgressMonitor parent;
+
+		BuildTaskMonitor(IProgressMonitor parent) {
+			this.parent = parent;
+		}
+
+		public boolean isCanceled() {
+			return super.isCanceled() || parent.isCanceled();
 		}
 	}
 
@@ -96,32 +127,35 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	//the job for performing background autobuild
 	final AutoBuildJob autoBuildJob;
 	private boolean building = false;
-	private final Set<IProject> builtProjects = new HashSet<IProject>();
+	private final Set<IProject> builtProjects = Collections.synchronizedSet(new HashSet<IProject>());
 
-	//the following four fields only apply for the lifetime of a single builder invocation.
-	protected InternalBuilder currentBuilder;
-	private DeltaDataTree currentDelta;
-	private ElementTree currentLastBuiltTree;
-	private ElementTree currentTree;
+	/**
+	 * The builders that are currently running, and the state of their invocations.
+	 */
+	private final Map<InternalBuilder, BuilderInvocation> invocations = Collections.synchronizedMap(new HashMap<InternalBuilder, BuilderInvocation>());
 
 	/**
-	 * Caches the IResourceDelta for a pair of trees
+	 * The maximum number of delta nodes kept by each delta cache.
 	 */
-	final private DeltaCache deltaCache = new DeltaCache();
+	private static final int DELTA_CACHE_SIZE = 100000;
+
+	/**
+	 * Caches the IResourceDelta for a project and a pair of trees
+	 */
+	final private DeltaCache deltaCache = new DeltaCache("resource deltas", DELTA_CACHE_SIZE); //$NON-NLS-1$
 	/**
 	 * Caches the DeltaDataTree used to determine if a build is necessary
 	 */
-	final private DeltaCache deltaTreeCache = new DeltaCache();
+	final private DeltaCache deltaTreeCache = new DeltaCache("delta trees", DELTA_CACHE_SIZE); //$NON-NLS-1$
 
 	private ILock lock;
 
 	//used for the build cycle looping mechanism
-	private boolean rebuildRequested = false;
+	private volatile boolean rebuildRequested = false;
 
 	private final Bundle systemBundle = Platform.getBundle("org.eclipse.osgi"); //$NON-NLS-1$
 
 	//used for debug/trace timing
-	private long timeStamp = -1;
 	private long overallTimeStamp = -1;
 	private Workspace workspace;
 
@@ -133,19 +167,21 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	}
 
 	private void basicBuild(int trigger, IncrementalProjectBuilder builder, Map<String,String> args, MultiStatus status, IProgressMonitor monitor) {
+		final InternalBuilder currentBuilder = builder;
+		final BuilderInvocation current = new BuilderInvocation(currentBuilder);
+		invocations.put(currentBuilder, current);
 		try {
-			currentBuilder = builder;
 			//clear any old requests to forget built state
 			currentBuilder.clearLastBuiltStateRequests();
 			// Figure out want kind of build is needed
 			boolean clean = trigger == IncrementalProjectBuilder.CLEAN_BUILD;
-			currentLastBuiltTree = currentBuilder.getLastBuiltTree();
+			current.lastBuiltTree = currentBuilder.getLastBuiltTree();
 
 			// Does the build command respond to this trigger?
 			boolean isBuilding = builder.getCommand().isBuilding(trigger);
 
 			// If no tree is available we have to do a full build
-			if (!clean && currentLastBuiltTree == null) {
+			if (!clean && current.lastBuiltTree == null) {
 				// Bug 306746 - Don't promote build to FULL_BUILD if builder doesn't AUTO_BUILD
 				if (trigger == IncrementalProjectBuilder.AUTO_BUILD && !isBuilding)
 					return;
@@ -162,12 +198,12 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 			}
 
 			// For incremental builds, grab a pointer to the current state before computing the delta
-			currentTree = ((trigger == IncrementalProjectBuilder.FULL_BUILD) || clean) ? null : workspace.getElementTree();
+			current.tree = ((trigger == IncrementalProjectBuilder.FULL_BUILD) || clean) ? null : workspace.getElementTree();
 			int depth = -1;
 			ISchedulingRule rule = null;
 			try {
 				//short-circuit if none of the projects this builder cares about have changed.
-				if (!needsBuild(currentBuilder, trigger)) {
+				if (!needsBuild(current, trigger)) {
 					//use up the progress allocated for this builder
 					monitor.beginTask("", 1); //$NON-NLS-1$
 					monitor.done();
@@ -181,9 +217,9 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 				else
 					message = NLS.bind(Messages.events_invoking_1, builder.getProject().getFullPath());
 				monitor.subTask(message);
-				hookStartBuild(builder, trigger);
+				hookStartBuild(current, trigger);
 				// Make the current tree immutable before releasing the WS lock
-				if (rule != null && currentTree != null)
+				if (rule != null && current.tree != null)
 					workspace.newWorkingTree();
 				//release workspace lock while calling builders
 				depth = getWorkManager().beginUnprotected();
@@ -192,11 +228,11 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 					Job.getJobManager().beginRule(rule, monitor);
 					// Now that we've acquired the rule, changes may have been made concurrently, ensure we're pointing at the 
 					// correct currentTree so delta contains concurrent changes made in areas guarded by the scheduling rule
-					if (currentTree != null)
-						currentTree = workspace.getElementTree();
+					if (current.tree != null)
+						current.tree = workspace.getElementTree();
 				}
 				//do the build
-				SafeRunner.run(getSafeRunnable(trigger, args, status, monitor));
+				SafeRunner.run(getSafeRunnable(currentBuilder, trigger, args, status, monitor));
 			} finally {
 				// Re-acquire the WS lock, then release the scheduling rule
 				if (depth >= 0)
@@ -218,13 +254,10 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 					lastTree.immutable();
 					currentBuilder.setLastBuiltTree(lastTree);
 				}
-				hookEndBuild(builder);
+				hookEndBuild(current);
 			}
 		} finally {
-			currentBuilder = null;
-			currentTree = null;
-			currentLastBuiltTree = null;
-			currentDelta = null;
+			invocations.remove(currentBuilder);
 		}
 	}
 
@@ -341,15 +374,23 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 		int maxIterations = workspace.getDescription().getMaxBuildIterations();
 		if (maxIterations <= 0)
 			maxIterations = 1;
+		//builders that modify the workspace acquire rules in their own threads, which
+		//would block on the rule of this thread, so only build in parallel without a rule
+		int maxConcurrent = workspace.internalGetDescription().getMaxConcurrentBuilds();
+		boolean parallel = maxConcurrent > 1 && configs.length > 1 && Job.getJobManager().currentRule() == null;
 		rebuildRequested = true;
 		for (int iter = 0; rebuildRequested && iter < maxIterations; iter++) {
 			rebuildRequested = false;
 			builtProjects.clear();
-			for (int i = 0; i < configs.length; i++) {
-				if (configs[i].getProject().isAccessible()) {
-					IBuildContext context = new BuildContext(configs[i], requestedConfigs, configs);
-					basicBuild(configs[i], trigger, context, status, Policy.subMonitorFor(monitor, projectWork));
-					builtProjects.add(configs[i].getProject());
+			if (parallel) {
+				parallelBuild(configs, requestedConfigs, trigger, maxConcurrent, status, monitor, projectWork);
+			} else {
+				for (int i = 0; i < configs.length; i++) {
+					if (configs[i].getProject().isAccessible()) {
+						IBuildContext context = new BuildContext(configs[i], requestedConfigs, configs);
+						basicBuild(configs[i], trigger, context, status, Policy.subMonitorFor(monitor, projectWork));
+						builtProjects.add(configs[i].getProject());
+					}
 				}
 			}
 			//subsequent builds should always be incremental
@@ -479,14 +520,14 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 		return newInfos;
 	}
 
-	private String debugBuilder() {
-		return currentBuilder == null ? "<no builder>" : currentBuilder.getClass().getName(); //$NON-NLS-1$
+	private String debugBuilder(InternalBuilder builder) {
+		return builder == null ? "<no builder>" : builder.getClass().getName(); //$NON-NLS-1$
 	}
 
-	private String debugProject() {
-		if (currentBuilder == null)
+	private String debugProject(InternalBuilder builder) {
+		if (builder == null)
 			return "<no project>"; //$NON-NLS-1$
-		return currentBuilder.getProject().getFullPath().toString();
+		return builder.getProject().getFullPath().toString();
 	}
 
 	/**
@@ -642,24 +683,26 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	 * <p>
 	 * Deltas are computed once and cached for efficiency.
 	 * 
+	 * @param builder the builder asking for the delta
 	 * @param project the project to get a delta for
 	 */
-	IResourceDelta getDelta(IProject project) {
+	IResourceDelta getDelta(InternalBuilder builder, IProject project) {
 		try {
 			lock.acquire();
-			if (currentTree == null) {
+			BuilderInvocation current = invocations.get(builder);
+			if (current == null || current.tree == null) {
 				if (Policy.DEBUG_BUILD_FAILURE)
-					Policy.debug("Build: no tree for delta " + debugBuilder() + " [" + debugProject() + "]"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					Policy.debug("Build: no tree for delta " + debugBuilder(builder) + " [" + debugProject(builder) + "]"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 				return null;
 			}
 			//check if this builder has indicated it cares about this project
-			if (!isInterestingProject(project)) {
+			if (!isInterestingProject(builder, project)) {
 				if (Policy.DEBUG_BUILD_FAILURE)
-					Policy.debug("Build: project not interesting for this builder " + debugBuilder() + " [" + debugProject() + "] " + project.getFullPath()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					Policy.debug("Build: project not interesting for this builder " + debugBuilder(builder) + " [" + debugProject(builder) + "] " + project.getFullPath()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 				return null;
 			}
 			//check if this project has changed
-			if (currentDelta != null && currentDelta.findNodeAt(project.getFullPath()) == null) {
+			if (!hasChanged(current, project)) {
 				//if the project never existed (not in delta and not in current tree), return null
 				if (!project.exists())
 					return null;
@@ -667,19 +710,17 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 				return ResourceDeltaFactory.newEmptyDelta(project);
 			}
 			//now check against the cache
-			IResourceDelta result = (IResourceDelta) deltaCache.getDelta(project.getFullPath(), currentLastBuiltTree, currentTree);
+			IResourceDelta result = (IResourceDelta) deltaCache.getDelta(project.getFullPath(), current.lastBuiltTree, current.tree);
 			if (result != null)
 				return result;
 
-			long startTime = 0L;
-			if (Policy.DEBUG_BUILD_DELTA) {
-				startTime = System.currentTimeMillis();
+			long startTime = System.currentTimeMillis();
+			if (Policy.DEBUG_BUILD_DELTA)
 				Policy.debug("Computing delta for project: " + project.getName()); //$NON-NLS-1$
-			}
-			result = ResourceDeltaFactory.computeDelta(workspace, currentLastBuiltTree, currentTree, project.getFullPath(), -1);
-			deltaCache.cache(project.getFullPath(), currentLastBuiltTree, currentTree, result);
+			result = ResourceDeltaFactory.computeDelta(workspace, current.lastBuiltTree, current.tree, project.getFullPath(), -1);
+			deltaCache.cache(project.getFullPath(), current.lastBuiltTree, current.tree, result, System.currentTimeMillis() - startTime);
 			if (Policy.DEBUG_BUILD_FAILURE && result == null)
-				Policy.debug("Build: no delta " + debugBuilder() + " [" + debugProject() + "] " + project.getFullPath()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				Policy.debug("Build: no delta " + debugBuilder(builder) + " [" + debugProject(builder) + "] " + project.getFullPath()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			if (Policy.DEBUG_BUILD_DELTA) {
 				Policy.debug("Finished computing delta, time: " + (System.currentTimeMillis() - startTime) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 				// Debug the delta
@@ -694,7 +735,7 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	/**
 	 * Returns the safe runnable instance for invoking a builder
 	 */
-	private ISafeRunnable getSafeRunnable(final int trigger, final Map<String, String> args, final MultiStatus status, final IProgressMonitor monitor) {
+	private ISafeRunnable getSafeRunnable(final InternalBuilder currentBuilder, final int trigger, final Map<String, String> args, final MultiStatus status, final IProgressMonitor monitor) {
 		return new ISafeRunnable() {
 			public void handleException(Throwable e) {
 				if (e instanceof OperationCanceledException) {
@@ -773,13 +814,13 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	 * Hook for adding trace options and debug information at the end of a build.
 	 * This hook is called after each builder instance is called.
 	 */
-	private void hookEndBuild(IncrementalProjectBuilder builder) {
+	private void hookEndBuild(BuilderInvocation current) {
 		if (ResourceStats.TRACE_BUILDERS)
 			ResourceStats.endBuild();
-		if (!Policy.DEBUG_BUILD_INVOKING || timeStamp == -1)
+		if (!Policy.DEBUG_BUILD_INVOKING || current.timeStamp == -1)
 			return; //builder wasn't called or we are not debugging
-		Policy.debug("Builder finished: " + toString(builder) + " time: " + (System.currentTimeMillis() - timeStamp) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-		timeStamp = -1;
+		Policy.debug("Builder finished: " + toString(current.builder) + " time: " + (System.currentTimeMillis() - current.timeStamp) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		current.timeStamp = -1;
 	}
 
 	/**
@@ -790,13 +831,14 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	private void hookEndBuild(int trigger) {
 		building = false;
 		builtProjects.clear();
-		deltaCache.flush();
-		deltaTreeCache.flush();
+		pruneDeltaCaches();
 		//ensure autobuild runs after a clean
 		if (trigger == IncrementalProjectBuilder.CLEAN_BUILD)
 			autoBuildJob.forceBuild();
 		if (Policy.DEBUG_BUILD_INVOKING) {
 			Policy.debug("Top-level build-end time: " + (System.currentTimeMillis() - overallTimeStamp)); //$NON-NLS-1$
+			if (ResourceStats.TRACE_DELTA_CACHE)
+				Policy.debug("Delta cache hit ratios: " + deltaCache.getHitRatio() + " (resource deltas), " + deltaTreeCache.getHitRatio() + " (delta trees)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			overallTimeStamp = -1;
 		}
 	}
@@ -805,12 +847,12 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	 * Hook for adding trace options and debug information at the start of a build.
 	 * This hook is called before each builder instance is called.
 	 */
-	private void hookStartBuild(IncrementalProjectBuilder builder, int trigger) {
+	private void hookStartBuild(BuilderInvocation current, int trigger) {
 		if (ResourceStats.TRACE_BUILDERS)
-			ResourceStats.startBuild(builder);
+			ResourceStats.startBuild((IncrementalProjectBuilder) current.builder);
 		if (Policy.DEBUG_BUILD_INVOKING) {
-			timeStamp = System.currentTimeMillis();
-			Policy.debug("Invoking (" + debugTrigger(trigger) + ") on builder: " + toString(builder)); //$NON-NLS-1$ //$NON-NLS-2$
+			current.timeStamp = System.currentTimeMillis();
+			Policy.debug("Invoking (" + debugTrigger(trigger) + ") on builder: " + toString(current.builder)); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 	}
 
@@ -821,6 +863,7 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	 */
 	private void hookStartBuild(IBuildConfiguration[] configs, int trigger) {
 		building = true;
+		pruneDeltaCaches();
 		if (Policy.DEBUG_BUILD_STACK) {
 			IStatus info = new Status(IStatus.INFO, ResourcesPlugin.PI_RESOURCES, 1, "Starting build: " + debugTrigger(trigger), new RuntimeException().fillInStackTrace()); //$NON-NLS-1$
 			Policy.log(info);
@@ -918,13 +961,23 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	}
 
 	/**
-	 * Returns true if the current builder is interested in changes
+	 * Returns whether the given project has changed since the last build of
+	 * the builder of the given invocation, as far as the builder is concerned.
+	 */
+	private boolean hasChanged(BuilderInvocation current, IProject project) {
+		if (current.changedProjects != null)
+			return current.changedProjects.contains(project.getName());
+		return current.delta == null || current.delta.findNodeAt(project.getFullPath()) != null;
+	}
+
+	/**
+	 * Returns true if the given builder is interested in changes
 	 * to the given project, and false otherwise.
 	 */
-	private boolean isInterestingProject(IProject project) {
-		if (project.equals(currentBuilder.getProject()))
+	private boolean isInterestingProject(InternalBuilder builder, IProject project) {
+		if (project.equals(builder.getProject()))
 			return true;
-		IProject[] interestingProjects = currentBuilder.getInterestingProjects();
+		IProject[] interestingProjects = builder.getInterestingProjects();
 		for (int i = 0; i < interestingProjects.length; i++) {
 			if (interestingProjects[i].equals(project)) {
 				return true;
@@ -942,9 +995,11 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 	 * cares about.  This is an optimization, under the assumption that computing
 	 * the forward delta once (not the resource delta) is more efficient than
 	 * computing project deltas and invoking builders for projects that haven't
-	 * changed.
+	 * changed.  When the workspace tree has recorded the changes since the last
+	 * build, the changed projects are found from those without computing a delta.
 	 */
-	private boolean needsBuild(InternalBuilder builder, int trigger) {
+	private boolean needsBuild(BuilderInvocation current, int trigger) {
+		InternalBuilder builder = current.builder;
 		//on some triggers we build regardless of the delta
 		switch (trigger) {
 			case IncrementalProjectBuilder.CLEAN_BUILD :
@@ -952,7 +1007,7 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 			case IncrementalProjectBuilder.FULL_BUILD :
 				return true;
 			case IncrementalProjectBuilder.INCREMENTAL_BUILD :
-				if (currentBuilder.callOnEmptyDelta())
+				if (builder.callOnEmptyDelta())
 					return true;
 				//fall through and check if there is a delta
 		}
@@ -960,21 +1015,28 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 		//compute the delta since the last built state
 		ElementTree oldTree = builder.getLastBuiltTree();
 		ElementTree newTree = workspace.getElementTree();
-		long start = System.currentTimeMillis();
-		currentDelta = (DeltaDataTree) deltaTreeCache.getDelta(null, oldTree, newTree);
-		if (currentDelta == null) {
+		//the changes recorded since the last built tree tell which projects have changed
+		IPath[] changes = ElementTree.getChangedPaths(newTree, oldTree, ResourceComparator.getBuildComparator());
+		if (changes != null) {
+			current.changedProjects = new HashSet<String>();
+			for (int i = 0; i < changes.length; i++)
+				current.changedProjects.add(changes[i].segment(0));
+		} else
+			current.delta = (DeltaDataTree) deltaTreeCache.getDelta(null, oldTree, newTree);
+		if (changes == null && current.delta == null) {
+			long start = System.currentTimeMillis();
 			if (Policy.DEBUG_BUILD_NEEDED) {
 				String message = "Checking if need to build. Starting delta computation between: " + oldTree.toString() + " and " + newTree.toString(); //$NON-NLS-1$ //$NON-NLS-2$
 				Policy.debug(message);
 			}
-			currentDelta = newTree.getDataTree().forwardDeltaWith(oldTree.getDataTree(), ResourceComparator.getBuildComparator());
+			current.delta = newTree.getDataTree().forwardDeltaWith(oldTree.getDataTree(), ResourceComparator.getBuildComparator());
 			if (Policy.DEBUG_BUILD_NEEDED)
 				Policy.debug("End delta computation. (" + (System.currentTimeMillis() - start) + "ms)."); //$NON-NLS-1$ //$NON-NLS-2$
-			deltaTreeCache.cache(null, oldTree, newTree, currentDelta);
+			deltaTreeCache.cache(null, oldTree, newTree, current.delta, System.currentTimeMillis() - start);
 		}
 
 		//search for the builder's project
-		if (currentDelta.findNodeAt(builder.getProject().getFullPath()) != null) {
+		if (hasChanged(current, builder.getProject())) {
 			if (Policy.DEBUG_BUILD_NEEDED)
 				Policy.debug(toString(builder) + " needs building because of changes in: " + builder.getProject().getName()); //$NON-NLS-1$
 			return true;
@@ -983,7 +1045,7 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 		//search for builder's interesting projects
 		IProject[] projects = builder.getInterestingProjects();
 		for (int i = 0; i < projects.length; i++) {
-			if (currentDelta.findNodeAt(projects[i].getFullPath()) != null) {
+			if (hasChanged(current, projects[i])) {
 				if (Policy.DEBUG_BUILD_NEEDED)
 					Policy.debug(toString(builder) + " needs building because of changes in: " + projects[i].getName()); //$NON-NLS-1$
 				return true;
@@ -992,6 +1054,115 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 		return false;
 	}
 
+	/**
+	 * Runs all builders on the given project configs, using up to the given
+	 * number of threads. A config is built as soon as all the configs it
+	 * references have been built, and no config whose scheduling rule
+	 * conflicts with its own is being built. Configs that reference each
+	 * other are built in the given order.
+	 * <p>
+	 * The workspace lock is released while the configs are built. Each build
+	 * thread holds it while it prepares and finishes a builder invocation, and
+	 * releases it while the builder runs, just like a serial build does.
+	 */
+	private void parallelBuild(IBuildConfiguration[] configs, IBuildConfiguration[] requestedConfigs, int trigger, int maxConcurrent, MultiStatus status, IProgressMonitor monitor, int projectWork) {
+		//find the configs each config has to wait for, and the rule it needs
+		Set<IBuildConfiguration> pending = new LinkedHashSet<IBuildConfiguration>(configs.length);
+		for (int i = 0; i < configs.length; i++)
+			if (configs[i].getProject().isAccessible())
+				pending.add(configs[i]);
+		Map<IBuildConfiguration, Set<IBuildConfiguration>> prerequisites = new HashMap<IBuildConfiguration, Set<IBuildConfiguration>>();
+		Map<IBuildConfiguration, ISchedulingRule> rules = new HashMap<IBuildConfiguration, ISchedulingRule>();
+		for (IBuildConfiguration config : pending) {
+			IBuildConfiguration[] refs = ((Project) config.getProject()).internalGetReferencedBuildConfigs(config.getName(), false);
+			Set<IBuildConfiguration> required = new HashSet<IBuildConfiguration>(Arrays.asList(refs));
+			required.retainAll(pending);
+			required.remove(config);
+			prerequisites.put(config, required);
+			rules.put(config, getRule(config, trigger, null, null));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Build worker"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		CompletionService<IStatus> completion = new ExecutorCompletionService<IStatus>(executor);
+		Map<Future<IStatus>, IBuildConfiguration> running = new HashMap<Future<IStatus>, IBuildConfiguration>();
+		Set<IBuildConfiguration> built = new HashSet<IBuildConfiguration>();
+		IProgressMonitor taskMonitor = new BuildTaskMonitor(monitor);
+		Throwable failure = null;
+		boolean interrupted = false;
+		int depth = getWorkManager().beginUnprotected();
+		try {
+			while (true) {
+				if (failure == null && !taskMonitor.isCanceled()) {
+					for (Iterator<IBuildConfiguration> it = pending.iterator(); it.hasNext() && running.size() < maxConcurrent;) {
+						IBuildConfiguration config = it.next();
+						if (!built.containsAll(prerequisites.get(config)) || isConflicting(rules.get(config), running.values(), rules))
+							continue;
+						it.remove();
+						running.put(completion.submit(new BuildTask(config, new BuildContext(config, requestedConfigs, configs), trigger, taskMonitor)), config);
+					}
+					if (running.isEmpty() && !pending.isEmpty()) {
+						//the remaining configs reference each other, so start with the first one
+						IBuildConfiguration config = pending.iterator().next();
+						pending.remove(config);
+						running.put(completion.submit(new BuildTask(config, new BuildContext(config, requestedConfigs, configs), trigger, taskMonitor)), config);
+					}
+				}
+				if (running.isEmpty())
+					break;
+				Future<IStatus> done;
+				try {
+					done = completion.take();
+				} catch (InterruptedException e) {
+					interrupted = true;
+					continue;
+				}
+				IBuildConfiguration config = running.remove(done);
+				built.add(config);
+				builtProjects.add(config.getProject());
+				monitor.worked(projectWork);
+				try {
+					status.addAll(done.get());
+				} catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause();
+				} catch (InterruptedException e) {
+					//cannot happen, the task is done
+				}
+			}
+		} finally {
+			executor.shutdown();
+			getWorkManager().endUnprotected(depth);
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (!pending.isEmpty())
+			checkCanceled(trigger, monitor);
+	}
+
+	/**
+	 * Returns true if the given rule conflicts with the rule of one of the
+	 * given running configs, and false otherwise.
+	 */
+	private boolean isConflicting(ISchedulingRule rule, Collection<IBuildConfiguration> running, Map<IBuildConfiguration, ISchedulingRule> rules) {
+		if (rule == null)
+			return false;
+		for (IBuildConfiguration config : running) {
+			ISchedulingRule other = rules.get(config);
+			if (other != null && rule.isConflicting(other))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Removes all builders with the given ID from the build spec.
 	 * Does nothing if there were no such builders in the spec
@@ -1046,8 +1217,22 @@ public class BuildManager implements ICoreConstants, IManager, ILifecycleListene
 		}
 	}
 
+	/**
+	 * Drops the cached deltas that were computed against trees other than the
+	 * current workspace tree. They can no longer be asked for, and dropping
+	 * them releases the trees they refer to. This is done at the start and end
+	 * of each build, and when the workspace trees are collapsed.
+	 */
+	public void pruneDeltaCaches() {
+		ElementTree current = workspace.getElementTree();
+		deltaCache.prune(current);
+		deltaTreeCache.prune(current);
+	}
+
 	public void shutdown(IProgressMonitor monitor) {
 		autoBuildJob.cancel();
+		deltaCache.flush();
+		deltaTreeCache.flush();
 	}
 
 	public void startup(IProgressMonitor monitor) {
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.events;
+
+import java.util.*;
+import org.eclipse.core.internal.dtree.DeltaDataTree;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Cache of the deltas computed during builds. Builders of different
+ * projects often ask for the deltas of the same projects, and several
+ * builders of a project share the same last built tree, so deltas are
+ * kept for many (project, old tree, new tree) triples.
+ * <p>
+ * The size of the cache is measured in delta nodes, which is what the memory
+ * used by a delta grows with. Once the cache holds too many nodes, the least
+ * recently used deltas are dropped. A delta whose new tree is no longer the
+ * current tree of the workspace can never be asked for again, and is dropped
+ * when the cache is pruned, which releases the trees it refers to.
+ * </p><p>
+ * The cache may be used by builders of different projects at the same time.
+ * </p>
+ */
+public class DeltaCache {
+	/**
+	 * A cached delta and its key. Trees are compared by identity.
+	 */
+	private static class Entry {
+		final Object delta;
+		final ElementTree newTree;
+		final ElementTree oldTree;
+		final IPath projectPath;
+		final int weight;
+
+		Entry(IPath projectPath, ElementTree oldTree, ElementTree newTree, Object delta, int weight) {
+			this.projectPath = projectPath;
+			this.oldTree = oldTree;
+			this.newTree = newTree;
+			this.delta = delta;
+			this.weight = weight;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry))
+				return false;
+			Entry other = (Entry) obj;
+			boolean pathsEqual = projectPath == null ? other.projectPath == null : projectPath.equals(other.projectPath);
+			return pathsEqual && oldTree == other.oldTree && newTree == other.newTree;
+		}
+
+		public int hashCode() {
+			int hash = projectPath == null ? 0 : projectPath.hashCode();
+			hash = hash * 31 + System.identityHashCode(oldTree);
+			return hash * 31 + System.identityHashCode(newTree);
+		}
+	}
+
+	/**
+	 * The cached deltas, keyed by themselves, in least recently used order.
+	 */
+	private final LinkedHashMap<Entry, Entry> entries = new LinkedHashMap<Entry, Entry>(16, 0.75f, true);
+	/**
+	 * The maximum number of delta nodes in the cache.
+	 */
+	private final int maxWeight;
+	/** the name under which hits and misses are reported */
+	private final String name;
+	/**
+	 * The number of delta nodes in the cache.
+	 */
+	private int weight;
+
+	public DeltaCache(String name, int maxWeight) {
+		this.name = name;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Returns the number of nodes of the given resource delta or delta tree.
+	 */
+	static int countNodes(Object delta) {
+		if (delta instanceof DeltaDataTree)
+			return ((DeltaDataTree) delta).getLayerNodeCount();
+		int count = 1;
+		if (delta instanceof IResourceDelta) {
+			IResourceDelta[] children = ((IResourceDelta) delta).getAffectedChildren(IResourceDelta.ALL_WITH_PHANTOMS, IContainer.INCLUDE_HIDDEN | IContainer.INCLUDE_TEAM_PRIVATE_MEMBERS);
+			for (int i = 0; i < children.length; i++)
+				count += countNodes(children[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Caches a delta that was not found in the cache, and that took the
+	 * given number of milliseconds to compute. A delta with more nodes than
+	 * the whole cache may hold is not cached.
+	 */
+	public synchronized void cache(IPath project, ElementTree anOldTree, ElementTree aNewTree, Object aDelta, long computeTime) {
+		if (ResourceStats.TRACE_DELTA_CACHE)
+			ResourceStats.deltaCacheMiss(name, computeTime);
+		if (aDelta == null)
+			return;
+		int deltaWeight = countNodes(aDelta);
+		if (deltaWeight > maxWeight)
+			return;
+		Entry entry = new Entry(project, anOldTree, aNewTree, aDelta, deltaWeight);
+		Entry replaced = entries.put(entry, entry);
+		if (replaced != null)
+			weight -= replaced.weight;
+		weight += deltaWeight;
+		for (Iterator<Entry> i = entries.values().iterator(); weight > maxWeight && i.hasNext();) {
+			weight -= i.next().weight;
+			i.remove();
+		}
+	}
+
+	/**
+	 * Drops all deltas.
+	 */
+	public synchronized void flush() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Returns the cached delta for the given project and trees, or null if
+	 * there is no matching delta in the cache.
+	 */
+	public synchronized Object getDelta(IPath project, ElementTree anOldTree, ElementTree aNewTree) {
+		Entry entry = entries.get(new Entry(project, anOldTree, aNewTree, null, 0));
+		if (entry == null)
+			return null;
+		if (ResourceStats.TRACE_DELTA_CACHE)
+			ResourceStats.deltaCacheHit(name);
+		return entry.delta;
+	}
+
+	/**
+	 * Returns the ratio of lookups in this cache that found a delta, or zero
+	 * if there were no lookups or they are not traced.
+	 */
+	public double getHitRatio() {
+		return ResourceStats.getDeltaCacheHitRatio(name);
+	}
+
+	/**
+	 * Returns the number of delta nodes in the cache.
+	 */
+	public synchronized int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Drops the deltas whose new tree is not the given current tree of the
+	 * workspace.
+	 */
+	public synchronized void prune(ElementTree currentTree) {
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+			Entry entry = i.next();
+			if (entry.newTree != currentTree) {
+				weight -= entry.weight;
+				i.remove();
+			}
+		}
+	}
+}
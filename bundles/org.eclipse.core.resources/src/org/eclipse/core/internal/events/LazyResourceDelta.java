@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.events;
+
+import java.util.Set;
+import org.eclipse.core.internal.dtree.DeltaDataTree;
+import org.eclipse.core.internal.dtree.NodeComparison;
+import org.eclipse.core.internal.resources.ICoreConstants;
+import org.eclipse.core.internal.resources.ResourceInfo;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * A resource delta whose children are only created when they are first
+ * asked for. The children are created from the comparison of the old and
+ * new element trees, and are given the same flags as the children of a
+ * delta created by {@link ResourceDeltaFactory#createDelta}.
+ * <p>
+ * The node ID map must hold all moves before the first delta is created,
+ * and the new tree must not change while the deltas are in use. Children
+ * may be asked for by several threads.
+ * </p>
+ */
+class LazyResourceDelta extends ResourceDelta {
+	/**
+	 * The state shared by all deltas of a tree.
+	 */
+	static class Source {
+		final DeltaDataTree delta;
+		final ElementTree oldTree;
+		final ElementTree newTree;
+		/**
+		 * The paths that had marker deltas when the deltas were computed,
+		 * or <code>null</code> if marker deltas are not provided.
+		 */
+		final Set<IPath> markerPaths;
+
+		Source(DeltaDataTree delta, ElementTree oldTree, ElementTree newTree, Set<IPath> markerPaths) {
+			this.delta = delta;
+			this.oldTree = oldTree;
+			this.newTree = newTree;
+			this.markerPaths = markerPaths;
+		}
+	}
+
+	private final Source source;
+	/**
+	 * The paths of the children, until the children are created.
+	 */
+	private IPath[] childKeys;
+
+	private LazyResourceDelta(IPath path, ResourceDeltaInfo deltaInfo, Source source) {
+		super(path, deltaInfo);
+		this.source = source;
+	}
+
+	/**
+	 * Creates the delta for the given path, without its children. The paths
+	 * in the comparison tree must be the same as those in the element trees.
+	 */
+	static LazyResourceDelta create(IPath path, ResourceDeltaInfo deltaInfo, Source source) {
+		LazyResourceDelta result = new LazyResourceDelta(path, deltaInfo, source);
+		NodeComparison compare = (NodeComparison) source.delta.getData(path);
+		int comparison = compare.getUserComparison();
+		result.status = comparison;
+		if (comparison == NO_CHANGE || path.isRoot()) {
+			ResourceInfo info = result.getNewTreeInfo();
+			result.oldInfo = info;
+			result.newInfo = info;
+		} else {
+			result.oldInfo = (ResourceInfo) compare.getOldData();
+			result.newInfo = (ResourceInfo) compare.getNewData();
+		}
+		result.childKeys = source.delta.getChildren(path);
+		// if this delta has children but no other changes, mark it as changed
+		if ((result.status & ALL_WITH_PHANTOMS) == 0 && result.childKeys.length != 0)
+			result.status |= CHANGED;
+		result.fixMoves(source.oldTree);
+		result.checkForMarkerDeltas();
+		// added projects may also have been opened
+		if (path.segmentCount() == 1 && result.getKind() == ADDED && result.newInfo.isSet(ICoreConstants.M_OPEN))
+			result.status |= OPEN;
+		return result;
+	}
+
+	/**
+	 * Uses the paths that had marker deltas when the deltas were computed, since
+	 * the marker manager keeps adding later changes to the marker deltas.
+	 */
+	protected void checkForMarkerDeltas() {
+		if (source.markerPaths == null)
+			return;
+		int kind = getKind();
+		if ((path.isRoot() || kind == ADDED || kind == REMOVED) && source.markerPaths.contains(path)) {
+			status |= MARKERS;
+			if (kind == 0)
+				status |= CHANGED;
+		}
+	}
+
+	protected synchronized ResourceDelta[] getChildren() {
+		if (children == null) {
+			int numChildren = childKeys.length;
+			ResourceDelta[] result = numChildren == 0 ? ResourceDeltaFactory.NO_CHILDREN : new ResourceDelta[numChildren];
+			for (int i = 0; i < numChildren; i++)
+				result[i] = create(childKeys[i], deltaInfo, source);
+			children = result;
+			childKeys = null;
+		}
+		return children;
+	}
+
+	/**
+	 * Returns the info of this delta's resource in the new tree, like the info
+	 * that {@link ResourceDeltaFactory#createDelta} takes from the workspace.
+	 */
+	private ResourceInfo getNewTreeInfo() {
+		ElementTree tree = source.newTree;
+		if (path.isRoot())
+			return (ResourceInfo) tree.getTreeData();
+		return tree.includes(path) ? (ResourceInfo) tree.getElementData(path) : null;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,28 +15,51 @@ import org.eclipse.core.runtime.IPath;
 /**
  * A specialized map that maps Node IDs to their old and new paths.
  * Used for calculating moves during resource change notification.
+ * <p>
+ * The map is an open addressing hash table with linear probing, kept in
+ * parallel arrays whose length is a power of two. Node ids are never zero,
+ * so zero marks a free slot.
+ * </p>
  */
 public class NodeIDMap {
-	//using prime table sizes improves our hash function
-	private static final int[] SIZES = new int[] {13, 29, 71, 173, 349, 733, 1511, 3079, 6133, 16381, 32653, 65543, 131111, 262139, 524287, 1051601};
-	private static final double LOAD_FACTOR = 0.75;
-	//2^32 * golden ratio
-	private static final long LARGE_NUMBER = 2654435761L;
+	private static final int MINIMUM_CAPACITY = 16;
+	//at most half of the slots are used, which keeps the probe sequences short
+	private static final int LOAD_FACTOR_SHIFT = 1;
+	//2^64 / golden ratio
+	private static final long LARGE_NUMBER = 0x9E3779B97F4A7C15L;
 
-	int sizeOffset = 0;
 	protected int elementCount = 0;
 	protected long[] ids;
 	protected IPath[] oldPaths;
 	protected IPath[] newPaths;
+	/**
+	 * The number of bits that are dropped from a scrambled id to get its slot.
+	 */
+	private int shift;
 
 	/**
 	 * Creates a new node ID map of default capacity.
 	 */
 	public NodeIDMap() {
-		this.sizeOffset = 0;
-		this.ids = new long[SIZES[sizeOffset]];
-		this.oldPaths = new IPath[SIZES[sizeOffset]];
-		this.newPaths = new IPath[SIZES[sizeOffset]];
+		this(0);
+	}
+
+	/**
+	 * Creates a new node ID map that holds the given number of entries
+	 * without growing.
+	 */
+	public NodeIDMap(int expectedSize) {
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity >> LOAD_FACTOR_SHIFT < expectedSize && capacity < 1 << 30)
+			capacity <<= 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		ids = new long[capacity];
+		oldPaths = new IPath[capacity];
+		newPaths = new IPath[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
 	}
 
 	/**
@@ -44,34 +67,22 @@ public class NodeIDMap {
 	 * all its current values.
 	 */
 	protected void expand() {
-		int newLength;
-		try {
-			newLength = SIZES[++sizeOffset];
-		} catch (ArrayIndexOutOfBoundsException e) {
-			//will only occur if there are > 1 million elements in delta
-			newLength = ids.length * 2;
-		}
-		long[] grownIds = new long[newLength];
-		IPath[] grownOldPaths = new IPath[newLength];
-		IPath[] grownNewPaths = new IPath[newLength];
-		int maxArrayIndex = newLength - 1;
-		for (int i = 0; i < ids.length; i++) {
-			long id = ids[i];
+		long[] oldIds = ids;
+		IPath[] oldOldPaths = oldPaths;
+		IPath[] oldNewPaths = newPaths;
+		allocate(oldIds.length << 1);
+		int mask = ids.length - 1;
+		for (int i = 0; i < oldIds.length; i++) {
+			long id = oldIds[i];
 			if (id != 0) {
-				int hash = hashFor(id, newLength);
-				while (grownIds[hash] != 0) {
-					hash++;
-					if (hash > maxArrayIndex)
-						hash = 0;
-				}
-				grownIds[hash] = id;
-				grownOldPaths[hash] = oldPaths[i];
-				grownNewPaths[hash] = newPaths[i];
+				int index = hashFor(id);
+				while (ids[index] != 0)
+					index = (index + 1) & mask;
+				ids[index] = id;
+				oldPaths[index] = oldOldPaths[i];
+				newPaths[index] = oldNewPaths[i];
 			}
 		}
-		ids = grownIds;
-		oldPaths = grownOldPaths;
-		newPaths = grownNewPaths;
 	}
 
 	/**
@@ -79,28 +90,14 @@ public class NodeIDMap {
 	 * found, returns -1.
 	 */
 	private int getIndex(long searchID) {
-		final int len = ids.length;
-		int hash = hashFor(searchID, len);
-
-		// search the last half of the array
-		for (int i = hash; i < len; i++) {
-			if (ids[i] == searchID)
-				return i;
-			// marker info not found so return -1
-			if (ids[i] == 0)
-				return -1;
-		}
-
-		// search the beginning of the array
-		for (int i = 0; i < hash - 1; i++) {
-			if (ids[i] == searchID)
+		int mask = ids.length - 1;
+		for (int i = hashFor(searchID);; i = (i + 1) & mask) {
+			long id = ids[i];
+			if (id == searchID)
 				return i;
-			// marker info not found so return -1
-			if (ids[i] == 0)
+			if (id == 0)
 				return -1;
 		}
-		// marker info not found so return -1
-		return -1;
 	}
 
 	/**
@@ -125,9 +122,9 @@ public class NodeIDMap {
 		return oldPaths[index];
 	}
 
-	private int hashFor(long id, int size) {
-		//Knuth's hash function from Art of Computer Programming section 6.4
-		return (int) Math.abs((id * LARGE_NUMBER) % size);
+	private int hashFor(long id) {
+		//Fibonacci hashing: the high bits of the scrambled id depend on all bits of the id
+		return (int) ((id * LARGE_NUMBER) >>> shift);
 	}
 
 	/**
@@ -145,60 +142,25 @@ public class NodeIDMap {
 	private void put(long id, IPath oldPath, IPath newPath) {
 		if (oldPath == null && newPath == null)
 			return;
-		int hash = hashFor(id, ids.length);
-
-		// search for an empty slot at the end of the array
-		for (int i = hash; i < ids.length; i++) {
-			if (ids[i] == id) {
-				//replace value for existing entry
-				if (oldPath != null)
-					oldPaths[i] = oldPath;
-				if (newPath != null)
-					newPaths[i] = newPath;
-				return;
-			}
-			if (ids[i] == 0) {
-				//add a new entry to the map
-				ids[i] = id;
-				if (oldPath != null)
-					oldPaths[i] = oldPath;
-				if (newPath != null)
-					newPaths[i] = newPath;
-				elementCount++;
-				// grow if necessary
-				if (shouldGrow())
-					expand();
-				return;
-			}
-		}
-
-		// search for an empty slot at the beginning of the array
-		for (int i = 0; i < hash - 1; i++) {
-			if (ids[i] == id) {
-				//replace value for existing entry
-				if (oldPath != null)
-					oldPaths[i] = oldPath;
-				if (newPath != null)
-					newPaths[i] = newPath;
-				return;
-			}
+		int mask = ids.length - 1;
+		int i = hashFor(id);
+		while (ids[i] != id) {
 			if (ids[i] == 0) {
 				//add a new entry to the map
 				ids[i] = id;
-				if (oldPath != null)
-					oldPaths[i] = oldPath;
-				if (newPath != null)
-					newPaths[i] = newPath;
 				elementCount++;
-				// grow if necessary
-				if (shouldGrow())
-					expand();
-				return;
+				break;
 			}
+			i = (i + 1) & mask;
 		}
-		// if we didn't find a free slot, then try again with the expanded set
-		expand();
-		put(id, oldPath, newPath);
+		//replace the values of the entry
+		if (oldPath != null)
+			oldPaths[i] = oldPath;
+		if (newPath != null)
+			newPaths[i] = newPath;
+		// grow if necessary
+		if (elementCount > ids.length >> LOAD_FACTOR_SHIFT)
+			expand();
 	}
 
 	/**
@@ -214,8 +176,4 @@ public class NodeIDMap {
 	public void putNewPath(long id, IPath path) {
 		put(id, null, path);
 	}
-
-	private boolean shouldGrow() {
-		return elementCount > ids.length * LOAD_FACTOR;
-	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@
 package org.eclipse.core.internal.events;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.eclipse.core.internal.resources.*;
 import org.eclipse.core.internal.utils.Messages;
 import org.eclipse.core.internal.watson.ElementTree;
@@ -46,6 +47,10 @@ public class NotificationManager implements IManager, ILifecycleListener {
 	}
 
 	private static final long NOTIFICATION_DELAY = 1500;
+	/**
+	 * The queues of the listeners that receive POST_CHANGE events in a thread of their own.
+	 */
+	private final List<ResourceChangeListenerQueue> asyncListeners = new CopyOnWriteArrayList<ResourceChangeListenerQueue>();
 	/**
 	 * The Threads that are currently avoiding notification.
 	 */
@@ -110,6 +115,21 @@ public class NotificationManager implements IManager, ILifecycleListener {
 			ResourceStats.listenerAdded(listener);
 	}
 
+	/**
+	 * Adds a listener that receives POST_CHANGE events in a thread of its own.
+	 * At most the given number of events are queued for the listener; further
+	 * changes are merged into the last queued event until the listener catches up.
+	 * Adding a listener that is already registered this way has no effect.
+	 */
+	public synchronized void addAsyncListener(IResourceChangeListener listener, int queueCapacity) {
+		for (Iterator<ResourceChangeListenerQueue> it = asyncListeners.iterator(); it.hasNext();)
+			if (it.next().listener == listener)
+				return;
+		asyncListeners.add(new ResourceChangeListenerQueue(workspace, listener, queueCapacity));
+		if (ResourceStats.TRACE_LISTENERS)
+			ResourceStats.listenerAdded(listener);
+	}
+
 	/**
 	 * Indicates the beginning of a block where periodic notifications should be avoided.
 	 * Returns true if notification avoidance really started, and false for nested
@@ -132,9 +152,11 @@ public class NotificationManager implements IManager, ILifecycleListener {
 	 */
 	public void broadcastChanges(ElementTree lastState, ResourceChangeEvent event, boolean lockTree) {
 		final int type = event.getType();
+		ElementTree oldTree = lastPostChangeTree;
 		try {
 			// Do the notification if there are listeners for events of the given type.
-			if (!listeners.hasListenerFor(type))
+			boolean async = type == IResourceChangeEvent.POST_CHANGE && !asyncListeners.isEmpty();
+			if (!async && !listeners.hasListenerFor(type))
 				return;
 			isNotifying = true;
 			ResourceDelta delta = getDelta(lastState, type);
@@ -148,6 +170,8 @@ public class NotificationManager implements IManager, ILifecycleListener {
 			long start = System.currentTimeMillis();
 			notify(getListeners(), event, lockTree);
 			lastNotifyDuration = System.currentTimeMillis() - start;
+			if (async)
+				postAsync(oldTree, lastState, delta);
 		} finally {
 			// Update the state regardless of whether people are listening.
 			isNotifying = false;
@@ -178,6 +202,19 @@ public class NotificationManager implements IManager, ILifecycleListener {
 		}
 	}
 
+	/**
+	 * Adds the trees that the next resource deltas are computed against to
+	 * the given list.
+	 */
+	public void addDeltaTrees(List<ElementTree> trees) {
+		if (lastPostChangeTree != null)
+			trees.add(lastPostChangeTree);
+		if (lastPostBuildTree != null)
+			trees.add(lastPostBuildTree);
+		if (lastDeltaState != null && lastDeltaState.isImmutable())
+			trees.add(lastDeltaState);
+	}
+
 	/**
 	 * Helper method for the save participant lifecycle computation. */
 	public void broadcastChanges(IResourceChangeListener listener, int type, IResourceDelta delta) {
@@ -301,8 +338,29 @@ public class NotificationManager implements IManager, ILifecycleListener {
 		}
 	}
 
+	/**
+	 * Queues a POST_CHANGE delta for the asynchronous listeners. The marker deltas
+	 * of the delta are replaced by a copy, because the marker manager keeps merging
+	 * later changes into the maps it has handed out.
+	 */
+	private void postAsync(ElementTree oldTree, ElementTree newTree, ResourceDelta delta) {
+		Map<IPath, MarkerSet> markerDeltas = MarkerDelta.copy(delta.getDeltaInfo().getMarkerDeltas());
+		delta.updateMarkers(markerDeltas);
+		for (Iterator<ResourceChangeListenerQueue> it = asyncListeners.iterator(); it.hasNext();)
+			it.next().post(oldTree, newTree, delta, markerDeltas);
+	}
+
 	public void removeListener(IResourceChangeListener listener) {
 		listeners.remove(listener);
+		synchronized (this) {
+			for (Iterator<ResourceChangeListenerQueue> it = asyncListeners.iterator(); it.hasNext();) {
+				ResourceChangeListenerQueue queue = it.next();
+				if (queue.listener == listener) {
+					queue.stop();
+					asyncListeners.remove(queue);
+				}
+			}
+		}
 		if (ResourceStats.TRACE_LISTENERS)
 			ResourceStats.listenerRemoved(listener);
 	}
@@ -319,6 +377,11 @@ public class NotificationManager implements IManager, ILifecycleListener {
 	public void shutdown(IProgressMonitor monitor) {
 		//wipe out any existing listeners
 		listeners = new ResourceChangeListenerList();
+		synchronized (this) {
+			for (Iterator<ResourceChangeListenerQueue> it = asyncListeners.iterator(); it.hasNext();)
+				it.next().stop();
+			asyncListeners.clear();
+		}
 	}
 
 	public void startup(IProgressMonitor monitor) {
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.events;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.*;
+import org.eclipse.core.internal.resources.*;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+
+/**
+ * Delivers POST_CHANGE events to a resource change listener in a thread of
+ * its own, so that a slow listener does not hold up the operation that caused
+ * the changes.
+ * <p>
+ * Events are queued in the order in which they were broadcast. The queue is
+ * bounded: when it is full, the changes of a new event are merged into the
+ * last queued event, whose delta is then recomputed from its old tree to the
+ * new tree. The listener therefore always receives every change, but may
+ * receive several operations as one event when it falls behind.
+ * </p><p>
+ * All deltas are computed by the thread that broadcasts the changes, while it
+ * owns the workspace. The listener thread only reads deltas, which are never
+ * changed once they are queued.
+ * </p>
+ */
+class ResourceChangeListenerQueue {
+	/**
+	 * A POST_CHANGE event that has not yet been delivered.
+	 */
+	private static class QueuedEvent {
+		ResourceDelta delta;
+		/** whether the marker deltas belong to this event only */
+		boolean mergedMarkers;
+		Map<IPath, MarkerSet> markerDeltas;
+		final ElementTree oldTree;
+		/** the time at which the oldest of the merged events was queued */
+		final long queued;
+
+		QueuedEvent(ElementTree oldTree, ResourceDelta delta, Map<IPath, MarkerSet> markerDeltas) {
+			this.oldTree = oldTree;
+			this.delta = delta;
+			this.markerDeltas = markerDeltas;
+			this.queued = System.currentTimeMillis();
+		}
+	}
+
+	private final int capacity;
+	private final LinkedList<QueuedEvent> events = new LinkedList<QueuedEvent>();
+	private final ExecutorService executor;
+	final IResourceChangeListener listener;
+	/** whether a task that delivers the queued events has been submitted */
+	private boolean scheduled = false;
+	private volatile boolean stopped = false;
+	private final Workspace workspace;
+
+	private final Runnable drainer = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	ResourceChangeListenerQueue(Workspace workspace, IResourceChangeListener listener, int capacity) {
+		this.workspace = workspace;
+		this.listener = listener;
+		this.capacity = Math.max(1, capacity);
+		final String name = "Resource change listener: " + listener.getClass().getName(); //$NON-NLS-1$
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Delivers the queued events until the queue is empty.
+	 */
+	void drain() {
+		while (true) {
+			QueuedEvent next;
+			int depth;
+			synchronized (this) {
+				if (stopped || events.isEmpty()) {
+					scheduled = false;
+					return;
+				}
+				depth = events.size();
+				next = events.removeFirst();
+			}
+			if (ResourceStats.TRACE_LISTENER_QUEUES)
+				ResourceStats.listenerQueueDispatched(listener, System.currentTimeMillis() - next.queued, depth);
+			final IResourceChangeEvent event = new ResourceChangeEvent(workspace, IResourceChangeEvent.POST_CHANGE, 0, next.delta);
+			if (ResourceStats.TRACE_LISTENERS)
+				ResourceStats.startNotify(listener);
+			SafeRunner.run(new ISafeRunnable() {
+				public void handleException(Throwable e) {
+					// exception logged in SafeRunner#run
+				}
+
+				public void run() throws Exception {
+					listener.resourceChanged(event);
+				}
+			});
+			if (ResourceStats.TRACE_LISTENERS)
+				ResourceStats.endNotify();
+		}
+	}
+
+	/**
+	 * Queues the changes between the given trees for delivery. The delta and
+	 * the marker deltas are shared with the other queues and must not be changed.
+	 * This must be called from within a workspace operation.
+	 */
+	synchronized void post(ElementTree oldTree, ElementTree newTree, ResourceDelta delta, Map<IPath, MarkerSet> markerDeltas) {
+		if (stopped)
+			return;
+		if (events.size() < capacity) {
+			events.add(new QueuedEvent(oldTree, delta, markerDeltas));
+		} else {
+			//the listener has fallen behind, so fold the changes into the last event
+			QueuedEvent last = events.getLast();
+			if (!last.mergedMarkers) {
+				last.markerDeltas = MarkerDelta.copy(last.markerDeltas);
+				last.mergedMarkers = true;
+			}
+			last.markerDeltas = MarkerDelta.merge(last.markerDeltas, MarkerDelta.copy(markerDeltas));
+			last.delta = ResourceDeltaFactory.computeDelta(workspace, last.oldTree, newTree, Path.ROOT, last.markerDeltas);
+		}
+		if (!scheduled) {
+			scheduled = true;
+			executor.execute(drainer);
+		}
+	}
+
+	/**
+	 * Discards the queued events and stops the listener thread. An event that
+	 * is being delivered is not interrupted.
+	 */
+	void stop() {
+		synchronized (this) {
+			stopped = true;
+			events.clear();
+		}
+		executor.shutdown();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -68,6 +68,7 @@ public class ResourceDelta extends PlatformObject implements IResourceDelta {
 			return;
 		if (!visitor.visit(this))
 			return;
+		ResourceDelta[] children = getChildren();
 		for (int i = 0; i < children.length; i++) {
 			ResourceDelta childDelta = children[i];
 			// quietly exclude team-private, hidden and phantom members unless explicitly included
@@ -113,7 +114,7 @@ public class ResourceDelta extends PlatformObject implements IResourceDelta {
 		//iterate over the path and find matching child delta
 		ResourceDelta current = this;
 		segments: for (int i = 0; i < segmentCount; i++) {
-			IResourceDelta[] currentChildren = current.children;
+			IResourceDelta[] currentChildren = current.getChildren();
 			for (int j = 0, jmax = currentChildren.length; j < jmax; j++) {
 				if (currentChildren[j].getFullPath().lastSegment().equals(path.segment(i))) {
 					current = (ResourceDelta) currentChildren[j];
@@ -133,6 +134,21 @@ public class ResourceDelta extends PlatformObject implements IResourceDelta {
 	 * added and removed resources.
 	 */
 	protected void fixMovesAndMarkers(ElementTree oldTree) {
+		fixMoves(oldTree);
+
+		//check for marker deltas -- this is affected by move computation
+		//so must happen afterwards
+		checkForMarkerDeltas();
+
+		//recurse on children
+		for (int i = 0; i < children.length; i++)
+			children[i].fixMovesAndMarkers(oldTree);
+	}
+
+	/**
+	 * Sets the MOVED_FROM and MOVED_TO flags of this delta, but not of its children.
+	 */
+	protected void fixMoves(ElementTree oldTree) {
 		NodeIDMap nodeIDMap = deltaInfo.getNodeIDMap();
 		if (!path.isRoot() && !nodeIDMap.isEmpty()) {
 			int kind = getKind();
@@ -168,14 +184,6 @@ public class ResourceDelta extends PlatformObject implements IResourceDelta {
 					}
 			}
 		}
-
-		//check for marker deltas -- this is affected by move computation
-		//so must happen afterwards
-		checkForMarkerDeltas();
-
-		//recurse on children
-		for (int i = 0; i < children.length; i++)
-			children[i].fixMovesAndMarkers(oldTree);
 	}
 
 	/**
@@ -196,6 +204,7 @@ public class ResourceDelta extends PlatformObject implements IResourceDelta {
 	 * @see IResourceDelta#getAffectedChildren(int, int)
 	 */
 	public IResourceDelta[] getAffectedChildren(int kindMask, int memberFlags) {
+		ResourceDelta[] children = getChildren();
 		int numChildren = children.length;
 		//if there are no children, they all match
 		if (numChildren == 0)
@@ -243,6 +252,13 @@ public class ResourceDelta extends PlatformObject implements IResourceDelta {
 		return result;
 	}
 
+	/**
+	 * Returns the deltas of the children of this delta.
+	 */
+	protected ResourceDelta[] getChildren() {
+		return children;
+	}
+
 	protected ResourceDeltaInfo getDeltaInfo() {
 		return deltaInfo;
 	}
@@ -410,6 +426,7 @@ public class ResourceDelta extends PlatformObject implements IResourceDelta {
 	public String toDeepDebugString() {
 		final StringBuffer buffer = new StringBuffer("\n"); //$NON-NLS-1$
 		writeDebugString(buffer);
+		ResourceDelta[] children = getChildren();
 		for (int i = 0; i < children.length; ++i)
 			buffer.append(children[i].toDeepDebugString());
 		return buffer.toString();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,13 +11,16 @@
  *******************************************************************************/
 package org.eclipse.core.internal.events;
 
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.internal.dtree.DeltaDataTree;
 import org.eclipse.core.internal.dtree.NodeComparison;
 import org.eclipse.core.internal.resources.*;
 import org.eclipse.core.internal.watson.ElementTree;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 
@@ -31,6 +34,23 @@ public class ResourceDeltaFactory {
 	 */
 	protected static final ResourceDelta[] NO_CHILDREN = new ResourceDelta[0];
 
+	/**
+	 * The system property that enables computing the deltas of the projects
+	 * of a workspace delta on several threads.
+	 */
+	private static final String PARALLEL_DELTA = ResourcesPlugin.PI_RESOURCES + ".parallelDelta"; //$NON-NLS-1$
+
+	/**
+	 * The system property that enables creating the children of notification
+	 * deltas only when they are asked for.
+	 */
+	private static final String LAZY_DELTA = ResourcesPlugin.PI_RESOURCES + ".lazyDelta"; //$NON-NLS-1$
+
+	/**
+	 * The threads that compute project deltas, created when first needed.
+	 */
+	private static ExecutorService executor;
+
 	/**
 	 * Returns the resource delta representing the changes made between the given old and new trees,
 	 * starting from the given root element.
@@ -38,8 +58,26 @@ public class ResourceDeltaFactory {
 	 * if marker deltas should not be provided.
 	 */
 	public static ResourceDelta computeDelta(Workspace workspace, ElementTree oldTree, ElementTree newTree, IPath root, long markerGeneration) {
-		//compute the underlying delta tree.
 		ResourceComparator comparator = markerGeneration >= 0 ? ResourceComparator.getNotificationComparator() : ResourceComparator.getBuildComparator();
+		// get the marker deltas for the delta info object....if needed
+		Map<IPath, MarkerSet> allMarkerDeltas = null;
+		if (markerGeneration >= 0)
+			allMarkerDeltas = workspace.getMarkerManager().getMarkerDeltas(markerGeneration);
+		return computeDelta(workspace, oldTree, newTree, root, comparator, allMarkerDeltas);
+	}
+
+	/**
+	 * Returns the notification delta representing the changes made between the given
+	 * old and new trees, starting from the given root element.
+	 * @param markerDeltas the marker deltas to include in the delta, which must
+	 * not be changed by the caller afterwards
+	 */
+	public static ResourceDelta computeDelta(Workspace workspace, ElementTree oldTree, ElementTree newTree, IPath root, Map<IPath, MarkerSet> markerDeltas) {
+		return computeDelta(workspace, oldTree, newTree, root, ResourceComparator.getNotificationComparator(), markerDeltas);
+	}
+
+	private static ResourceDelta computeDelta(Workspace workspace, ElementTree oldTree, ElementTree newTree, IPath root, ResourceComparator comparator, Map<IPath, MarkerSet> allMarkerDeltas) {
+		//compute the underlying delta tree.
 		newTree.immutable();
 		DeltaDataTree delta = null;
 		if (Path.ROOT.equals(root))
@@ -51,17 +89,20 @@ public class ResourceDeltaFactory {
 		IPath pathInTree = root.isRoot() ? Path.ROOT : root;
 		IPath pathInDelta = Path.ROOT;
 
-		// get the marker deltas for the delta info object....if needed
-		Map<IPath, MarkerSet> allMarkerDeltas = null;
-		if (markerGeneration >= 0)
-			allMarkerDeltas = workspace.getMarkerManager().getMarkerDeltas(markerGeneration);
-
 		//recursively walk the delta and create a tree of ResourceDelta objects.
 		ResourceDeltaInfo deltaInfo = new ResourceDeltaInfo(workspace, allMarkerDeltas, comparator);
-		ResourceDelta result = createDelta(workspace, delta, deltaInfo, pathInTree, pathInDelta);
+		//notification deltas are taken from the new tree, which is the current tree of the workspace
+		if (pathInTree.isRoot() && comparator == ResourceComparator.getNotificationComparator() && Boolean.getBoolean(LAZY_DELTA))
+			return createLazyDelta(delta, deltaInfo, oldTree, newTree);
+		int[] nodeIDCount = new int[1];
+		ResourceDelta result;
+		if (pathInTree.isRoot() && Boolean.getBoolean(PARALLEL_DELTA))
+			result = createRootDelta(workspace, delta, deltaInfo, nodeIDCount);
+		else
+			result = createDelta(workspace, delta, deltaInfo, pathInTree, pathInDelta, nodeIDCount);
 
 		//compute node ID map and fix up moves
-		deltaInfo.setNodeIDMap(computeNodeIDMap(result, new NodeIDMap()));
+		deltaInfo.setNodeIDMap(computeNodeIDMap(result, new NodeIDMap(nodeIDCount[0])));
 		result.fixMovesAndMarkers(oldTree);
 
 		// check all the projects and if they were added and opened then tweek the flags
@@ -125,8 +166,171 @@ public class ResourceDeltaFactory {
 	/**
 	 * Recursively creates the tree of ResourceDelta objects rooted at
 	 * the given path.
+	 * @param nodeIDCount holds the number of node ID map entries needed by
+	 * the deltas, which is increased by those of the created deltas
 	 */
-	protected static ResourceDelta createDelta(Workspace workspace, DeltaDataTree delta, ResourceDeltaInfo deltaInfo, IPath pathInTree, IPath pathInDelta) {
+	protected static ResourceDelta createDelta(Workspace workspace, DeltaDataTree delta, ResourceDeltaInfo deltaInfo, IPath pathInTree, IPath pathInDelta, int[] nodeIDCount) {
+		ResourceDelta result = newDelta(workspace, delta, deltaInfo, pathInTree, pathInDelta, nodeIDCount);
+		// recurse over the children
+		IPath[] childKeys = delta.getChildren(pathInDelta);
+		int numChildren = childKeys.length;
+		ResourceDelta[] children = numChildren == 0 ? NO_CHILDREN : new ResourceDelta[numChildren];
+		for (int i = 0; i < numChildren; i++) {
+			//reuse the delta path if tree-relative and delta-relative are the same
+			IPath newTreePath = pathInTree == pathInDelta ? childKeys[i] : pathInTree.append(childKeys[i].lastSegment());
+			children[i] = createDelta(workspace, delta, deltaInfo, newTreePath, childKeys[i], nodeIDCount);
+		}
+		setChildren(result, children);
+		return result;
+	}
+
+	/**
+	 * Creates the tree of ResourceDelta objects rooted at the workspace root,
+	 * creating the trees of the projects concurrently. The trees are the same
+	 * as those created by {@link #createDelta(Workspace, DeltaDataTree, ResourceDeltaInfo, IPath, IPath, int[])}.
+	 * The workspace and the delta tree are only read while the trees are created.
+	 */
+	private static ResourceDelta createRootDelta(final Workspace workspace, final DeltaDataTree delta, final ResourceDeltaInfo deltaInfo, int[] nodeIDCount) {
+		ResourceDelta result = newDelta(workspace, delta, deltaInfo, Path.ROOT, Path.ROOT, nodeIDCount);
+		final IPath[] childKeys = delta.getChildren(Path.ROOT);
+		int numChildren = childKeys.length;
+		if (numChildren < 2) {
+			//nothing to gain from other threads
+			ResourceDelta[] children = numChildren == 0 ? NO_CHILDREN : new ResourceDelta[] {createDelta(workspace, delta, deltaInfo, childKeys[0], childKeys[0], nodeIDCount)};
+			setChildren(result, children);
+			return result;
+		}
+		final int[][] childCounts = new int[numChildren][1];
+		ExecutorService projectExecutor = getExecutor();
+		@SuppressWarnings("unchecked")
+		Future<ResourceDelta>[] futures = new Future[numChildren];
+		//the first project is done by this thread while it waits for the others
+		for (int i = 1; i < numChildren; i++) {
+			final int child = i;
+			futures[i] = projectExecutor.submit(new Callable<ResourceDelta>() {
+				public ResourceDelta call() {
+					return createDelta(workspace, delta, deltaInfo, childKeys[child], childKeys[child], childCounts[child]);
+				}
+			});
+		}
+		ResourceDelta[] children = new ResourceDelta[numChildren];
+		children[0] = createDelta(workspace, delta, deltaInfo, childKeys[0], childKeys[0], childCounts[0]);
+		boolean interrupted = false;
+		for (int i = 1; i < numChildren; i++) {
+			while (children[i] == null) {
+				try {
+					children[i] = futures[i].get();
+				} catch (InterruptedException e) {
+					//the projects are still being computed, so keep waiting
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		for (int i = 0; i < numChildren; i++)
+			nodeIDCount[0] += childCounts[i][0];
+		setChildren(result, children);
+		return result;
+	}
+
+	/**
+	 * Creates the root of a tree of deltas whose children are created when
+	 * they are first asked for. The moves are found up front, by walking the
+	 * comparison tree instead of the deltas.
+	 */
+	private static ResourceDelta createLazyDelta(DeltaDataTree delta, ResourceDeltaInfo deltaInfo, ElementTree oldTree, ElementTree newTree) {
+		Set<IPath> markerPaths = null;
+		Map<IPath, MarkerSet> markerDeltas = deltaInfo.getMarkerDeltas();
+		if (markerDeltas != null) {
+			markerPaths = new HashSet<IPath>();
+			for (Iterator<Map.Entry<IPath, MarkerSet>> i = markerDeltas.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<IPath, MarkerSet> entry = i.next();
+				if (entry.getValue().size() > 0)
+					markerPaths.add(entry.getKey());
+			}
+		}
+		NodeIDMap nodeIDMap = new NodeIDMap();
+		computeNodeIDMap(delta, Path.ROOT, nodeIDMap);
+		deltaInfo.setNodeIDMap(nodeIDMap);
+		return LazyResourceDelta.create(Path.ROOT, deltaInfo, new LazyResourceDelta.Source(delta, oldTree, newTree, markerPaths));
+	}
+
+	/**
+	 * Adds the moves below the given path in the given comparison tree to the
+	 * given map. The map is the same as the one computed from the deltas
+	 * created for the comparison tree. Paths are only created for the
+	 * resources that are added to the map, and for the containers.
+	 */
+	private static void computeNodeIDMap(DeltaDataTree delta, IPath parentKey, NodeIDMap nodeIDMap) {
+		String[] names = delta.getNamesOfChildren(parentKey);
+		Object[] data = delta.getDataOfChildren(parentKey);
+		for (int i = 0; i < names.length; i++) {
+			NodeComparison compare = (NodeComparison) data[i];
+			ResourceInfo oldInfo = (ResourceInfo) compare.getOldData();
+			ResourceInfo newInfo = (ResourceInfo) compare.getNewData();
+			//files are the only resources that never have children, unless they replace a folder
+			boolean isFile = (oldInfo != null || newInfo != null) && (oldInfo == null || oldInfo.getType() == IResource.FILE) && (newInfo == null || newInfo.getType() == IResource.FILE);
+			IPath path = isFile ? null : parentKey.append(names[i]);
+			int comparison = compare.getUserComparison();
+			switch (comparison & ResourceDelta.KIND_MASK) {
+				case IResourceDelta.ADDED :
+					nodeIDMap.putNewPath(newInfo.getNodeId(), path == null ? parentKey.append(names[i]) : path);
+					break;
+				case IResourceDelta.REMOVED :
+					nodeIDMap.putOldPath(oldInfo.getNodeId(), path == null ? parentKey.append(names[i]) : path);
+					break;
+				case IResourceDelta.NO_CHANGE :
+					//unchanged resources have the same info in both trees
+					if (comparison == IResourceDelta.NO_CHANGE || isFile)
+						break;
+					//a resource with changed flags and changed children is a change
+					if (delta.getNamesOfChildren(path).length == 0)
+						break;
+					//$FALL-THROUGH$
+				case IResourceDelta.CHANGED :
+					long oldID = oldInfo.getNodeId();
+					long newID = newInfo.getNodeId();
+					if (oldID != newID) {
+						if (path == null)
+							path = parentKey.append(names[i]);
+						nodeIDMap.putOldPath(oldID, path);
+						nodeIDMap.putNewPath(newID, path);
+					}
+					break;
+			}
+			if (!isFile)
+				computeNodeIDMap(delta, path, nodeIDMap);
+		}
+	}
+
+	/**
+	 * Returns the executor that computes the deltas of projects.
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Resource delta"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Creates the ResourceDelta object for the given path, without its children.
+	 */
+	private static ResourceDelta newDelta(Workspace workspace, DeltaDataTree delta, ResourceDeltaInfo deltaInfo, IPath pathInTree, IPath pathInDelta, int[] nodeIDCount) {
 		// create the delta and fill it with information
 		ResourceDelta result = new ResourceDelta(pathInTree, deltaInfo);
 
@@ -134,6 +338,11 @@ public class ResourceDeltaFactory {
 		NodeComparison compare = (NodeComparison) delta.getData(pathInDelta);
 		int comparison = compare.getUserComparison();
 		result.setStatus(comparison);
+		//added and removed resources need one node ID map entry, replaced ones need two
+		if ((comparison & (IResourceDelta.ADDED | IResourceDelta.REMOVED)) != 0)
+			nodeIDCount[0]++;
+		else if ((comparison & IResourceDelta.REPLACED) != 0)
+			nodeIDCount[0] += 2;
 		if (comparison == IResourceDelta.NO_CHANGE || Path.ROOT.equals(pathInTree)) {
 			ResourceInfo info = workspace.getResourceInfo(pathInTree, true, false);
 			result.setOldInfo(info);
@@ -142,30 +351,20 @@ public class ResourceDeltaFactory {
 			result.setOldInfo((ResourceInfo) compare.getOldData());
 			result.setNewInfo((ResourceInfo) compare.getNewData());
 		}
-		// recurse over the children
-		IPath[] childKeys = delta.getChildren(pathInDelta);
-		int numChildren = childKeys.length;
-		if (numChildren == 0) {
-			result.setChildren(NO_CHILDREN);
-		} else {
-			ResourceDelta[] children = new ResourceDelta[numChildren];
-			for (int i = 0; i < numChildren; i++) {
-				//reuse the delta path if tree-relative and delta-relative are the same
-				IPath newTreePath = pathInTree == pathInDelta ? childKeys[i] : pathInTree.append(childKeys[i].lastSegment());
-				children[i] = createDelta(workspace, delta, deltaInfo, newTreePath, childKeys[i]);
-			}
-			result.setChildren(children);
-		}
-
-		// if this delta has children but no other changes, mark it as changed
-		int status = result.status;
-		if ((status & IResourceDelta.ALL_WITH_PHANTOMS) == 0 && numChildren != 0)
-			result.setStatus(status |= IResourceDelta.CHANGED);
-
-		// return the delta
 		return result;
 	}
 
+	/**
+	 * Sets the children of the given delta, and marks it as changed if it has
+	 * children but no other changes.
+	 */
+	private static void setChildren(ResourceDelta delta, ResourceDelta[] children) {
+		delta.setChildren(children);
+		int status = delta.status;
+		if ((status & IResourceDelta.ALL_WITH_PHANTOMS) == 0 && children.length != 0)
+			delta.setStatus(status | IResourceDelta.CHANGED);
+	}
+
 	/**
 	 * Returns an empty build delta describing the fact that no
 	 * changes occurred in the given project.  The returned delta
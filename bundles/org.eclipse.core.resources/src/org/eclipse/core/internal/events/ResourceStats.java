@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,43 +19,86 @@ import org.eclipse.core.runtime.PerformanceStats;
  */
 public class ResourceStats {
 	/**
-	 * The event that is currently occurring, maybe <code>null</code>
+	 * The event that is currently occurring in each thread, maybe <code>null</code>.
+	 * Builders of different projects may run at the same time.
 	 */
-	private static PerformanceStats currentStats;
+	private static final ThreadLocal<PerformanceStats> currentStats = new ThreadLocal<PerformanceStats>();
 	//performance event names
+	public static final String EVENT_COMPACTION = ResourcesPlugin.PI_RESOURCES + "/perf/compaction"; //$NON-NLS-1$
+	public static final String EVENT_DELTA_CACHE = ResourcesPlugin.PI_RESOURCES + "/perf/delta.cache"; //$NON-NLS-1$
 	public static final String EVENT_BUILDERS = ResourcesPlugin.PI_RESOURCES + "/perf/builders"; //$NON-NLS-1$
 	public static final String EVENT_LISTENERS = ResourcesPlugin.PI_RESOURCES + "/perf/listeners"; //$NON-NLS-1$
+	public static final String EVENT_LISTENER_QUEUES = ResourcesPlugin.PI_RESOURCES + "/perf/listener.queues"; //$NON-NLS-1$
+	public static final String EVENT_RESTORE = ResourcesPlugin.PI_RESOURCES + "/perf/restore"; //$NON-NLS-1$
 	public static final String EVENT_SAVE_PARTICIPANTS = ResourcesPlugin.PI_RESOURCES + "/perf/save.participants"; //$NON-NLS-1$
 	public static final String EVENT_SNAPSHOT = ResourcesPlugin.PI_RESOURCES + "/perf/snapshot"; //$NON-NLS-1$
+	public static final String EVENT_SNAPSHOT_TREE = ResourcesPlugin.PI_RESOURCES + "/perf/snapshot.tree"; //$NON-NLS-1$
 
 	//performance event enablement
+	public static boolean TRACE_COMPACTION = PerformanceStats.isEnabled(ResourceStats.EVENT_COMPACTION);
+	public static boolean TRACE_DELTA_CACHE = PerformanceStats.isEnabled(ResourceStats.EVENT_DELTA_CACHE);
 	public static boolean TRACE_BUILDERS = PerformanceStats.isEnabled(ResourceStats.EVENT_BUILDERS);
 	public static boolean TRACE_LISTENERS = PerformanceStats.isEnabled(ResourceStats.EVENT_LISTENERS);
+	public static boolean TRACE_LISTENER_QUEUES = PerformanceStats.isEnabled(ResourceStats.EVENT_LISTENER_QUEUES);
+	public static boolean TRACE_RESTORE = PerformanceStats.isEnabled(ResourceStats.EVENT_RESTORE);
 	public static boolean TRACE_SAVE_PARTICIPANTS = PerformanceStats.isEnabled(ResourceStats.EVENT_SAVE_PARTICIPANTS);
 	public static boolean TRACE_SNAPSHOT = PerformanceStats.isEnabled(ResourceStats.EVENT_SNAPSHOT);
+	public static boolean TRACE_SNAPSHOT_TREE = PerformanceStats.isEnabled(ResourceStats.EVENT_SNAPSHOT_TREE);
+
+	/**
+	 * Notifies the stats tool that a build delta was found in the given cache.
+	 */
+	public static void deltaCacheHit(String cache) {
+		PerformanceStats.getStats(EVENT_DELTA_CACHE, cache + " hits").addRun(0, cache); //$NON-NLS-1$
+	}
+
+	/**
+	 * Notifies the stats tool that a build delta was not found in the given
+	 * cache, and took the given number of milliseconds to compute.
+	 */
+	public static void deltaCacheMiss(String cache, long computeTime) {
+		PerformanceStats.getStats(EVENT_DELTA_CACHE, cache + " misses").addRun(computeTime, cache); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the ratio of lookups in the given delta cache that found a delta,
+	 * or zero if there were no lookups.
+	 */
+	public static double getDeltaCacheHitRatio(String cache) {
+		int hits = PerformanceStats.getStats(EVENT_DELTA_CACHE, cache + " hits").getRunCount(); //$NON-NLS-1$
+		int misses = PerformanceStats.getStats(EVENT_DELTA_CACHE, cache + " misses").getRunCount(); //$NON-NLS-1$
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
 
 	public static void endBuild() {
-		if (currentStats != null)
-			currentStats.endRun();
-		currentStats = null;
+		endRun();
+	}
+
+	public static void endCompaction() {
+		endRun();
 	}
 
 	public static void endNotify() {
-		if (currentStats != null)
-			currentStats.endRun();
-		currentStats = null;
+		endRun();
+	}
+
+	public static void endRestore() {
+		endRun();
 	}
 
 	public static void endSave() {
-		if (currentStats != null)
-			currentStats.endRun();
-		currentStats = null;
+		endRun();
 	}
 
 	public static void endSnapshot() {
-		if (currentStats != null)
-			currentStats.endRun();
-		currentStats = null;
+		endRun();
+	}
+
+	private static void endRun() {
+		PerformanceStats stats = currentStats.get();
+		if (stats != null)
+			stats.endRun();
+		currentStats.set(null);
 	}
 
 	/**
@@ -66,6 +109,16 @@ public class ResourceStats {
 			PerformanceStats.getStats(EVENT_LISTENERS, listener.getClass().getName());
 	}
 
+	/**
+	 * Notifies the stats tool that an event is about to be delivered to an
+	 * asynchronous resource change listener. The time the event spent in the
+	 * queue of the listener is recorded as the running time, and the number of
+	 * events that were queued, including this one, as the context of the event.
+	 */
+	public static void listenerQueueDispatched(IResourceChangeListener listener, long lag, int queueDepth) {
+		PerformanceStats.getStats(EVENT_LISTENER_QUEUES, listener).addRun(lag, Integer.toString(queueDepth));
+	}
+
 	/**
 	 * Notifies the stats tool that a resource change listener has been removed.
 	 */
@@ -74,23 +127,66 @@ public class ResourceStats {
 			PerformanceStats.removeStats(EVENT_LISTENERS, listener.getClass().getName());
 	}
 
+	private static void startRun(PerformanceStats stats) {
+		currentStats.set(stats);
+		stats.startRun();
+	}
+
+	private static void startRun(PerformanceStats stats, String context) {
+		currentStats.set(stats);
+		stats.startRun(context);
+	}
+
+	/**
+	 * Notifies the stats tool that the workspace snapshot file was replayed
+	 * at startup, which took the given number of milliseconds. The size of
+	 * the file is recorded as the context of the event.
+	 */
+	public static void snapshotReplayed(long replayTime, long fileSize) {
+		PerformanceStats.getStats(EVENT_SNAPSHOT_TREE, "replay").addRun(replayTime, fileSize + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Notifies the stats tool that a segment was written to the workspace
+	 * snapshot file in the given number of milliseconds, either appended or
+	 * replacing all previous segments. The size of the file and its number
+	 * of segments are recorded as the context of the event.
+	 */
+	public static void snapshotTreeWritten(boolean consolidated, long writeTime, long fileSize, int segments) {
+		PerformanceStats.getStats(EVENT_SNAPSHOT_TREE, consolidated ? "consolidation" : "segment").addRun(writeTime, fileSize + " bytes, " + segments + " segments"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
 	public static void startBuild(IncrementalProjectBuilder builder) {
-		currentStats = PerformanceStats.getStats(EVENT_BUILDERS, builder);
-		currentStats.startRun(builder.getProject().getName());
+		startRun(PerformanceStats.getStats(EVENT_BUILDERS, builder), builder.getProject().getName());
+	}
+
+	/**
+	 * Notifies the stats tool that the delta chain of the workspace tree is
+	 * about to be compacted. The depth of the chain before compaction is
+	 * recorded as the context of the event.
+	 */
+	public static void startCompaction(int chainDepth) {
+		startRun(PerformanceStats.getStats(EVENT_COMPACTION, ResourcesPlugin.getWorkspace()), Integer.toString(chainDepth));
 	}
 
 	public static void startNotify(IResourceChangeListener listener) {
-		currentStats = PerformanceStats.getStats(EVENT_LISTENERS, listener);
-		currentStats.startRun();
+		startRun(PerformanceStats.getStats(EVENT_LISTENERS, listener));
+	}
+
+	/**
+	 * Notifies the stats tool that the workspace is about to be restored at
+	 * startup. Whether the files of the projects are read in parallel is
+	 * recorded as the context of the event.
+	 */
+	public static void startRestore(boolean parallel) {
+		startRun(PerformanceStats.getStats(EVENT_RESTORE, ResourcesPlugin.getWorkspace()), parallel ? "parallel" : "serial"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	public static void startSnapshot() {
-		currentStats = PerformanceStats.getStats(EVENT_SNAPSHOT, ResourcesPlugin.getWorkspace());
-		currentStats.startRun();
+		startRun(PerformanceStats.getStats(EVENT_SNAPSHOT, ResourcesPlugin.getWorkspace()));
 	}
 
 	public static void startSave(ISaveParticipant participant) {
-		currentStats = PerformanceStats.getStats(EVENT_SAVE_PARTICIPANTS, participant);
-		currentStats.startRun();
+		startRun(PerformanceStats.getStats(EVENT_SAVE_PARTICIPANTS, participant));
 	}
 }
\ No newline at end of file
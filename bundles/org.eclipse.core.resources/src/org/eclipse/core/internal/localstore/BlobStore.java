@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,20 +10,48 @@
  *******************************************************************************/
 package org.eclipse.core.internal.localstore;
 
-import java.io.InputStream;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Set;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
-import org.eclipse.core.internal.utils.UniversalUniqueIdentifier;
+import org.eclipse.core.internal.resources.ResourceException;
+import org.eclipse.core.internal.utils.*;
+import org.eclipse.core.resources.IResourceStatus;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * Blob store which maps UUIDs to blobs on disk. The UUID is mapped
  * to a file in the file-system and the blob is the file contents. For scalability,
  * the blobs are split among 255 directories with the names 00 to FF.
+ * <p>
+ * A content addressed store derives the UUID of a blob from a hash of its
+ * contents, so identical contents are only stored once and a blob may be
+ * shared by several history states. Such UUIDs are marked with a version
+ * of their own, so shared blobs can be told apart from unique ones whatever
+ * the mode of the store that reads them.
+ * </p>
  */
 public class BlobStore {
+	/** the UUID version of blobs named after their contents */
+	private static final int CONTENT_VERSION = 5;
+
+	/** the hash used to name blobs after their contents */
+	private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	/** the suffix of blobs that are being written */
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	/** local files at least this large are copied without going through the Java heap */
+	private static final long TRANSFER_THRESHOLD = 1024 * 1024;
+
+	/** whether blobs are named after a hash of their contents */
+	private final boolean contentAddressed;
+
 	protected IFileStore localStore;
 
 	/** Limits the range of directories' names. */
@@ -39,6 +67,16 @@ public class BlobStore {
 	 * should be an existing valid directory.
 	 */
 	public BlobStore(IFileStore store, int limit) {
+		this(store, limit, false);
+	}
+
+	/**
+	 * Creates a blob store that names new blobs after a hash of their
+	 * contents if <code>contentAddressed</code> is <code>true</code>.
+	 * @see #BlobStore(IFileStore, int)
+	 */
+	public BlobStore(IFileStore store, int limit, boolean contentAddressed) {
+		this.contentAddressed = contentAddressed;
 		Assert.isNotNull(store);
 		localStore = store;
 		Assert.isTrue(localStore.fetchInfo().isDirectory());
@@ -47,6 +85,8 @@ public class BlobStore {
 	}
 
 	public UniversalUniqueIdentifier addBlob(IFileStore target, boolean moveContents) throws CoreException {
+		if (contentAddressed)
+			return addContentBlob(target, moveContents);
 		UniversalUniqueIdentifier uuid = new UniversalUniqueIdentifier();
 		folderFor(uuid).mkdir(EFS.NONE, null);
 		IFileStore destination = fileFor(uuid);
@@ -57,6 +97,31 @@ public class BlobStore {
 		return uuid;
 	}
 
+	/**
+	 * Adds a blob named after the contents of the given file, unless a blob
+	 * with the same contents already exists.
+	 */
+	private UniversalUniqueIdentifier addContentBlob(IFileStore target, boolean moveContents) throws CoreException {
+		UniversalUniqueIdentifier uuid = contentIdentifier(target);
+		IFileStore destination = fileFor(uuid);
+		if (destination.fetchInfo().exists()) {
+			// the contents are already stored, the file is not needed anymore
+			if (moveContents)
+				target.delete(EFS.NONE, null);
+			return uuid;
+		}
+		IFileStore folder = folderFor(uuid);
+		folder.mkdir(EFS.NONE, null);
+		// a blob only appears under its name once it is complete
+		IFileStore temp = folder.getChild(destination.getName() + TEMP_SUFFIX);
+		if (moveContents)
+			target.move(temp, EFS.OVERWRITE, null);
+		else
+			copy(target, temp);
+		temp.move(destination, EFS.OVERWRITE, null);
+		return uuid;
+	}
+
 	/* (non-Javadoc)
 	 * @see UniversalUniqueIdentifier#appendByteString(StringBuffer, byte)
 	 */
@@ -83,6 +148,64 @@ public class BlobStore {
 		return buffer.toString();
 	}
 
+	/**
+	 * Returns the identifier of a blob with the contents of the given file.
+	 */
+	private UniversalUniqueIdentifier contentIdentifier(IFileStore target) throws CoreException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports it
+			throw new IllegalStateException(e.getMessage());
+		}
+		InputStream input = target.openInputStream(EFS.NONE, null);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				digest.update(buffer, 0, read);
+		} catch (IOException e) {
+			String message = NLS.bind(Messages.localstore_couldNotRead, target.toString());
+			throw new ResourceException(IResourceStatus.FAILED_READ_LOCAL, null, message, e);
+		} finally {
+			FileUtil.safeClose(input);
+		}
+		byte[] bytes = digest.digest();
+		// mark the identifier as name based, like version 5 UUIDs
+		bytes[UniversalUniqueIdentifier.TIME_HIGH_AND_VERSION] = (byte) ((bytes[UniversalUniqueIdentifier.TIME_HIGH_AND_VERSION] & UniversalUniqueIdentifier.LOW_NIBBLE_MASK) | (CONTENT_VERSION << UniversalUniqueIdentifier.SHIFT_NIBBLE));
+		return new UniversalUniqueIdentifier(bytes);
+	}
+
+	/**
+	 * Copies the given file to the given destination. Large local files are
+	 * transferred by the file system, without copying them through the heap.
+	 */
+	private void copy(IFileStore source, IFileStore destination) throws CoreException {
+		File sourceFile = source.toLocalFile(EFS.NONE, null);
+		File destinationFile = destination.toLocalFile(EFS.NONE, null);
+		if (sourceFile == null || destinationFile == null || sourceFile.length() < TRANSFER_THRESHOLD) {
+			source.copy(destination, EFS.OVERWRITE, null);
+			return;
+		}
+		FileChannel input = null;
+		FileChannel output = null;
+		try {
+			input = new FileInputStream(sourceFile).getChannel();
+			output = new FileOutputStream(destinationFile).getChannel();
+			long size = input.size();
+			for (long position = 0; position < size;)
+				position += input.transferTo(position, size - position, output);
+			output.close();
+		} catch (IOException e) {
+			String message = NLS.bind(Messages.localstore_couldNotWrite, destination.toString());
+			throw new ResourceException(IResourceStatus.FAILED_WRITE_LOCAL, null, message, e);
+		} finally {
+			FileUtil.safeClose(input);
+			FileUtil.safeClose(output);
+		}
+	}
+
 	/**
 	 * Deletes a blobFile.
 	 */
@@ -118,6 +241,15 @@ public class BlobStore {
 		return localStore.getChild(dirName);
 	}
 
+	/**
+	 * Returns whether the blob with the given identifier is named after its
+	 * contents, and may therefore be shared by several states.
+	 */
+	public static boolean isContentBlob(UniversalUniqueIdentifier uuid) {
+		int version = (uuid.toBytes()[UniversalUniqueIdentifier.TIME_HIGH_AND_VERSION] & UniversalUniqueIdentifier.HIGH_NIBBLE_MASK) >> UniversalUniqueIdentifier.SHIFT_NIBBLE;
+		return version == CONTENT_VERSION;
+	}
+
 	public InputStream getBlob(UniversalUniqueIdentifier uuid) throws CoreException {
 		IFileStore blobFile = fileFor(uuid);
 		return blobFile.openInputStream(EFS.NONE, null);
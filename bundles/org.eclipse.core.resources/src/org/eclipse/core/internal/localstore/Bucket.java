@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2011 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.core.internal.localstore;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.core.internal.resources.ResourceException;
 import org.eclipse.core.internal.resources.ResourceStatus;
 import org.eclipse.core.internal.utils.FileUtil;
@@ -137,17 +138,65 @@ public abstract class Bucket {
 		public abstract int visit(Entry entry);
 	}
 
+	/**
+	 * The contents of a bucket index that has been loaded, but is not the
+	 * current index of its bucket.
+	 */
+	private static class CachedIndex {
+		final Map<String, Object> entries;
+		final File location;
+		final boolean needSaving;
+		final String projectName;
+
+		CachedIndex(File location, String projectName, Map<String, Object> entries, boolean needSaving) {
+			this.location = location;
+			this.projectName = projectName;
+			this.entries = entries;
+			this.needSaving = needSaving;
+		}
+
+		int getWeight() {
+			return entries.size() + 1;
+		}
+	}
+
 	/**
 	 * The segment name for the root directory for index files.
 	 */
 	static final String INDEXES_DIR_NAME = ".indexes"; //$NON-NLS-1$	
 
+	/**
+	 * The maximum number of entries kept in the cached indexes of all buckets.
+	 * The budget counts entries rather than bytes: an entry is the data of one
+	 * path, such as the few states of a history entry or the properties of a
+	 * resource, so the memory used by a full cache depends on the kind of
+	 * bucket. The budget is shared, but a bucket only drops its own indexes
+	 * when it caches one, so the indexes cached by other buckets may keep the
+	 * total above the budget until those buckets load another index.
+	 */
+	private static final int MAX_CACHED_ENTRIES = 20000;
+
+	/**
+	 * The number of entries in the cached indexes of all buckets. Each index
+	 * also counts as an entry, so that empty indexes are accounted for.
+	 */
+	private static final AtomicInteger cachedEntryCount = new AtomicInteger();
+
+	/**
+	 * Indexes that were loaded before the current one, so that moving back
+	 * and forth between indexes does not read and write them every time.
+	 * Maps the location of each index to its contents, in least recently
+	 * used order. Changes to these indexes are written when they are dropped
+	 * from the cache, or when all indexes are saved.
+	 */
+	private final LinkedHashMap<File, CachedIndex> cachedIndexes = new LinkedHashMap<File, CachedIndex>(16, 0.75f, true);
+
 	/**
 	 * Map of the history entries in this bucket. Maps (String -> byte[][] or String[][]),
 	 * where the key is the path of the object we are storing history for, and
 	 * the value is the history entry data (UUID,timestamp) pairs.
 	 */
-	private final Map<String,Object> entries;
+	private Map<String,Object> entries;
 	/**
 	 * The file system location of this bucket index file.
 	 */
@@ -229,13 +278,41 @@ public abstract class Bucket {
 
 	/**
 	 * Flushes this bucket so it has no contents and is not associated to any 
-	 * location. Any uncommitted changes are lost.
+	 * location. Any uncommitted changes, including those of cached indexes,
+	 * are lost.
 	 */
 	public void flush() {
 		projectName = null;
 		location = null;
 		entries.clear();
 		needSaving = false;
+		for (Iterator<CachedIndex> i = cachedIndexes.values().iterator(); i.hasNext();)
+			cachedEntryCount.addAndGet(-i.next().getWeight());
+		cachedIndexes.clear();
+	}
+
+	/**
+	 * Keeps the given index in the cache, and drops the least recently used
+	 * indexes of this bucket while the cached indexes of all buckets hold too
+	 * many entries. Dropped indexes are saved if they were changed.
+	 */
+	private void cache(CachedIndex index) throws CoreException {
+		cachedIndexes.put(index.location, index);
+		cachedEntryCount.addAndGet(index.getWeight());
+		CoreException failure = null;
+		for (Iterator<CachedIndex> i = cachedIndexes.values().iterator(); i.hasNext() && cachedEntryCount.get() > MAX_CACHED_ENTRIES;) {
+			CachedIndex eldest = i.next();
+			i.remove();
+			cachedEntryCount.addAndGet(-eldest.getWeight());
+			try {
+				if (eldest.needSaving)
+					write(eldest.location, eldest.projectName, eldest.entries);
+			} catch (CoreException e) {
+				failure = e;
+			}
+		}
+		if (failure != null)
+			throw failure;
 	}
 
 	/**
@@ -278,47 +355,97 @@ public abstract class Bucket {
 	 * Loads the contents from a file under the given directory. If <code>force</code> is
 	 * <code>false</code>, if this bucket already contains the contents from the current location, 
 	 * avoids reloading.
+	 * <p>
+	 * The previously loaded index is kept in the cache of this bucket, and
+	 * indexes found in the cache are not read again unless <code>force</code>
+	 * is <code>true</code>.
+	 * </p>
 	 */
 	public void load(String newProjectName, File baseLocation, boolean force) throws CoreException {
-		try {
-			// avoid reloading
-			if (!force && this.location != null && baseLocation.equals(this.location.getParentFile()) && (projectName == null ? (newProjectName == null) : projectName.equals(newProjectName))) {
-				this.projectName = newProjectName;
-				return;
-			}
-			// previously loaded bucket may not have been saved... save before loading new one
-			save();
+		File newLocation = new File(baseLocation, getIndexFileName());
+		// avoid reloading
+		if (!force && this.location != null && newLocation.equals(this.location) && (projectName == null ? (newProjectName == null) : projectName.equals(newProjectName))) {
 			this.projectName = newProjectName;
-			this.location = new File(baseLocation, getIndexFileName());
-			this.entries.clear();
-			if (!this.location.isFile())
-				return;
-			DataInputStream source = new DataInputStream(new BufferedInputStream(new FileInputStream(location), 8192));
+			return;
+		}
+		CachedIndex previous = location == null ? null : new CachedIndex(location, projectName, entries, needSaving);
+		CachedIndex cached = previous != null && newLocation.equals(previous.location) ? previous : cachedIndexes.get(newLocation);
+		Map<String, Object> newEntries;
+		boolean newNeedSaving;
+		if (cached != null && !force && (cached.projectName == null ? newProjectName == null : cached.projectName.equals(newProjectName))) {
+			newEntries = cached.entries;
+			newNeedSaving = cached.needSaving;
+		} else {
+			// the index is read again, so changes to it must be written first
+			if (cached != null && cached.needSaving) {
+				write(cached.location, cached.projectName, cached.entries);
+				if (cached == previous)
+					needSaving = false;
+				else
+					cachedIndexes.put(newLocation, new CachedIndex(cached.location, cached.projectName, cached.entries, false));
+			}
+			// subclasses name the project being read in their errors
+			String oldProjectName = projectName;
+			projectName = newProjectName;
+			try {
+				newEntries = read(newLocation, newProjectName);
+			} catch (CoreException e) {
+				projectName = oldProjectName;
+				throw e;
+			}
+			newNeedSaving = false;
+		}
+		// nothing is changed until the new index is loaded, so that a failure
+		// leaves the current index and the cache as they were
+		if (cached != null && cached != previous) {
+			cachedIndexes.remove(newLocation);
+			cachedEntryCount.addAndGet(-cached.getWeight());
+		}
+		this.projectName = newProjectName;
+		this.location = newLocation;
+		this.entries = newEntries;
+		this.needSaving = newNeedSaving;
+		if (previous != null && previous != cached)
+			cache(previous);
+	}
+
+	/**
+	 * Reads the entries of the given index file, which holds the entries of
+	 * the given project.
+	 */
+	private Map<String, Object> read(File source, String sourceProjectName) throws CoreException {
+		Map<String, Object> result = new HashMap<String, Object>();
+		if (!source.isFile())
+			return result;
+		startFile();
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(source), 8192));
 			try {
-				int version = source.readByte();
+				int version = input.readByte();
 				if (version != getVersion()) {
 					// unknown version
-					String message = NLS.bind(Messages.resources_readMetaWrongVersion, location.getAbsolutePath(), Integer.toString(version));
+					String message = NLS.bind(Messages.resources_readMetaWrongVersion, source.getAbsolutePath(), Integer.toString(version));
 					ResourceStatus status = new ResourceStatus(IResourceStatus.FAILED_READ_METADATA, message);
 					throw new ResourceException(status);
 				}
-				int entryCount = source.readInt();
+				int entryCount = input.readInt();
 				for (int i = 0; i < entryCount; i++)
-					this.entries.put(readEntryKey(source), readEntryValue(source));
+					result.put(readEntryKey(input, sourceProjectName), readEntryValue(input));
 			} finally {
-				source.close();
+				input.close();
 			}
 		} catch (IOException ioe) {
-			String message = NLS.bind(Messages.resources_readMeta, location.getAbsolutePath());
+			String message = NLS.bind(Messages.resources_readMeta, source.getAbsolutePath());
 			ResourceStatus status = new ResourceStatus(IResourceStatus.FAILED_READ_METADATA, null, message, ioe);
 			throw new ResourceException(status);
 		}
+		return result;
 	}
 
-	private String readEntryKey(DataInputStream source) throws IOException {
-		if (projectName == null)
+	private String readEntryKey(DataInputStream source, String keyProjectName) throws IOException {
+		if (keyProjectName == null)
 			return source.readUTF();
-		return IPath.SEPARATOR + projectName + source.readUTF();
+		return IPath.SEPARATOR + keyProjectName + source.readUTF();
 	}
 
 	/**
@@ -332,33 +459,65 @@ public abstract class Bucket {
 	public void save() throws CoreException {
 		if (!needSaving)
 			return;
+		write(location, projectName, entries);
+		needSaving = false;
+	}
+
+	/**
+	 * Saves the contents of this bucket and of all cached indexes that were
+	 * changed since they were last saved.
+	 */
+	public void saveAll() throws CoreException {
+		save();
+		for (Iterator<Map.Entry<File, CachedIndex>> i = cachedIndexes.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<File, CachedIndex> mapEntry = i.next();
+			CachedIndex index = mapEntry.getValue();
+			if (!index.needSaving)
+				continue;
+			write(index.location, index.projectName, index.entries);
+			mapEntry.setValue(new CachedIndex(index.location, index.projectName, index.entries, false));
+		}
+	}
+
+	/**
+	 * Called before the entries of an index file are read or written.
+	 * Subclasses that keep state across the entries of a file reset it here.
+	 */
+	protected void startFile() {
+		// nothing to do by default
+	}
+
+	/**
+	 * Writes the given entries to the given index file, or deletes the file
+	 * if there are no entries.
+	 */
+	private void write(File target, String targetProjectName, Map<String, Object> contents) throws CoreException {
 		try {
-			if (entries.isEmpty()) {
-				needSaving = false;
-				cleanUp(location);
+			if (contents.isEmpty()) {
+				cleanUp(target);
 				return;
 			}
 			// ensure the parent location exists 
-			File parent = location.getParentFile();
+			File parent = target.getParentFile();
 			if (parent == null)
 				throw new IOException();//caught and rethrown below
 			parent.mkdirs();
-			DataOutputStream destination = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(location), 8192));
+			startFile();
+			DataOutputStream destination = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target), 8192));
 			try {
 				destination.write(getVersion());
-				destination.writeInt(entries.size());
-				for (Iterator<Map.Entry<String,Object>> i = entries.entrySet().iterator(); i.hasNext();) {
+				destination.writeInt(contents.size());
+				for (Iterator<Map.Entry<String,Object>> i = contents.entrySet().iterator(); i.hasNext();) {
 					Map.Entry<String,Object> entry = i.next();
-					writeEntryKey(destination, entry.getKey());
+					writeEntryKey(destination, entry.getKey(), targetProjectName);
 					writeEntryValue(destination, entry.getValue());
 				}
 				destination.close();
 			} finally {
 				FileUtil.safeClose(destination);
 			}
-			needSaving = false;
 		} catch (IOException ioe) {
-			String message = NLS.bind(Messages.resources_writeMeta, location.getAbsolutePath());
+			String message = NLS.bind(Messages.resources_writeMeta, target.getAbsolutePath());
 			ResourceStatus status = new ResourceStatus(IResourceStatus.FAILED_WRITE_METADATA, null, message, ioe);
 			throw new ResourceException(status);
 		}
@@ -376,14 +535,14 @@ public abstract class Bucket {
 		needSaving = true;
 	}
 
-	private void writeEntryKey(DataOutputStream destination, String path) throws IOException {
-		if (projectName == null) {
+	private void writeEntryKey(DataOutputStream destination, String path, String keyProjectName) throws IOException {
+		if (keyProjectName == null) {
 			destination.writeUTF(path);
 			return;
 		}
 		// omit the project name
 		int pathLength = path.length();
-		int projectLength = projectName.length();
+		int projectLength = keyProjectName.length();
 		String key = (pathLength == projectLength + 1) ? "" : path.substring(projectLength + 1); //$NON-NLS-1$
 		destination.writeUTF(key);
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2011 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -59,6 +59,8 @@ public class BucketTree {
 	 * @param depth
 	 */
 	public void accept(Bucket.Visitor visitor, IPath base, int depth) throws CoreException {
+		// indexes are found on disk, so cached changes must be written first
+		current.saveAll();
 		if (Path.ROOT.equals(base)) {
 			current.load(null, locationFor(Path.ROOT));
 			if (current.accept(visitor, base, DEPTH_ZERO) != Visitor.CONTINUE)
@@ -77,7 +79,7 @@ public class BucketTree {
 	}
 
 	public void close() throws CoreException {
-		current.save();
+		current.saveAll();
 		saveVersion();
 	}
 
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.localstore;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Lists the children of directories ahead of a unified tree traversal, using
+ * a fixed number of background threads. Directories are fetched in the order
+ * in which they were requested, which for a breadth-first traversal is the
+ * order in which the traversal will need them, and only a bounded number of
+ * listings are fetched ahead so that memory use does not grow with the size
+ * of the tree.
+ * <p>
+ * This class only talks to the file system. All merging with the workspace
+ * tree is left to the traversal thread. Instances are not thread safe and must
+ * only be used from the thread that performs the traversal.
+ * </p>
+ */
+class ChildInfoPrefetcher {
+	/** number of listings fetched ahead for each fetch thread */
+	private static final int LOOK_AHEAD_PER_THREAD = 8;
+
+	private final ExecutorService executor;
+
+	/** maximum number of listings that are fetched or being fetched */
+	private final int lookAhead;
+
+	/** directories that have been requested but not yet submitted, in request order */
+	private final LinkedHashSet<IFileStore> pending = new LinkedHashSet<IFileStore>();
+
+	/** listings that have been submitted but not yet consumed */
+	private final Map<IFileStore, Future<IFileInfo[]>> submitted = new HashMap<IFileStore, Future<IFileInfo[]>>();
+
+	ChildInfoPrefetcher(int threads) {
+		this.lookAhead = threads * LOOK_AHEAD_PER_THREAD;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Unified tree fetcher"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * The children of the given directory are no longer needed.
+	 */
+	void cancel(IFileStore store) {
+		if (pending.remove(store))
+			return;
+		Future<IFileInfo[]> future = submitted.remove(store);
+		if (future != null) {
+			future.cancel(false);
+			fill();
+		}
+	}
+
+	/**
+	 * Submits pending directories until the look ahead limit is reached.
+	 */
+	private void fill() {
+		for (Iterator<IFileStore> it = pending.iterator(); it.hasNext() && submitted.size() < lookAhead;) {
+			final IFileStore store = it.next();
+			it.remove();
+			submitted.put(store, executor.submit(new Callable<IFileInfo[]>() {
+				public IFileInfo[] call() throws CoreException {
+					return store.childInfos(EFS.NONE, null);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Returns the children of the given directory, waiting for a prefetched
+	 * listing if there is one, and listing the directory in the calling
+	 * thread otherwise.
+	 */
+	IFileInfo[] getChildInfos(IFileStore store) throws CoreException {
+		Future<IFileInfo[]> future = submitted.remove(store);
+		if (future == null) {
+			pending.remove(store);
+			return store.childInfos(EFS.NONE, null);
+		}
+		fill();
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException)
+				throw (CoreException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (CancellationException e) {
+			//fall through
+		}
+		return store.childInfos(EFS.NONE, null);
+	}
+
+	/**
+	 * Requests the children of the given directory to be fetched in the background.
+	 */
+	void prefetch(IFileStore store) {
+		if (submitted.containsKey(store))
+			return;
+		pending.add(store);
+		fill();
+	}
+
+	/**
+	 * Discards all outstanding listings and stops the fetch threads.
+	 */
+	void shutdown() {
+		executor.shutdownNow();
+		pending.clear();
+		submitted.clear();
+	}
+}
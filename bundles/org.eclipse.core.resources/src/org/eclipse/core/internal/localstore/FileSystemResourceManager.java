@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,6 +40,16 @@ public class FileSystemResourceManager implements ICoreConstants, IManager, Pref
 
 	private volatile boolean lightweightAutoRefreshEnabled;
 
+	/**
+	 * The number of threads used to list directories during a deep refresh.
+	 */
+	private volatile int refreshFetchThreads;
+
+	/**
+	 * Whether deep refreshes fetch the whole local subtree up front.
+	 */
+	private volatile boolean refreshFetchFileTree;
+
 	public FileSystemResourceManager(Workspace workspace) {
 		this.workspace = workspace;
 	}
@@ -711,6 +721,7 @@ public class FileSystemResourceManager implements ICoreConstants, IManager, Pref
 				break;
 		}
 		IsSynchronizedVisitor visitor = new IsSynchronizedVisitor(Policy.monitorFor(null));
+		//the check ends at the first difference, so the file system is read lazily
 		UnifiedTree tree = new UnifiedTree(target);
 		try {
 			tree.accept(visitor, depth);
@@ -770,6 +781,10 @@ public class FileSystemResourceManager implements ICoreConstants, IManager, Pref
 	public void propertyChange(PropertyChangeEvent event) {
 		if (ResourcesPlugin.PREF_LIGHTWEIGHT_AUTO_REFRESH.equals(event.getProperty()))
 			lightweightAutoRefreshEnabled = Boolean.valueOf(event.getNewValue().toString());
+		else if (PreferenceInitializer.PREF_REFRESH_FETCH_THREADS.equals(event.getProperty()))
+			refreshFetchThreads = ResourcesPlugin.getPlugin().getPluginPreferences().getInt(PreferenceInitializer.PREF_REFRESH_FETCH_THREADS);
+		else if (PreferenceInitializer.PREF_REFRESH_FETCH_FILE_TREE.equals(event.getProperty()))
+			refreshFetchFileTree = ResourcesPlugin.getPlugin().getPluginPreferences().getBoolean(PreferenceInitializer.PREF_REFRESH_FETCH_FILE_TREE);
 	}
 
 	public InputStream read(IFile target, boolean force, IProgressMonitor monitor) throws CoreException {
@@ -834,7 +849,11 @@ public class FileSystemResourceManager implements ICoreConstants, IManager, Pref
 		ResourceException error = null;
 		InputStream in = null;
 		try {
-			in = new BufferedInputStream(descriptionStore.openInputStream(EFS.NONE, monitor));
+			//the description may have been read ahead by a parallel workspace restore
+			if (creation)
+				in = getWorkspace().getSaveManager().takePrefetched(descriptionStore.toLocalFile(EFS.NONE, monitor));
+			if (in == null)
+				in = new BufferedInputStream(descriptionStore.openInputStream(EFS.NONE, monitor));
 			// IFileStore#openInputStream may cancel the monitor, thus the monitor state is checked
 			Policy.checkCanceled(monitor);
 			description = new ProjectDescriptionReader(target).read(new InputSource(in));
@@ -913,10 +932,9 @@ public class FileSystemResourceManager implements ICoreConstants, IManager, Pref
 		try {
 			monitor.beginTask(title, totalWork);
 			RefreshLocalVisitor visitor = updateAliases ? new RefreshLocalAliasVisitor(monitor) : new RefreshLocalVisitor(monitor);
-			IFileStore fileStore = ((Resource) target).getStore();
-			//try to get all info in one shot, if file system supports it
-			IFileTree fileTree = fileStore.getFileSystem().fetchFileTree(fileStore, new SubProgressMonitor(monitor, 0));
+			IFileTree fileTree = fetchFileTree(target, depth, new SubProgressMonitor(monitor, 0));
 			UnifiedTree tree = fileTree == null ? new UnifiedTree(target) : new UnifiedTree(target, fileTree);
+			tree.setFetchThreads(refreshFetchThreads);
 			tree.accept(visitor, depth);
 			IStatus result = visitor.getErrorStatus();
 			if (!result.isOK())
@@ -927,6 +945,29 @@ public class FileSystemResourceManager implements ICoreConstants, IManager, Pref
 		}
 	}
 
+	/**
+	 * Returns the file tree to refresh the given resource with, or
+	 * <code>null</code> if the file system is to be read directory by
+	 * directory. A tree is only fetched if the whole subtree is going to be
+	 * traversed, and if no resource filters of the project could leave parts
+	 * of it out. The local file system walks the subtree up front with
+	 * threads of its own, so it is only asked when that is enabled.
+	 * Otherwise the refresh lists directories ahead of the traversal with
+	 * {@link PreferenceInitializer#PREF_REFRESH_FETCH_THREADS} threads.
+	 */
+	private IFileTree fetchFileTree(IResource target, int depth, IProgressMonitor monitor) throws CoreException {
+		if (depth != IResource.DEPTH_INFINITE)
+			return null;
+		IFileStore fileStore = ((Resource) target).getStore();
+		IFileSystem fileSystem = fileStore.getFileSystem();
+		if (!refreshFetchFileTree && EFS.SCHEME_FILE.equals(fileSystem.getScheme()))
+			return null;
+		ProjectDescription description = ((Project) target.getProject()).internalGetDescription();
+		if (description != null && description.getFilters() != null && !description.getFilters().isEmpty())
+			return null;
+		return fileSystem.fetchFileTree(fileStore, monitor);
+	}
+
 	/**
 	 * Synchronizes the entire workspace with the local file system.
 	 * The current implementation does this by synchronizing each of the
@@ -1031,6 +1072,8 @@ public class FileSystemResourceManager implements ICoreConstants, IManager, Pref
 		Preferences preferences = ResourcesPlugin.getPlugin().getPluginPreferences();
 		preferences.addPropertyChangeListener(this);
 		lightweightAutoRefreshEnabled = preferences.getBoolean(ResourcesPlugin.PREF_LIGHTWEIGHT_AUTO_REFRESH);
+		refreshFetchThreads = preferences.getInt(PreferenceInitializer.PREF_REFRESH_FETCH_THREADS);
+		refreshFetchFileTree = preferences.getBoolean(PreferenceInitializer.PREF_REFRESH_FETCH_FILE_TREE);
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -61,12 +61,31 @@ public class HistoryStore2 implements IHistoryStore {
 		}
 	}
 
+	/**
+	 * System property that makes new states be stored in blobs named after
+	 * their contents, so that identical contents are stored only once.
+	 */
+	private static final String CONTENT_ADDRESSED_HISTORY = ResourcesPlugin.PI_RESOURCES + ".contentAddressedHistory"; //$NON-NLS-1$
+
 	private BlobStore blobStore;
 	private Set<UniversalUniqueIdentifier> blobsToRemove = new HashSet<UniversalUniqueIdentifier>();
+	/**
+	 * Blobs of removed states that are named after their contents. Other states
+	 * may still refer to them, so they are only deleted by removeGarbage().
+	 */
+	private Set<UniversalUniqueIdentifier> sharedBlobsToRemove = new HashSet<UniversalUniqueIdentifier>();
 	final BucketTree tree;
 	private Workspace workspace;
 
 	public HistoryStore2(Workspace workspace, IFileStore store, int limit) {
+		this(workspace, store, limit, Boolean.getBoolean(CONTENT_ADDRESSED_HISTORY));
+	}
+
+	/**
+	 * Creates a history store that names the blobs of new states after their
+	 * contents if <code>contentAddressed</code> is <code>true</code>.
+	 */
+	public HistoryStore2(Workspace workspace, IFileStore store, int limit, boolean contentAddressed) {
 		this.workspace = workspace;
 		try {
 			store.mkdir(EFS.NONE, null);
@@ -74,7 +93,7 @@ public class HistoryStore2 implements IHistoryStore {
 			//ignore the failure here because there is no way to surface it.
 			//any attempt to write to the store will throw an appropriate exception
 		}
-		this.blobStore = new BlobStore(store, limit);
+		this.blobStore = new BlobStore(store, limit, contentAddressed);
 		this.tree = new BucketTree(workspace, new HistoryBucket());
 	}
 
@@ -115,6 +134,17 @@ public class HistoryStore2 implements IHistoryStore {
 		return allFiles;
 	}
 
+	/**
+	 * Remembers that the given blob is no longer used by a state, so that it
+	 * is deleted later.
+	 */
+	void discardBlob(UniversalUniqueIdentifier uuid) {
+		if (BlobStore.isContentBlob(uuid))
+			sharedBlobsToRemove.add(uuid);
+		else
+			blobsToRemove.add(uuid);
+	}
+
 	/**
 	 * Applies the clean-up policy to an entry.
 	 */
@@ -123,7 +153,7 @@ public class HistoryStore2 implements IHistoryStore {
 			if (i < maxStates && fileEntry.getTimestamp(i) >= minTimeStamp)
 				continue;
 			// "delete" the current uuid						
-			blobsToRemove.add(fileEntry.getUUID(i));
+			discardBlob(fileEntry.getUUID(i));
 			fileEntry.deleteOccurrence(i);
 		}
 	}
@@ -194,6 +224,9 @@ public class HistoryStore2 implements IHistoryStore {
 			if (Policy.DEBUG_HISTORY)
 				Policy.debug("Time to remove " + blobsToRemove.size() + " unreferenced blobs: " + (System.currentTimeMillis() - start) + "ms."); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$			
 			blobsToRemove = new HashSet<UniversalUniqueIdentifier>();
+			// shared blobs are only deleted once no state refers to them
+			if (limit <= 0 && !sharedBlobsToRemove.isEmpty())
+				removeGarbage();
 		}
 	}
 
@@ -202,7 +235,7 @@ public class HistoryStore2 implements IHistoryStore {
 	 */
 	public void closeHistoryStore(IResource resource) {
 		try {
-			tree.getCurrent().save();
+			tree.getCurrent().saveAll();
 			tree.getCurrent().flush();
 		} catch (CoreException e) {
 			log(e);
@@ -240,7 +273,7 @@ public class HistoryStore2 implements IHistoryStore {
 			if (moving && sourceResource.getType() == IResource.PROJECT) {
 				// flush the tree to avoid confusion if another project is created with the same name
 				final Bucket bucket = tree.getCurrent();
-				bucket.save();
+				bucket.saveAll();
 				bucket.flush();
 				return;
 			}
@@ -322,12 +355,11 @@ public class HistoryStore2 implements IHistoryStore {
 
 	public synchronized void remove(IPath root, IProgressMonitor monitor) {
 		try {
-			final Set<UniversalUniqueIdentifier> tmpBlobsToRemove = blobsToRemove;
 			tree.accept(new Bucket.Visitor() {
 				public int visit(Entry fileEntry) {
 					for (int i = 0; i < fileEntry.getOccurrences(); i++)
 						// remember we need to delete the files later
-						tmpBlobsToRemove.add(((HistoryEntry) fileEntry).getUUID(i));
+						discardBlob(((HistoryEntry) fileEntry).getUUID(i));
 					fileEntry.delete();
 					return CONTINUE;
 				}
@@ -342,6 +374,8 @@ public class HistoryStore2 implements IHistoryStore {
 	 */
 	public synchronized void removeGarbage() {
 		try {
+			blobsToRemove.addAll(sharedBlobsToRemove);
+			sharedBlobsToRemove = new HashSet<UniversalUniqueIdentifier>();
 			final Set<UniversalUniqueIdentifier> tmpBlobsToRemove = blobsToRemove;
 			tree.accept(new Bucket.Visitor() {
 				public int visit(Entry fileEntry) {
@@ -360,6 +394,15 @@ public class HistoryStore2 implements IHistoryStore {
 		}
 	}
 
+	/**
+	 * Writes the history indexes that were changed since they were last
+	 * saved. Changes to the history are otherwise only written when their
+	 * index is dropped from the bucket cache, or when the store is closed.
+	 */
+	public synchronized void save() throws CoreException {
+		tree.getCurrent().saveAll();
+	}
+
 	public synchronized void shutdown(IProgressMonitor monitor) throws CoreException {
 		tree.close();
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -36,6 +36,15 @@ public class SafeChunkyInputStream extends InputStream {
 		buffer = new byte[bufferSize];
 	}
 
+	/**
+	 * Reads chunks from the given stream, which holds the contents of a file
+	 * written by a {@link SafeChunkyOutputStream}.
+	 */
+	public SafeChunkyInputStream(InputStream input) {
+		this.input = input;
+		buffer = new byte[BUFFER_SIZE];
+	}
+
 	protected void accumulate(byte[] data, int start, int end) {
 		byte[] result = new byte[chunk.length + end - start];
 		System.arraycopy(chunk, 0, result, 0, chunk.length);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -54,10 +54,16 @@ public class UnifiedTree {
 	/** an IFileTree which can be used to build a unified tree*/
 	protected IFileTree fileTree = null;
 
+	/** number of threads used to fetch children of directories ahead of the traversal */
+	protected int fetchThreads = 0;
+
 	/** Spare node objects available for reuse */
 	protected ArrayList<UnifiedTreeNode> freeNodes = new ArrayList<UnifiedTreeNode>();
 	/** tree's actual level */
 	protected int level;
+	/** fetches children of queued directories in the background, may be null */
+	protected ChildInfoPrefetcher prefetcher;
+
 	/** our queue */
 	protected Queue<UnifiedTreeNode> queue;
 
@@ -96,29 +102,41 @@ public class UnifiedTree {
 	 */
 	public void accept(IUnifiedTreeVisitor visitor, int depth) throws CoreException {
 		Assert.isNotNull(root);
-		initializeQueue();
-		setLevel(0, depth);
-		while (!queue.isEmpty()) {
-			UnifiedTreeNode node = queue.remove();
-			if (isChildrenMarker(node))
-				continue;
-			if (isLevelMarker(node)) {
-				if (!setLevel(getLevel() + 1, depth))
-					break;
-				continue;
+		//only fetch ahead for deep traversals, shallow ones would mostly waste the fetches
+		if (fetchThreads > 0 && fileTree == null && depth == IResource.DEPTH_INFINITE)
+			prefetcher = new ChildInfoPrefetcher(fetchThreads);
+		try {
+			initializeQueue();
+			setLevel(0, depth);
+			while (!queue.isEmpty()) {
+				UnifiedTreeNode node = queue.remove();
+				if (isChildrenMarker(node))
+					continue;
+				if (isLevelMarker(node)) {
+					if (!setLevel(getLevel() + 1, depth))
+						break;
+					continue;
+				}
+				if (visitor.visit(node))
+					addNodeChildrenToQueue(node);
+				else {
+					cancelPrefetch(node);
+					removeNodeChildrenFromQueue(node);
+				}
+				//allow reuse of the node, but don't let the freeNodes list grow infinitely
+				if (freeNodes.size() < 32767) {
+					//free memory-consuming elements of the node for garbage collection
+					node.releaseForGc();
+					freeNodes.add(node);
+				}
+				//else, the whole node will be garbage collected since there is no
+				//reference to it any more.
 			}
-			if (visitor.visit(node))
-				addNodeChildrenToQueue(node);
-			else
-				removeNodeChildrenFromQueue(node);
-			//allow reuse of the node, but don't let the freeNodes list grow infinitely
-			if (freeNodes.size() < 32767) {
-				//free memory-consuming elements of the node for garbage collection
-				node.releaseForGc();
-				freeNodes.add(node);
+		} finally {
+			if (prefetcher != null) {
+				prefetcher.shutdown();
+				prefetcher = null;
 			}
-			//else, the whole node will be garbage collected since there is no
-			//reference to it any more.
 		}
 	}
 
@@ -235,6 +253,7 @@ public class UnifiedTree {
 
 	protected void addElementToQueue(UnifiedTreeNode target) {
 		queue.add(target);
+		prefetch(target);
 	}
 
 	protected void addNodeChildrenToQueue(UnifiedTreeNode node) {
@@ -266,6 +285,15 @@ public class UnifiedTree {
 			addElementToQueue(node);
 	}
 
+	/**
+	 * The children of the given node will not be added to the tree, so there
+	 * is no point in fetching them any more.
+	 */
+	private void cancelPrefetch(UnifiedTreeNode node) {
+		if (prefetcher != null && node.existsInFileSystem() && node.isFolder())
+			prefetcher.cancel(node.getStore());
+	}
+
 	/**
 	 * Creates a tree node for a resource that is linked in a different file system location.
 	 */
@@ -343,6 +371,8 @@ public class UnifiedTree {
 			IFileInfo[] list;
 			if (fileTree != null && (fileTree.getTreeRoot().equals(store) || fileTree.getTreeRoot().isParentOf(store) ))
 				list = fileTree.getChildInfos(store);
+			else if (prefetcher != null)
+				list = prefetcher.getChildInfos(store);
 			else
 				list = store.childInfos(EFS.NONE, null);
 			
@@ -502,6 +532,16 @@ public class UnifiedTree {
 		return false;
 	}
 
+	/**
+	 * Starts fetching the children of the given node in the background if it is
+	 * a directory in the file system. Nodes are queued in the order in which
+	 * their children will be needed.
+	 */
+	private void prefetch(UnifiedTreeNode node) {
+		if (prefetcher != null && node.existsInFileSystem() && node.isFolder())
+			prefetcher.prefetch(node.getStore());
+	}
+
 	protected boolean isValidLevel(int currentLevel, int depth) {
 		switch (depth) {
 			case IResource.DEPTH_INFINITE :
@@ -553,12 +593,27 @@ public class UnifiedTree {
 		if (first == null)
 			return;
 		while (true) {
-			if (first.equals(queue.removeTail()))
+			UnifiedTreeNode removed = queue.removeTail();
+			if (!isChildrenMarker(removed) && !isLevelMarker(removed))
+				cancelPrefetch(removed);
+			if (first.equals(removed))
 				break;
 		}
 		node.setFirstChild(null);
 	}
 
+	/**
+	 * Sets the number of threads used to list the children of directories
+	 * ahead of a traversal of infinite depth. Listing directories in parallel
+	 * helps on file systems with high latency, such as network file systems.
+	 * Nodes are still merged with the workspace and passed to the visitor
+	 * one at a time and in the same order as with a sequential traversal.
+	 * A value of zero, the default, disables fetching ahead.
+	 */
+	public void setFetchThreads(int threads) {
+		this.fetchThreads = threads;
+	}
+
 	/**
 	 * Increases the current tree level by one. Returns true if the new
 	 * level is still valid for the given depth
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -253,11 +253,6 @@ public class PropertyBucket extends Bucket {
 		return "properties.version"; //$NON-NLS-1$
 	}
 
-	public void load(String newProjectName, File baseLocation, boolean force) throws CoreException {
-		qualifierIndex.clear();
-		super.load(newProjectName, baseLocation, force);
-	}
-
 	protected Object readEntryValue(DataInputStream source) throws IOException, CoreException {
 		int length = source.readUnsignedShort();
 		String[][] properties = new String[length][3];
@@ -286,9 +281,11 @@ public class PropertyBucket extends Bucket {
 		return properties;
 	}
 
-	public void save() throws CoreException {
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.internal.localstore.Bucket#startFile()
+	 */
+	protected void startFile() {
 		qualifierIndex.clear();
-		super.save();
 	}
 
 	public void setProperties(PropertyEntry entry) {
@@ -0,0 +1,457 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.properties;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import org.eclipse.core.internal.resources.ResourceException;
+import org.eclipse.core.internal.utils.Messages;
+import org.eclipse.core.resources.IResourceStatus;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * The persistent properties of the resources of one project, or of the
+ * workspace root, stored in a single append-only file.
+ * <p>
+ * Every change to a property appends a record to the log. When the log is
+ * opened, it is memory-mapped and scanned once to build an index from the
+ * project relative path of each resource to the position of its property
+ * values, so values are only decoded when they are asked for. Records that
+ * were overwritten or removed are dropped when the log is compacted.
+ * </p><p>
+ * A log that ends with an incomplete record, because a write was
+ * interrupted, is truncated after its last complete record when it is opened.
+ * </p>
+ * <pre>
+ * LOG ::= MAGIC VERSION RECORD*
+ * RECORD ::= LENGTH KIND PATH QUALIFIER LOCAL_NAME VALUE?
+ * LENGTH ::= int (the length of the whole record)
+ * KIND ::= PUT | REMOVE
+ * PATH, QUALIFIER, LOCAL_NAME, VALUE ::= int (byte count) UTF-8 bytes
+ * </pre>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ */
+class PropertyLog {
+	/**
+	 * The position of a property value in the log.
+	 */
+	private static class Record {
+		/** the length of the whole record */
+		final int length;
+		/** the position of the record */
+		final int start;
+		/** the position of the value */
+		final int value;
+
+		Record(int start, int length, int value) {
+			this.start = start;
+			this.length = length;
+			this.value = value;
+		}
+	}
+
+	private static final int HEADER_LENGTH = 5;
+	private static final byte KIND_PUT = 1;
+	private static final byte KIND_REMOVE = 2;
+	private static final int MAGIC = 0x50524F50;
+	/** the amount of garbage below which the log is never compacted */
+	private static final int MIN_COMPACT_GARBAGE = 64 * 1024;
+	/** the number of unmapped bytes at the end of the log above which the log is mapped again */
+	private static final int REMAP_THRESHOLD = 256 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+	private static final byte VERSION = 1;
+
+	/** the log, from its start to at least its last mapped position */
+	private ByteBuffer buffer;
+	private FileChannel channel;
+	/** the position at which the next record is appended */
+	private int end;
+	private final File file;
+	/** maps project relative paths to the values of their properties, sorted so that subtrees are contiguous */
+	private TreeMap<String, Map<QualifiedName, Record>> index = new TreeMap<String, Map<QualifiedName, Record>>();
+	/** the number of bytes of the records that are still in use */
+	private long live;
+
+	PropertyLog(File file) {
+		this.file = file;
+	}
+
+	private static byte[] encode(String string) {
+		ByteBuffer encoded = UTF8.encode(string);
+		byte[] result = new byte[encoded.remaining()];
+		encoded.get(result);
+		return result;
+	}
+
+	private static String readString(ByteBuffer source) {
+		int length = source.getInt();
+		if (length < 0 || length > source.remaining())
+			throw new BufferUnderflowException();
+		ByteBuffer bytes = source.slice();
+		bytes.limit(length);
+		source.position(source.position() + length);
+		return UTF8.decode(bytes).toString();
+	}
+
+	/**
+	 * Appends a record to the log and returns where it was written.
+	 */
+	private Record append(byte kind, String path, QualifiedName name, String value) throws IOException {
+		byte[][] strings = {encode(path), encode(name.getQualifier()), encode(name.getLocalName()), value == null ? null : encode(value)};
+		int length = 4 + 1;
+		for (int i = 0; i < strings.length; i++)
+			if (strings[i] != null)
+				length += 4 + strings[i].length;
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.putInt(length);
+		record.put(kind);
+		for (int i = 0; i < strings.length; i++) {
+			if (strings[i] != null) {
+				record.putInt(strings[i].length);
+				record.put(strings[i]);
+			}
+		}
+		record.flip();
+		int start = end;
+		write(channel, record, start);
+		end += length;
+		return new Record(start, length, value == null ? -1 : start + length - 4 - strings[3].length);
+	}
+
+	/**
+	 * Closes the log. Properties can no longer be read or written.
+	 */
+	void close() throws CoreException {
+		buffer = null;
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw failure(IResourceStatus.FAILED_WRITE_METADATA, Messages.resources_writeMeta, e);
+		} finally {
+			channel = null;
+		}
+	}
+
+	/**
+	 * Writes the records that are still in use to a new log, which then
+	 * replaces this log.
+	 */
+	void compact() throws CoreException {
+		File compacted = new File(file.getPath() + ".new"); //$NON-NLS-1$
+		TreeMap<String, Map<QualifiedName, Record>> newIndex = new TreeMap<String, Map<QualifiedName, Record>>();
+		int newEnd = HEADER_LENGTH;
+		try {
+			FileChannel target = new RandomAccessFile(compacted, "rw").getChannel(); //$NON-NLS-1$
+			try {
+				target.truncate(0);
+				write(target, header(), 0);
+				for (Iterator<Map.Entry<String, Map<QualifiedName, Record>>> i = index.entrySet().iterator(); i.hasNext();) {
+					Map.Entry<String, Map<QualifiedName, Record>> entry = i.next();
+					Map<QualifiedName, Record> newProperties = new HashMap<QualifiedName, Record>();
+					for (Iterator<Map.Entry<QualifiedName, Record>> j = entry.getValue().entrySet().iterator(); j.hasNext();) {
+						Map.Entry<QualifiedName, Record> property = j.next();
+						Record record = property.getValue();
+						write(target, read(record.start, record.length), newEnd);
+						newProperties.put(property.getKey(), new Record(newEnd, record.length, newEnd + record.value - record.start));
+						newEnd += record.length;
+					}
+					newIndex.put(entry.getKey(), newProperties);
+				}
+				target.force(false);
+			} finally {
+				target.close();
+			}
+		} catch (IOException e) {
+			compacted.delete();
+			throw failure(IResourceStatus.FAILED_WRITE_METADATA, Messages.resources_writeMeta, e);
+		}
+		close();
+		// the old log may not be replaced while it exists on some platforms
+		boolean replaced = compacted.renameTo(file) || (file.delete() && compacted.renameTo(file));
+		if (!replaced && !file.isFile()) {
+			// only the compacted log is left, which replaces the old one when the log is opened
+			open();
+			return;
+		}
+		if (replaced) {
+			index = newIndex;
+			end = newEnd;
+		} else {
+			// the old log could not be deleted, possibly because it is still mapped, keep using it
+			compacted.delete();
+		}
+		try {
+			channel = new RandomAccessFile(file, "rw").getChannel(); //$NON-NLS-1$
+		} catch (IOException e) {
+			throw failure(IResourceStatus.FAILED_READ_METADATA, Messages.resources_readMeta, e);
+		}
+	}
+
+	/**
+	 * Closes the log and deletes its file.
+	 */
+	void delete() throws CoreException {
+		close();
+		file.delete();
+	}
+
+	private CoreException failure(int code, String message, Throwable cause) {
+		return new ResourceException(code, null, NLS.bind(message, file.getAbsolutePath()), cause);
+	}
+
+	/**
+	 * Returns all properties of the resource with the given project relative
+	 * path, or an empty map.
+	 */
+	Map<QualifiedName, String> get(String path) throws CoreException {
+		Map<QualifiedName, Record> properties = index.get(path);
+		Map<QualifiedName, String> result = new HashMap<QualifiedName, String>();
+		if (properties == null)
+			return result;
+		for (Iterator<Map.Entry<QualifiedName, Record>> i = properties.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<QualifiedName, Record> property = i.next();
+			result.put(property.getKey(), readValue(property.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value of the given property of the resource with the given
+	 * project relative path, or <code>null</code>.
+	 */
+	String get(String path, QualifiedName name) throws CoreException {
+		Map<QualifiedName, Record> properties = index.get(path);
+		if (properties == null)
+			return null;
+		Record record = properties.get(name);
+		return record == null ? null : readValue(record);
+	}
+
+	/**
+	 * Returns the project relative paths of the resources in the subtree of
+	 * the given project relative path that have properties.
+	 */
+	List<String> getPaths(String base) {
+		if (base.length() == 0)
+			return new ArrayList<String>(index.keySet());
+		List<String> result = new ArrayList<String>();
+		if (index.containsKey(base))
+			result.add(base);
+		// '0' is the character that follows the separator
+		result.addAll(index.subMap(base + '/', base + '0').keySet());
+		return result;
+	}
+
+	private ByteBuffer header() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(MAGIC);
+		header.put(VERSION);
+		header.flip();
+		return header;
+	}
+
+	private void map() throws IOException {
+		buffer = null;
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+	}
+
+	/**
+	 * Returns whether enough of the log is garbage for a compaction to be worthwhile.
+	 */
+	boolean needsCompaction() {
+		long garbage = end - HEADER_LENGTH - live;
+		return garbage > MIN_COMPACT_GARBAGE && garbage > live;
+	}
+
+	/**
+	 * Opens the log, creating it if it does not exist, and builds the index
+	 * of the properties it contains.
+	 */
+	void open() throws CoreException {
+		File compacted = new File(file.getPath() + ".new"); //$NON-NLS-1$
+		// the log was deleted while being replaced by its compacted version
+		if (!file.exists() && compacted.isFile() && !compacted.renameTo(file))
+			throw failure(IResourceStatus.FAILED_READ_METADATA, Messages.resources_readMeta, null);
+		index.clear();
+		live = 0;
+		boolean opened = false;
+		try {
+			file.getParentFile().mkdirs();
+			channel = new RandomAccessFile(file, "rw").getChannel(); //$NON-NLS-1$
+			if (channel.size() < HEADER_LENGTH) {
+				channel.truncate(0);
+				write(channel, header(), 0);
+				end = HEADER_LENGTH;
+			} else {
+				if (channel.size() > Integer.MAX_VALUE)
+					throw new IOException();
+				end = (int) channel.size();
+				map();
+				if (buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION) {
+					String message = NLS.bind(Messages.resources_readMetaWrongVersion, file.getAbsolutePath(), Integer.toString(buffer.get(4)));
+					throw new ResourceException(IResourceStatus.FAILED_READ_METADATA, null, message, null);
+				}
+				scan();
+			}
+			opened = true;
+		} catch (IOException e) {
+			throw failure(IResourceStatus.FAILED_READ_METADATA, Messages.resources_readMeta, e);
+		} finally {
+			if (!opened && channel != null) {
+				buffer = null;
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// ignore, the failure to open is reported
+				}
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns a buffer with the given bytes of the log.
+	 */
+	private ByteBuffer read(int position, int length) throws IOException {
+		if (buffer == null || position + length > buffer.limit()) {
+			if (buffer == null || end - buffer.limit() > REMAP_THRESHOLD) {
+				map();
+			} else {
+				// recently appended records are read without mapping the log again
+				ByteBuffer result = ByteBuffer.allocate(length);
+				while (result.hasRemaining())
+					if (channel.read(result, position + result.position()) < 0)
+						throw new EOFException();
+				result.flip();
+				return result;
+			}
+		}
+		ByteBuffer result = buffer.duplicate();
+		result.position(position);
+		result.limit(position + length);
+		return result.slice();
+	}
+
+	private String readValue(Record record) throws CoreException {
+		try {
+			return readString(read(record.value, record.start + record.length - record.value));
+		} catch (IOException e) {
+			throw failure(IResourceStatus.FAILED_READ_METADATA, Messages.resources_readMeta, e);
+		}
+	}
+
+	/**
+	 * Removes all properties of the resource with the given project relative path.
+	 */
+	void remove(String path) throws CoreException {
+		Map<QualifiedName, Record> properties = index.get(path);
+		if (properties == null)
+			return;
+		QualifiedName[] names = properties.keySet().toArray(new QualifiedName[properties.size()]);
+		for (int i = 0; i < names.length; i++)
+			set(path, names[i], null);
+	}
+
+	/**
+	 * Builds the index from the records of the log, and drops a trailing
+	 * incomplete record.
+	 */
+	private void scan() throws IOException {
+		int position = HEADER_LENGTH;
+		while (position + 4 < end) {
+			int length = buffer.getInt(position);
+			if (length <= 4 || length > end - position)
+				break;
+			ByteBuffer record = buffer.duplicate();
+			record.position(position + 4);
+			record.limit(position + length);
+			try {
+				byte kind = record.get();
+				String path = readString(record);
+				QualifiedName name = new QualifiedName(readString(record), readString(record));
+				if (kind == KIND_PUT) {
+					int value = record.position();
+					readString(record);
+					update(path, name, new Record(position, length, value));
+				} else if (kind == KIND_REMOVE) {
+					update(path, name, null);
+				} else
+					break;
+				if (record.hasRemaining())
+					break;
+			} catch (BufferUnderflowException e) {
+				break;
+			}
+			position += length;
+		}
+		if (position < end) {
+			// a write was interrupted
+			buffer = null;
+			channel.truncate(position);
+			end = position;
+		}
+	}
+
+	/**
+	 * Sets the value of the given property of the resource with the given
+	 * project relative path, or removes the property if the value is <code>null</code>.
+	 */
+	void set(String path, QualifiedName name, String value) throws CoreException {
+		try {
+			if (value == null) {
+				if (get(path, name) == null)
+					return;
+				append(KIND_REMOVE, path, name, null);
+				update(path, name, null);
+				return;
+			}
+			update(path, name, append(KIND_PUT, path, name, value));
+		} catch (IOException e) {
+			throw failure(IResourceStatus.FAILED_WRITE_METADATA, Messages.resources_writeMeta, e);
+		}
+	}
+
+	/**
+	 * Records the new position of the given property in the index, or its
+	 * removal if the record is <code>null</code>.
+	 */
+	private void update(String path, QualifiedName name, Record record) {
+		Map<QualifiedName, Record> properties = index.get(path);
+		if (properties == null) {
+			if (record == null)
+				return;
+			properties = new HashMap<QualifiedName, Record>();
+			index.put(path, properties);
+		}
+		Record old = record == null ? properties.remove(name) : properties.put(name, record);
+		if (old != null)
+			live -= old.length;
+		if (record != null)
+			live += record.length;
+		else if (properties.isEmpty())
+			index.remove(path);
+	}
+
+	private void write(FileChannel target, ByteBuffer source, long position) throws IOException {
+		while (source.hasRemaining())
+			position += target.write(source, position);
+	}
+}
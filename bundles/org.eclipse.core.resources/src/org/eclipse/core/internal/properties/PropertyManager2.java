@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -75,7 +75,7 @@ public class PropertyManager2 implements IPropertyManager {
 
 	public void closePropertyStore(IResource target) throws CoreException {
 		// ensure any uncommitted are written to disk
-		tree.getCurrent().save();
+		tree.getCurrent().saveAll();
 		// flush in-memory state to avoid confusion if another project is later
 		// created with the same name
 		tree.getCurrent().flush();
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.properties;
+
+import java.io.File;
+import java.util.*;
+import org.eclipse.core.internal.localstore.Bucket;
+import org.eclipse.core.internal.localstore.BucketTree;
+import org.eclipse.core.internal.localstore.Bucket.Entry;
+import org.eclipse.core.internal.properties.PropertyBucket.PropertyEntry;
+import org.eclipse.core.internal.resources.*;
+import org.eclipse.core.internal.utils.Messages;
+import org.eclipse.core.internal.utils.Policy;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceStatus;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * A property manager that keeps the persistent properties of each project,
+ * and of the workspace root, in a single log file in its meta area, instead
+ * of in a tree of bucket index files.
+ * <p>
+ * Logs are opened when their properties are first needed. A log that does
+ * not exist yet is filled with the properties found in the bucket index files
+ * of {@link PropertyManager2}. Logs that hold more garbage than properties are
+ * compacted in the background.
+ * </p>
+ * @see org.eclipse.core.internal.properties.IPropertyManager
+ */
+public class PropertyManager3 implements IPropertyManager {
+
+	private static final String LOG_FILE_NAME = "properties.log"; //$NON-NLS-1$
+
+	private static final int MAX_VALUE_SIZE = 2 * 1024;
+
+	/**
+	 * Compacts the logs that need it.
+	 */
+	private class CompactionJob extends Job {
+		CompactionJob() {
+			super(Messages.properties_compacting);
+			setSystem(true);
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			synchronized (PropertyManager3.this) {
+				for (Iterator<PropertyLog> i = logs.values().iterator(); i.hasNext();) {
+					PropertyLog log = i.next();
+					if (!log.needsCompaction())
+						continue;
+					try {
+						log.compact();
+					} catch (CoreException e) {
+						// the log is opened again when it is next needed
+						i.remove();
+						try {
+							log.close();
+						} catch (CoreException e1) {
+							// ignore, the compaction failure is reported
+						}
+						Policy.log(e.getStatus());
+					}
+				}
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	private final Job compactionJob = new CompactionJob();
+
+	/**
+	 * The open logs, keyed by the path of their project or by the root path.
+	 */
+	private final Map<IPath, PropertyLog> logs = new HashMap<IPath, PropertyLog>();
+
+	private final Workspace workspace;
+
+	public PropertyManager3(Workspace workspace) {
+		this.workspace = workspace;
+	}
+
+	/**
+	 * Schedules the compaction of the given log if it holds too much garbage.
+	 */
+	private void changed(PropertyLog log) {
+		if (log.needsCompaction())
+			compactionJob.schedule();
+	}
+
+	public synchronized void closePropertyStore(IResource target) throws CoreException {
+		PropertyLog log = logs.remove(getLogKey(target.getFullPath()));
+		if (log != null)
+			log.close();
+	}
+
+	public synchronized void copy(IResource source, IResource destination, int depth) throws CoreException {
+		IPath sourcePath = source.getFullPath();
+		IPath destinationPath = destination.getFullPath();
+		Assert.isLegal(sourcePath.segmentCount() > 0);
+		Assert.isLegal(destinationPath.segmentCount() > 0);
+		Assert.isLegal(sourcePath.segmentCount() > 1 || destinationPath.segmentCount() == 1);
+		// like the bucket based store, the whole subtree is copied
+		PropertyLog sourceLog = getLog(sourcePath);
+		IPath sourceBase = sourcePath.removeFirstSegments(1);
+		IPath destinationBase = destinationPath.removeFirstSegments(1);
+		// collect all properties first, since the source and destination logs may be the same
+		Map<String, Map<QualifiedName, String>> changes = new HashMap<String, Map<QualifiedName, String>>();
+		for (Iterator<String> i = sourceLog.getPaths(sourceBase.toString()).iterator(); i.hasNext();) {
+			String path = i.next();
+			IPath relativePath = new Path(path);
+			changes.put(destinationBase.append(relativePath.removeFirstSegments(sourceBase.segmentCount())).toString(), sourceLog.get(path));
+		}
+		PropertyLog destinationLog = getLog(destinationPath);
+		for (Iterator<Map.Entry<String, Map<QualifiedName, String>>> i = changes.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<String, Map<QualifiedName, String>> change = i.next();
+			for (Iterator<Map.Entry<QualifiedName, String>> j = change.getValue().entrySet().iterator(); j.hasNext();) {
+				Map.Entry<QualifiedName, String> property = j.next();
+				destinationLog.set(change.getKey(), property.getKey(), property.getValue());
+			}
+		}
+		changed(destinationLog);
+	}
+
+	public synchronized void deleteProperties(IResource target, int depth) throws CoreException {
+		IPath targetPath = target.getFullPath();
+		PropertyLog log = getLog(targetPath);
+		IPath base = targetPath.removeFirstSegments(1);
+		if (depth == IResource.DEPTH_ZERO) {
+			log.remove(base.toString());
+		} else {
+			for (Iterator<String> i = log.getPaths(base.toString()).iterator(); i.hasNext();) {
+				String path = i.next();
+				if (depth == IResource.DEPTH_INFINITE || new Path(path).segmentCount() - base.segmentCount() <= depth)
+					log.remove(path);
+			}
+		}
+		changed(log);
+	}
+
+	public synchronized void deleteResource(IResource target) throws CoreException {
+		deleteProperties(target, IResource.DEPTH_INFINITE);
+		// the log of a project goes away with its meta area
+		if (target.getType() == IResource.PROJECT)
+			closePropertyStore(target);
+	}
+
+	/**
+	 * Returns the open log that holds the properties of the resource with the
+	 * given path, opening it if needed.
+	 */
+	private PropertyLog getLog(IPath resourcePath) throws CoreException {
+		IPath key = getLogKey(resourcePath);
+		PropertyLog log = logs.get(key);
+		if (log != null)
+			return log;
+		File file = workspace.getMetaArea().locationFor(key).append(LOG_FILE_NAME).toFile();
+		boolean exists = file.exists();
+		log = new PropertyLog(file);
+		log.open();
+		if (!exists) {
+			try {
+				migrate(key, log);
+			} catch (CoreException e) {
+				// migrate again the next time the log is needed
+				log.delete();
+				throw e;
+			}
+		}
+		logs.put(key, log);
+		return log;
+	}
+
+	private IPath getLogKey(IPath resourcePath) {
+		return resourcePath.segmentCount() == 0 ? Path.ROOT : resourcePath.uptoSegment(1);
+	}
+
+	public synchronized Map<QualifiedName, String> getProperties(IResource target) throws CoreException {
+		IPath targetPath = target.getFullPath();
+		return getLog(targetPath).get(targetPath.removeFirstSegments(1).toString());
+	}
+
+	public synchronized String getProperty(IResource target, QualifiedName name) throws CoreException {
+		if (name.getQualifier() == null) {
+			String message = Messages.properties_qualifierIsNull;
+			throw new ResourceException(IResourceStatus.FAILED_READ_METADATA, target.getFullPath(), message, null);
+		}
+		IPath targetPath = target.getFullPath();
+		return getLog(targetPath).get(targetPath.removeFirstSegments(1).toString(), name);
+	}
+
+	/**
+	 * Copies the properties kept in the bucket index files of the given
+	 * project, or of the root, into its new log.
+	 */
+	private void migrate(IPath key, final PropertyLog log) throws CoreException {
+		BucketTree tree = new BucketTree(workspace, new PropertyBucket());
+		final CoreException[] failure = new CoreException[1];
+		tree.accept(new Bucket.Visitor() {
+			public int visit(Entry entry) {
+				PropertyEntry propertyEntry = (PropertyEntry) entry;
+				String path = propertyEntry.getPath().removeFirstSegments(1).toString();
+				int propertyCount = propertyEntry.getOccurrences();
+				try {
+					for (int i = 0; i < propertyCount; i++)
+						log.set(path, propertyEntry.getPropertyName(i), propertyEntry.getPropertyValue(i));
+				} catch (CoreException e) {
+					failure[0] = e;
+					return STOP;
+				}
+				return CONTINUE;
+			}
+		}, key, key.isRoot() ? BucketTree.DEPTH_ZERO : BucketTree.DEPTH_INFINITE);
+		tree.getCurrent().flush();
+		if (failure[0] != null)
+			throw failure[0];
+	}
+
+	public synchronized void setProperty(IResource target, QualifiedName name, String value) throws CoreException {
+		//resource may have been deleted concurrently
+		//must check for existence within synchronized method
+		Resource resource = (Resource) target;
+		ResourceInfo info = resource.getResourceInfo(false, false);
+		int flags = resource.getFlags(info);
+		resource.checkAccessible(flags);
+		// enforce the limit stated by the spec
+		if (value != null && value.length() > MAX_VALUE_SIZE) {
+			String message = NLS.bind(Messages.properties_valueTooLong, new Object[] {name.getQualifier(), name.getLocalName(), new Integer(MAX_VALUE_SIZE).toString()});
+			throw new ResourceException(IResourceStatus.FAILED_WRITE_METADATA, target.getFullPath(), message, null);
+		}
+		if (name.getQualifier() == null) {
+			String message = Messages.properties_qualifierIsNull;
+			throw new ResourceException(IResourceStatus.FAILED_WRITE_METADATA, target.getFullPath(), message, null);
+		}
+		IPath targetPath = target.getFullPath();
+		PropertyLog log = getLog(targetPath);
+		log.set(targetPath.removeFirstSegments(1).toString(), name, value);
+		changed(log);
+	}
+
+	public void shutdown(IProgressMonitor monitor) throws CoreException {
+		compactionJob.cancel();
+		try {
+			compactionJob.join();
+		} catch (InterruptedException e) {
+			// ignore
+		}
+		synchronized (this) {
+			for (Iterator<PropertyLog> i = logs.values().iterator(); i.hasNext();)
+				i.next().close();
+			logs.clear();
+		}
+	}
+
+	public void startup(IProgressMonitor monitor) {
+		// logs are opened when they are first needed
+	}
+}
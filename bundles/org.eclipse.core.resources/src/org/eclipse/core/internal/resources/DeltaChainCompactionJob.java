@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources;
+
+import org.eclipse.core.internal.utils.Messages;
+import org.eclipse.core.internal.utils.Policy;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Shortens the delta chain of the workspace tree in the background, so
+ * that element lookups in the current tree stay fast between snapshots.
+ * 
+ * @see WorkspaceDescription#getMaxDeltaChainDepth()
+ */
+public class DeltaChainCompactionJob extends Job {
+
+	private final SaveManager saveManager;
+	private final Workspace workspace;
+
+	public DeltaChainCompactionJob(Workspace workspace, SaveManager manager) {
+		super(Messages.resources_compactTrees);
+		this.workspace = workspace;
+		this.saveManager = manager;
+		setRule(workspace.getRoot());
+		setSystem(true);
+	}
+
+	/*
+	 * @see Job#run()
+	 */
+	protected IStatus run(IProgressMonitor monitor) {
+		if (monitor.isCanceled())
+			return Status.CANCEL_STATUS;
+		ISchedulingRule rule = workspace.getRoot();
+		try {
+			try {
+				workspace.prepareOperation(rule, monitor);
+				workspace.beginOperation(false);
+				saveManager.compactTrees();
+			} finally {
+				workspace.endOperation(rule, false, Policy.monitorFor(null));
+			}
+		} catch (OperationCanceledException e) {
+			return Status.CANCEL_STATUS;
+		} catch (CoreException e) {
+			return e.getStatus();
+		}
+		return Status.OK_STATUS;
+	}
+}
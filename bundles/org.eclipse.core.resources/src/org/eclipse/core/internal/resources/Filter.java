@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 IBM Corporation and others.
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -38,6 +38,18 @@ public class Filter {
 	}
 
 	public boolean match(IContainer parent, IFileInfo fileInfo) throws CoreException {
+		AbstractFileInfoMatcher matcher = getProvider();
+		if (matcher != null)
+			return matcher.matches(parent, fileInfo);
+		return false;
+	}
+
+	/**
+	 * Returns the initialized matcher of this filter, creating it if needed.
+	 * Filters are cached in compiled filter chains and may be used by several
+	 * threads, so the matcher is only created once.
+	 */
+	private synchronized AbstractFileInfoMatcher getProvider() throws CoreException {
 		if (provider == null) {
 			IFilterMatcherDescriptor filterDescriptor = project.getWorkspace().getFilterMatcherDescriptor(getId());
 			if (filterDescriptor != null)
@@ -53,9 +65,7 @@ public class Filter {
 				provider = null;
 			}
 		}
-		if (provider != null)
-			return provider.matches(parent, fileInfo);
-		return false;
+		return provider;
 	}
 
 	public boolean isFirst() {
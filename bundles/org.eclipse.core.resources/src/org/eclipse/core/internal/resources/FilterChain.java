@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * The filters that apply to the children of a container: the filters of the
+ * container itself and the inheritable filters of its ancestors, in the
+ * order in which they are evaluated.
+ * <p>
+ * Chains are built once per container that has filters of its own, and
+ * cached by the project description until the filters of the project change,
+ * so that the matchers of the filters are only created and initialized once.
+ * The containers below such a container that have no filters of their own all
+ * share its inherited chain, so the number of chains does not grow with the
+ * number of containers listed.
+ * </p>
+ */
+class FilterChain {
+	/**
+	 * The chain of containers that have no filters.
+	 */
+	static final FilterChain EMPTY = new FilterChain(null, new LinkedList<Filter>(), new LinkedList<Filter>(), null);
+
+	/**
+	 * Builds the chain of filters for the container with the given project
+	 * relative path.
+	 */
+	static FilterChain compile(IProject project, ProjectDescription description, IPath relativePath) {
+		LinkedList<Filter> includeFilters = new LinkedList<Filter>();
+		LinkedList<Filter> excludeFilters = new LinkedList<Filter>();
+		LinkedList<Filter> inheritedIncludeFilters = new LinkedList<Filter>();
+		LinkedList<Filter> inheritedExcludeFilters = new LinkedList<Filter>();
+		boolean firstSegment = true;
+		do {
+			if (!firstSegment)
+				relativePath = relativePath.removeLastSegments(1);
+			LinkedList<FilterDescription> filters = description.getFilter(relativePath);
+			if (filters != null) {
+				for (Iterator<FilterDescription> it = filters.iterator(); it.hasNext();) {
+					FilterDescription desc = it.next();
+					if (firstSegment || desc.isInheritable()) {
+						Filter filter = new Filter(project, desc);
+						if (filter.isIncludeOnly()) {
+							add(includeFilters, filter);
+							if (desc.isInheritable())
+								add(inheritedIncludeFilters, filter);
+						} else {
+							add(excludeFilters, filter);
+							if (desc.isInheritable())
+								add(inheritedExcludeFilters, filter);
+						}
+					}
+				}
+			}
+			firstSegment = false;
+		} while (relativePath.segmentCount() > 0);
+		FilterChain inherited = EMPTY;
+		if (!inheritedIncludeFilters.isEmpty() || !inheritedExcludeFilters.isEmpty())
+			inherited = new FilterChain(project, inheritedIncludeFilters, inheritedExcludeFilters, EMPTY);
+		if (includeFilters.isEmpty() && excludeFilters.isEmpty())
+			return EMPTY;
+		return new FilterChain(project, includeFilters, excludeFilters, inherited);
+	}
+
+	private static void add(LinkedList<Filter> filters, Filter filter) {
+		if (filter.isFirst())
+			filters.addFirst(filter);
+		else
+			filters.addLast(filter);
+	}
+
+	private final LinkedList<Filter> excludeFilters;
+	private final LinkedList<Filter> includeFilters;
+	/**
+	 * The chain of the containers below this one that have no filters of
+	 * their own.
+	 */
+	private final FilterChain inherited;
+	private final IProject project;
+
+	private FilterChain(IProject project, LinkedList<Filter> includeFilters, LinkedList<Filter> excludeFilters, FilterChain inherited) {
+		this.project = project;
+		this.includeFilters = includeFilters;
+		this.excludeFilters = excludeFilters;
+		this.inherited = inherited;
+	}
+
+	/**
+	 * Returns the children in the given list that pass the filters.
+	 */
+	IFileInfo[] filter(IContainer parent, IFileInfo[] list) throws CoreException {
+		if (this == EMPTY || list.length == 0)
+			return list;
+		return Filter.filter(project, includeFilters, excludeFilters, parent, list);
+	}
+
+	/**
+	 * Returns the chain of the containers below this one that have no
+	 * filters of their own.
+	 */
+	FilterChain getInheritedChain() {
+		return this == EMPTY ? EMPTY : inherited;
+	}
+
+	boolean isEmpty() {
+		return this == EMPTY;
+	}
+}
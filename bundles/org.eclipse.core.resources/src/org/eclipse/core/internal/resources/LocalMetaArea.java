@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -330,26 +330,22 @@ public class LocalMetaArea implements ICoreConstants {
 	public void readPrivateDescription(IProject target, ProjectDescription description) {
 		IPath locationFile = locationFor(target).append(F_PROJECT_LOCATION);
 		java.io.File file = locationFile.toFile();
-		if (!file.exists()) {
+		//the file may have been read ahead by a parallel workspace restore
+		InputStream prefetched = getWorkspace().getSaveManager().takePrefetched(file);
+		if (prefetched == null && !file.exists()) {
 			locationFile = getBackupLocationFor(locationFile);
 			file = locationFile.toFile();
 			if (!file.exists())
 				return;
 		}
 		try {
-			SafeChunkyInputStream input = new SafeChunkyInputStream(file, 500);
+			SafeChunkyInputStream input = prefetched == null ? new SafeChunkyInputStream(file, 500) : new SafeChunkyInputStream(prefetched);
 			DataInputStream dataIn = new DataInputStream(input);
 			try {
 				try {
-					String location = dataIn.readUTF();
-					if (location.length() > 0) {
-						//location format < 3.2 was a local file system OS path
-						//location format >= 3.2 is: URI_PREFIX + uri.toString()
-						if (location.startsWith(URI_PREFIX))
-							description.setLocationURI(URI.create(location.substring(URI_PREFIX.length())));
-						else
-							description.setLocationURI(URIUtil.toURI(Path.fromOSString(location)));
-					}
+					URI location = toLocationURI(dataIn.readUTF());
+					if (location != null)
+						description.setLocationURI(location);
 				} catch (Exception e) {
 					//don't allow failure to read the location to propagate
 					String msg = NLS.bind(Messages.resources_exReadProjectLocation, target.getName());
@@ -399,6 +395,20 @@ public class LocalMetaArea implements ICoreConstants {
 		}
 	}
 
+	/**
+	 * Returns the project location stored in a private location file, or
+	 * <code>null</code> if the project is in its default location.
+	 */
+	static URI toLocationURI(String location) {
+		if (location.length() == 0)
+			return null;
+		//location format < 3.2 was a local file system OS path
+		//location format >= 3.2 is: URI_PREFIX + uri.toString()
+		if (location.startsWith(URI_PREFIX))
+			return URI.create(location.substring(URI_PREFIX.length()));
+		return URIUtil.toURI(Path.fromOSString(location));
+	}
+
 	/**
 	 * Writes the workspace description to the local meta area. This method is
 	 * synchronized to prevent multiple current write attempts.
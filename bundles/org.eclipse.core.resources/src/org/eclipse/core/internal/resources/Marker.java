@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -107,10 +107,7 @@ public class Marker extends PlatformObject implements IMarker {
 		MarkerInfo info = getInfo();
 		if (info == null)
 			return defaultValue;
-		Object value = info.getAttribute(attributeName);
-		if (value instanceof Integer)
-			return ((Integer) value).intValue();
-		return defaultValue;
+		return info.getAttribute(attributeName, defaultValue);
 	}
 
 	/**
@@ -240,7 +237,9 @@ public class Marker extends PlatformObject implements IMarker {
 			boolean needDelta = !manager.hasDelta(resource.getFullPath(), id);
 			MarkerInfo oldInfo = needDelta ? (MarkerInfo) markerInfo.clone() : null;
 			boolean validate = manager.isPersistentType(markerInfo.getType());
+			int oldSeverity = MarkerManager.getSeverity(markerInfo);
 			markerInfo.setAttribute(attributeName, value, validate);
+			manager.changedSeverity(resource, markerInfo, oldSeverity);
 			if (manager.isPersistent(markerInfo))
 				((Resource) resource).getResourceInfo(false, true).set(ICoreConstants.M_MARKERS_SNAP_DIRTY);
 			if (needDelta) {
@@ -277,7 +276,9 @@ public class Marker extends PlatformObject implements IMarker {
 			boolean needDelta = !manager.hasDelta(resource.getFullPath(), id);
 			MarkerInfo oldInfo = needDelta ? (MarkerInfo) markerInfo.clone() : null;
 			boolean validate = manager.isPersistentType(markerInfo.getType());
+			int oldSeverity = MarkerManager.getSeverity(markerInfo);
 			markerInfo.setAttributes(attributeNames, values, validate);
+			manager.changedSeverity(resource, markerInfo, oldSeverity);
 			if (manager.isPersistent(markerInfo))
 				((Resource) resource).getResourceInfo(false, true).set(ICoreConstants.M_MARKERS_SNAP_DIRTY);
 			if (needDelta) {
@@ -305,7 +306,9 @@ public class Marker extends PlatformObject implements IMarker {
 			boolean needDelta = !manager.hasDelta(resource.getFullPath(), id);
 			MarkerInfo oldInfo = needDelta ? (MarkerInfo) markerInfo.clone() : null;
 			boolean validate = manager.isPersistentType(markerInfo.getType());
+			int oldSeverity = MarkerManager.getSeverity(markerInfo);
 			markerInfo.setAttributes(values, validate);
+			manager.changedSeverity(resource, markerInfo, oldSeverity);
 			if (manager.isPersistent(markerInfo))
 				((Resource) resource).getResourceInfo(false, true).set(ICoreConstants.M_MARKERS_SNAP_DIRTY);
 			if (needDelta) {
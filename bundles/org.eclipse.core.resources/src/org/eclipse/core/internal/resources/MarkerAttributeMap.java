@@ -21,11 +21,14 @@ import org.eclipse.core.internal.utils.StringPool;
  * MUST be instances of java.lang.String.
  * 
  * Implemented as a single array that alternates keys and values.
+ * Integer values stored with {@link #putInt(String, int)} are kept unboxed
+ * in a parallel int array, and boxed only when read as objects.
  */
 @SuppressWarnings("unchecked")
 public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolParticipant {
 	protected Object[] elements = null;
 	protected int count = 0;
+	protected int[] intValues = null;
 
 	// 8 attribute keys, 8 attribute values
 	protected static final int DEFAULT_SIZE = 16;
@@ -33,6 +36,9 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 
 	private static final Object[] EMPTY = new Object[0]; 
 
+	// value marker of the entries whose value is in intValues
+	private static final Object INT_VALUE = new Object();
+
 	/**
 	 * Creates a new marker attribute map of default size
 	 */
@@ -53,7 +59,15 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 	 * @param map The entries in the given map will be added to the new map.
 	 */
 	public MarkerAttributeMap(Map<String, ? extends V> map) {
-		this(map.size());
+		this(map instanceof MarkerAttributeMap ? 0 : map.size());
+		if (map instanceof MarkerAttributeMap) {
+			//copy the arrays so that unboxed values stay unboxed
+			MarkerAttributeMap<?> other = (MarkerAttributeMap<?>) map;
+			elements = other.elements.clone();
+			intValues = other.intValues == null ? null : other.intValues.clone();
+			count = other.count;
+			return;
+		}
 		putAll(map);
 	}
 
@@ -63,6 +77,7 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 	public void clear() {
 		count = 0;
 		elements = EMPTY;
+		intValues = null;
 	}
 
 	/* (non-Javadoc)
@@ -85,7 +100,7 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 		if (count == 0)
 			return false;
 		for (int i = 1; i < elements.length; i = i + 2)
-			if (elements[i] != null && elements[i].equals(value))
+			if (elements[i] != null && valueAt(i).equals(value))
 				return true;
 		return false;
 	}
@@ -120,7 +135,7 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 
 		//values for each key must be equal
 		for (int i = 0; i < elements.length; i = i + 2) {
-			if (elements[i] != null && (!elements[i + 1].equals(other.get(elements[i]))))
+			if (elements[i] != null && (!valueAt(i + 1).equals(other.get(elements[i]))))
 				return false;
 		}
 		return true;
@@ -135,10 +150,31 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 		key = ((String)key).intern();
 		for (int i = 0; i < elements.length; i = i + 2)
 			if (elements[i] == key)
-				return (V)elements[i + 1];
+				return (V)valueAt(i + 1);
 		return null;
 	}
 
+	/**
+	 * Returns the value of the given key as an int, without boxing values
+	 * stored with {@link #putInt(String, int)}.
+	 * @param key The key of the value
+	 * @param defaultValue The value returned if the key has no Integer value
+	 */
+	public int getInt(String key, int defaultValue) {
+		if (count == 0)
+			return defaultValue;
+		key = key.intern();
+		for (int i = 0; i < elements.length; i = i + 2) {
+			if (elements[i] == key) {
+				Object value = elements[i + 1];
+				if (value == INT_VALUE)
+					return intValues[i >> 1];
+				return value instanceof Integer ? ((Integer) value).intValue() : defaultValue;
+			}
+		}
+		return defaultValue;
+	}
+
 	/**
 	 * The capacity of the map has been exceeded, grow the array by
 	 * GROW_SIZE to accomodate more entries.
@@ -147,6 +183,11 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 		Object[] expanded = new Object[elements.length + GROW_SIZE];
 		System.arraycopy(elements, 0, expanded, 0, elements.length);
 		elements = expanded;
+		if (intValues != null) {
+			int[] expandedInts = new int[expanded.length / 2];
+			System.arraycopy(intValues, 0, expandedInts, 0, intValues.length);
+			intValues = expandedInts;
+		}
 	}
 
 	/* (non-Javadoc)
@@ -197,38 +238,26 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 			throw new NullPointerException();
 		if (value == null)
 			return remove(k);
-		String key = k.intern();
-
-		if (elements.length <= (count * 2))
-			grow();
-
-		// handle the case where we don't have any attributes yet
-		if (count == 0) {
-			elements[0] = key;
-			elements[1] = value;
-			count++;
-			return null;
-		}
-
-		// replace existing value if it exists
-		for (int i = 0; i < elements.length; i = i + 2) {
-			if (elements[i] == key) {
-				Object oldValue = elements[i + 1];
-				elements[i + 1] = value;
-				return (V)oldValue;
-			}
-		}
+		int i = slotOf(k.intern());
+		Object oldValue = valueAt(i + 1);
+		elements[i + 1] = value;
+		return (V)oldValue;
+	}
 
-		// otherwise add it to the list of elements.
-		for (int i = 0; i < elements.length; i = i + 2) {
-			if (elements[i] == null) {
-				elements[i] = key;
-				elements[i + 1] = value;
-				count++;
-				return null;
-			}
-		}
-		return null;
+	/**
+	 * Maps the given key to the given int value without boxing it.
+	 * The value is returned as an Integer by {@link #get(Object)}.
+	 * @param k The key
+	 * @param value The value
+	 */
+	public void putInt(String k, int value) {
+		if (k == null)
+			throw new NullPointerException();
+		int i = slotOf(k.intern());
+		if (intValues == null)
+			intValues = new int[elements.length / 2];
+		elements[i + 1] = INT_VALUE;
+		intValues[i >> 1] = value;
 	}
 
 	/* (non-Javadoc)
@@ -249,7 +278,7 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 		for (int i = 0; i < elements.length; i = i + 2) {
 			if (elements[i] == key) {
 				elements[i] = null;
-				Object result = elements[i + 1];
+				Object result = valueAt(i + 1);
 				elements[i + 1] = null;
 				count--;
 				return (V)result;
@@ -265,6 +294,36 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 		return count;
 	}
 
+	/**
+	 * Returns the index of the given interned key, adding the key
+	 * with no value if it is not in the map yet.
+	 */
+	private int slotOf(String key) {
+		int free = -1;
+		for (int i = 0; i < elements.length; i = i + 2) {
+			if (elements[i] == key)
+				return i;
+			if (free < 0 && elements[i] == null)
+				free = i;
+		}
+		if (free < 0) {
+			free = elements.length;
+			grow();
+		}
+		elements[free] = key;
+		count++;
+		return free;
+	}
+
+	/**
+	 * Returns the value at the given index of the elements array,
+	 * boxing it if it is stored in the int array.
+	 */
+	private Object valueAt(int index) {
+		Object value = elements[index];
+		return value == INT_VALUE ? Integer.valueOf(intValues[index >> 1]) : value;
+	}
+
 	/* (non-Javadoc
 	 * Method declared on IStringPoolParticipant
 	 */
@@ -292,7 +351,7 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 			return result;
 		for (int i = 0; i < elements.length; i = i + 2) {
 			if (elements[i] != null) {
-				result.put((String)elements[i], (V)elements[i + 1]);
+				result.put((String)elements[i], (V)valueAt(i + 1));
 			}
 		}
 		return result;
@@ -310,7 +369,7 @@ public class MarkerAttributeMap<V> implements Map<String, V>, IStringPoolPartici
 			return result;
 		for (int i = 1; i < elements.length; i = i + 2) {
 			if (elements[i] != null) {
-				result.add((V)elements[i]);
+				result.add((V)valueAt(i));
 			}
 		}
 		return result;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,8 +11,7 @@
  *******************************************************************************/
 package org.eclipse.core.internal.resources;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.IPath;
 
@@ -148,6 +147,28 @@ public class MarkerDelta implements IMarkerDelta, IMarkerSetElement {
 		return oldChanges;
 	}
 
+	/**
+	 * Returns a copy of the given marker changes that is not affected by later
+	 * merges into the original changes. Returns <code>null</code> if there are
+	 * no changes.
+	 */
+	public static Map<IPath, MarkerSet> copy(Map<IPath, MarkerSet> changes) {
+		if (changes == null)
+			return null;
+		Map<IPath, MarkerSet> result = new HashMap<IPath, MarkerSet>(changes.size());
+		for (Iterator<Map.Entry<IPath, MarkerSet>> it = changes.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<IPath, MarkerSet> entry = it.next();
+			IMarkerSetElement[] elements = entry.getValue().elements();
+			MarkerSet set = new MarkerSet(elements.length);
+			for (int i = 0; i < elements.length; i++) {
+				MarkerDelta delta = (MarkerDelta) elements[i];
+				set.add(new MarkerDelta(delta.kind, delta.resource, delta.info));
+			}
+			result.put(entry.getKey(), set);
+		}
+		return result;
+	}
+
 	/**
 	 * Merge two sets of marker changes.  Both sets must be on the same resource. Use the original set
 	 * of changes to store the result so we don't have to build a completely different set to return.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -108,6 +108,18 @@ public class MarkerInfo implements IMarkerSetElement, Cloneable, IStringPoolPart
 		return attributes == null ? null : attributes.get(attributeName);
 	}
 
+	/**
+	 * Returns the value of the given attribute as an int, or the given
+	 * default value if the attribute is not an Integer.
+	 */
+	public int getAttribute(String attributeName, int defaultValue) {
+		Map<String, Object> map = attributes;
+		if (map instanceof MarkerAttributeMap)
+			return ((MarkerAttributeMap<Object>) map).getInt(attributeName, defaultValue);
+		Object value = map == null ? null : map.get(attributeName);
+		return value instanceof Integer ? ((Integer) value).intValue() : defaultValue;
+	}
+
 	public Map<String, Object> getAttributes() {
 		return getAttributes(true);
 	}
@@ -182,6 +194,27 @@ public class MarkerInfo implements IMarkerSetElement, Cloneable, IStringPoolPart
 			setAttribute(attributeNames[i], values[i], validate);
 	}
 
+	/**
+	 * Sets the attributes with the given names to the values found in the
+	 * given array from the given offset on. Null values are not set. The
+	 * attributes with the given int names are set to the values of the given
+	 * int array from the given int offset on, and are stored unboxed.
+	 */
+	public void setAttributes(String[] attributeNames, Object[] values, int offset, String[] intAttributeNames, int[] intValues, int intOffset, boolean validate) {
+		if (attributes == null)
+			attributes = new MarkerAttributeMap<Object>(attributeNames.length + intAttributeNames.length);
+		for (int i = 0; i < attributeNames.length; i++)
+			setAttribute(attributeNames[i], values[offset + i], validate);
+		if (intAttributeNames.length > 0) {
+			MarkerAttributeMap<Object> map = attributes instanceof MarkerAttributeMap ? (MarkerAttributeMap<Object>) attributes : new MarkerAttributeMap<Object>(attributes);
+			for (int i = 0; i < intAttributeNames.length; i++)
+				map.putInt(intAttributeNames[i], intValues[intOffset + i]);
+			attributes = map;
+		}
+		if (attributes.isEmpty())
+			attributes = null;
+	}
+
 	public void setCreationTime(long value) {
 		creationTime = value;
 	}
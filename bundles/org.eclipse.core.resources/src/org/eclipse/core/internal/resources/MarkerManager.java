@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,6 +27,37 @@ import org.eclipse.osgi.util.NLS;
  */
 public class MarkerManager implements IManager {
 
+	/**
+	 * A change to the marker indexes by an operation that runs in a working
+	 * layer. The indexes tell about the workspace tree, so the changes are
+	 * held back until the layer is merged into it.
+	 */
+	static class IndexUpdate {
+		/**
+		 * ADDED, REMOVED or CHANGED, as in IResourceDelta, or 0 to count the
+		 * markers of the subtree of the path again.
+		 */
+		final int kind;
+		/**
+		 * The container the markers of the resource are counted in by the
+		 * severity index, which is the parent of a file.
+		 */
+		final IPath container;
+		final MarkerInfo marker;
+		final int oldSeverity;
+		final IPath path;
+		final int severity;
+
+		IndexUpdate(int kind, IResource resource, MarkerInfo marker, int oldSeverity, int severity) {
+			this.kind = kind;
+			this.path = resource.getFullPath();
+			this.container = resource.getType() == IResource.FILE ? path.removeLastSegments(1) : path;
+			this.marker = marker;
+			this.oldSeverity = oldSeverity;
+			this.severity = severity;
+		}
+	}
+
 	//singletons
 	private static final MarkerInfo[] NO_MARKER_INFO = new MarkerInfo[0];
 	private static final IMarker[] NO_MARKERS = new IMarker[0];
@@ -34,6 +65,14 @@ public class MarkerManager implements IManager {
 	private long changeId = 0;
 	protected Map<IPath, MarkerSet> currentDeltas = null;
 	protected final MarkerDeltaManager deltaManager = new MarkerDeltaManager();
+	/**
+	 * Whether the current thread is restoring markers, during which the
+	 * indexes are not kept up to date for its changes. Operations on other
+	 * projects may change markers concurrently in working layers.
+	 */
+	private final ThreadLocal<Boolean> restoring = new ThreadLocal<Boolean>();
+	private final MarkerSeverityIndex severityIndex = new MarkerSeverityIndex(cache);
+	private final MarkerTypeIndex typeIndex = new MarkerTypeIndex(cache);
 
 	protected Workspace workspace;
 	protected MarkerWriter writer = new MarkerWriter(this);
@@ -146,13 +185,8 @@ public class MarkerManager implements IManager {
 		return max;
 	}
 
-	private int getSeverity(MarkerInfo marker) {
-		Object o = marker.getAttribute(IMarker.SEVERITY);
-		if (o instanceof Integer) {
-			Integer i = (Integer) o;
-			return i.intValue();
-		}
-		return -1;
+	static int getSeverity(MarkerInfo marker) {
+		return marker.getAttribute(IMarker.SEVERITY, -1);
 	}
 
 	/**
@@ -216,19 +250,33 @@ public class MarkerManager implements IManager {
 	protected void changedMarkers(IResource resource, IMarkerSetElement[] changes) {
 		if (changes == null || changes.length == 0)
 			return;
-		changeId++;
-		if (currentDeltas == null)
-			currentDeltas = deltaManager.newGeneration(changeId);
 		IPath path = resource.getFullPath();
-		MarkerSet previousChanges = currentDeltas.get(path);
-		MarkerSet result = MarkerDelta.merge(previousChanges, changes);
-		if (result.size() == 0)
-			currentDeltas.remove(path);
+		WorkingLayer layer = workspace.getLayer();
+		if (layer != null)
+			layer.changedMarkers(path, changes);
 		else
-			currentDeltas.put(path, result);
+			recordDeltas(path, changes);
 		ResourceInfo info = workspace.getResourceInfo(path, false, true);
 		if (info != null)
 			info.incrementMarkerGenerationCount();
+		if (restoring.get() != null)
+			return;
+		for (int i = 0; i < changes.length; i++) {
+			MarkerDelta change = (MarkerDelta) changes[i];
+			if (change.getKind() == IResourceDelta.ADDED || change.getKind() == IResourceDelta.REMOVED)
+				updateIndexes(layer, new IndexUpdate(change.getKind(), resource, change.info, -1, getSeverity(change.info)));
+		}
+	}
+
+	/**
+	 * The attributes of the given marker of the given resource have changed.
+	 * Updates the severity index if the severity has changed.
+	 */
+	void changedSeverity(IResource resource, MarkerInfo marker, int oldSeverity) {
+		int newSeverity = getSeverity(marker);
+		if (newSeverity == oldSeverity)
+			return;
+		updateIndexes(workspace.getLayer(), new IndexUpdate(IResourceDelta.CHANGED, resource, marker, oldSeverity, newSeverity));
 	}
 
 	/**
@@ -273,10 +321,14 @@ public class MarkerManager implements IManager {
 	 * for all types (i.e., <code>null</code> is a wildcard.
 	 */
 	public void doFindMarkers(IResource target, ArrayList<IMarker> result, final String type, final boolean includeSubtypes, int depth) {
-		//optimize the deep searches with an element tree visitor
-		if (depth == IResource.DEPTH_INFINITE && target.getType() != IResource.FILE)
-			visitorFindMarkers(target.getFullPath(), result, type, includeSubtypes);
-		else
+		//answer the deep searches from the type index, or with an element tree visitor
+		if (depth == IResource.DEPTH_INFINITE && target.getType() != IResource.FILE) {
+			//the index does not tell about the tree of a working layer
+			if (typeIndex.isValid() && workspace.getLayer() == null)
+				indexFindMarkers(target.getFullPath(), result, type, includeSubtypes);
+			else
+				visitorFindMarkers(target.getFullPath(), result, type, includeSubtypes);
+		} else
 			recursiveFindMarkers(target.getFullPath(), result, type, includeSubtypes, depth);
 	}
 
@@ -285,12 +337,38 @@ public class MarkerManager implements IManager {
 	 * with option to search the target's children.
 	 */
 	public int findMaxProblemSeverity(IResource target, String type, boolean includeSubtypes, int depth) {
-		//optimize the deep searches with an element tree visitor
-		if (depth == IResource.DEPTH_INFINITE && target.getType() != IResource.FILE)
+		//answer the deep searches from the severity index, or with an element tree visitor
+		if (depth == IResource.DEPTH_INFINITE && target.getType() != IResource.FILE) {
+			if (severityIndex.isValid() && workspace.getLayer() == null)
+				return severityIndex.findMaxSeverity(target.getFullPath(), type, includeSubtypes);
 			return visitorFindMaxSeverity(target.getFullPath(), type, includeSubtypes);
+		}
 		return recursiveFindMaxSeverity(target.getFullPath(), type, includeSubtypes, depth);
 	}
 
+	/**
+	 * Adds the markers for a subtree of resources to the list, visiting only
+	 * the resources that the type index knows to have matching markers.
+	 */
+	private void indexFindMarkers(IPath path, ArrayList<IMarker> list, String type, boolean includeSubtypes) {
+		for (Iterator<IPath> i = typeIndex.findPaths(path, type, includeSubtypes).iterator(); i.hasNext();) {
+			IPath resourcePath = i.next();
+			ResourceInfo info = workspace.getResourceInfo(resourcePath, false, false);
+			//the resource may have been deleted concurrently
+			if (info == null)
+				continue;
+			MarkerSet markers = info.getMarkers(false);
+			if (markers == null)
+				continue;
+			IMarkerSetElement[] matching;
+			if (type == null)
+				matching = markers.elements();
+			else
+				matching = basicFindMatching(markers, type, includeSubtypes);
+			buildMarkers(matching, resourcePath, info.getType(), list);
+		}
+	}
+
 	public long getChangeId() {
 		return changeId;
 	}
@@ -307,6 +385,9 @@ public class MarkerManager implements IManager {
 	 * for the given marker id, and false otherwise.
 	 */
 	boolean hasDelta(IPath path, long id) {
+		WorkingLayer layer = workspace.getLayer();
+		if (layer != null)
+			return layer.hasDelta(path, id);
 		if (currentDeltas == null)
 			return false;
 		MarkerSet set = currentDeltas.get(path);
@@ -509,6 +590,121 @@ public class MarkerManager implements IManager {
 			recursiveRemoveMarkers(target.getFullPath(), type, includeSubtypes, depth);
 	}
 
+	/**
+	 * Replaces the markers of the given type on the given resource with the
+	 * given new markers. Unlike removing and adding the markers one at a time,
+	 * the marker set of the resource is built once, and all changes are
+	 * reported in one call to {@link #changedMarkers(IResource, IMarkerSetElement[])}.
+	 */
+	public void replaceMarkers(IResource resource, String type, MarkerInfo[] newMarkers) throws CoreException {
+		workspace.claim(resource.getFullPath());
+		ResourceInfo info = workspace.getResourceInfo(resource.getFullPath(), false, true);
+		//resource may have been deleted concurrently -- just bail out if this happens
+		if (info == null)
+			return;
+		MarkerSet markers = info.getMarkers(false);
+		IMarkerSetElement[] removed = markers == null ? NO_MARKER_INFO : basicFindMatching(markers, type, false);
+		if (removed.length == 0 && newMarkers.length == 0)
+			return;
+		//Concurrency: build a new marker set rather than changing the current one
+		int kept = markers == null ? 0 : markers.size() - removed.length;
+		MarkerSet result = new MarkerSet(kept + newMarkers.length);
+		if (kept > 0) {
+			IMarkerSetElement[] elements = markers.elements();
+			for (int i = 0; i < elements.length; i++)
+				if (!((MarkerInfo) elements[i]).getType().equals(type))
+					result.add(elements[i]);
+		}
+		IMarkerSetElement[] changes = new IMarkerSetElement[removed.length + newMarkers.length];
+		boolean persistent = false;
+		for (int i = 0; i < removed.length; i++) {
+			changes[i] = new MarkerDelta(IResourceDelta.REMOVED, resource, (MarkerInfo) removed[i]);
+			persistent |= isPersistent((MarkerInfo) removed[i]);
+		}
+		for (int i = 0; i < newMarkers.length; i++) {
+			MarkerInfo newMarker = newMarkers[i];
+			// should always be a new marker.
+			if (newMarker.getId() != MarkerInfo.UNDEFINED_ID) {
+				String message = Messages.resources_changeInAdd;
+				throw new ResourceException(new ResourceStatus(IResourceStatus.INTERNAL_ERROR, resource.getFullPath(), message));
+			}
+			newMarker.setId(workspace.nextMarkerId());
+			result.add(newMarker);
+			changes[removed.length + i] = new MarkerDelta(IResourceDelta.ADDED, resource, newMarker);
+			persistent |= isPersistent(newMarker);
+		}
+		info.setMarkers(result.size() == 0 ? null : result);
+		// set the M_MARKERS_SNAP_DIRTY flag to indicate that this
+		// resource's markers have changed since the last snapshot
+		if (persistent)
+			info.set(ICoreConstants.M_MARKERS_SNAP_DIRTY);
+		changedMarkers(resource, changes);
+	}
+
+	/**
+	 * Remembers the marker deltas of a working layer that has been merged into
+	 * the workspace tree, for subsequent notification.
+	 */
+	void mergeDeltas(Map<IPath, MarkerSet> deltas) {
+		for (Iterator<Map.Entry<IPath, MarkerSet>> i = deltas.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<IPath, MarkerSet> entry = i.next();
+			recordDeltas(entry.getKey(), entry.getValue().elements());
+		}
+	}
+
+	/**
+	 * Applies the changes to the marker indexes of a working layer that has
+	 * been merged into the workspace tree, in the order they were made.
+	 */
+	void mergeIndexUpdates(List<IndexUpdate> updates) {
+		for (Iterator<IndexUpdate> i = updates.iterator(); i.hasNext();)
+			updateIndexes(null, i.next());
+	}
+
+	/**
+	 * Remembers the given marker changes on the resource with the given path
+	 * for subsequent notification.
+	 */
+	private void recordDeltas(IPath path, IMarkerSetElement[] changes) {
+		changeId++;
+		if (currentDeltas == null)
+			currentDeltas = deltaManager.newGeneration(changeId);
+		MarkerSet previousChanges = currentDeltas.get(path);
+		MarkerSet result = MarkerDelta.merge(previousChanges, changes);
+		if (result.size() == 0)
+			currentDeltas.remove(path);
+		else
+			currentDeltas.put(path, result);
+	}
+
+	/**
+	 * Applies the given change to the marker indexes, or holds it back in the
+	 * given working layer until the layer is merged.
+	 */
+	private void updateIndexes(WorkingLayer layer, IndexUpdate update) {
+		if (layer != null) {
+			layer.changedMarkerIndexes(update);
+			return;
+		}
+		switch (update.kind) {
+			case 0 :
+				severityIndex.reset(workspace.getElementTree(), update.path);
+				typeIndex.reset(workspace.getElementTree(), update.path);
+				break;
+			case IResourceDelta.ADDED :
+				severityIndex.add(update.container, update.marker, update.severity);
+				typeIndex.add(update.path, update.marker.getType());
+				break;
+			case IResourceDelta.REMOVED :
+				severityIndex.remove(update.container, update.marker, update.severity);
+				typeIndex.remove(update.path, update.marker.getType());
+				break;
+			case IResourceDelta.CHANGED :
+				severityIndex.changed(update.container, update.marker, update.oldSeverity, update.severity);
+				break;
+		}
+	}
+
 	/**
 	 * Reset the marker deltas up to but not including the given start Id.
 	 */
@@ -519,8 +715,16 @@ public class MarkerManager implements IManager {
 
 	public void restore(IResource resource, boolean generateDeltas, IProgressMonitor monitor) throws CoreException {
 		// first try and load the last saved file, then apply the snapshots
-		restoreFromSave(resource, generateDeltas);
-		restoreFromSnap(resource);
+		// the readers replace marker sets, so the markers of the restored
+		// subtree are counted again once they are read
+		restoring.set(Boolean.TRUE);
+		try {
+			restoreFromSave(resource, generateDeltas);
+			restoreFromSnap(resource);
+		} finally {
+			restoring.set(null);
+			updateIndexes(workspace.getLayer(), new IndexUpdate(0, resource, null, -1, -1));
+		}
 	}
 
 	protected void restoreFromSave(IResource resource, boolean generateDeltas) throws CoreException {
@@ -528,10 +732,11 @@ public class MarkerManager implements IManager {
 		IPath tempLocation = workspace.getMetaArea().getBackupLocationFor(sourceLocation);
 		java.io.File sourceFile = new java.io.File(sourceLocation.toOSString());
 		java.io.File tempFile = new java.io.File(tempLocation.toOSString());
-		if (!sourceFile.exists() && !tempFile.exists())
+		InputStream prefetched = workspace.getSaveManager().takePrefetched(sourceFile);
+		if (prefetched == null && !sourceFile.exists() && !tempFile.exists())
 			return;
 		try {
-			DataInputStream input = new DataInputStream(new SafeFileInputStream(sourceLocation.toOSString(), tempLocation.toOSString()));
+			DataInputStream input = new DataInputStream(prefetched != null ? prefetched : new SafeFileInputStream(sourceLocation.toOSString(), tempLocation.toOSString()));
 			try {
 				MarkerReader reader = new MarkerReader(workspace);
 				reader.read(input, generateDeltas);
@@ -547,10 +752,11 @@ public class MarkerManager implements IManager {
 
 	protected void restoreFromSnap(IResource resource) {
 		IPath sourceLocation = workspace.getMetaArea().getMarkersSnapshotLocationFor(resource);
-		if (!sourceLocation.toFile().exists())
+		InputStream prefetched = workspace.getSaveManager().takePrefetched(sourceLocation.toFile());
+		if (prefetched == null && !sourceLocation.toFile().exists())
 			return;
 		try {
-			DataInputStream input = new DataInputStream(new SafeChunkyInputStream(sourceLocation.toFile()));
+			DataInputStream input = new DataInputStream(prefetched != null ? new SafeChunkyInputStream(prefetched) : new SafeChunkyInputStream(sourceLocation.toFile()));
 			try {
 				MarkerSnapshotReader reader = new MarkerSnapshotReader(workspace);
 				while (true)
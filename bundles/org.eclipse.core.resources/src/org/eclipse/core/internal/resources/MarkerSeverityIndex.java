@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources;
+
+import java.util.*;
+import org.eclipse.core.internal.watson.*;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Counts the markers in the subtree of each container of the workspace by
+ * marker type and by severity, so that the maximum severity of the markers in
+ * a subtree is found without visiting its resources.
+ * <p>
+ * Only containers with markers in their subtree have a node in the index. The
+ * markers of a file are counted in its parent. Markers without a severity are
+ * not counted, since they never raise the maximum severity.
+ * </p><p>
+ * The index is changed by the marker manager while it holds the workspace
+ * lock, and may be queried by any thread.
+ * </p>
+ */
+class MarkerSeverityIndex {
+
+	/**
+	 * The counts of the markers of one type by severity.
+	 */
+	private static class Counts {
+		final int[] bySeverity = new int[IMarker.SEVERITY_ERROR + 1];
+		/**
+		 * The counts of the severities above error, or <code>null</code>.
+		 */
+		TreeMap<Integer, int[]> others;
+
+		/**
+		 * Adds the given amount to the count of the given severity, and
+		 * returns <code>false</code> if the count would become negative.
+		 */
+		boolean add(int severity, int amount) {
+			if (severity <= IMarker.SEVERITY_ERROR) {
+				if (bySeverity[severity] + amount < 0)
+					return false;
+				bySeverity[severity] += amount;
+				return true;
+			}
+			Integer key = new Integer(severity);
+			int[] count = others == null ? null : others.get(key);
+			if (count == null) {
+				if (amount < 0)
+					return false;
+				if (others == null)
+					others = new TreeMap<Integer, int[]>();
+				others.put(key, count = new int[1]);
+			}
+			count[0] += amount;
+			if (count[0] == 0)
+				others.remove(key);
+			return true;
+		}
+
+		int max() {
+			if (others != null && !others.isEmpty())
+				return others.lastKey().intValue();
+			for (int severity = IMarker.SEVERITY_ERROR; severity >= 0; severity--)
+				if (bySeverity[severity] > 0)
+					return severity;
+			return -1;
+		}
+	}
+
+	/**
+	 * The counts of the markers in the subtree of a container.
+	 */
+	private static class Node {
+		/**
+		 * The nodes of the child containers, or <code>null</code>.
+		 */
+		Map<String, Node> children;
+		final Map<String, Counts> counts = new HashMap<String, Counts>(4);
+		int total;
+
+		/**
+		 * Adds the given amount to the count of the given type and severity,
+		 * and returns <code>false</code> if the count would become negative.
+		 */
+		boolean add(String type, int severity, int amount) {
+			Counts typeCounts = counts.get(type);
+			if (typeCounts == null) {
+				if (amount < 0)
+					return false;
+				counts.put(type, typeCounts = new Counts());
+			}
+			if (!typeCounts.add(severity, amount))
+				return false;
+			total += amount;
+			if (typeCounts.max() == -1)
+				counts.remove(type);
+			return true;
+		}
+
+		/**
+		 * Subtracts the counts of the given node from this node.
+		 */
+		void subtract(Node node) {
+			for (Iterator<Map.Entry<String, Counts>> i = node.counts.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<String, Counts> entry = i.next();
+				Counts typeCounts = entry.getValue();
+				for (int severity = 0; severity < typeCounts.bySeverity.length; severity++)
+					if (typeCounts.bySeverity[severity] > 0)
+						add(entry.getKey(), severity, -typeCounts.bySeverity[severity]);
+				if (typeCounts.others != null)
+					for (Iterator<Map.Entry<Integer, int[]>> j = typeCounts.others.entrySet().iterator(); j.hasNext();) {
+						Map.Entry<Integer, int[]> other = j.next();
+						add(entry.getKey(), other.getKey().intValue(), -other.getValue()[0]);
+					}
+			}
+		}
+	}
+
+	private final MarkerTypeDefinitionCache cache;
+	private Node root = new Node();
+	/**
+	 * Whether the counts are known to be right. An index that missed a change
+	 * is not used any more.
+	 */
+	private boolean valid = true;
+
+	MarkerSeverityIndex(MarkerTypeDefinitionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Adds the given marker to the counts of the given container and of its
+	 * ancestors.
+	 */
+	synchronized void add(IPath container, MarkerInfo marker, int severity) {
+		update(container, marker.getType(), severity, 1);
+	}
+
+	/**
+	 * Adds the markers of the given subtree of the given tree to the counts.
+	 */
+	private void addSubtree(ElementTree tree, IPath path) {
+		IElementContentVisitor visitor = new IElementContentVisitor() {
+			public boolean visitElement(ElementTree elementTree, IPathRequestor requestor, Object elementContents) {
+				ResourceInfo info = (ResourceInfo) elementContents;
+				if (info == null)
+					return false;
+				MarkerSet markers = info.getMarkers(false);
+				if (markers != null) {
+					IPath resourcePath = requestor.requestPath();
+					IPath container = info.getType() == IResource.FILE ? resourcePath.removeLastSegments(1) : resourcePath;
+					IMarkerSetElement[] elements = markers.elements();
+					for (int i = 0; i < elements.length; i++) {
+						MarkerInfo marker = (MarkerInfo) elements[i];
+						update(container, marker.getType(), MarkerManager.getSeverity(marker), 1);
+					}
+				}
+				return true;
+			}
+		};
+		new ElementTreeIterator(tree, path).iterate(visitor);
+	}
+
+	/**
+	 * Changes the severity the given marker is counted with in the given
+	 * container and its ancestors.
+	 */
+	synchronized void changed(IPath container, MarkerInfo marker, int oldSeverity, int newSeverity) {
+		update(container, marker.getType(), oldSeverity, -1);
+		update(container, marker.getType(), newSeverity, 1);
+	}
+
+	/**
+	 * Returns the node of the given container, or <code>null</code> if there
+	 * are no markers in its subtree.
+	 */
+	private Node findNode(IPath container) {
+		Node node = root;
+		for (int i = 0, segmentCount = container.segmentCount(); i < segmentCount && node != null; i++)
+			node = node.children == null ? null : node.children.get(container.segment(i));
+		return node;
+	}
+
+	/**
+	 * Returns the maximum severity of the markers of the given type in the
+	 * subtree of the given container, or -1 if there are none. A
+	 * <code>null</code> type matches markers of all types. Unlike a search of
+	 * the subtree, which stops at the first error, the result is the maximum
+	 * even when markers have severities above error.
+	 */
+	synchronized int findMaxSeverity(IPath container, String type, boolean includeSubtypes) {
+		Node node = findNode(container);
+		if (node == null)
+			return -1;
+		if (type != null && !includeSubtypes) {
+			Counts typeCounts = node.counts.get(type);
+			return typeCounts == null ? -1 : typeCounts.max();
+		}
+		int max = -1;
+		for (Iterator<Map.Entry<String, Counts>> i = node.counts.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<String, Counts> entry = i.next();
+			if (type == null || cache.isSubtype(entry.getKey(), type))
+				max = Math.max(max, entry.getValue().max());
+		}
+		return max;
+	}
+
+	/**
+	 * Returns whether the counts can be used to answer queries.
+	 */
+	synchronized boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Removes the given marker from the counts of the given container and of
+	 * its ancestors.
+	 */
+	synchronized void remove(IPath container, MarkerInfo marker, int severity) {
+		update(container, marker.getType(), severity, -1);
+	}
+
+	/**
+	 * Counts the markers of the given subtree of the given tree again, after
+	 * they have been changed without telling this index. Counting all markers
+	 * again makes an index that missed a change usable again.
+	 */
+	synchronized void reset(ElementTree tree, IPath path) {
+		Node node = findNode(path);
+		if (path.isRoot()) {
+			root = new Node();
+			valid = true;
+		} else if (!valid)
+			return;
+		else if (node != null) {
+			//take the counts of the subtree out of its ancestors, and drop the
+			//topmost ancestor that is left without markers
+			Node parent = root;
+			for (int i = 0, segmentCount = path.segmentCount(); i < segmentCount; i++) {
+				parent.subtract(node);
+				Node child = parent.children.get(path.segment(i));
+				if (child.total == node.total) {
+					parent.children.remove(path.segment(i));
+					break;
+				}
+				parent = child;
+			}
+		}
+		addSubtree(tree, path);
+	}
+
+	/**
+	 * Adds the given amount to the counts of the given type and severity in
+	 * the given container and its ancestors, and drops the nodes that are
+	 * left without markers.
+	 */
+	private void update(IPath container, String type, int severity, int amount) {
+		if (severity < 0 || !valid)
+			return;
+		Node node = root;
+		Map<String, Node> siblings = null;
+		for (int i = 0, segmentCount = container.segmentCount();; i++) {
+			if (!node.add(type, severity, amount)) {
+				//a marker that was never counted is removed
+				valid = false;
+				root = new Node();
+				return;
+			}
+			if (node.total == 0 && siblings != null) {
+				//the whole subtree is left without markers
+				siblings.remove(container.segment(i - 1));
+				return;
+			}
+			if (i == segmentCount)
+				return;
+			if (node.children == null)
+				node.children = new HashMap<String, Node>(4);
+			siblings = node.children;
+			Node child = siblings.get(container.segment(i));
+			if (child == null)
+				siblings.put(container.segment(i), child = new Node());
+			node = child;
+		}
+	}
+}
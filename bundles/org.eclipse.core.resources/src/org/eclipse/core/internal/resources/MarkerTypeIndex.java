@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources;
+
+import java.util.*;
+import org.eclipse.core.internal.watson.*;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Records, for each marker type, the resources that have markers of that
+ * type, so that the markers of a type in a subtree are found without
+ * visiting the resources of the subtree.
+ * <p>
+ * The resources of a type are kept sorted by the string form of their path,
+ * in which the members of a subtree follow its root, so the resources of a
+ * subtree are a range of the keys.
+ * </p><p>
+ * The index is changed by the marker manager while it holds the workspace
+ * lock, and may be queried by any thread.
+ * </p>
+ */
+class MarkerTypeIndex {
+
+	/**
+	 * A resource that has markers of a type, and how many.
+	 */
+	private static class Entry {
+		final IPath path;
+		int count;
+
+		Entry(IPath path) {
+			this.path = path;
+		}
+	}
+
+	private final MarkerTypeDefinitionCache cache;
+	/**
+	 * The resources with markers, by marker type and by path.
+	 */
+	private final Map<String, TreeMap<String, Entry>> types = new HashMap<String, TreeMap<String, Entry>>();
+	/**
+	 * Whether the index is known to be right. An index that missed a change
+	 * is not used any more.
+	 */
+	private boolean valid = true;
+
+	MarkerTypeIndex(MarkerTypeDefinitionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Records a marker of the given type on the resource with the given path.
+	 */
+	synchronized void add(IPath path, String type) {
+		if (!valid)
+			return;
+		TreeMap<String, Entry> resources = types.get(type);
+		if (resources == null)
+			types.put(type, resources = new TreeMap<String, Entry>());
+		String key = path.toString();
+		Entry entry = resources.get(key);
+		if (entry == null)
+			resources.put(key, entry = new Entry(path));
+		entry.count++;
+	}
+
+	/**
+	 * Records the markers of the given subtree of the given tree.
+	 */
+	private void addSubtree(ElementTree tree, IPath path) {
+		IElementContentVisitor visitor = new IElementContentVisitor() {
+			public boolean visitElement(ElementTree elementTree, IPathRequestor requestor, Object elementContents) {
+				ResourceInfo info = (ResourceInfo) elementContents;
+				if (info == null)
+					return false;
+				MarkerSet markers = info.getMarkers(false);
+				if (markers != null) {
+					IPath resourcePath = requestor.requestPath();
+					IMarkerSetElement[] elements = markers.elements();
+					for (int i = 0; i < elements.length; i++)
+						add(resourcePath, ((MarkerInfo) elements[i]).getType());
+				}
+				return true;
+			}
+		};
+		new ElementTreeIterator(tree, path).iterate(visitor);
+	}
+
+	/**
+	 * Returns the paths of the resources in the subtree of the given path
+	 * that have markers of the given type. A <code>null</code> type matches
+	 * markers of all types.
+	 */
+	synchronized Collection<IPath> findPaths(IPath path, String type, boolean includeSubtypes) {
+		List<TreeMap<String, Entry>> matching = new ArrayList<TreeMap<String, Entry>>();
+		if (type != null && !includeSubtypes) {
+			TreeMap<String, Entry> resources = types.get(type);
+			if (resources != null)
+				matching.add(resources);
+		} else {
+			for (Iterator<Map.Entry<String, TreeMap<String, Entry>>> i = types.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<String, TreeMap<String, Entry>> entry = i.next();
+				if (type == null || cache.isSubtype(entry.getKey(), type))
+					matching.add(entry.getValue());
+			}
+		}
+		if (matching.isEmpty())
+			return Collections.emptyList();
+		//a resource with markers of several matching types is found once
+		Collection<IPath> result = matching.size() == 1 ? new ArrayList<IPath>() : new LinkedHashSet<IPath>();
+		String key = path.toString();
+		for (Iterator<TreeMap<String, Entry>> i = matching.iterator(); i.hasNext();) {
+			TreeMap<String, Entry> resources = i.next();
+			Entry entry = path.isRoot() ? null : resources.get(key);
+			if (entry != null)
+				result.add(entry.path);
+			for (Iterator<Entry> j = members(resources, path).values().iterator(); j.hasNext();)
+				result.add(j.next().path);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the index can be used to answer queries.
+	 */
+	synchronized boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Removes a marker of the given type from the resource with the given
+	 * path.
+	 */
+	synchronized void remove(IPath path, String type) {
+		if (!valid)
+			return;
+		TreeMap<String, Entry> resources = types.get(type);
+		String key = path.toString();
+		Entry entry = resources == null ? null : resources.get(key);
+		if (entry == null) {
+			//a marker that was never recorded is removed
+			valid = false;
+			types.clear();
+			return;
+		}
+		if (--entry.count > 0)
+			return;
+		resources.remove(key);
+		if (resources.isEmpty())
+			types.remove(type);
+	}
+
+	/**
+	 * Records the markers of the given subtree of the given tree again, after
+	 * they have been changed without telling this index. Recording all markers
+	 * again makes an index that missed a change usable again.
+	 */
+	synchronized void reset(ElementTree tree, IPath path) {
+		if (path.isRoot()) {
+			types.clear();
+			valid = true;
+		} else if (!valid)
+			return;
+		else {
+			String key = path.toString();
+			for (Iterator<TreeMap<String, Entry>> i = types.values().iterator(); i.hasNext();) {
+				TreeMap<String, Entry> resources = i.next();
+				resources.remove(key);
+				members(resources, path).clear();
+				if (resources.isEmpty())
+					i.remove();
+			}
+		}
+		addSubtree(tree, path);
+	}
+
+	/**
+	 * Returns a view of the entries of the given resources that are members
+	 * of the subtree of the given path.
+	 */
+	private SortedMap<String, Entry> members(TreeMap<String, Entry> resources, IPath path) {
+		if (path.isRoot())
+			return resources;
+		//the keys of the members start with the path and a separator, and
+		//'0' is the character after the separator
+		String key = path.toString();
+		return resources.subMap(key + '/', key + '0');
+	}
+}
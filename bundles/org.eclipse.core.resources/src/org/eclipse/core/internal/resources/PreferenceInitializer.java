@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2011 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,10 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 	// internal preference keys
 	public static final String PREF_OPERATIONS_PER_SNAPSHOT = "snapshots.operations"; //$NON-NLS-1$
 	public static final String PREF_DELTA_EXPIRATION = "delta.expiration";  //$NON-NLS-1$
+	public static final String PREF_MAX_DELTA_CHAIN_DEPTH = "trees.maxDeltaChainDepth"; //$NON-NLS-1$
+	public static final String PREF_MAX_CONCURRENT_BUILDS = "build.maxConcurrentBuilds"; //$NON-NLS-1$
+	public static final String PREF_REFRESH_FETCH_THREADS = "refresh.fetchThreads"; //$NON-NLS-1$
+	public static final String PREF_REFRESH_FETCH_FILE_TREE = "refresh.fetchFileTree"; //$NON-NLS-1$
 
 	// DEFAULTS
 	public static final boolean PREF_AUTO_REFRESH_DEFAULT = false;
@@ -39,6 +43,10 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 	public static final long PREF_MAX_FILE_STATE_SIZE_DEFAULT = 1024 * 1024l; // 1 MB
 	public static final int PREF_MAX_FILE_STATES_DEFAULT = 50;
 	public static final long PREF_DELTA_EXPIRATION_DEFAULT = 30 * 24 * 3600 * 1000l; // 30 days
+	public static final int PREF_MAX_DELTA_CHAIN_DEPTH_DEFAULT = 0; // no background compaction
+	public static final int PREF_MAX_CONCURRENT_BUILDS_DEFAULT = 1; // build one project at a time
+	public static final int PREF_REFRESH_FETCH_THREADS_DEFAULT = 0; // sequential refresh
+	public static final boolean PREF_REFRESH_FETCH_FILE_TREE_DEFAULT = false; // no up front walk of local trees
 
 	public PreferenceInitializer() {
 		super();
@@ -72,6 +80,12 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		node.putLong(ResourcesPlugin.PREF_SNAPSHOT_INTERVAL, PREF_SNAPSHOT_INTERVAL_DEFAULT);
 		node.putInt(PREF_OPERATIONS_PER_SNAPSHOT, PREF_OPERATIONS_PER_SNAPSHOT_DEFAULT);
 		node.putLong(PREF_DELTA_EXPIRATION, PREF_DELTA_EXPIRATION_DEFAULT);
+		node.putInt(PREF_MAX_DELTA_CHAIN_DEPTH, PREF_MAX_DELTA_CHAIN_DEPTH_DEFAULT);
+		node.putInt(PREF_MAX_CONCURRENT_BUILDS, PREF_MAX_CONCURRENT_BUILDS_DEFAULT);
+
+		// local refresh defaults
+		node.putInt(PREF_REFRESH_FETCH_THREADS, PREF_REFRESH_FETCH_THREADS_DEFAULT);
+		node.putBoolean(PREF_REFRESH_FETCH_FILE_TREE, PREF_REFRESH_FETCH_FILE_TREE_DEFAULT);
 
 		// encoding defaults
 		node.put(ResourcesPlugin.PREF_ENCODING, PREF_ENCODING_DEFAULT);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -75,6 +75,15 @@ public class ProjectDescription extends ModelObject implements IProjectDescripti
 	 */
 	protected HashMap<IPath,LinkedList<FilterDescription>> filterDescriptions = null;
 
+	/**
+	 * Map of (IPath -> FilterChain) pairs holding the compiled filters for the
+	 * children of each container with filters of its own that has been listed,
+	 * or that has a descendant that has been listed, where IPath is the project
+	 * relative path of the container. Not persisted, and discarded whenever
+	 * the filters of the project change.
+	 */
+	private HashMap<IPath, FilterChain> filterChains = null;
+
 	/**
 	 * Map of (String -> VariableDescription) pairs for each variable in this
 	 * project, where String is the name of the variable.
@@ -96,6 +105,7 @@ public class ProjectDescription extends ModelObject implements IProjectDescripti
 		//don't want the clone to have access to our internal link locations table or builders
 		clone.linkDescriptions = null;
 		clone.filterDescriptions = null;
+		clone.filterChains = null;
 		if (variableDescriptions != null)
 			clone.variableDescriptions =  (HashMap<String, VariableDescription>) variableDescriptions.clone();
 		clone.buildSpec = getBuildSpec(true);
@@ -342,6 +352,31 @@ public class ProjectDescription extends ModelObject implements IProjectDescripti
 		return filterDescriptions.get(aPath);
 	}
 
+	/**
+	 * Returns the compiled chain of filters that apply to the children of the
+	 * container with the given project relative path.
+	 */
+	synchronized FilterChain getFilterChain(IProject project, IPath aPath) {
+		if (filterDescriptions == null)
+			return FilterChain.EMPTY;
+		//a container without filters of its own gets the inherited chain of
+		//the nearest container that has some, so only those are cached
+		IPath filteredPath = aPath;
+		while (!filterDescriptions.containsKey(filteredPath)) {
+			if (filteredPath.segmentCount() == 0)
+				return FilterChain.EMPTY;
+			filteredPath = filteredPath.removeLastSegments(1);
+		}
+		if (filterChains == null)
+			filterChains = new HashMap<IPath, FilterChain>();
+		FilterChain chain = filterChains.get(filteredPath);
+		if (chain == null) {
+			chain = FilterChain.compile(project, this, filteredPath);
+			filterChains.put(filteredPath, chain);
+		}
+		return filteredPath == aPath ? chain : chain.getInheritedChain();
+	}
+
 	/**
 	 * Returns the map of link descriptions (IPath (project relative path) -> LinkDescription).
 	 * Since this method is only used internally, it never creates a copy.
@@ -658,8 +693,9 @@ public class ProjectDescription extends ModelObject implements IProjectDescripti
 	 * Since this method is only used internally, it never creates a copy. May
 	 * pass null if this project does not have any filtered resources
 	 */
-	public void setFilterDescriptions(HashMap<IPath,LinkedList<FilterDescription>> filterDescriptions) {
+	synchronized public void setFilterDescriptions(HashMap<IPath,LinkedList<FilterDescription>> filterDescriptions) {
 		this.filterDescriptions = filterDescriptions;
+		filterChains = null;
 	}
 
 	/**
@@ -716,6 +752,7 @@ public class ProjectDescription extends ModelObject implements IProjectDescripti
 	 */
 	synchronized public void addFilter(IPath path, FilterDescription description) {
 		Assert.isNotNull(description);
+		filterChains = null;
 		if (filterDescriptions == null)
 			filterDescriptions = new HashMap<IPath,LinkedList<FilterDescription>>(10);
 		LinkedList<FilterDescription> descList = filterDescriptions.get(path);
@@ -731,6 +768,7 @@ public class ProjectDescription extends ModelObject implements IProjectDescripti
 	 * remove the filter from the project description.
 	 */
 	synchronized public void removeFilter(IPath path, FilterDescription description) {
+		filterChains = null;
 		if (filterDescriptions != null) {
 			LinkedList<FilterDescription> descList = filterDescriptions.get(path);
 			if (descList != null) {
@@ -791,6 +829,7 @@ public class ProjectDescription extends ModelObject implements IProjectDescripti
 	 *     <code>false</code> otherwise.
 	 */
 	synchronized public boolean setFilters(IPath path, LinkedList<FilterDescription> descriptions) {
+		filterChains = null;
 		if (descriptions != null) {
 			// addition
 			if (filterDescriptions == null)
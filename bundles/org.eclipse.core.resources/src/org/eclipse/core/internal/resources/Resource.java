@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -732,6 +732,8 @@ public abstract class Resource extends PlatformObject implements IResource, ICor
 		final ISchedulingRule rule = workspace.getRuleFactory().markerRule(this);
 		try {
 			workspace.prepareOperation(rule, null);
+			//an operation in a working layer sees the project as it is now
+			workspace.claim(getFullPath());
 			checkAccessible(getFlags(getResourceInfo(false, false)));
 			workspace.beginOperation(true);
 			MarkerInfo info = new MarkerInfo();
@@ -2123,41 +2125,10 @@ public abstract class Resource extends PlatformObject implements IResource, ICor
 	}
 	
 	private IFileInfo[] filterChildren(Project project, ProjectDescription description, IFileInfo[] list, boolean throwException) throws CoreException {
-		IPath relativePath = getProjectRelativePath();
-		LinkedList<Filter> currentIncludeFilters = new LinkedList<Filter>();
-		LinkedList<Filter> currentExcludeFilters = new LinkedList<Filter>();
-		LinkedList<FilterDescription> filters = null;
-		
-		boolean firstSegment = true;
-		do {
-			if (!firstSegment)
-				relativePath = relativePath.removeLastSegments(1);
-			filters = description.getFilter(relativePath);
-			if (filters != null) {
-				for (Iterator<FilterDescription> it = filters.iterator(); it.hasNext();) {
-					FilterDescription desc = it.next();
-					if (firstSegment || desc.isInheritable()) {
-						Filter filter = new Filter(project, desc);
-						if (filter.isIncludeOnly()) {
-							if (filter.isFirst())
-								currentIncludeFilters.addFirst(filter);
-							else
-								currentIncludeFilters.addLast(filter);
-						} else {
-							if (filter.isFirst())
-								currentExcludeFilters.addFirst(filter);
-							else
-								currentExcludeFilters.addLast(filter);
-						}
-					}
-				}
-			}
-			firstSegment = false;
-		} while (relativePath.segmentCount() > 0);
-		
-		if ((currentIncludeFilters.size() > 0) || (currentExcludeFilters.size() > 0)) {
+		FilterChain chain = description.getFilterChain(project, getProjectRelativePath());
+		if (!chain.isEmpty()) {
 			try {
-				list = Filter.filter(project, currentIncludeFilters, currentExcludeFilters, (IContainer) this, list);
+				list = chain.filter((IContainer) this, list);
 			} catch (CoreException e) {
 				if (throwException)
 					throw e;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,6 +27,51 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	protected static final int LOWER = 0xFFFF;
 	protected static final int UPPER = 0xFFFF0000;
 
+	/**
+	 * The markers, session properties and sync info of a resource. Most
+	 * resources have none of these, so rather than reserving a field for each
+	 * of them in every info, they are kept in a separate object that is only
+	 * allocated while at least one of them is set.
+	 * <p>
+	 * Instances are never shared between infos; cloning an info also clones
+	 * its extras, so that changing them on one version of the workspace tree
+	 * does not affect older versions.
+	 */
+	protected static class Extras implements Cloneable {
+		/** The collection of markers for this resource. */
+		MarkerSet markers;
+
+		/** 
+		 * The properties which are maintained for the lifecycle of the workspace.
+		 * <p>
+		 * This field is declared as the implementing class rather than the
+		 * interface so we ensure that we get it right since we are making certain
+		 * assumptions about the object type w.r.t. casting.
+		 */
+		ObjectMap<QualifiedName, Object> sessionProperties;
+
+		/** 
+		 * The table of sync information. 
+		 * <p>
+		 * This field is declared as the implementing class rather than the
+		 * interface so we ensure that we get it right since we are making certain
+		 * assumptions about the object type w.r.t. casting.
+		 */
+		ObjectMap<QualifiedName, Object> syncInfo;
+
+		protected Object clone() {
+			try {
+				return super.clone();
+			} catch (CloneNotSupportedException e) {
+				return null; // never gets here.
+			}
+		}
+
+		boolean isEmpty() {
+			return markers == null && sessionProperties == null && syncInfo == null;
+		}
+	}
+
 	/** 
 	 * This field stores the resource modification stamp in the lower two bytes,
 	 * and the character set generation count in the higher two bytes.
@@ -51,8 +96,12 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	 */
 	protected volatile int markerAndSyncStamp;
 
-	/** The collection of markers for this resource. */
-	protected MarkerSet markers = null;
+	/**
+	 * The markers, session properties and sync info of this resource, or
+	 * <code>null</code> if there are none.
+	 */
+	// thread safety: only replaced and modified in synchronized methods
+	protected volatile Extras extras = null;
 
 	/** Modification stamp */
 	protected long modStamp = 0;
@@ -61,24 +110,6 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	// thread safety: (Concurrency004)
 	protected volatile long nodeId = 0;
 
-	/** 
-	 * The properties which are maintained for the lifecycle of the workspace.
-	 * <p>
-	 * This field is declared as the implementing class rather than the
-	 * interface so we ensure that we get it right since we are making certain
-	 * assumptions about the object type w.r.t. casting.
-	 */
-	protected ObjectMap<QualifiedName,Object> sessionProperties = null;
-
-	/** 
-	 * The table of sync information. 
-	 * <p>
-	 * This field is declared as the implementing class rather than the
-	 * interface so we ensure that we get it right since we are making certain
-	 * assumptions about the object type w.r.t. casting.
-	 */
-	protected ObjectMap<QualifiedName, Object> syncInfo = null;
-
 	/** 
 	 * Returns the integer value stored in the indicated part of this info's flags.
 	 */
@@ -113,17 +144,38 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	}
 
 	public synchronized void clearSessionProperties() {
-		sessionProperties = null;
+		Extras temp = extras;
+		if (temp == null)
+			return;
+		temp.sessionProperties = null;
+		releaseExtras(temp);
 	}
 
 	public Object clone() {
 		try {
-			return super.clone();
+			ResourceInfo copy = (ResourceInfo) super.clone();
+			synchronized (this) {
+				Extras temp = extras;
+				if (temp != null)
+					copy.extras = (Extras) temp.clone();
+			}
+			return copy;
 		} catch (CloneNotSupportedException e) {
 			return null; // never gets here.
 		}
 	}
 
+	/**
+	 * Returns the extras of this info, allocating them if necessary.
+	 * Must only be called from synchronized methods.
+	 */
+	private Extras getOrCreateExtras() {
+		Extras temp = extras;
+		if (temp == null)
+			extras = temp = new Extras();
+		return temp;
+	}
+
 	public int getCharsetGenerationCount() {
 		return charsetAndContentId >> 16;
 	}
@@ -171,6 +223,8 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	 * <code>null</code> is returned if there are none.
 	 */
 	public MarkerSet getMarkers(boolean makeCopy) {
+		Extras temp = extras;
+		MarkerSet markers = temp == null ? null : temp.markers;
 		if (markers == null)
 			return null;
 		return makeCopy ? (MarkerSet) markers.clone() : markers;
@@ -198,11 +252,12 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	@SuppressWarnings("unchecked")
 	public Map<QualifiedName,Object> getSessionProperties() {
 		// thread safety: (Concurrency001)
-		ObjectMap<QualifiedName,Object> temp = sessionProperties;
+		Extras current = extras;
+		ObjectMap<QualifiedName, Object> temp = current == null ? null : current.sessionProperties;
 		if (temp == null)
 			temp = new ObjectMap<QualifiedName, Object>(5);
 		else
-			temp = (ObjectMap<QualifiedName, Object>) sessionProperties.clone();
+			temp = (ObjectMap<QualifiedName, Object>) temp.clone();
 		return temp;
 	}
 	
@@ -211,7 +266,8 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	 */
 	public Object getSessionProperty(QualifiedName name) {
 		// thread safety: (Concurrency001)
-		Map<QualifiedName, Object> temp = sessionProperties;
+		Extras current = extras;
+		Map<QualifiedName, Object> temp = current == null ? null : current.sessionProperties;
 		if (temp == null)
 			return null;
 		return temp.get(name);
@@ -224,6 +280,7 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	 */
 	@SuppressWarnings("unchecked")
 	public synchronized ObjectMap<QualifiedName, Object> getSyncInfo(boolean makeCopy) {
+		ObjectMap<QualifiedName, Object> syncInfo = extras == null ? null : extras.syncInfo;
 		if (syncInfo == null)
 			return null;
 		return makeCopy ? (ObjectMap<QualifiedName, Object>) syncInfo.clone() : syncInfo;
@@ -232,6 +289,7 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	public synchronized byte[] getSyncInfo(QualifiedName id, boolean makeCopy) {
 		// thread safety: (Concurrency001)
 		byte[] b;
+		ObjectMap<QualifiedName, Object> syncInfo = extras == null ? null : extras.syncInfo;
 		if (syncInfo == null)
 			return null;
 		b = (byte[]) syncInfo.get(id);
@@ -305,6 +363,15 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 		return (flags & mask) == mask;
 	}
 
+	/**
+	 * Drops the given extras if none of their fields are set any more.
+	 * Must only be called from synchronized methods.
+	 */
+	private void releaseExtras(Extras temp) {
+		if (temp.isEmpty() && extras == temp)
+			extras = null;
+	}
+
 	public void readFrom(int newFlags, DataInput input) throws IOException {
 		// The flags for this info are read by the visitor (flattener). 
 		// See Workspace.readElement().  This allows the reader to look ahead 
@@ -358,8 +425,16 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	 * Sets the collection of makers for this resource.
 	 * <code>null</code> is passed in if there are no markers.
 	 */
-	public void setMarkers(MarkerSet value) {
-		markers = value;
+	public synchronized void setMarkers(MarkerSet value) {
+		if (value == null) {
+			Extras temp = extras;
+			if (temp == null)
+				return;
+			temp.markers = null;
+			releaseExtras(temp);
+		} else {
+			getOrCreateExtras().markers = value;
+		}
 	}
 
 	/**
@@ -394,15 +469,18 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	@SuppressWarnings("unchecked")
 	public synchronized void setSessionProperty(QualifiedName name, Object value) {
 		// thread safety: (Concurrency001)
+		Extras current = extras;
+		ObjectMap<QualifiedName, Object> sessionProperties = current == null ? null : current.sessionProperties;
 		if (value == null) {
 			if (sessionProperties == null)
 				return;
 			ObjectMap<QualifiedName, Object> temp = (ObjectMap<QualifiedName, Object>) sessionProperties.clone();
 			temp.remove(name);
-			if (temp.isEmpty())
-				sessionProperties = null;
-			else
-				sessionProperties = temp;
+			if (temp.isEmpty()) {
+				current.sessionProperties = null;
+				releaseExtras(current);
+			} else
+				current.sessionProperties = temp;
 		} else {
 			ObjectMap<QualifiedName, Object> temp = sessionProperties;
 			if (temp == null)
@@ -410,7 +488,7 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 			else
 				temp = (ObjectMap<QualifiedName, Object>) sessionProperties.clone();
 			temp.put(name, value);
-			sessionProperties = temp;
+			getOrCreateExtras().sessionProperties = temp;
 		}
 	}
 
@@ -419,22 +497,34 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	 * interface so we ensure that we get it right since we are making certain
 	 * assumptions about the object type w.r.t. casting.
 	 */
-	protected void setSyncInfo(ObjectMap<QualifiedName, Object> syncInfo) {
-		this.syncInfo = syncInfo;
+	protected synchronized void setSyncInfo(ObjectMap<QualifiedName, Object> syncInfo) {
+		if (syncInfo == null) {
+			Extras temp = extras;
+			if (temp == null)
+				return;
+			temp.syncInfo = null;
+			releaseExtras(temp);
+		} else {
+			getOrCreateExtras().syncInfo = syncInfo;
+		}
 	}
 
 	public synchronized void setSyncInfo(QualifiedName id, byte[] value) {
+		Extras temp = extras;
+		ObjectMap<QualifiedName, Object> syncInfo = temp == null ? null : temp.syncInfo;
 		if (value == null) {
 			//delete sync info
 			if (syncInfo == null)
 				return;
 			syncInfo.remove(id);
-			if (syncInfo.isEmpty())
-				syncInfo = null;
+			if (syncInfo.isEmpty()) {
+				temp.syncInfo = null;
+				releaseExtras(temp);
+			}
 		} else {
 			//add sync info
 			if (syncInfo == null)
-				syncInfo = new ObjectMap<QualifiedName, Object>(5);
+				getOrCreateExtras().syncInfo = syncInfo = new ObjectMap<QualifiedName, Object>(5);
 			syncInfo.put(id, value.clone());
 		}
 	}
@@ -451,13 +541,16 @@ public class ResourceInfo implements IElementTreeData, ICoreConstants, IStringPo
 	 * Method declared on IStringPoolParticipant
 	 */
 	public void shareStrings(StringPool set) {
-		ObjectMap<QualifiedName, Object> map = syncInfo;
+		Extras temp = extras;
+		if (temp == null)
+			return;
+		ObjectMap<QualifiedName, Object> map = temp.syncInfo;
 		if (map != null)
 			map.shareStrings(set);
-		map = sessionProperties;
+		map = temp.sessionProperties;
 		if (map != null)
 			map.shareStrings(set);
-		MarkerSet markerSet = markers;
+		MarkerSet markerSet = temp.markers;
 		if (markerSet != null)
 			markerSet.shareStrings(set);
 	}
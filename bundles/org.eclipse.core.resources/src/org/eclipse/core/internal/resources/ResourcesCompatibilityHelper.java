@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2006 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,7 @@ import org.eclipse.core.internal.localstore.HistoryStore2;
 import org.eclipse.core.internal.localstore.IHistoryStore;
 import org.eclipse.core.internal.properties.IPropertyManager;
 import org.eclipse.core.internal.properties.PropertyManager2;
+import org.eclipse.core.internal.properties.PropertyManager3;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
 
@@ -33,6 +34,7 @@ public class ResourcesCompatibilityHelper {
 	private static final String CONVERT_PROPERTY_STORE = ResourcesPlugin.PI_RESOURCES + ".convertProperties"; //$NON-NLS-1$		
 	private static final String ENABLE_NEW_HISTORY_STORE = ResourcesPlugin.PI_RESOURCES + ".newHistory"; //$NON-NLS-1$
 	private static final String ENABLE_NEW_PROPERTY_STORE = ResourcesPlugin.PI_RESOURCES + ".newProperties"; //$NON-NLS-1$	
+	private static final String ENABLE_PROPERTY_LOG = ResourcesPlugin.PI_RESOURCES + ".propertyLog"; //$NON-NLS-1$
 
 	/**
 	 * Creates a history store. Decides which implementation of history store should be chosen, and whether
@@ -84,6 +86,9 @@ public class ResourcesCompatibilityHelper {
 	 * conversion from the existing state should be performed by looking at some system properties. 
 	 */
 	public static IPropertyManager createPropertyManager() {
+		// the single file property store is only used when asked for
+		if (Boolean.TRUE.toString().equalsIgnoreCase(System.getProperty(ENABLE_PROPERTY_LOG)))
+			return new PropertyManager3((Workspace) ResourcesPlugin.getWorkspace());
 		// the default is to use new implementation		
 		boolean newImpl = !Boolean.FALSE.toString().equalsIgnoreCase(System.getProperty(ENABLE_NEW_PROPERTY_STORE));
 		// the default is to convert existing state to the new implementation
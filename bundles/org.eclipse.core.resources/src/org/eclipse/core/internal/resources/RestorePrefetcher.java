@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources;
+
+import java.io.*;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.URIUtil;
+import org.eclipse.core.internal.localstore.SafeChunkyInputStream;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Reads the files of the projects of a workspace that is being restored on a
+ * pool of worker threads, ahead of the thread that restores the workspace.
+ * <p>
+ * Workers only read the contents of files into memory. The contents are
+ * parsed and applied to the workspace tree by the restoring thread, in the
+ * same order and by the same code as when the files are read directly, so
+ * the restored state does not depend on whether files were read ahead. A file
+ * that could not be read ahead is read again by the restoring thread, which
+ * reports the problem as usual.
+ * </p><p>
+ * The contents that were read and not yet taken are limited to a number of
+ * bytes. Files that do not fit are not read ahead, rather than waiting for
+ * room, since the room may only be made by the restoring thread once it has
+ * taken the contents of such a file.
+ * </p>
+ */
+class RestorePrefetcher {
+	/**
+	 * The maximum number of bytes that are read ahead and not yet taken.
+	 */
+	private static final long MAX_PREFETCHED_BYTES = 32 * 1024 * 1024;
+
+	/**
+	 * The number of bytes that may still be read ahead.
+	 */
+	private final AtomicLong available = new AtomicLong(MAX_PREFETCHED_BYTES);
+	private final ExecutorService executor;
+	/**
+	 * The contents that were read and have not yet been taken.
+	 */
+	private final Map<java.io.File, byte[]> ready = new HashMap<java.io.File, byte[]>();
+	/**
+	 * The pending reads, keyed by the file that is first needed from them.
+	 */
+	private final Map<java.io.File, Future<Map<java.io.File, byte[]>>> tasks = new HashMap<java.io.File, Future<Map<java.io.File, byte[]>>>();
+
+	RestorePrefetcher() {
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Workspace restore"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns the contents of the given file, or of the given backup file if
+	 * the file does not exist, or <code>null</code> if neither exists or the
+	 * contents do not fit in the bytes that may still be read ahead.
+	 */
+	byte[] read(java.io.File file, java.io.File backup) throws IOException {
+		if (!file.exists()) {
+			if (backup == null || !backup.exists())
+				return null;
+			file = backup;
+		}
+		long length = file.length();
+		if (!reserve(length))
+			return null;
+		byte[] contents = null;
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1)
+					out.write(buffer, 0, read);
+				contents = out.toByteArray();
+			} finally {
+				in.close();
+			}
+		} finally {
+			// the file may have changed size since it was reserved for
+			available.addAndGet(length - (contents == null ? 0 : contents.length));
+		}
+		return contents;
+	}
+
+	/**
+	 * Takes the given number of bytes from those that may still be read
+	 * ahead, and returns <code>false</code> if there are not enough.
+	 */
+	private boolean reserve(long length) {
+		while (true) {
+			long current = available.get();
+			if (current < length)
+				return false;
+			if (available.compareAndSet(current, current - length))
+				return true;
+		}
+	}
+
+	/**
+	 * Reads the given file, or the given backup file if the file does not exist.
+	 * The contents are taken with the name of the file.
+	 */
+	synchronized void prefetch(final java.io.File file, final java.io.File backup) {
+		tasks.put(file, executor.submit(new Callable<Map<java.io.File, byte[]>>() {
+			public Map<java.io.File, byte[]> call() throws IOException {
+				Map<java.io.File, byte[]> result = new HashMap<java.io.File, byte[]>(2);
+				byte[] contents = read(file, backup);
+				if (contents != null)
+					result.put(file, contents);
+				return result;
+			}
+		}));
+	}
+
+	/**
+	 * Reads the private location file of a project and, if the project is
+	 * open, the project description file in the location it names. Both are
+	 * taken once the location file is taken.
+	 */
+	synchronized void prefetchDescription(final java.io.File locationFile, final java.io.File locationBackup, final boolean open, final IPath defaultLocation) {
+		tasks.put(locationFile, executor.submit(new Callable<Map<java.io.File, byte[]>>() {
+			public Map<java.io.File, byte[]> call() throws Exception {
+				Map<java.io.File, byte[]> result = new HashMap<java.io.File, byte[]>(2);
+				URI location = null;
+				try {
+					byte[] contents = read(locationFile, locationBackup);
+					if (contents != null) {
+						result.put(locationFile, contents);
+						DataInputStream in = new DataInputStream(new SafeChunkyInputStream(new ByteArrayInputStream(contents)));
+						location = LocalMetaArea.toLocationURI(in.readUTF());
+					}
+				} catch (Exception e) {
+					// the restoring thread reads the file again and reports the problem
+				}
+				if (!open)
+					return result;
+				if (location == null)
+					location = URIUtil.toURI(defaultLocation);
+				java.io.File descriptionFile = EFS.getStore(location).getChild(IProjectDescription.DESCRIPTION_FILE_NAME).toLocalFile(EFS.NONE, null);
+				if (descriptionFile != null) {
+					byte[] contents = read(descriptionFile, null);
+					if (contents != null)
+						result.put(descriptionFile, contents);
+				}
+				return result;
+			}
+		}));
+	}
+
+	/**
+	 * Stops reading ahead, and discards the contents that were not taken.
+	 */
+	synchronized void shutdown() {
+		executor.shutdownNow();
+		tasks.clear();
+		ready.clear();
+	}
+
+	/**
+	 * Returns a stream on the contents of the given file if they were read
+	 * ahead, waiting for them to be read if needed, and <code>null</code>
+	 * otherwise. Contents can only be taken once.
+	 */
+	synchronized InputStream take(java.io.File file) {
+		Future<Map<java.io.File, byte[]>> task = tasks.remove(file);
+		if (task != null) {
+			try {
+				ready.putAll(task.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// the restoring thread reads the file itself
+			}
+		}
+		byte[] contents = ready.remove(file);
+		if (contents == null)
+			return null;
+		available.addAndGet(contents.length);
+		return new ByteArrayInputStream(contents);
+	}
+}
@@ -65,18 +65,56 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 	 */
 	private static final long MIN_SNAPSHOT_DELAY = 1000 * 30L; //30 seconds
 
+	/**
+	 * The maximum number of segments in the workspace snapshot file. The next
+	 * snapshot replaces them with a single segment.
+	 */
+	private static final int MAX_SNAP_SEGMENTS = 16;
+
 	/**
 	 * The number of empty operations that are equivalent to a single non-
 	 * trivial operation.
 	 */
 	protected static final int NO_OP_THRESHOLD = 20;
 
+	/**
+	 * The system property that enables reading the files of the projects
+	 * on several threads when the workspace is restored.
+	 */
+	private static final String PARALLEL_RESTORE = ResourcesPlugin.PI_RESOURCES + ".parallelRestore"; //$NON-NLS-1$
+
+	/**
+	 * The system property that sets the compression level of refresh
+	 * snapshots, from 0 to 9. Lower levels are faster but make larger snapshots.
+	 */
+	private static final String REFRESH_SNAPSHOT_LEVEL = ResourcesPlugin.PI_RESOURCES + ".refreshSnapshotLevel"; //$NON-NLS-1$
+
+	/**
+	 * The name of the zip entry that holds the tree of a refresh snapshot.
+	 */
+	private static final String REFRESH_SNAPSHOT_ENTRY = "resource-index.tree"; //$NON-NLS-1$
+
+	/**
+	 * The suffix of the file a refresh snapshot is written to before it
+	 * replaces the previous snapshot.
+	 */
+	private static final String REFRESH_SNAPSHOT_TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
 	/** constants */
 	protected static final int PREPARE_TO_SAVE = 1;
 	protected static final int ROLLBACK = 4;
 	protected static final String SAVE_NUMBER_PREFIX = "saveNumber_"; //$NON-NLS-1$
 	protected static final int SAVING = 2;
 	protected ElementTree lastSnap;
+	/**
+	 * The tree that the segments of the workspace snapshot file apply to,
+	 * which is the tree that was last saved or restored.
+	 */
+	protected ElementTree snapBase;
+	/**
+	 * The number of segments in the workspace snapshot file.
+	 */
+	private int snapSegments = 0;
 	protected MasterTable masterTable;
 
 	/**
@@ -95,6 +133,12 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 	 */
 	protected int operationCount = 0;
 
+	/**
+	 * Reads the files of the projects ahead of a parallel workspace restore,
+	 * or <code>null</code> when no such restore is running.
+	 */
+	private volatile RestorePrefetcher prefetcher;
+
 	// Count up the time taken for all saves/snaps on markers and sync info
 	protected long persistMarkers = 0l;
 	protected long persistSyncInfo = 0l;
@@ -117,6 +161,11 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 
 	protected final DelayedSnapshotJob snapshotJob;
 
+	/**
+	 * Background job that shortens the delta chain of the workspace tree.
+	 */
+	protected final DeltaChainCompactionJob compactionJob;
+
 	protected boolean snapshotRequested;
 	protected Workspace workspace;
 	//declare debug messages as fields to get sharing
@@ -129,6 +178,7 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 	public SaveManager(Workspace workspace) {
 		this.workspace = workspace;
 		this.snapshotJob = new DelayedSnapshotJob(this);
+		this.compactionJob = new DeltaChainCompactionJob(workspace, this);
 		snapshotRequested = false;
 		saveParticipants = Collections.synchronizedMap(new HashMap<String, ISaveParticipant>(10));
 	}
@@ -262,8 +312,6 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 	 * and removes references to any other trees.
 	 */
 	protected void collapseTrees(Map<String, SaveContext> contexts) throws CoreException {
-		//collect trees we're interested in
-		
 		//forget saved trees, if they are not used by registered participants
 		synchronized (savedStates) {
 			for (Iterator<SaveContext> i = contexts.values().iterator(); i.hasNext();) {
@@ -271,7 +319,57 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 				forgetSavedTree(context.getPluginId());
 			}
 		}
+		collapseTrees();
+	}
+
+	/**
+	 * Collapses the current workspace tree and the trees still referenced by
+	 * saved states and builders onto each other, so that the delta chain of
+	 * each of them only contains the layers that separate it from the next
+	 * older interesting tree. Returns <code>false</code> if there were no
+	 * such trees or they could not be ordered, and nothing was collapsed.
+	 * Trees that are not collapsed, such as those held by listeners, remain
+	 * valid since collapsing only rewrites the collapsed tree itself.
+	 */
+	protected boolean collapseTrees() throws CoreException {
+		return collapseTrees(getInterestingTrees());
+	}
+
+	/**
+	 * Collapses the current workspace tree and the given trees onto each
+	 * other. Returns <code>false</code> if there were no trees or they could
+	 * not be ordered, and nothing was collapsed.
+	 */
+	private boolean collapseTrees(List<ElementTree> trees) {
+		//no need to collapse if there are no trees at this point
+		if (trees.isEmpty())
+			return false;
+
+		//the complete tree
+		trees.add(workspace.getElementTree());
+
+		//collapse the trees
+		//sort trees in topological order, and set the parent of each
+		//tree to its parent in the topological ordering.
+		ElementTree[] treeArray = new ElementTree[trees.size()];
+		trees.toArray(treeArray);
+		ElementTree[] sorted = sortTrees(treeArray);
+		// if there was a problem sorting the tree, bail on trying to collapse.  
+		// We will be able to GC the layers at a later time.
+		if (sorted == null)
+			return false;
+		for (int i = 1; i < sorted.length; i++)
+			sorted[i].collapseTo(sorted[i - 1]);
+		//cached build deltas still refer to trees that may only be kept by the cache
+		workspace.getBuildManager().pruneDeltaCaches();
+		return true;
+	}
 
+	/**
+	 * Returns the trees still referenced by saved states and builders, and the
+	 * tree that the snapshot segments apply to.
+	 */
+	private List<ElementTree> getInterestingTrees() throws CoreException {
 		//trees for plugin saved states
 		ArrayList<ElementTree> trees = new ArrayList<ElementTree>();
 		synchronized (savedStates) {
@@ -298,25 +396,57 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 			}
 		}
 
-		//no need to collapse if there are no trees at this point
-		if (trees.isEmpty())
-			return;
-
-		//the complete tree
-		trees.add(workspace.getElementTree());
+		//the tree that the snapshot segments apply to
+		if (snapBase != null)
+			trees.add(snapBase);
+		return trees;
+	}
 
-		//collapse the trees
-		//sort trees in topological order, and set the parent of each
-		//tree to its parent in the topological ordering.
-		ElementTree[] treeArray = new ElementTree[trees.size()];
-		trees.toArray(treeArray);
-		ElementTree[] sorted = sortTrees(treeArray);
-		// if there was a problem sorting the tree, bail on trying to collapse.  
-		// We will be able to GC the layers at a later time.
-		if (sorted == null)
+	/**
+	 * Shortens the delta chain of the current workspace tree so that element
+	 * lookups do not have to walk through a long stack of delta layers.
+	 * The trees we are still interested in are collapsed as they would be
+	 * during a save. Unlike a save, the workspace keeps computing deltas
+	 * against the last snapshot and the last notified trees afterwards, so
+	 * those stay in the chain too, and the deltas against them are still
+	 * computed from the layers that follow them. Only the trees in the delta
+	 * chain of the current tree are kept, along with the complete tree at the
+	 * bottom of the chain.
+	 * This must be called from within a workspace operation.
+	 */
+	protected void compactTrees() throws CoreException {
+		ElementTree current = workspace.getElementTree();
+		if (!current.isImmutable())
 			return;
-		for (int i = 1; i < sorted.length; i++)
-			sorted[i].collapseTo(sorted[i - 1]);
+		int depth = current.getDeltaDepth();
+		if (depth <= 2)
+			return;
+		long start = System.currentTimeMillis();
+		if (ResourceStats.TRACE_COMPACTION)
+			ResourceStats.startCompaction(depth);
+		try {
+			List<ElementTree> trees = getInterestingTrees();
+			//the trees the next snapshot and the next notifications are computed against
+			if (lastSnap != null)
+				trees.add(lastSnap);
+			workspace.getNotificationManager().addDeltaTrees(trees);
+			//trees frozen before the root of the chain was last rerooted, such as
+			//an older snapshot, lead to that root and cannot be sorted with the chain
+			Set<ElementTree> chain = new HashSet<ElementTree>();
+			ElementTree oldest = current;
+			for (ElementTree tree = current; tree != null; tree = tree.getParent()) {
+				chain.add(tree);
+				oldest = tree;
+			}
+			trees.retainAll(chain);
+			trees.add(oldest);
+			collapseTrees(trees);
+		} finally {
+			if (ResourceStats.TRACE_COMPACTION)
+				ResourceStats.endCompaction();
+		}
+		if (Policy.DEBUG_SAVE_TREE)
+			System.out.println("Compacted workspace tree from depth " + depth + " to " + current.getDeltaDepth() + ": " + (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 	}
 
 	protected void commit(Map<String, SaveContext> contexts) throws CoreException {
@@ -410,6 +540,14 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		}
 	}
 
+	/**
+	 * Returns the file that the segments of the given snapshot file are
+	 * consolidated into before it replaces them.
+	 */
+	private java.io.File getConsolidatedSnapshotFile(java.io.File snapshotFile) {
+		return new java.io.File(snapshotFile.getPath() + ".new"); //$NON-NLS-1$
+	}
+
 	/**
 	 * Used in the policy for cleaning up tree's of plug-ins that are not often activated.
 	 */
@@ -422,6 +560,16 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		return masterTable;
 	}
 
+	/**
+	 * Returns the compression level of refresh snapshots.
+	 */
+	private int getRefreshSnapshotLevel() {
+		Integer level = Integer.getInteger(REFRESH_SNAPSHOT_LEVEL);
+		if (level == null || level.intValue() < Deflater.NO_COMPRESSION || level.intValue() > Deflater.BEST_COMPRESSION)
+			return Deflater.BEST_COMPRESSION;
+		return level.intValue();
+	}
+
 	public int getSaveNumber(String pluginId) {
 		String value = masterTable.getProperty(SAVE_NUMBER_PREFIX + pluginId);
 		return (value == null) ? 0 : new Integer(value).intValue();
@@ -490,11 +638,14 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		// otherwise ensuing snapshot deltas may be based on an incorrect tree (see bug 12575)
 		lastSnap = workspace.getElementTree();
 		lastSnap.immutable();
+		snapBase = lastSnap;
+		snapSegments = 0;
 		workspace.newWorkingTree();
 		operationCount = 0;
 		// delete the snapshot file, if any
 		IPath snapPath = workspace.getMetaArea().getSnapshotLocationFor(workspace.getRoot());
 		java.io.File file = snapPath.toFile();
+		getConsolidatedSnapshotFile(file).delete();
 		if (file.exists())
 			file.delete();
 		if (file.exists()) {
@@ -672,6 +823,9 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		if (Policy.DEBUG_RESTORE)
 			System.out.println("Restore workspace: starting..."); //$NON-NLS-1$
 		long start = System.currentTimeMillis();
+		boolean parallel = Boolean.getBoolean(PARALLEL_RESTORE);
+		if (ResourceStats.TRACE_RESTORE)
+			ResourceStats.startRestore(parallel);
 		monitor = Policy.monitorFor(monitor);
 		try {
 			monitor.beginTask("", 50); //$NON-NLS-1$
@@ -687,20 +841,26 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 				restoreTree(Policy.subMonitorFor(monitor, 10));
 				restoreSnapshots(Policy.subMonitorFor(monitor, 10));
 
-				// tolerate failure for non-critical information
-				// if startup fails, the entire workspace is shot
+				if (parallel)
+					startPrefetching();
 				try {
-					restoreMarkers(workspace.getRoot(), false, Policy.subMonitorFor(monitor, 10));
-				} catch (CoreException e) {
-					problems.merge(e.getStatus());
-				}
-				try {
-					restoreSyncInfo(workspace.getRoot(), Policy.subMonitorFor(monitor, 10));
-				} catch (CoreException e) {
-					problems.merge(e.getStatus());
+					// tolerate failure for non-critical information
+					// if startup fails, the entire workspace is shot
+					try {
+						restoreMarkers(workspace.getRoot(), false, Policy.subMonitorFor(monitor, 10));
+					} catch (CoreException e) {
+						problems.merge(e.getStatus());
+					}
+					try {
+						restoreSyncInfo(workspace.getRoot(), Policy.subMonitorFor(monitor, 10));
+					} catch (CoreException e) {
+						problems.merge(e.getStatus());
+					}
+					// restore meta info last because it might close a project if its description is not readable
+					restoreMetaInfo(problems, Policy.subMonitorFor(monitor, 10));
+				} finally {
+					stopPrefetching();
 				}
-				// restore meta info last because it might close a project if its description is not readable
-				restoreMetaInfo(problems, Policy.subMonitorFor(monitor, 10));
 				IProject[] roots = workspace.getRoot().getProjects(IContainer.INCLUDE_HIDDEN);
 				for (int i = 0; i < roots.length; i++)
 					((Project) roots[i]).startup();
@@ -711,6 +871,8 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 			}
 		} finally {
 			monitor.done();
+			if (ResourceStats.TRACE_RESTORE)
+				ResourceStats.endRestore();
 		}
 		if (Policy.DEBUG_RESTORE)
 			System.out.println("Restore workspace: " + (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
@@ -916,6 +1078,11 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 			IPath snapLocation = workspace.getMetaArea().getSnapshotLocationFor(workspace.getRoot());
 			java.io.File localFile = snapLocation.toFile();
 
+			// a crash may have happened while the snapshot segments were being consolidated
+			java.io.File consolidatedFile = getConsolidatedSnapshotFile(localFile);
+			if (consolidatedFile.exists() && !localFile.exists())
+				consolidatedFile.renameTo(localFile);
+
 			// If the snapshot file doesn't exist, there was no crash. 
 			// Just initialize the snapshot file and return.
 			if (!localFile.exists()) {
@@ -928,6 +1095,11 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 				/* Read each of the snapshots and lay them on top of the current tree.*/
 				ElementTree complete = workspace.getElementTree();
 				complete.immutable();
+				// new snapshots are appended to the replayed segments, until they are consolidated
+				snapBase = complete;
+				snapSegments = MAX_SNAP_SEGMENTS;
+				long replayStart = System.currentTimeMillis();
+				long snapshotSize = localFile.length();
 				DataInputStream input = new DataInputStream(new SafeChunkyInputStream(localFile));
 				try {
 					WorkspaceTreeReader reader = WorkspaceTreeReader.getReader(workspace, input.readInt());
@@ -940,6 +1112,8 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 					complete = complete.newEmptyDelta();
 					workspace.tree = complete;
 				}
+				if (ResourceStats.TRACE_SNAPSHOT_TREE)
+					ResourceStats.snapshotReplayed(System.currentTimeMillis() - replayStart, snapshotSize);
 			} catch (Exception e) {
 				// only log the exception, we should not fail restoring the snapshot
 				message = Messages.resources_snapRead;
@@ -1062,13 +1236,13 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		try {
 			monitor.beginTask("", Policy.totalWork); //$NON-NLS-1$
 			InputStream snapIn = new FileInputStream(snapshotFile);
-			ZipInputStream zip = new ZipInputStream(snapIn);
+			ZipInputStream zip = new ZipInputStream(new BufferedInputStream(snapIn, TREE_BUFFER_SIZE));
 			ZipEntry treeEntry = zip.getNextEntry();
-			if (treeEntry == null || !treeEntry.getName().equals("resource-index.tree")) { //$NON-NLS-1$
+			if (treeEntry == null || !treeEntry.getName().equals(REFRESH_SNAPSHOT_ENTRY)) {
 				zip.close();
 				return false;
 			}
-			DataInputStream input = new DataInputStream(zip);
+			DataInputStream input = new DataInputStream(new BufferedInputStream(zip, TREE_BUFFER_SIZE));
 			try {
 				WorkspaceTreeReader reader = WorkspaceTreeReader.getReader(workspace, input.readInt(), true);
 				reader.readTree(project, input, Policy.subMonitorFor(monitor, Policy.totalWork));
@@ -1170,6 +1344,10 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 								Policy.debug("Total Snap Markers: " + persistMarkers + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 								Policy.debug("Total Snap Sync Info: " + persistSyncInfo + "ms"); //$NON-NLS-1$	 //$NON-NLS-2$
 							}
+							// write the history changes held in the bucket cache
+							IHistoryStore historyStore = workspace.getFileSystemManager().getHistoryStore();
+							if (historyStore instanceof HistoryStore2)
+								((HistoryStore2) historyStore).save();
 							collapseTrees(contexts);
 							clearSavedDelta();
 							// write out all metainfo (e.g., workspace/project descriptions) 
@@ -1283,7 +1461,8 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 
 	/**
 	 * Writes a snapshot of project refresh information to the specified
-	 * location.
+	 * location. The snapshot is written next to the location first, and only
+	 * replaces a previous snapshot once it is complete.
 	 * @param project the project to write a refresh snapshot for
 	 * @param monitor progress monitor
 	 * @exception CoreException if there is a problem writing the snapshot.
@@ -1291,48 +1470,39 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 	public void saveRefreshSnapshot(Project project, URI snapshotLocation,
 			IProgressMonitor monitor) throws CoreException {
 		IFileStore store = EFS.getStore(snapshotLocation);
+		IFileStore temp = store.getParent().getChild(store.getName() + REFRESH_SNAPSHOT_TEMP_SUFFIX);
 		IPath snapshotPath = new Path(snapshotLocation.getPath());
-		java.io.File tmpTree = null;
-		try {
-			tmpTree = java.io.File.createTempFile("tmp", ".tree");	//$NON-NLS-1$//$NON-NLS-2$
-		} catch (IOException e) {
-			throw new ResourceException(IResourceStatus.FAILED_WRITE_LOCAL,
-					snapshotPath, Messages.resources_copyProblem, e);
-		}
+		boolean success = false;
 		ZipOutputStream out = null;
 		try {
-			FileOutputStream fis = new FileOutputStream(tmpTree);
-			DataOutputStream output = new DataOutputStream(fis);
+			// the tree is written straight into the zip entry, and compressed in another thread
+			OutputStream snapOut = temp.openOutputStream(EFS.NONE, monitor);
+			out = new ZipOutputStream(new BufferedOutputStream(snapOut, TREE_BUFFER_SIZE));
+			out.setLevel(getRefreshSnapshotLevel());
+			out.putNextEntry(new ZipEntry(REFRESH_SNAPSHOT_ENTRY));
+			DataOutputStream output = new DataOutputStream(new PipelinedOutputStream(out, TREE_BUFFER_SIZE, "Refresh snapshot compression")); //$NON-NLS-1$
 			try {
 				output.writeInt(ICoreConstants.WORKSPACE_TREE_VERSION_2);
 				writeTree(project, output, monitor);
+				// closing the tree output also finishes the zip entry and the zip file,
+				// and reports a failure to compress or write the snapshot
 				output.close();
 			} finally {
 				FileUtil.safeClose(output);
 			}
-			OutputStream snapOut = store.openOutputStream(EFS.NONE, monitor);
-			out = new ZipOutputStream(snapOut);
-			out.setLevel(Deflater.BEST_COMPRESSION);
-			ZipEntry e = new ZipEntry("resource-index.tree"); //$NON-NLS-1$
-			out.putNextEntry(e);
-			int read = 0;
-			byte[] buffer = new byte[4096];
-			InputStream in = new FileInputStream(tmpTree);
-			try {
-				while ((read = in.read(buffer)) >= 0) {
-					out.write(buffer, 0, read);
-				}
-				out.closeEntry();
-				in.close();
-			} finally {
-				FileUtil.safeClose(in);
-			}
-			out.close();
+			temp.move(store, EFS.OVERWRITE, monitor);
+			success = true;
 		} catch (IOException e) {
 			throw new ResourceException(IResourceStatus.FAILED_WRITE_LOCAL, snapshotPath, Messages.resources_copyProblem, e);
 		} finally {
 			FileUtil.safeClose(out);
-			if (tmpTree!=null) tmpTree.delete();
+			if (!success) {
+				try {
+					temp.delete(EFS.NONE, null);
+				} catch (CoreException e) {
+					//an incomplete snapshot is overwritten by the next attempt
+				}
+			}
 		}
 	}
 	
@@ -1391,6 +1561,7 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 			snapshotJob.run(Policy.monitorFor(monitor));
 		// cancel the snapshot job
 		snapshotJob.cancel();
+		compactionJob.cancel();
 	}
 
 	/**
@@ -1402,6 +1573,7 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		// never schedule a snapshot while save is occurring.
 		if (isSaving)
 			return;
+		compactIfNeeded();
 		if (snapshotRequested || operationCount >= workspace.internalGetDescription().getOperationsPerSnapshot()) {
 			if (snapshotJob.getState() == Job.NONE)
 				snapshotJob.schedule();
@@ -1426,6 +1598,18 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		}
 	}
 
+	/**
+	 * Schedules a compaction of the workspace tree if its delta chain has
+	 * grown beyond the configured maximum depth.
+	 */
+	private void compactIfNeeded() {
+		int maxDepth = workspace.internalGetDescription().getMaxDeltaChainDepth();
+		if (maxDepth <= 0 || compactionJob.getState() != Job.NONE)
+			return;
+		if (workspace.getElementTree().getDeltaDepth() > maxDepth)
+			compactionJob.schedule();
+	}
+
 	/**
 	 * Performs a snapshot of the workspace tree.
 	 */
@@ -1444,21 +1628,36 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 			IPath snapPath = workspace.getMetaArea().getSnapshotLocationFor(workspace.getRoot());
 			ElementTreeWriter writer = new ElementTreeWriter(this);
 			java.io.File localFile = snapPath.toFile();
+			// each snapshot appends the changes since the last one to the snapshot file,
+			// and once in a while all segments are replaced with the changes since the last save
+			boolean consolidate = snapSegments >= MAX_SNAP_SEGMENTS && snapBase != null;
+			java.io.File targetFile = consolidate ? getConsolidatedSnapshotFile(localFile) : localFile;
 			try {
-				SafeChunkyOutputStream safeStream = new SafeChunkyOutputStream(localFile);
+				if (consolidate)
+					targetFile.delete();
+				SafeChunkyOutputStream safeStream = new SafeChunkyOutputStream(targetFile);
 				DataOutputStream out = new DataOutputStream(safeStream);
 				try {
 					out.writeInt(ICoreConstants.WORKSPACE_TREE_VERSION_2);
 					writeWorkspaceFields(out, monitor);
-					writer.writeDelta(tree, lastSnap, Path.ROOT, ElementTreeWriter.D_INFINITE, out, ResourceComparator.getSaveComparator());
+					writer.writeDelta(tree, consolidate ? snapBase : lastSnap, Path.ROOT, ElementTreeWriter.D_INFINITE, out, ResourceComparator.getSaveComparator());
 					safeStream.succeed();
 				} finally {
 					out.close();
 				}
+				if (consolidate) {
+					// if we crash here, the consolidated file is found at restore
+					localFile.delete();
+					if (!targetFile.renameTo(localFile))
+						throw new IOException(targetFile.getAbsolutePath());
+				}
 			} catch (IOException e) {
 				message = NLS.bind(Messages.resources_writeWorkspaceMeta, localFile.getAbsolutePath());
 				throw new ResourceException(IResourceStatus.FAILED_WRITE_METADATA, Path.ROOT, message, e);
 			}
+			snapSegments = consolidate ? 1 : snapSegments + 1;
+			if (ResourceStats.TRACE_SNAPSHOT_TREE)
+				ResourceStats.snapshotTreeWritten(consolidate, System.currentTimeMillis() - start, localFile.length(), snapSegments);
 			lastSnap = tree;
 		} finally {
 			monitor.done();
@@ -1524,6 +1723,38 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 		return sorted;
 	}
 
+	/**
+	 * Starts reading the marker, sync info and description files of all
+	 * projects in the background, in the order in which the workspace restore
+	 * needs them.
+	 */
+	private void startPrefetching() {
+		LocalMetaArea metaArea = workspace.getMetaArea();
+		IWorkspaceRoot root = workspace.getRoot();
+		IProject[] projects = root.getProjects(IContainer.INCLUDE_HIDDEN);
+		List<IResource> accessible = new ArrayList<IResource>(projects.length + 1);
+		accessible.add(root);
+		for (int i = 0; i < projects.length; i++)
+			if (projects[i].isAccessible())
+				accessible.add(projects[i]);
+		prefetcher = new RestorePrefetcher();
+		for (IResource resource : accessible) {
+			IPath location = metaArea.getMarkersLocationFor(resource);
+			prefetcher.prefetch(location.toFile(), metaArea.getBackupLocationFor(location).toFile());
+			prefetcher.prefetch(metaArea.getMarkersSnapshotLocationFor(resource).toFile(), null);
+		}
+		for (IResource resource : accessible) {
+			IPath location = metaArea.getSyncInfoLocationFor(resource);
+			prefetcher.prefetch(location.toFile(), metaArea.getBackupLocationFor(location).toFile());
+			prefetcher.prefetch(metaArea.getSyncInfoSnapshotLocationFor(resource).toFile(), null);
+		}
+		IPath rootLocation = root.getLocation();
+		for (int i = 0; i < projects.length; i++) {
+			IPath location = metaArea.locationFor(projects[i]).append(LocalMetaArea.F_PROJECT_LOCATION);
+			prefetcher.prefetchDescription(location.toFile(), metaArea.getBackupLocationFor(location).toFile(), projects[i].isOpen(), rootLocation.append(projects[i].getFullPath()));
+		}
+	}
+
 	public void startup(IProgressMonitor monitor) throws CoreException {
 		restore(monitor);
 		java.io.File table = workspace.getMetaArea().getSafeTableLocationFor(ResourcesPlugin.PI_RESOURCES).toFile();
@@ -1545,6 +1776,24 @@ public class SaveManager implements IElementInfoFlattener, IManager, IStringPool
 			masterTable.setProperty(key, Long.toString(System.currentTimeMillis()));
 	}
 
+	/**
+	 * Stops reading the files of the projects ahead of the workspace restore.
+	 */
+	private void stopPrefetching() {
+		if (prefetcher != null)
+			prefetcher.shutdown();
+		prefetcher = null;
+	}
+
+	/**
+	 * Returns a stream on the contents of the given file if they were read
+	 * ahead by a parallel workspace restore, and <code>null</code> otherwise.
+	 */
+	public InputStream takePrefetched(java.io.File file) {
+		RestorePrefetcher current = prefetcher;
+		return current == null || file == null ? null : current.take(file);
+	}
+
 	/**
 	 * Visit the given resource (to depth infinite) and write out extra information
 	 * like markers and sync info. To be called during a full save and project save.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -147,10 +147,11 @@ public class Synchronizer implements ISynchronizer {
 	protected void restoreFromSave(IResource resource) throws CoreException {
 		IPath sourceLocation = workspace.getMetaArea().getSyncInfoLocationFor(resource);
 		IPath tempLocation = workspace.getMetaArea().getBackupLocationFor(sourceLocation);
-		if (!sourceLocation.toFile().exists() && !tempLocation.toFile().exists())
+		InputStream prefetched = workspace.getSaveManager().takePrefetched(sourceLocation.toFile());
+		if (prefetched == null && !sourceLocation.toFile().exists() && !tempLocation.toFile().exists())
 			return;
 		try {
-			DataInputStream input = new DataInputStream(new SafeFileInputStream(sourceLocation.toOSString(), tempLocation.toOSString()));
+			DataInputStream input = new DataInputStream(prefetched != null ? prefetched : new SafeFileInputStream(sourceLocation.toOSString(), tempLocation.toOSString()));
 			try {
 				SyncInfoReader reader = new SyncInfoReader(workspace, this);
 				reader.readSyncInfo(input);
@@ -166,10 +167,11 @@ public class Synchronizer implements ISynchronizer {
 
 	protected void restoreFromSnap(IResource resource) {
 		IPath sourceLocation = workspace.getMetaArea().getSyncInfoSnapshotLocationFor(resource);
-		if (!sourceLocation.toFile().exists())
+		InputStream prefetched = workspace.getSaveManager().takePrefetched(sourceLocation.toFile());
+		if (prefetched == null && !sourceLocation.toFile().exists())
 			return;
 		try {
-			DataInputStream input = new DataInputStream(new SafeChunkyInputStream(sourceLocation.toFile()));
+			DataInputStream input = new DataInputStream(prefetched != null ? new SafeChunkyInputStream(prefetched) : new SafeChunkyInputStream(sourceLocation.toFile()));
 			try {
 				SyncInfoSnapReader reader = new SyncInfoSnapReader(workspace, this);
 				while (true)
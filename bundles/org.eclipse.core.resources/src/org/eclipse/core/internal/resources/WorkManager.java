@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,13 +11,14 @@
  *******************************************************************************/
 package org.eclipse.core.internal.resources;
 
+import java.util.*;
 import org.eclipse.core.internal.utils.Messages;
 import org.eclipse.core.internal.utils.Policy;
-import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IResourceStatus;
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * The work manager governs concurrent access to the workspace tree.  The {@link #lock}
@@ -29,6 +30,14 @@ import org.eclipse.core.runtime.jobs.*;
  * This class also tracks operation state for each thread that is involved in an
  * operation. This includes prepared and running operation depth, auto-build
  * strategy and cancel state.
+ * 
+ * When the <code>org.eclipse.core.resources.concurrentProjects</code> system
+ * property is set, a top level operation whose scheduling rule lies in projects
+ * that no other operation is changing does not hold the lock while it runs.
+ * It changes a {@link WorkingLayer} of its own instead, which is merged into
+ * the workspace tree, with the lock held, when the operation ends. The other
+ * operations hold the lock as usual, and only start once no layers are left.
+ * The property is checked when each top level operation starts.
  */
 public class WorkManager implements IManager {
 	/**
@@ -58,6 +67,40 @@ public class WorkManager implements IManager {
 	 * workspace tree being locked for modifications (during resource change events).
 	 */
 	private final ThreadLocal<Boolean> checkInFailed = new ThreadLocal<Boolean>();
+	/**
+	 * The system property that enables running operations on disjoint projects
+	 * concurrently, in working layers.
+	 */
+	private static final String CONCURRENT_PROJECTS = ResourcesPlugin.PI_RESOURCES + ".concurrentProjects"; //$NON-NLS-1$
+	/**
+	 * The working layers by the path they claim. This map and the counts of
+	 * layers and operations below are guarded by this work manager.
+	 */
+	private final Map<IPath, WorkingLayer> claims = new HashMap<IPath, WorkingLayer>();
+	/**
+	 * The depth of the operations of each thread that holds the lock.
+	 */
+	private final ThreadLocal<int[]> exclusiveDepth = new ThreadLocal<int[]>();
+	/**
+	 * The number of threads running operations that hold the lock, and of
+	 * threads waiting for the working layers to end to do so.
+	 */
+	private int exclusiveOperations = 0;
+	private int exclusiveWaiting = 0;
+	/**
+	 * The number of working layers that have not been merged yet.
+	 */
+	private int layerCount = 0;
+	/**
+	 * The working layer of each thread that runs an operation in one.
+	 */
+	private final ThreadLocal<WorkingLayer> layers = new ThreadLocal<WorkingLayer>();
+	/**
+	 * The number of working layers merged so far, and the number at the last
+	 * merge that changed each claimed path.
+	 */
+	private long layerStamp = 0;
+	private final Map<IPath, Long> mergeStamps = new HashMap<IPath, Long>();
 	/**
 	 * Indicates whether any operations have run that may require a build. 
 	 */
@@ -89,6 +132,102 @@ public class WorkManager implements IManager {
 		this.jobManager = Job.getJobManager();
 		this.lock = jobManager.newLock();
 	}
+
+	/**
+	 * Adds the projects of the resources of the given rule to the given set.
+	 * Returns <code>false</code> if the rule is not made of resources in
+	 * projects.
+	 */
+	private static boolean addProjects(ISchedulingRule rule, Set<IPath> projects) {
+		if (rule instanceof IResource) {
+			IResource resource = (IResource) rule;
+			if (resource.getType() == IResource.ROOT)
+				return false;
+			projects.add(WorkingLayer.claimFor(resource.getFullPath()));
+			return true;
+		}
+		if (!(rule instanceof MultiRule))
+			return false;
+		ISchedulingRule[] children = ((MultiRule) rule).getChildren();
+		for (int i = 0; i < children.length; i++)
+			if (!addProjects(children[i], projects))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Starts an operation that holds the lock, once no working layers are
+	 * left, unless the current thread already runs one.
+	 */
+	private void beginExclusive(IProgressMonitor monitor) {
+		int[] depth = exclusiveDepth.get();
+		if (depth != null) {
+			depth[0]++;
+			return;
+		}
+		synchronized (this) {
+			exclusiveWaiting++;
+			boolean interrupted = false;
+			try {
+				while (layerCount > 0) {
+					if (monitor != null && monitor.isCanceled())
+						throw new OperationCanceledException();
+					try {
+						wait(100);
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				exclusiveOperations++;
+			} finally {
+				exclusiveWaiting--;
+				if (interrupted)
+					Thread.currentThread().interrupt();
+			}
+		}
+		exclusiveDepth.set(new int[] {1});
+	}
+
+	/**
+	 * Starts a working layer for a top level operation with the given rule,
+	 * if the rule lies in projects that no other operation is changing.
+	 * Returns whether the layer was started.
+	 */
+	private boolean beginLayer(ISchedulingRule rule) {
+		if (!Boolean.getBoolean(CONCURRENT_PROJECTS))
+			return false;
+		if (exclusiveDepth.get() != null || lock.getDepth() > 0)
+			return false;
+		Set<IPath> projects = new HashSet<IPath>();
+		if (!addProjects(rule, projects))
+			return false;
+		//the workspace tree does not change while the lock is held
+		lock.acquire();
+		try {
+			synchronized (this) {
+				if (exclusiveOperations > 0 || exclusiveWaiting > 0)
+					return false;
+				for (Iterator<IPath> i = projects.iterator(); i.hasNext();)
+					if (claims.containsKey(i.next()))
+						return false;
+				ElementTree base = workspace.getElementTree();
+				if (!base.isImmutable())
+					return false;
+				//the branches of the layers read the delta chain of the workspace tree
+				base.setRerootDeferred(true);
+				WorkingLayer layer = new WorkingLayer(base, layerStamp);
+				for (Iterator<IPath> i = projects.iterator(); i.hasNext();)
+					claims.put(i.next(), layer);
+				layer.claims.addAll(projects);
+				layer.preparedOperations = 1;
+				layerCount++;
+				layers.set(layer);
+				return true;
+			}
+		} finally {
+			lock.release();
+		}
+	}
 	
 	/**
 	 * Releases the workspace lock without changing the nested operation depth.
@@ -116,8 +255,15 @@ public class WorkManager implements IManager {
 				throw new ResourceException(IResourceStatus.WORKSPACE_LOCKED, null, msg, null);
 			}
 			jobManager.beginRule(rule, monitor);
-			lock.acquire();
-			incrementPreparedOperations();
+			WorkingLayer layer = getLayer();
+			if (layer != null) {
+				//nested in an operation that runs in a working layer
+				layer.preparedOperations++;
+			} else if (!beginLayer(rule)) {
+				beginExclusive(monitor);
+				lock.acquire();
+				incrementPreparedOperations();
+			}
 			success = true;
 		} finally {
 			//remember if we failed to check in, so we can avoid check out
@@ -150,6 +296,14 @@ public class WorkManager implements IManager {
 	 * Inform that an operation has finished. 
 	 */
 	public synchronized void checkOut(ISchedulingRule rule) {
+		WorkingLayer layer = getLayer();
+		if (layer != null) {
+			//the layer of a top level operation is ended by endLayer
+			layer.preparedOperations--;
+			layer.nestedOperations = layer.preparedOperations;
+			jobManager.endRule(rule);
+			return;
+		}
 		decrementPreparedOperations();
 		rebalanceNestedOperations();
 		//reset state if this is the end of a top level operation
@@ -160,6 +314,85 @@ public class WorkManager implements IManager {
 		} finally {
 			//end rule in finally in case lock.release throws an exception
 			jobManager.endRule(rule);
+			endExclusive();
+		}
+	}
+
+	/**
+	 * Claims the project of the given path, or the root, for the given working
+	 * layer of the current thread, which is about to change the resource with
+	 * the given path. A layer can only claim what it can merge without
+	 * overwriting the changes of another layer:
+	 * <ul>
+	 * <li>If another layer has claimed the project, this waits until that
+	 * layer is merged.</li>
+	 * <li>If another layer has changed the project since the given layer
+	 * started, the given layer is moved onto the current workspace tree
+	 * first, keeping the changes to the projects it has claimed.</li>
+	 * </ul>
+	 * Fails if the other layer waits, directly or not, for a project of the
+	 * given layer, as neither could go on.
+	 */
+	void claim(WorkingLayer layer, IPath path) throws CoreException {
+		IPath claim = WorkingLayer.claimFor(path);
+		while (true) {
+			synchronized (this) {
+				if (layer.claims.contains(claim))
+					return;
+				waitForClaim(layer, claim, path);
+				Long stamp = mergeStamps.get(claim);
+				if (stamp == null || stamp.longValue() <= layer.baseStamp) {
+					claims.put(claim, layer);
+					layer.claims.add(claim);
+					return;
+				}
+			}
+			//the workspace tree does not change while the lock is held
+			lock.acquire();
+			try {
+				synchronized (this) {
+					//claimed by another layer in the meantime, wait again
+					if (claims.containsKey(claim))
+						continue;
+					workspace.rebaseLayer(layer);
+					layer.baseStamp = layerStamp;
+					claims.put(claim, layer);
+					layer.claims.add(claim);
+					return;
+				}
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Waits until no other working layer claims the given path. Fails if the
+	 * layer that claims it waits for the given layer.
+	 */
+	private void waitForClaim(WorkingLayer layer, IPath claim, IPath path) throws CoreException {
+		boolean interrupted = false;
+		try {
+			WorkingLayer owner;
+			while ((owner = claims.get(claim)) != null) {
+				for (WorkingLayer other = owner; other != null; other = other.waitingFor) {
+					if (other == layer) {
+						String msg = NLS.bind(Messages.resources_concurrentClaim, path);
+						throw new ResourceException(IResourceStatus.OPERATION_FAILED, path, msg, null);
+					}
+				}
+				layer.waitingFor = owner;
+				try {
+					//woken up when a layer is merged
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			layer.waitingFor = null;
+			if (interrupted)
+				Thread.currentThread().interrupt();
 		}
 	}
 
@@ -172,6 +405,46 @@ public class WorkManager implements IManager {
 		preparedOperations--;
 	}
 
+	/**
+	 * Ends an operation that holds the lock when the current thread leaves its
+	 * top level operation.
+	 */
+	private void endExclusive() {
+		int[] depth = exclusiveDepth.get();
+		if (depth != null && --depth[0] == 0) {
+			exclusiveDepth.set(null);
+			exclusiveOperations--;
+		}
+	}
+
+	/**
+	 * Ends the working layer of the top level operation of the current thread.
+	 * Acquires the lock, so that the layer can be merged into the workspace
+	 * tree and the operation ended like an operation that held the lock all
+	 * along. The claims of the layer are released.
+	 */
+	void endLayer(WorkingLayer layer) {
+		lock.acquire();
+		synchronized (this) {
+			layers.set(null);
+			layerCount--;
+			layerStamp++;
+			for (Iterator<IPath> i = layer.claims.iterator(); i.hasNext();) {
+				IPath claim = i.next();
+				claims.remove(claim);
+				mergeStamps.put(claim, new Long(layerStamp));
+			}
+			exclusiveOperations++;
+			exclusiveDepth.set(new int[] {1});
+			preparedOperations = 1;
+			nestedOperations = layer.nestedOperations;
+			hasBuildChanges = layer.hasBuildChanges;
+			operationCanceled = layer.operationCanceled;
+			//operations waiting for the layers to end, and layers waiting for claims
+			notifyAll();
+		}
+	}
+
 	/**
 	 * Re-acquires the workspace lock that was temporarily released during an
 	 * operation, and restores the old lock depth.
@@ -182,6 +455,21 @@ public class WorkManager implements IManager {
 			lock.acquire();
 	}
 
+	/**
+	 * Returns the working layer of the operation of the current thread, or
+	 * <code>null</code> if the operation holds the lock.
+	 */
+	WorkingLayer getLayer() {
+		return layers.get();
+	}
+
+	/**
+	 * Returns whether some working layers have not been merged yet.
+	 */
+	synchronized boolean hasLayers() {
+		return layerCount > 0;
+	}
+
 	/**
 	 * Returns the work manager's lock
 	 */
@@ -202,6 +490,9 @@ public class WorkManager implements IManager {
 	 * prepareOperation/endOperation block.
 	 */
 	public synchronized int getPreparedOperationDepth() {
+		WorkingLayer layer = getLayer();
+		if (layer != null)
+			return layer.preparedOperations;
 		return preparedOperations;
 	}
 
@@ -211,7 +502,11 @@ public class WorkManager implements IManager {
 	 * prepareOperation/endOperation block.
 	 */
 	void incrementNestedOperations() {
-		nestedOperations++;
+		WorkingLayer layer = getLayer();
+		if (layer != null)
+			layer.nestedOperations++;
+		else
+			nestedOperations++;
 	}
 
 	/**
@@ -230,14 +525,21 @@ public class WorkManager implements IManager {
 	 * outside a prepareOperation/endOperation block.
 	 */
 	boolean isBalanced() {
+		WorkingLayer layer = getLayer();
+		if (layer != null)
+			return layer.nestedOperations == layer.preparedOperations;
 		return nestedOperations == preparedOperations;
 	}
 
 	/**
 	 * Returns true if the workspace lock has already been acquired by this
-	 * thread, and false otherwise.
+	 * thread, and false otherwise. An operation that runs in a working layer
+	 * counts as holding the lock: it may change any resource, as the projects
+	 * of other operations are claimed when they are first changed.
 	 */
 	public boolean isLockAlreadyAcquired() {
+		if (getLayer() != null)
+			return true;
 		boolean result = false;
 		try {
 			boolean success = lock.acquire(0L);
@@ -259,7 +561,11 @@ public class WorkManager implements IManager {
 	 * prepareOperation/endOperation block.
 	 */
 	public void operationCanceled() {
-		operationCanceled = true;
+		WorkingLayer layer = getLayer();
+		if (layer != null)
+			layer.operationCanceled = true;
+		else
+			operationCanceled = true;
 	}
 
 	/**
@@ -277,7 +583,11 @@ public class WorkManager implements IManager {
 	 * require a build.
 	 */
 	public void setBuild(boolean hasChanges) {
-		hasBuildChanges = hasBuildChanges || hasChanges;
+		WorkingLayer layer = getLayer();
+		if (layer != null)
+			layer.hasBuildChanges = layer.hasBuildChanges || hasChanges;
+		else
+			hasBuildChanges = hasBuildChanges || hasChanges;
 	}
 
 	/**
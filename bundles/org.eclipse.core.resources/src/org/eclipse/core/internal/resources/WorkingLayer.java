@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources;
+
+import java.util.*;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * The state of a top level operation that changes some projects of the
+ * workspace concurrently with operations on other projects. The operation
+ * changes a branch of the workspace tree, which is merged into the workspace
+ * tree when the operation ends.
+ * <p>
+ * The operation may only change the projects it has claimed. The workspace
+ * root is claimed like a project when its info is changed.
+ * </p>
+ * @see WorkManager
+ */
+class WorkingLayer {
+	/**
+	 * The workspace tree the operation started from, or was last moved onto
+	 * to see the changes of other layers.
+	 */
+	ElementTree base;
+	/**
+	 * The number of layers merged into the workspace tree in the base tree.
+	 */
+	long baseStamp;
+	/**
+	 * The paths of the projects, or the root path, claimed by this operation.
+	 */
+	final Set<IPath> claims = new HashSet<IPath>();
+	/**
+	 * The marker deltas of this operation, which are reported once the
+	 * layer is merged.
+	 */
+	Map<IPath, MarkerSet> markerDeltas;
+	/**
+	 * The changes of this operation to the marker indexes, in the order they
+	 * were made, which are applied once the layer is merged.
+	 */
+	List<MarkerManager.IndexUpdate> markerIndexUpdates;
+	/**
+	 * The current tree of this operation.
+	 */
+	ElementTree tree;
+	/**
+	 * The layer that this layer waits for to claim a project, if any. Guarded
+	 * by the work manager.
+	 */
+	WorkingLayer waitingFor;
+
+	// the operation state that WorkManager keeps for the other operations
+	boolean hasBuildChanges = false;
+	int nestedOperations = 0;
+	boolean operationCanceled = false;
+	int preparedOperations = 0;
+
+	WorkingLayer(ElementTree base, long baseStamp) {
+		this.base = base;
+		this.baseStamp = baseStamp;
+		this.tree = base;
+	}
+
+	/**
+	 * Remembers the given marker changes on the resource with the given path.
+	 */
+	void changedMarkers(IPath path, IMarkerSetElement[] changes) {
+		if (markerDeltas == null)
+			markerDeltas = new HashMap<IPath, MarkerSet>(11);
+		MarkerSet result = MarkerDelta.merge(markerDeltas.get(path), changes);
+		if (result.size() == 0)
+			markerDeltas.remove(path);
+		else
+			markerDeltas.put(path, result);
+	}
+
+	/**
+	 * Remembers the given change to the marker indexes.
+	 */
+	void changedMarkerIndexes(MarkerManager.IndexUpdate update) {
+		if (markerIndexUpdates == null)
+			markerIndexUpdates = new ArrayList<MarkerManager.IndexUpdate>();
+		markerIndexUpdates.add(update);
+	}
+
+	/**
+	 * Returns the names of the claimed projects.
+	 */
+	String[] getProjectNames() {
+		List<String> names = new ArrayList<String>(claims.size());
+		for (Iterator<IPath> i = claims.iterator(); i.hasNext();) {
+			IPath claim = i.next();
+			if (!claim.isRoot())
+				names.add(claim.lastSegment());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Returns whether this operation has a marker delta for the marker with
+	 * the given id on the resource with the given path.
+	 */
+	boolean hasDelta(IPath path, long id) {
+		MarkerSet set = markerDeltas == null ? null : markerDeltas.get(path);
+		return set != null && set.get(id) != null;
+	}
+
+	/**
+	 * Returns the path that is claimed to change the resource with the given
+	 * path.
+	 */
+	static IPath claimFor(IPath path) {
+		return path.segmentCount() <= 1 ? path : path.uptoSegment(1);
+	}
+}
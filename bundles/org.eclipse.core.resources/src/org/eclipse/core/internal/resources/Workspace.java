@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -34,6 +34,7 @@ import org.eclipse.core.resources.team.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
 import org.xml.sax.InputSource;
@@ -161,7 +162,8 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 	 * 
 	 * While the ElementTree data structure can handle both concurrent
 	 * reads and concurrent writes, write access to the tree is governed
-	 * by {@link WorkManager}.
+	 * by {@link WorkManager}. Operations that run in a working layer change
+	 * a branch of the tree instead, see {@link #getElementTree()}.
 	 */
 	protected volatile ElementTree tree;
 
@@ -327,6 +329,17 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		lifecycleListeners.addIfAbsent(listener);
 	}
 
+	/**
+	 * Adds a listener that receives POST_CHANGE events in a thread of its own,
+	 * rather than in the thread that made the changes. At most the given number
+	 * of events are queued for the listener; when the queue is full, further
+	 * changes are merged into the last queued event. The listener is removed
+	 * by {@link #removeResourceChangeListener(IResourceChangeListener)}.
+	 */
+	public void addAsyncResourceChangeListener(IResourceChangeListener listener, int queueCapacity) {
+		notificationManager.addAsyncListener(listener, queueCapacity);
+	}
+
 	/* (non-Javadoc)
 	 * @see IWorkspace#addResourceChangeListener(IResourceChangeListener)
 	 */
@@ -365,14 +378,15 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		workManager.incrementNestedOperations();
 		if (!workManager.isBalanced())
 			Assert.isTrue(false, "Operation was not prepared."); //$NON-NLS-1$
-		if (workManager.getPreparedOperationDepth() > 1) {
-			if (createNewTree && tree.isImmutable())
+		if (workManager.getPreparedOperationDepth() > 1 || workManager.getLayer() != null) {
+			if (createNewTree && getElementTree().isImmutable())
 				newWorkingTree();
 			return;
 		}
-		// stash the current tree as the basis for this operation.
+		// stash the current tree as the basis for this operation. A mutable tree
+		// is made immutable, so that the basis does not change during the operation.
 		operationTree = tree;
-		if (createNewTree && tree.isImmutable())
+		if (createNewTree || !tree.isImmutable())
 			newWorkingTree();
 	}
 
@@ -443,9 +457,13 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		// Bug 343256 use a relaxed scheduling rule if the config we're building uses a relaxed rule.
 		// Otherwise fall-back to WR.
 		boolean relaxed = false;
-		if (Job.getJobManager().currentRule() == null && configs.length > 0) {
+		IBuildConfiguration[] ruleConfigs = configs;
+		// A parallel build of the whole workspace can only run without a rule, so check the rules of all configs
+		if (configs == EMPTY_BUILD_CONFIG_ARRAY && trigger != IncrementalProjectBuilder.CLEAN_BUILD && description.getMaxConcurrentBuilds() > 1)
+			ruleConfigs = getBuildOrder();
+		if (Job.getJobManager().currentRule() == null && ruleConfigs.length > 0) {
 			relaxed = true;
-			for (IBuildConfiguration config : configs) {
+			for (IBuildConfiguration config : ruleConfigs) {
 				ISchedulingRule requested = getBuildManager().getRule(config, trigger, null, null);
 				if (requested != null && requested.contains(getRoot())) {
 					relaxed = false;
@@ -525,7 +543,7 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 					throw new ResourceException(result);
 			} finally {
 				//building may close the tree, but we are still inside an operation so open it
-				if (tree.isImmutable())
+				if (getElementTree().isImmutable())
 					newWorkingTree();
 				// Rule will be the build-rule from the POST_BUILD refresh
 				endOperation(buildRule, false, Policy.subMonitorFor(monitor, Policy.endOpWork));
@@ -545,6 +563,32 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		return Platform.getBundle("org.eclipse.osgi").getState() != Bundle.STOPPING; //$NON-NLS-1$
 	}
 
+	/**
+	 * Claims the project of the given path for the working layer of the
+	 * current operation, if it runs in one, before the resource with the given
+	 * path is changed.
+	 * @see WorkManager#claim(WorkingLayer, IPath)
+	 */
+	void claim(IPath path) throws CoreException {
+		WorkingLayer layer = getLayer();
+		if (layer != null && !layer.claims.contains(WorkingLayer.claimFor(path)))
+			_workManager.claim(layer, path);
+	}
+
+	/**
+	 * Claims the project of the given path like {@link #claim(IPath)}, for
+	 * callers that cannot fail. If the project cannot be claimed, the failure
+	 * is logged and the operation is canceled.
+	 */
+	private void claimOrCancel(IPath path) {
+		try {
+			claim(path);
+		} catch (CoreException e) {
+			Policy.log(e.getStatus());
+			throw new OperationCanceledException(e.getMessage());
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see IWorkspace#checkpoint(boolean)
 	 */
@@ -554,7 +598,9 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 			try {
 				prepareOperation(rule, null);
 				beginOperation(true);
-				broadcastPostChange();
+				//an operation in a working layer broadcasts its changes once merged
+				if (getLayer() == null)
+					broadcastPostChange();
 			} finally {
 				endOperation(rule, build, null);
 			}
@@ -1287,6 +1333,7 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 	 * @param phantom If true, phantoms are included, otherwise they are ignored.
 	 */
 	public int countResources(IPath root, int depth, final boolean phantom) {
+		ElementTree tree = getElementTree();
 		if (!tree.includes(root))
 			return 0;
 		switch (depth) {
@@ -1354,8 +1401,11 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 	 * (as indicated by an already existing phantom resource) will be lost.
 	 */
 	public ResourceInfo createResource(IResource resource, ResourceInfo info, boolean phantom, boolean overwrite, boolean keepSyncInfo) throws CoreException {
+		//claimed first, as a working layer may move to another tree
+		claim(resource.getFullPath());
 		info = info == null ? newElement(resource.getType()) : (ResourceInfo) info.clone();
 		ResourceInfo original = getResourceInfo(resource.getFullPath(), true, false);
+		ElementTree tree = getElementTree();
 		if (phantom) {
 			info.set(M_PHANTOM);
 			info.clearModificationStamp();
@@ -1481,10 +1531,14 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		IPath path = resource.getFullPath();
 		if (path.equals(Path.ROOT)) {
 			IProject[] children = getRoot().getProjects(IContainer.INCLUDE_HIDDEN);
-			for (int i = 0; i < children.length; i++)
-				tree.deleteElement(children[i].getFullPath());
-		} else
-			tree.deleteElement(path);
+			for (int i = 0; i < children.length; i++) {
+				claimOrCancel(children[i].getFullPath());
+				getElementTree().deleteElement(children[i].getFullPath());
+			}
+		} else {
+			claimOrCancel(path);
+			getElementTree().deleteElement(path);
+		}
 	}
 
 	/**
@@ -1504,9 +1558,15 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		boolean hasTreeChanges = false;
 		boolean depthOne = false;
 		try {
+			WorkingLayer layer = workManager.getLayer();
+			if (layer != null && workManager.getPreparedOperationDepth() == 1)
+				mergeLayer(layer);
 			workManager.setBuild(build);
 			// if we are not exiting a top level operation then just decrement the count and return
 			depthOne = workManager.getPreparedOperationDepth() == 1;
+			//the changes of a working layer are broadcast once it is merged
+			if (layer != null && !depthOne)
+				return;
 			if (!(notificationManager.shouldNotify() || depthOne)) {
 				notificationManager.requestNotify();
 				return;
@@ -1523,17 +1583,24 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 				workManager.rebalanceNestedOperations();
 
 				//find out if any operation has potentially modified the tree
-				hasTreeChanges = workManager.shouldBuild();
+				boolean hasChanges = workManager.shouldBuild();
 				//double check if the tree has actually changed
-				if (hasTreeChanges)
-					hasTreeChanges = operationTree != null && ElementTree.hasChanges(tree, operationTree, ResourceComparator.getBuildComparator(), true);
+				if (hasChanges)
+					hasChanges = operationTree != null && ElementTree.hasChanges(tree, operationTree, ResourceComparator.getNotificationComparator(), false);
+				//only the changes that builders see trigger a build; without a journal
+				//another walk of the layers would not tell more than the one above
+				if (hasChanges)
+					hasTreeChanges = !ElementTree.isJournaled(tree, operationTree) || ElementTree.hasChanges(tree, operationTree, ResourceComparator.getBuildComparator(), false);
 				broadcastPostChange();
 				// Request a snapshot if we are sufficiently out of date.
-				saveManager.snapshotIfNeeded(hasTreeChanges);
+				saveManager.snapshotIfNeeded(hasChanges);
 			} finally {
 				// make sure the tree is immutable if we are ending a top-level operation.
 				if (depthOne) {
 					tree.immutable();
+					//the delta chain is rerooted once no working layer reads it
+					if (!workManager.hasLayers())
+						tree.setRerootDeferred(false);
 					operationTree = null;
 				} else
 					newWorkingTree();
@@ -1671,10 +1738,21 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 	}
 
 	/** 
-	 * Returns the current element tree for this workspace
+	 * Returns the current element tree for this workspace. Within an operation
+	 * that runs in a working layer, this is the tree of the layer.
 	 */
 	public ElementTree getElementTree() {
-		return tree;
+		WorkingLayer layer = getLayer();
+		return layer == null ? tree : layer.tree;
+	}
+
+	/**
+	 * Returns the working layer of the operation of the current thread, or
+	 * <code>null</code> if it does not run in one.
+	 */
+	WorkingLayer getLayer() {
+		WorkManager manager = _workManager;
+		return manager == null ? null : manager.getLayer();
 	}
 
 	public FileSystemResourceManager getFileSystemManager() {
@@ -1759,6 +1837,9 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 	 */
 	public ResourceInfo getResourceInfo(IPath path, boolean phantom, boolean mutable) {
 		try {
+			if (mutable)
+				claimOrCancel(path);
+			ElementTree tree = getElementTree();
 			if (path.segmentCount() == 0) {
 				ResourceInfo info = (ResourceInfo) tree.getTreeData();
 				Assert.isNotNull(info, "Tree root info must never be null"); //$NON-NLS-1$
@@ -2179,23 +2260,71 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		return null;
 	}
 
+	/**
+	 * Merges the given working layer of the top level operation of the current
+	 * thread into the workspace tree, and makes the operation end like an
+	 * operation that held the workspace lock all along. Only the changes to the
+	 * claimed projects are merged, which no other operation has changed since
+	 * the layer started.
+	 */
+	private void mergeLayer(WorkingLayer layer) {
+		_workManager.endLayer(layer);
+		operationTree = tree;
+		if (layer.tree != layer.base) {
+			ElementTree merged = layer.tree.rebase(layer.base, tree, layer.getProjectNames());
+			if (layer.claims.contains(Path.ROOT))
+				merged.setTreeData(layer.tree.getTreeData());
+			tree = merged;
+			newWorkingTree();
+		}
+		if (layer.markerDeltas != null)
+			markerManager.mergeDeltas(layer.markerDeltas);
+		if (layer.markerIndexUpdates != null)
+			markerManager.mergeIndexUpdates(layer.markerIndexUpdates);
+	}
+
+	/**
+	 * Moves the given working layer of the current thread onto the workspace
+	 * tree, so that it sees the changes that other layers have merged since it
+	 * started. The changes to the projects claimed by the layer are kept. Must
+	 * be called with the workspace lock held.
+	 */
+	void rebaseLayer(WorkingLayer layer) {
+		if (layer.tree == layer.base) {
+			//nothing changed yet, the layer branches off when it first changes
+			layer.base = layer.tree = tree;
+			return;
+		}
+		ElementTree rebased = layer.tree.rebase(layer.base, tree, layer.getProjectNames());
+		if (layer.claims.contains(Path.ROOT))
+			rebased.setTreeData(layer.tree.getTreeData());
+		layer.base = layer.tree = rebased;
+		newWorkingTree();
+	}
+
 	/**
 	 * Opens a new mutable element tree layer, thus allowing 
 	 * modifications to the tree.
 	 */
 	public ElementTree newWorkingTree() {
-		tree = tree.newEmptyDelta();
-		return tree;
+		WorkingLayer layer = getLayer();
+		if (layer == null) {
+			tree = tree.newEmptyDelta();
+			return tree;
+		}
+		//the first tree of a layer branches off the workspace tree
+		layer.tree = layer.tree == layer.base ? layer.base.newBranch() : layer.tree.newEmptyDelta();
+		return layer.tree;
 	}
 
 	/**
 	 * Returns the next, previously unassigned, marker id.
 	 */
-	protected long nextMarkerId() {
+	protected synchronized long nextMarkerId() {
 		return nextMarkerId++;
 	}
 
-	protected long nextNodeId() {
+	protected synchronized long nextNodeId() {
 		return nextNodeId++;
 	}
 
@@ -2319,6 +2448,61 @@ public class Workspace extends PlatformObject implements IWorkspace, ICoreConsta
 		saveManager.removeParticipant(pluginId);
 	}
 
+	/* (non-Javadoc)
+	 * @see IWorkspace#replaceMarkers(IResource[], String, int[], String[], Object[], String[], int[])
+	 */
+	public void replaceMarkers(IResource[] resources, String type, int[] markerCounts, String[] attributeNames, Object[] attributeValues, String[] intAttributeNames, int[] intAttributeValues) throws CoreException {
+		Assert.isNotNull(type);
+		Assert.isLegal(resources.length == markerCounts.length);
+		int markerCount = 0;
+		for (int i = 0; i < markerCounts.length; i++) {
+			Assert.isLegal(markerCounts[i] >= 0);
+			markerCount += markerCounts[i];
+		}
+		Assert.isLegal(attributeValues.length == markerCount * attributeNames.length);
+		Assert.isLegal(intAttributeValues.length == markerCount * intAttributeNames.length);
+		if (resources.length == 0)
+			return;
+		// clone to avoid outside changes
+		resources = resources.clone();
+		markerCounts = markerCounts.clone();
+		List<ISchedulingRule> rules = new ArrayList<ISchedulingRule>();
+		IResourceRuleFactory factory = getRuleFactory();
+		for (int i = 0; i < resources.length; i++) {
+			ISchedulingRule rule = factory.markerRule(resources[i]);
+			if (rule != null)
+				rules.add(rule);
+		}
+		ISchedulingRule rule = rules.isEmpty() ? null : MultiRule.combine(rules.toArray(new ISchedulingRule[rules.size()]));
+		try {
+			prepareOperation(rule, null);
+			for (int i = 0; i < resources.length; i++) {
+				Resource resource = (Resource) resources[i];
+				resource.checkAccessible(resource.getFlags(resource.getResourceInfo(false, false)));
+			}
+			beginOperation(true);
+			long creationTime = System.currentTimeMillis();
+			boolean validate = markerManager.isPersistentType(type);
+			int offset = 0;
+			int intOffset = 0;
+			for (int i = 0; i < resources.length; i++) {
+				MarkerInfo[] markers = new MarkerInfo[markerCounts[i]];
+				for (int j = 0; j < markers.length; j++) {
+					MarkerInfo marker = new MarkerInfo();
+					marker.setType(type);
+					marker.setCreationTime(creationTime);
+					marker.setAttributes(attributeNames, attributeValues, offset, intAttributeNames, intAttributeValues, intOffset, validate);
+					offset += attributeNames.length;
+					intOffset += intAttributeNames.length;
+					markers[j] = marker;
+				}
+				markerManager.replaceMarkers(resources[i], type, markers);
+			}
+		} finally {
+			endOperation(rule, false, null);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see IWorkspace#run(IWorkspaceRunnable, IProgressMonitor)
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,8 @@ public class WorkspaceDescription extends ModelObject implements IWorkspaceDescr
 	private long snapshotInterval;
 	protected int operationsPerSnapshot;
 	protected long deltaExpiration;
+	protected int maxDeltaChainDepth;
+	protected int maxConcurrentBuilds;
 
 	public WorkspaceDescription(String name) {
 		super(name);
@@ -43,6 +45,8 @@ public class WorkspaceDescription extends ModelObject implements IWorkspaceDescr
 		snapshotInterval = node.getLong(ResourcesPlugin.PREF_SNAPSHOT_INTERVAL, PreferenceInitializer.PREF_SNAPSHOT_INTERVAL_DEFAULT);
 		operationsPerSnapshot = node.getInt(PreferenceInitializer.PREF_OPERATIONS_PER_SNAPSHOT, PreferenceInitializer.PREF_OPERATIONS_PER_SNAPSHOT_DEFAULT);
 		deltaExpiration = node.getLong(PreferenceInitializer.PREF_DELTA_EXPIRATION, PreferenceInitializer.PREF_DELTA_EXPIRATION_DEFAULT);
+		maxDeltaChainDepth = node.getInt(PreferenceInitializer.PREF_MAX_DELTA_CHAIN_DEPTH, PreferenceInitializer.PREF_MAX_DELTA_CHAIN_DEPTH_DEFAULT);
+		maxConcurrentBuilds = node.getInt(PreferenceInitializer.PREF_MAX_CONCURRENT_BUILDS, PreferenceInitializer.PREF_MAX_CONCURRENT_BUILDS_DEFAULT);
 	}
 
 	/**
@@ -101,6 +105,23 @@ public class WorkspaceDescription extends ModelObject implements IWorkspaceDescr
 		return applyFileStatePolicy;
 	}
 
+	/**
+	 * Returns the maximum number of project build configurations that are
+	 * built at the same time. A value of 1 or less builds them one at a time.
+	 */
+	public int getMaxConcurrentBuilds() {
+		return maxConcurrentBuilds;
+	}
+
+	/**
+	 * Returns the delta chain depth of the workspace tree above which the
+	 * tree is compacted in the background, or 0 if it is only compacted
+	 * when a snapshot is taken.
+	 */
+	public int getMaxDeltaChainDepth() {
+		return maxDeltaChainDepth;
+	}
+
 	public int getOperationsPerSnapshot() {
 		return operationsPerSnapshot;
 	}
@@ -123,6 +144,14 @@ public class WorkspaceDescription extends ModelObject implements IWorkspaceDescr
 		return autoBuilding;
 	}
 
+	public void setMaxConcurrentBuilds(int value) {
+		maxConcurrentBuilds = value;
+	}
+
+	public void setMaxDeltaChainDepth(int value) {
+		maxDeltaChainDepth = value;
+	}
+
 	public void setOperationsPerSnapshot(int value) {
 		operationsPerSnapshot = value;
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -76,6 +76,8 @@ public class WorkspacePreferences extends WorkspaceDescription {
 		target.setSnapshotInterval(source.getSnapshotInterval());
 		target.setOperationsPerSnapshot(source.getOperationsPerSnapshot());
 		target.setDeltaExpiration(source.getDeltaExpiration());
+		target.setMaxDeltaChainDepth(source.getMaxDeltaChainDepth());
+		target.setMaxConcurrentBuilds(source.getMaxConcurrentBuilds());
 	}
 
 	public WorkspacePreferences() {
@@ -96,6 +98,8 @@ public class WorkspacePreferences extends WorkspaceDescription {
 		super.setFileStateLongevity(preferences.getLong(ResourcesPlugin.PREF_FILE_STATE_LONGEVITY));
 		super.setOperationsPerSnapshot(preferences.getInt(PreferenceInitializer.PREF_OPERATIONS_PER_SNAPSHOT));
 		super.setDeltaExpiration(preferences.getLong(PreferenceInitializer.PREF_DELTA_EXPIRATION));
+		super.setMaxDeltaChainDepth(preferences.getInt(PreferenceInitializer.PREF_MAX_DELTA_CHAIN_DEPTH));
+		super.setMaxConcurrentBuilds(preferences.getInt(PreferenceInitializer.PREF_MAX_CONCURRENT_BUILDS));
 
 		// This property listener ensures we are being updated properly when changes
 		// are done directly to the preference store.
@@ -195,6 +199,14 @@ public class WorkspacePreferences extends WorkspaceDescription {
 		preferences.setValue(ResourcesPlugin.PREF_MAX_FILE_STATE_SIZE, size);
 	}
 
+	public void setMaxConcurrentBuilds(int value) {
+		preferences.setValue(PreferenceInitializer.PREF_MAX_CONCURRENT_BUILDS, value);
+	}
+
+	public void setMaxDeltaChainDepth(int value) {
+		preferences.setValue(PreferenceInitializer.PREF_MAX_DELTA_CHAIN_DEPTH, value);
+	}
+
 	public void setOperationsPerSnapshot(int value) {
 		preferences.setValue(PreferenceInitializer.PREF_OPERATIONS_PER_SNAPSHOT, value);
 	}
@@ -228,6 +240,10 @@ public class WorkspacePreferences extends WorkspaceDescription {
 			super.setOperationsPerSnapshot(preferences.getInt(PreferenceInitializer.PREF_OPERATIONS_PER_SNAPSHOT));
 		else if (property.equals(PreferenceInitializer.PREF_DELTA_EXPIRATION))
 			super.setDeltaExpiration(preferences.getLong(PreferenceInitializer.PREF_DELTA_EXPIRATION));
+		else if (property.equals(PreferenceInitializer.PREF_MAX_DELTA_CHAIN_DEPTH))
+			super.setMaxDeltaChainDepth(preferences.getInt(PreferenceInitializer.PREF_MAX_DELTA_CHAIN_DEPTH));
+		else if (property.equals(PreferenceInitializer.PREF_MAX_CONCURRENT_BUILDS))
+			super.setMaxConcurrentBuilds(preferences.getInt(PreferenceInitializer.PREF_MAX_CONCURRENT_BUILDS));
 	}
 
 	private void upgradeVersion(String oldVersion) {
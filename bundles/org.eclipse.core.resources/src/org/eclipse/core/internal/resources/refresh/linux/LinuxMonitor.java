@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources.refresh.linux;
+
+import java.io.File;
+import java.util.*;
+import org.eclipse.core.internal.refresh.RefreshManager;
+import org.eclipse.core.internal.utils.Messages;
+import org.eclipse.core.internal.utils.Policy;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.resources.refresh.IRefreshMonitor;
+import org.eclipse.core.resources.refresh.IRefreshResult;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.Bundle;
+
+/**
+ * A monitor that works on Linux platforms using inotify. inotify watches
+ * are not recursive, so a watch is registered for every directory below
+ * each monitored root, and for directories as they are created. Changes
+ * are reported by refreshing the directory that contains them.
+ * <p>
+ * If the per-user inotify watch limit is exhausted while watching a root,
+ * that root is handed back to the refresh manager to be polled, while all
+ * other roots keep using native notification.
+ * </p>
+ */
+class LinuxMonitor extends Job implements IRefreshMonitor {
+	private static final long RESCHEDULE_DELAY = 1000;
+
+	/**
+	 * An inotify watch on the directory of a single container.
+	 */
+	protected static class Watch {
+		final IContainer container;
+		final IResource root;
+		final Integer wd;
+
+		Watch(Integer wd, IContainer container, IResource root) {
+			this.wd = wd;
+			this.container = container;
+			this.root = root;
+		}
+	}
+
+	private static final String DEBUG_PREFIX = "LinuxRefreshMonitor: "; //$NON-NLS-1$
+	private static final int WAIT_FOR_EVENTS_TIMEOUT = 300;
+	/**
+	 * The number of ints in the event buffer. Each event takes two.
+	 */
+	private static final int EVENT_BUFFER_SIZE = 4096;
+	private static final int WATCH_MASK = LinuxNatives.IN_MODIFY | LinuxNatives.IN_ATTRIB | LinuxNatives.IN_CREATE | LinuxNatives.IN_DELETE | LinuxNatives.IN_MOVED_FROM | LinuxNatives.IN_MOVED_TO | LinuxNatives.IN_DELETE_SELF | LinuxNatives.IN_MOVE_SELF | LinuxNatives.IN_ONLYDIR;
+	/**
+	 * Any errors that have occurred
+	 */
+	protected MultiStatus errors;
+	/**
+	 * Buffer receiving (watch descriptor, mask) pairs from the native code.
+	 * Only accessed from the job thread.
+	 */
+	private final int[] eventBuffer = new int[EVENT_BUFFER_SIZE];
+	/**
+	 * The inotify file descriptor, or -1 if not open.
+	 */
+	private int fd = -1;
+	/**
+	 * Mapping of watch descriptors (java.lang.Integer) to watches.
+	 */
+	protected final Map<Integer, Watch> fWatches;
+	/**
+	 * Mapping of monitored roots to the watch descriptors registered on their behalf.
+	 */
+	protected final Map<IResource, Set<Integer>> fRootWatches;
+	protected IRefreshResult refreshResult;
+	/**
+	 * Set when inotify runs out of watches during the current registration.
+	 */
+	private boolean watchLimitReached;
+
+	/*
+	 * Creates a new monitor. @param result A result that will receive refresh
+	 * callbacks and error notifications
+	 */
+	public LinuxMonitor(IRefreshResult result) {
+		super(Messages.LM_jobName);
+		this.refreshResult = result;
+		setPriority(Job.DECORATE);
+		setSystem(true);
+		fWatches = new HashMap<Integer, Watch>();
+		fRootWatches = new HashMap<IResource, Set<Integer>>(1);
+	}
+
+	/**
+	 * Logs an exception
+	 */
+	protected synchronized void addException(String message) {
+		if (errors == null) {
+			String msg = Messages.WM_errors;
+			errors = new MultiStatus(ResourcesPlugin.PI_RESOURCES, 1, msg, null);
+		}
+		errors.add(new Status(IStatus.ERROR, ResourcesPlugin.PI_RESOURCES, 1, message, null));
+	}
+
+	/**
+	 * Adds a watch on the location of the given container on behalf of the
+	 * given root. Returns <code>null</code> if the container has no location,
+	 * is already being watched, or the watch could not be created. The latter
+	 * sets <code>watchLimitReached</code> if inotify ran out of watches.
+	 */
+	private Watch addWatch(IResource root, IContainer container) {
+		IPath location = container.getLocation();
+		if (location == null)
+			return null;
+		int wd = LinuxNatives.addWatch(fd, location.toOSString().getBytes(), WATCH_MASK);
+		if (wd < 0) {
+			//the directory may already be gone, it will be picked up by the parent's refresh
+			if (wd == -LinuxNatives.ENOSPC)
+				watchLimitReached = true;
+			else if (RefreshManager.DEBUG)
+				System.out.println(DEBUG_PREFIX + "could not watch: " + location + " code: " + -wd); //$NON-NLS-1$ //$NON-NLS-2$
+			return null;
+		}
+		Integer key = new Integer(wd);
+		//inotify answers the existing descriptor for a directory that is already watched,
+		//which also stops us from following symbolic link cycles
+		if (fWatches.containsKey(key))
+			return null;
+		Watch watch = new Watch(key, container, root);
+		fWatches.put(key, watch);
+		fRootWatches.get(root).add(key);
+		return watch;
+	}
+
+	/**
+	 * Adds watches for the given container and all containers below it in
+	 * the workspace tree. Returns <code>false</code> if the inotify watch
+	 * limit was reached.
+	 */
+	private boolean addWatches(final IResource root, IContainer container) {
+		final IPath rootPath = root.getFullPath();
+		watchLimitReached = false;
+		try {
+			container.accept(new IResourceProxyVisitor() {
+				public boolean visit(IResourceProxy proxy) {
+					if (watchLimitReached || proxy.getType() == IResource.FILE)
+						return false;
+					//linked resources at the top of a project are monitored as roots of their own
+					IPath path = proxy.requestFullPath();
+					if (proxy.isLinked() && path.segmentCount() == 2 && !path.equals(rootPath))
+						return false;
+					return addWatch(root, (IContainer) proxy.requestResource()) != null;
+				}
+			}, IContainer.INCLUDE_TEAM_PRIVATE_MEMBERS | IContainer.INCLUDE_HIDDEN);
+		} catch (CoreException e) {
+			//the container is no longer accessible, nothing left to watch
+		}
+		return !watchLimitReached;
+	}
+
+	/**
+	 * Adds watches for directories that have appeared on disk below the given
+	 * watch but are not yet watched. Such directories may not be known to the
+	 * workspace yet, so the file system is consulted directly. Returns
+	 * <code>false</code> if the inotify watch limit was reached.
+	 */
+	private boolean addWatchesForNewDirectories(Watch parent) {
+		IPath location = parent.container.getLocation();
+		if (location == null)
+			return true;
+		File[] children = location.toFile().listFiles();
+		if (children == null)
+			return true;
+		for (int i = 0; i < children.length; i++) {
+			if (!children[i].isDirectory())
+				continue;
+			Watch child = addWatch(parent.root, parent.container.getFolder(new Path(children[i].getName())));
+			if (watchLimitReached)
+				return false;
+			if (child != null && !addWatchesForNewDirectories(child))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a resource to be monitored by this native monitor
+	 */
+	public boolean monitor(IResource resource) {
+		IPath location = resource.getLocation();
+		if (location == null) {
+			// cannot monitor remotely managed containers
+			return false;
+		}
+		boolean success;
+		// synchronized: watch creation must be atomic
+		synchronized (this) {
+			if (!openInstance())
+				return false;
+			if (!fRootWatches.containsKey(resource))
+				fRootWatches.put(resource, new HashSet<Integer>());
+			success = addWatches(resource, (IContainer) resource);
+			if (!success)
+				removeWatches(resource);
+		}
+		if (!success) {
+			//it will fall back to polling
+			Policy.log(IStatus.WARNING, NLS.bind(Messages.LM_watchLimit, resource.getFullPath()), null);
+			return false;
+		}
+		//make sure the job is running
+		schedule(RESCHEDULE_DELAY);
+		if (RefreshManager.DEBUG)
+			System.out.println(DEBUG_PREFIX + " added monitor for: " + resource); //$NON-NLS-1$
+		return true;
+	}
+
+	/**
+	 * Opens the inotify instance if it is not already open.
+	 */
+	private boolean openInstance() {
+		if (fd >= 0)
+			return true;
+		int result = LinuxNatives.init();
+		if (result < 0) {
+			Policy.log(IStatus.WARNING, NLS.bind(Messages.LM_errInit, Integer.toString(-result)), null);
+			return false;
+		}
+		fd = result;
+		return true;
+	}
+
+	/**
+	 * Requests a refresh of the given container, or of its nearest existing
+	 * ancestor if the workspace does not know about it yet.
+	 */
+	protected void postRefreshRequest(IContainer container) {
+		while (!container.exists() && container.getType() == IResource.FOLDER)
+			container = container.getParent();
+		//native callback occurs even if resource was changed within workspace
+		if (!container.isSynchronized(IResource.DEPTH_ONE))
+			refreshResult.refresh(container);
+	}
+
+	/**
+	 * Translates the events in the event buffer into the set of containers
+	 * that need refreshing, and watches newly created directories. Returns
+	 * the roots for which the watch limit was reached, or <code>null</code>.
+	 */
+	private synchronized List<IResource> processEvents(int count, Set<IContainer> changed) {
+		Set<Watch> createdDirectories = new LinkedHashSet<Watch>();
+		for (int i = 0; i < count; i++) {
+			int mask = eventBuffer[2 * i + 1];
+			if ((mask & LinuxNatives.IN_Q_OVERFLOW) != 0) {
+				//events were lost, refresh everything
+				for (Iterator<IResource> it = fRootWatches.keySet().iterator(); it.hasNext();)
+					changed.add((IContainer) it.next());
+				continue;
+			}
+			Watch watch = fWatches.get(new Integer(eventBuffer[2 * i]));
+			if (watch == null)
+				continue;
+			if ((mask & LinuxNatives.IN_IGNORED) != 0) {
+				//the directory is gone, or the watch has been removed
+				removeWatch(watch);
+				continue;
+			}
+			if ((mask & (LinuxNatives.IN_DELETE_SELF | LinuxNatives.IN_MOVE_SELF)) != 0) {
+				//reported on the parent's watch, unless this is the root itself
+				if (watch.container.equals(watch.root))
+					changed.add(watch.container);
+				continue;
+			}
+			changed.add(watch.container);
+			if ((mask & LinuxNatives.IN_ISDIR) != 0 && (mask & (LinuxNatives.IN_CREATE | LinuxNatives.IN_MOVED_TO)) != 0)
+				createdDirectories.add(watch);
+		}
+		List<IResource> failedRoots = null;
+		for (Iterator<Watch> it = createdDirectories.iterator(); it.hasNext();) {
+			Watch watch = it.next();
+			if (!fRootWatches.containsKey(watch.root))
+				continue;
+			watchLimitReached = false;
+			if (!addWatchesForNewDirectories(watch)) {
+				removeWatches(watch.root);
+				if (failedRoots == null)
+					failedRoots = new ArrayList<IResource>(1);
+				failedRoots.add(watch.root);
+			}
+		}
+		return failedRoots;
+	}
+
+	private void removeWatch(Watch watch) {
+		fWatches.remove(watch.wd);
+		Set<Integer> rootWatches = fRootWatches.get(watch.root);
+		if (rootWatches != null)
+			rootWatches.remove(watch.wd);
+	}
+
+	/**
+	 * Removes all watches registered on behalf of the given root.
+	 */
+	private void removeWatches(IResource root) {
+		Set<Integer> rootWatches = fRootWatches.remove(root);
+		if (rootWatches == null)
+			return;
+		for (Iterator<Integer> i = rootWatches.iterator(); i.hasNext();) {
+			Integer wd = i.next();
+			fWatches.remove(wd);
+			if (fd >= 0)
+				LinuxNatives.removeWatch(fd, wd.intValue());
+		}
+	}
+
+	/*
+	 * @see java.lang.Runnable#run()
+	 */
+	protected IStatus run(IProgressMonitor monitor) {
+		long start = -System.currentTimeMillis();
+		if (RefreshManager.DEBUG)
+			System.out.println(DEBUG_PREFIX + "job started."); //$NON-NLS-1$
+		try {
+			monitor.beginTask(Messages.WM_beginTask, IProgressMonitor.UNKNOWN);
+			int instance;
+			synchronized (this) {
+				instance = fd;
+			}
+			if (instance < 0)
+				return Status.OK_STATUS;
+			int count = LinuxNatives.readEvents(instance, eventBuffer, WAIT_FOR_EVENTS_TIMEOUT);
+			if (count < 0) {
+				synchronized (this) {
+					//ignore failures caused by the instance being closed underneath us
+					if (fd != instance || count == -LinuxNatives.EINTR)
+						return Status.OK_STATUS;
+				}
+				addException(NLS.bind(Messages.LM_errReadEvents, Integer.toString(-count)));
+				refreshResult.monitorFailed(this, null);
+				unmonitor(null);
+			} else if (count > 0) {
+				Set<IContainer> changed = new LinkedHashSet<IContainer>();
+				List<IResource> failedRoots = processEvents(count, changed);
+				if (failedRoots != null) {
+					for (Iterator<IResource> i = failedRoots.iterator(); i.hasNext();) {
+						IResource root = i.next();
+						Policy.log(IStatus.WARNING, NLS.bind(Messages.LM_watchLimit, root.getFullPath()), null);
+						refreshResult.monitorFailed(this, root);
+					}
+				}
+				for (Iterator<IContainer> i = changed.iterator(); i.hasNext();) {
+					if (monitor.isCanceled())
+						return Status.CANCEL_STATUS;
+					postRefreshRequest(i.next());
+				}
+			}
+		} finally {
+			monitor.done();
+			start += System.currentTimeMillis();
+			if (RefreshManager.DEBUG)
+				System.out.println(DEBUG_PREFIX + "job finished in: " + start + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		//always reschedule the job - so it will come back after errors or cancelation
+		//make sure it doesn't hog more that 5% of CPU
+		long delay = Math.max(RESCHEDULE_DELAY, start * 30);
+		if (RefreshManager.DEBUG)
+			System.out.println(DEBUG_PREFIX + "rescheduling in: " + delay / 1000 + " seconds"); //$NON-NLS-1$ //$NON-NLS-2$
+		final Bundle bundle = Platform.getBundle(ResourcesPlugin.PI_RESOURCES);
+		//if the bundle is null then the framework has shutdown - just bail out completely (bug 98219)
+		if (bundle == null)
+			return Status.OK_STATUS;
+		//don't reschedule the job if the resources plugin has been shut down
+		if (bundle.getState() == Bundle.ACTIVE)
+			schedule(delay);
+		MultiStatus result = errors;
+		errors = null;
+		//just log native refresh failures
+		if (result != null && !result.isOK())
+			ResourcesPlugin.getPlugin().getLog().log(result);
+		return Status.OK_STATUS;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.Job#shouldRun()
+	 */
+	public boolean shouldRun() {
+		return !fWatches.isEmpty();
+	}
+
+	/*
+	 * @see org.eclipse.core.resources.refresh.IRefreshMonitor#unmonitor(IContainer)
+	 */
+	public void unmonitor(IResource resource) {
+		synchronized (this) {
+			if (resource == null) {
+				// resource == null means stop monitoring all resources
+				for (Iterator<IResource> i = new ArrayList<IResource>(fRootWatches.keySet()).iterator(); i.hasNext();)
+					removeWatches(i.next());
+				if (fd >= 0)
+					LinuxNatives.close(fd);
+				fd = -1;
+			} else {
+				removeWatches(resource);
+			}
+		}
+		//stop the job if there are no more watches
+		if (fWatches.isEmpty())
+			cancel();
+	}
+}
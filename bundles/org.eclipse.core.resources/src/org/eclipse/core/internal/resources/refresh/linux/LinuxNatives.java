@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.resources.refresh.linux;
+
+/**
+ * Hooks for native methods involved with Linux inotify auto-refresh callbacks.
+ * <p>
+ * All methods that can fail return a negative <code>errno</code> value
+ * on failure rather than relying on a separate "last error" call, since
+ * <code>errno</code> is not preserved across JNI calls.
+ * </p>
+ */
+public class LinuxNatives {
+	/* inotify event masks */
+	/**
+	 * File was modified.
+	 */
+	public static final int IN_MODIFY;
+	/**
+	 * Metadata (permissions, timestamps, ...) changed.
+	 */
+	public static final int IN_ATTRIB;
+	/**
+	 * File was moved out of the watched directory.
+	 */
+	public static final int IN_MOVED_FROM;
+	/**
+	 * File was moved into the watched directory.
+	 */
+	public static final int IN_MOVED_TO;
+	/**
+	 * File was created in the watched directory.
+	 */
+	public static final int IN_CREATE;
+	/**
+	 * File was deleted from the watched directory.
+	 */
+	public static final int IN_DELETE;
+	/**
+	 * The watched directory itself was deleted.
+	 */
+	public static final int IN_DELETE_SELF;
+	/**
+	 * The watched directory itself was moved.
+	 */
+	public static final int IN_MOVE_SELF;
+	/**
+	 * Only watch the path if it is a directory.
+	 */
+	public static final int IN_ONLYDIR;
+	/**
+	 * Set in an event mask when the subject of the event is a directory.
+	 */
+	public static final int IN_ISDIR;
+	/**
+	 * The watch was removed, either explicitly or because the directory is gone.
+	 */
+	public static final int IN_IGNORED;
+	/**
+	 * The kernel event queue overflowed and events were lost.
+	 */
+	public static final int IN_Q_OVERFLOW;
+
+	/* error codes */
+	/**
+	 * Returned (negated) by {@link #addWatch(int, byte[], int)} when the
+	 * per-user watch limit (<code>fs.inotify.max_user_watches</code>) has
+	 * been reached.
+	 */
+	public static final int ENOSPC;
+	/**
+	 * Returned (negated) when a blocking call was interrupted by a signal.
+	 */
+	public static final int EINTR;
+
+	/*
+	 * Make requests to set the constants.
+	 */
+	static {
+		System.loadLibrary("linuxrefresh"); //$NON-NLS-1$
+		IN_MODIFY = IN_MODIFY();
+		IN_ATTRIB = IN_ATTRIB();
+		IN_MOVED_FROM = IN_MOVED_FROM();
+		IN_MOVED_TO = IN_MOVED_TO();
+		IN_CREATE = IN_CREATE();
+		IN_DELETE = IN_DELETE();
+		IN_DELETE_SELF = IN_DELETE_SELF();
+		IN_MOVE_SELF = IN_MOVE_SELF();
+		IN_ONLYDIR = IN_ONLYDIR();
+		IN_ISDIR = IN_ISDIR();
+		IN_IGNORED = IN_IGNORED();
+		IN_Q_OVERFLOW = IN_Q_OVERFLOW();
+
+		ENOSPC = ENOSPC();
+		EINTR = EINTR();
+	}
+
+	/**
+	 * Creates a new inotify instance.
+	 *
+	 * @return int the inotify file descriptor, or a negative errno value
+	 * if the instance could not be created.
+	 */
+	public static native int init();
+
+	/**
+	 * Adds a watch for the given directory to the inotify instance. If the
+	 * directory is already watched by this instance, the existing watch
+	 * descriptor is returned.
+	 *
+	 * @param fd an inotify file descriptor created with {@link #init()}
+	 * @param path the path of the directory to watch, in platform bytes,
+	 * not null terminated
+	 * @param mask the events to watch for
+	 * @return int the watch descriptor, or a negative errno value if the
+	 * watch could not be added.
+	 */
+	public static native int addWatch(int fd, byte[] path, int mask);
+
+	/**
+	 * Removes the given watch from the inotify instance.
+	 *
+	 * @param fd an inotify file descriptor created with {@link #init()}
+	 * @param wd a watch descriptor returned by {@link #addWatch(int, byte[], int)}
+	 * @return int 0 on success or a negative errno value.
+	 */
+	public static native int removeWatch(int fd, int wd);
+
+	/**
+	 * Waits for events on the given inotify instance and reads as many
+	 * as fit into the given array. Each event is stored as a pair of
+	 * consecutive ints: the watch descriptor followed by the event mask.
+	 *
+	 * @param fd an inotify file descriptor created with {@link #init()}
+	 * @param events the array receiving the (wd, mask) pairs
+	 * @param timeout the maximum time to wait for events in milliseconds
+	 * @return int the number of events read, 0 if the timeout elapsed
+	 * or a negative errno value if the read failed.
+	 */
+	public static native int readEvents(int fd, int[] events, int timeout);
+
+	/**
+	 * Closes the given inotify instance, removing all of its watches.
+	 *
+	 * @param fd an inotify file descriptor created with {@link #init()}
+	 * @return int 0 on success or a negative errno value.
+	 */
+	public static native int close(int fd);
+
+	/**
+	 * Returns the constant IN_MODIFY.
+	 * @return int
+	 */
+	private static native int IN_MODIFY();
+
+	/**
+	 * Returns the constant IN_ATTRIB.
+	 * @return int
+	 */
+	private static native int IN_ATTRIB();
+
+	/**
+	 * Returns the constant IN_MOVED_FROM.
+	 * @return int
+	 */
+	private static native int IN_MOVED_FROM();
+
+	/**
+	 * Returns the constant IN_MOVED_TO.
+	 * @return int
+	 */
+	private static native int IN_MOVED_TO();
+
+	/**
+	 * Returns the constant IN_CREATE.
+	 * @return int
+	 */
+	private static native int IN_CREATE();
+
+	/**
+	 * Returns the constant IN_DELETE.
+	 * @return int
+	 */
+	private static native int IN_DELETE();
+
+	/**
+	 * Returns the constant IN_DELETE_SELF.
+	 * @return int
+	 */
+	private static native int IN_DELETE_SELF();
+
+	/**
+	 * Returns the constant IN_MOVE_SELF.
+	 * @return int
+	 */
+	private static native int IN_MOVE_SELF();
+
+	/**
+	 * Returns the constant IN_ONLYDIR.
+	 * @return int
+	 */
+	private static native int IN_ONLYDIR();
+
+	/**
+	 * Returns the constant IN_ISDIR.
+	 * @return int
+	 */
+	private static native int IN_ISDIR();
+
+	/**
+	 * Returns the constant IN_IGNORED.
+	 * @return int
+	 */
+	private static native int IN_IGNORED();
+
+	/**
+	 * Returns the constant IN_Q_OVERFLOW.
+	 * @return int
+	 */
+	private static native int IN_Q_OVERFLOW();
+
+	/**
+	 * Returns the constant ENOSPC.
+	 * @return int
+	 */
+	private static native int ENOSPC();
+
+	/**
+	 * Returns the constant EINTR.
+	 * @return int
+	 */
+	private static native int EINTR();
+}
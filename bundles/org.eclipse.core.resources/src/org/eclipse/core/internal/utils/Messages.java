@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -142,6 +142,7 @@ public class Messages extends NLS {
 	public static String projRead_whichValue;
 	public static String projRead_missingProjectName;
 	
+	public static String properties_compacting;
 	public static String properties_couldNotClose;
 	public static String properties_qualifierIsNull;
 	public static String properties_readProperties;
@@ -160,6 +161,7 @@ public class Messages extends NLS {
 	public static String resources_charsetUpdating;
 	public static String resources_closing_0;
 	public static String resources_closing_1;
+	public static String resources_concurrentClaim;
 	public static String resources_copyDestNotSub;
 	public static String resources_copying;
 	public static String resources_copying_0;
@@ -283,6 +285,7 @@ public class Messages extends NLS {
 	public static String resources_snapRead;
 	public static String resources_snapRequest;
 	public static String resources_snapshot;
+	public static String resources_compactTrees;
 	public static String resources_startupProblems;
 	public static String resources_touch;
 	public static String resources_updating;
@@ -321,6 +324,12 @@ public class Messages extends NLS {
 	public static String WM_jobName;
 	public static String WM_nativeErr;
 
+	// auto-refresh linux native
+	public static String LM_errInit;
+	public static String LM_errReadEvents;
+	public static String LM_jobName;
+	public static String LM_watchLimit;
+
 	static {
 		// initialize resource bundles
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
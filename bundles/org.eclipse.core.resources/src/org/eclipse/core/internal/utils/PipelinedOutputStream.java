@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.utils;
+
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An output stream that writes to another stream in a thread of its own, so
+ * that expensive work done by the other stream, such as compression, overlaps
+ * with the work of the thread that produces the data.
+ * <p>
+ * Data is collected in a fixed number of buffers that are handed over to the
+ * writing thread when they are full, so the producer blocks when it gets too
+ * far ahead. A failure of the other stream is thrown by the next call to this
+ * stream. Closing this stream waits until all data is written, and then closes
+ * the other stream.
+ * </p><p>
+ * This stream must be used by a single thread, and must be closed to stop its
+ * writing thread.
+ * </p>
+ */
+public class PipelinedOutputStream extends OutputStream {
+	private static final int BUFFER_COUNT = 4;
+
+	/**
+	 * A buffer and the number of bytes it holds.
+	 */
+	private static class Chunk {
+		final byte[] data;
+		int length;
+
+		Chunk(int size) {
+			data = new byte[size];
+		}
+	}
+
+	/**
+	 * The chunk that tells the writing thread to stop.
+	 */
+	private static final Chunk END = new Chunk(0);
+
+	private boolean closed = false;
+	private Chunk current;
+	volatile IOException failure;
+	final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(BUFFER_COUNT);
+	final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(BUFFER_COUNT + 1);
+	final OutputStream target;
+	private final Thread writer;
+
+	/**
+	 * Creates a stream that writes to the given stream, in a thread with the given name.
+	 */
+	public PipelinedOutputStream(OutputStream target, int bufferSize, String threadName) {
+		this.target = target;
+		for (int i = 0; i < BUFFER_COUNT - 1; i++)
+			free.add(new Chunk(bufferSize));
+		current = new Chunk(bufferSize);
+		writer = new Thread(threadName) {
+			public void run() {
+				drain();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Writes all data to the other stream, and closes it.
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			try {
+				send();
+				full.put(END);
+				writer.join();
+			} catch (InterruptedException e) {
+				writer.interrupt();
+				throw new InterruptedIOException();
+			}
+		} finally {
+			if (failure == null)
+				target.close();
+			else
+				FileUtil.safeClose(target);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Writes the chunks that are handed over until told to stop. Chunks are
+	 * still taken after a failure, so that the producer never blocks.
+	 */
+	void drain() {
+		while (true) {
+			Chunk chunk;
+			try {
+				chunk = full.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (chunk == END)
+				return;
+			if (failure == null) {
+				try {
+					target.write(chunk.data, 0, chunk.length);
+				} catch (IOException e) {
+					failure = e;
+				} catch (RuntimeException e) {
+					failure = new IOException(e.getMessage());
+					failure.initCause(e);
+				}
+			}
+			chunk.length = 0;
+			free.add(chunk);
+		}
+	}
+
+	/**
+	 * Hands the data written so far over to the writing thread. The other
+	 * stream is not flushed.
+	 */
+	public void flush() throws IOException {
+		checkFailure();
+		try {
+			send();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Hands the current chunk over to the writing thread if it holds any data,
+	 * and waits for a free chunk.
+	 */
+	private void send() throws InterruptedException {
+		if (current.length == 0)
+			return;
+		full.put(current);
+		current = free.take();
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		checkFailure();
+		try {
+			while (len > 0) {
+				int count = Math.min(len, current.data.length - current.length);
+				System.arraycopy(b, off, current.data, current.length, count);
+				current.length += count;
+				off += count;
+				len -= count;
+				if (current.length == current.data.length)
+					send();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	public void write(int b) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		checkFailure();
+		current.data[current.length++] = (byte) b;
+		if (current.length == current.data.length) {
+			try {
+				send();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+	}
+}
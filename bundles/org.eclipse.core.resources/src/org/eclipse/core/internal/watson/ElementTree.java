@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,7 +11,7 @@
  *******************************************************************************/
 package org.eclipse.core.internal.watson;
 
-import java.util.HashMap;
+import java.util.*;
 import org.eclipse.core.internal.dtree.*;
 import org.eclipse.core.internal.utils.Messages;
 import org.eclipse.core.internal.utils.StringPool;
@@ -94,9 +94,101 @@ public class ElementTree {
 
 	private volatile DataTreeLookup lookupCacheIgnoreCase = null;
 
+	/**
+	 * The paths changed in a line of trees, in the order they were changed,
+	 * where each tree of the line was created as a delta on the one before.
+	 * The changes of a tree are the entries from its journal start to its
+	 * journal end. A journal stops recording when it is full, and the trees
+	 * created afterwards start a new line.
+	 */
+	private static class Journal {
+		private static final int MAX_SIZE = 10000;
+		private IPath[] paths = new IPath[16];
+		/**
+		 * Whether each change created, replaced or deleted a subtree, rather
+		 * than changing the data of an element.
+		 */
+		private boolean[] structural = new boolean[16];
+		private int size = 0;
+		private boolean full = false;
+
+		synchronized void add(IPath path, boolean changesStructure) {
+			if (full)
+				return;
+			if (size == MAX_SIZE) {
+				full = true;
+				return;
+			}
+			if (size == paths.length) {
+				int newLength = Math.min(size * 2, MAX_SIZE);
+				IPath[] newPaths = new IPath[newLength];
+				System.arraycopy(paths, 0, newPaths, 0, size);
+				paths = newPaths;
+				boolean[] newStructural = new boolean[newLength];
+				System.arraycopy(structural, 0, newStructural, 0, size);
+				structural = newStructural;
+			}
+			paths[size] = path;
+			structural[size++] = changesStructure;
+		}
+
+		/**
+		 * Copies the entries from the given start to the given end into the
+		 * given arrays.
+		 */
+		synchronized void copy(int start, int end, IPath[] pathsCopy, boolean[] structuralCopy) {
+			System.arraycopy(paths, start, pathsCopy, 0, end - start);
+			System.arraycopy(structural, start, structuralCopy, 0, end - start);
+		}
+
+		/**
+		 * Returns the number of changes recorded, or -1 if some changes could
+		 * not be recorded.
+		 */
+		synchronized int position() {
+			return full ? -1 : size;
+		}
+	}
+
+	/**
+	 * The journal of the line of trees of this tree, or <code>null</code> if
+	 * the changes of this tree are not recorded.
+	 */
+	private Journal journal;
+	/**
+	 * The position in the journal of the first change of this tree.
+	 */
+	private int journalStart;
+	/**
+	 * The position in the journal after the last change of this tree, once
+	 * it is immutable, or -1.
+	 */
+	private int journalEnd = -1;
+	/**
+	 * Whether a tree created as a delta on this one has carried on the line
+	 * of trees of its journal.
+	 */
+	private boolean journalContinued = false;
+
 	private static int treeCounter = 0;
 	private int treeStamp;
 
+	/**
+	 * Whether this tree is a branch, whose ancestors are shared with trees
+	 * that change concurrently. Making a branch immutable leaves the delta
+	 * chain as it is, since rerooting changes the representation of the
+	 * shared ancestors.
+	 */
+	private boolean branch = false;
+
+	/**
+	 * Whether making this tree immutable leaves the delta chain as it is,
+	 * because branches of its ancestors may still be reading them. The trees
+	 * created on this one inherit this, until it is cleared on the tree that
+	 * the chain is to be rerooted at.
+	 */
+	private boolean rerootDeferred = false;
+
 	/**
 	 * Creates a new empty element tree.
 	 */
@@ -123,6 +215,15 @@ public class ElementTree {
 	 * given tree as its parent.
 	 */
 	protected ElementTree(ElementTree parent) {
+		this(parent, false);
+	}
+
+	/**
+	 * Creates a new empty delta element tree having the given tree as its
+	 * parent, which carries on the line of trees of the parent unless it is
+	 * a branch.
+	 */
+	private ElementTree(ElementTree parent, boolean branch) {
 		if (!parent.isImmutable()) {
 			parent.immutable();
 		}
@@ -134,6 +235,15 @@ public class ElementTree {
 		}
 
 		initialize(parent.tree.newEmptyDeltaTree());
+		this.branch = branch || parent.branch;
+		this.rerootDeferred = parent.rerootDeferred;
+		Journal parentJournal = parent.journal;
+		if (!branch && parentJournal != null && !parent.journalContinued && parent.journalEnd >= 0 && parent.journalEnd == parentJournal.position()) {
+			journal = parentJournal;
+			parent.journalContinued = true;
+		} else
+			journal = new Journal();
+		journalStart = journal.position();
 	}
 
 	/**
@@ -183,6 +293,7 @@ public class ElementTree {
 		} catch (ObjectNotFoundException e) {
 			elementNotFound(parent);
 		}
+		journal(key, true);
 		// Set the lookup to be this newly created object.
 		lookupCache = DataTreeLookup.newLookup(key, true, data, true);
 		lookupCacheIgnoreCase = null;
@@ -221,6 +332,7 @@ public class ElementTree {
 
 			/* insert the subtree in this tree */
 			tree.createSubtree(key, node);
+			journal(key, true);
 
 		} catch (ObjectNotFoundException e) {
 			elementNotFound(key);
@@ -247,6 +359,16 @@ public class ElementTree {
 		} catch (ObjectNotFoundException e) {
 			elementNotFound(key);
 		}
+		journal(key, true);
+	}
+
+	/**
+	 * Records a change of the element with the given key, or of its subtree,
+	 * in the journal of this tree.
+	 */
+	private void journal(IPath key, boolean changesStructure) {
+		if (journal != null)
+			journal.add(key, changesStructure);
 	}
 
 	/**
@@ -355,6 +477,15 @@ public class ElementTree {
 		return tree;
 	}
 
+	/**
+	 * Returns the number of delta layers that a lookup in this tree may
+	 * have to visit, including this tree itself. Chains grow with every
+	 * newEmptyDelta() and shrink again when trees are collapsed.
+	 */
+	public int getDeltaDepth() {
+		return tree.getChainDepth();
+	}
+
 	/**
 	 * Returns the element data for the given element identifier.
 	 * The given element must be present in this tree.
@@ -405,6 +536,54 @@ public class ElementTree {
 		}
 	}
 
+	/**
+	 * Returns whether the changes between the given layers are recorded, in
+	 * which case <code>getChangedPaths()</code> answers for them and
+	 * <code>hasChanges()</code> only compares the elements they changed.
+	 */
+	public static boolean isJournaled(ElementTree newLayer, ElementTree oldLayer) {
+		Journal journal = oldLayer.journal;
+		if (journal == null || newLayer.journal != journal)
+			return false;
+		int start = oldLayer.journalEnd;
+		int end = newLayer.isImmutable() ? newLayer.journalEnd : journal.position();
+		return start >= 0 && end >= start;
+	}
+
+	/**
+	 * Returns the paths below which the given layers differ, as told by the
+	 * changes recorded since the old layer was made immutable. These are the
+	 * paths where a subtree was created, replaced or deleted, and the paths
+	 * of elements whose data differs according to the given comparator.
+	 * Returns <code>null</code> if the changes between the layers were not
+	 * recorded, which is the case unless the new layer was created from the
+	 * old one by a line of <code>newEmptyDelta()</code> calls.
+	 */
+	public static IPath[] getChangedPaths(ElementTree newLayer, ElementTree oldLayer, IElementComparator comparator) {
+		if (!isJournaled(newLayer, oldLayer))
+			return null;
+		Journal journal = oldLayer.journal;
+		int start = oldLayer.journalEnd;
+		int end = newLayer.isImmutable() ? newLayer.journalEnd : journal.position();
+		IPath[] paths = new IPath[end - start];
+		boolean[] structural = new boolean[end - start];
+		journal.copy(start, end, paths, structural);
+		Set<IPath> result = new LinkedHashSet<IPath>();
+		Set<IPath> compared = new HashSet<IPath>();
+		for (int i = 0; i < paths.length; i++) {
+			IPath path = paths[i];
+			if (structural[i])
+				result.add(path);
+			else if (compared.add(path)) {
+				if (!oldLayer.includes(path) || !newLayer.includes(path))
+					result.add(path);
+				else if (comparator.compare(oldLayer.getElementData(path), newLayer.getElementData(path)) != IElementComparator.K_NO_CHANGE)
+					result.add(path);
+			}
+		}
+		return result.toArray(new IPath[result.size()]);
+	}
+
 	/**
 	 * Returns the parent tree, or <code>null</code> if there is no parent.
 	 */
@@ -459,6 +638,12 @@ public class ElementTree {
 	 * Returns true if there have been changes in the tree between the two
 	 * given layers.  The two must be related and new must be newer than old.
 	 * That is, new must be an ancestor of old.
+	 * <p>
+	 * When the changes made since the old layer are recorded, only the
+	 * elements they changed are compared, and a change that makes no
+	 * difference to the comparator is not counted.
+	 * </p>
+	 * @see #getChangedPaths(ElementTree, ElementTree, IElementComparator)
 	 */
 	public static boolean hasChanges(ElementTree newLayer, ElementTree oldLayer, IElementComparator comparator, boolean inclusive) {
 		// if any of the layers are null, assume that things have changed
@@ -469,6 +654,12 @@ public class ElementTree {
 		//if the tree data has changed, then the tree has changed
 		if (comparator.compare(newLayer.getTreeData(), oldLayer.getTreeData()) != IElementComparator.K_NO_CHANGE)
 			return true;
+		//the changes of an inclusive old layer may have been made after the caller got it
+		if (!inclusive || oldLayer.journalStart == oldLayer.journalEnd) {
+			IPath[] changes = getChangedPaths(newLayer, oldLayer, comparator);
+			if (changes != null)
+				return changes.length > 0;
+		}
 
 		// The tree structure has the top layer(s) (i.e., tree) parentage pointing down to a complete
 		// layer whose parent is null.  The bottom layers (i.e., operationTree) point up to the 
@@ -493,8 +684,11 @@ public class ElementTree {
 		}
 
 		// look up from the layer at which we started to null or newLayer's parent (variably inclusive)
-		// depending on whether newLayer is mutable.
-		ElementTree layer = inclusive ? oldLayer : oldLayer.getParent();
+		// depending on whether newLayer is mutable.  Once the chain has been rerooted at a newer
+		// layer, the old layer holds the changes made after it, so it is always included.
+		ElementTree oldParent = oldLayer.getParent();
+		boolean rerooted = oldParent != null && oldParent.treeStamp > oldLayer.treeStamp;
+		ElementTree layer = inclusive || rerooted ? oldLayer : oldParent;
 		while (layer != null && layer.getParent() != stopLayer) {
 			if (!layer.getDataTree().isEmptyDelta())
 				return true;
@@ -515,7 +709,10 @@ public class ElementTree {
 			 in the topmost delta, and the order of deltas is changing */
 			lookupCache = lookupCacheIgnoreCase = null;
 			/* reroot the delta chain at this tree */
-			tree.reroot();
+			if (!branch && !rerootDeferred)
+				tree.reroot();
+			if (journal != null)
+				journalEnd = journal.position();
 		}
 	}
 
@@ -619,6 +816,19 @@ public class ElementTree {
 		return current;
 	}
 
+	/**
+	 * Creates a new element tree which is represented as a delta on this one,
+	 * like <code>newEmptyDelta()</code>, that branches off this tree. This
+	 * tree and its ancestors can go on being used while the branch changes,
+	 * and the changes of the branch can be carried over to a later tree with
+	 * <code>rebase</code>.
+	 * @see #rebase(ElementTree, ElementTree, String[])
+	 */
+	public synchronized ElementTree newBranch() {
+		lookupCache = lookupCacheIgnoreCase = null;
+		return new ElementTree(this, true);
+	}
+
 	/**
 	 * Creates a new element tree which is represented as a delta on this one.
 	 * Initially they have the same content.  Subsequent changes to the new
@@ -660,6 +870,7 @@ public class ElementTree {
 					Object newData = oldData.clone();
 					tree.setData(key, newData);
 					lookupCache = lookupCacheIgnoreCase = null;
+					journal(key, false);
 					return newData;
 				} catch (ObjectNotFoundException e) {
 					elementNotFound(key);
@@ -671,6 +882,48 @@ public class ElementTree {
 		return null;
 	}
 
+	/**
+	 * Returns a new immutable tree on the given parent that has the contents
+	 * of this tree below the given children of the root, and the contents of
+	 * the parent elsewhere. Only the changes between the given base and this
+	 * tree are carried over, so the parent must have the same contents as the
+	 * base below the given children. The result has the tree data of the
+	 * parent.
+	 *
+	 * @param base The tree this branch was started from
+	 * @param parent The immutable tree the changes are carried over to
+	 * @param childNames The names of the children of the root to carry over
+	 * @see #newBranch()
+	 */
+	public synchronized ElementTree rebase(ElementTree base, ElementTree parent, String[] childNames) {
+		Assert.isTrue(branch && parent.isImmutable());
+		immutable();
+		ElementTree result = new ElementTree(tree.rebase(base.tree, parent.tree, childNames, DefaultElementComparator.getComparator()));
+		IElementTreeData data = parent.getTreeData();
+		if (data != null)
+			result.userData = (IElementTreeData) data.clone();
+		result.rerootDeferred = parent.rerootDeferred;
+		result.tree.immutable();
+		return result;
+	}
+
+	/**
+	 * Sets whether making this tree, and the trees later created on it,
+	 * immutable leaves the delta chain as it is. Rerooting is deferred while
+	 * branches of the trees in the chain are in use, since it changes the
+	 * representation of the trees they read. Once rerooting is no longer
+	 * deferred, the chain is rerooted at this tree if it is immutable.
+	 * @see #newBranch()
+	 */
+	public synchronized void setRerootDeferred(boolean deferred) {
+		boolean wasDeferred = rerootDeferred;
+		rerootDeferred = deferred;
+		if (wasDeferred && !deferred && !branch && tree.isImmutable()) {
+			lookupCache = lookupCacheIgnoreCase = null;
+			tree.reroot();
+		}
+	}
+
 	/**
 	 * Sets the element for the given element identifier.
 	 * The given element must be present in this tree.
@@ -691,6 +944,7 @@ public class ElementTree {
 		} catch (ObjectNotFoundException e) {
 			elementNotFound(key);
 		}
+		journal(key, false);
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -1054,6 +1054,66 @@ public interface IWorkspace extends IAdaptable {
 	 */
 	public void removeSaveParticipant(String pluginId);
 
+	/**
+	 * Replaces the markers of the given type on each of the given resources
+	 * with new markers of that type, in one operation. This is equivalent to
+	 * deleting the markers of the type from each resource, with
+	 * <code>deleteMarkers(type, false, IResource.DEPTH_ZERO)</code>, and
+	 * creating the new markers and setting their attributes, but it is much
+	 * cheaper for large numbers of markers, and each resource is reported once
+	 * in the resource change event.
+	 * <p>
+	 * The number of new markers of each resource is given by the entry of
+	 * <code>markerCounts</code> at the index of the resource, and may be zero.
+	 * There must be one count for each resource, and one attribute value for
+	 * each attribute name and new marker, and likewise for the int attributes.
+	 * The new markers are numbered in the order of their resources. The
+	 * attributes of the new markers have the given names, and the values of
+	 * the attributes of marker <code>i</code> are found at the indices
+	 * <code>i * attributeNames.length</code> to
+	 * <code>(i + 1) * attributeNames.length - 1</code> of
+	 * <code>attributeValues</code>. A <code>null</code> value means that a
+	 * marker does not have the attribute. The values must be of the types
+	 * allowed by {@link IMarker#setAttribute(String, Object)}.
+	 * </p><p>
+	 * Integer attributes, such as the severity, line number and character
+	 * range of problems, are better given in the int arrays, which do not
+	 * require boxing the values. Marker <code>i</code> has the attributes
+	 * named by <code>intAttributeNames</code>, with the values found at the
+	 * indices <code>i * intAttributeNames.length</code> to
+	 * <code>(i + 1) * intAttributeNames.length - 1</code> of
+	 * <code>intAttributeValues</code>. A name should not be given both as an
+	 * attribute name and as an int attribute name.
+	 * </p><p>
+	 * Each resource should only be given once; the markers of a resource that
+	 * is given several times are those of its last occurrence.
+	 * </p><p>
+	 * This method changes resources; these changes will be reported in a
+	 * subsequent resource change event.
+	 * </p>
+	 *
+	 * @param resources the resources whose markers are replaced
+	 * @param type the type of the markers to replace and to create
+	 * @param markerCounts the number of new markers of each resource
+	 * @param attributeNames the names of the attributes of the new markers
+	 * @param attributeValues the values of the attributes of the new markers
+	 * @param intAttributeNames the names of the int attributes of the new markers
+	 * @param intAttributeValues the values of the int attributes of the new markers
+	 * @exception CoreException if this method fails. Reasons include:
+	 * <ul>
+	 * <li> One of the resources does not exist.</li>
+	 * <li> One of the resources is a project that is not open.</li>
+	 * <li>Resource changes are disallowed during certain types of resource
+	 * change event notification. See <code>IResourceChangeEvent</code> for
+	 * more details.</li>
+	 * </ul>
+	 * @see IResource#deleteMarkers(String, boolean, int)
+	 * @see IResource#createMarker(String)
+	 * @see IResourceRuleFactory#markerRule(IResource)
+	 * @since 3.8
+	 */
+	public void replaceMarkers(IResource[] resources, String type, int[] markerCounts, String[] attributeNames, Object[] attributeValues, String[] intAttributeNames, int[] intAttributeValues) throws CoreException;
+
 	/**
 	 * Runs the given action as an atomic workspace operation.
 	 * <p>
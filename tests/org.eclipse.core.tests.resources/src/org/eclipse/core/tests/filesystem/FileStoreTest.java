@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -318,6 +318,39 @@ public class FileStoreTest extends LocalStoreTest {
 		target.delete(EFS.NONE, null);
 	}
 
+	/**
+	 * Tests that the file tree fetched for a local directory matches
+	 * the contents of the file system.
+	 */
+	public void testFetchFileTree() throws Throwable {
+		IFileStore target = getTempStore();
+		target.mkdir(EFS.NONE, null);
+		createTree(getTree(target));
+		IFileTree tree = target.getFileSystem().fetchFileTree(target, getMonitor());
+		assertNotNull("1.0", tree);
+		assertEquals("1.1", target, tree.getTreeRoot());
+		assertFileTree(tree, target);
+
+		//stores that are not in the tree should not exist
+		IFileStore missing = target.getChild("missing");
+		assertTrue("2.0", !tree.getFileInfo(missing).exists());
+		assertEquals("2.1", 0, tree.getChildInfos(missing).length);
+	}
+
+	private void assertFileTree(IFileTree tree, IFileStore store) throws CoreException {
+		IFileInfo expected = store.fetchInfo();
+		IFileInfo actual = tree.getFileInfo(store);
+		assertEquals(store.toString(), expected.exists(), actual.exists());
+		assertEquals(store.toString(), expected.isDirectory(), actual.isDirectory());
+		assertEquals(store.toString(), expected.getLength(), actual.getLength());
+		assertEquals(store.toString(), expected.getLastModified(), actual.getLastModified());
+		String[] names = store.childNames(EFS.NONE, getMonitor());
+		IFileStore[] children = tree.getChildStores(store);
+		assertEquals(store.toString(), names.length, children.length);
+		for (int i = 0; i < children.length; i++)
+			assertFileTree(tree, children[i]);
+	}
+
 	public void testGetLength() throws Exception {
 		// evaluate test environment 
 		IPath root = getWorkspace().getRoot().getLocation().append("" + new Date().getTime());
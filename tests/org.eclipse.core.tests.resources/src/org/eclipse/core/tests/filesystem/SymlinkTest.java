@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2011 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2012 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -143,6 +143,45 @@ public class SymlinkTest extends FileSystemTest {
 		}
 	}
 
+	/**
+	 * Listing a directory with childInfos must give the same result as
+	 * fetching the info of each child separately.
+	 */
+	public void testChildInfosMatchFetchInfo() {
+		if (!isTestablePlatform()) {
+			return;
+		}
+		makeLinkStructure();
+		assertChildInfosMatchFetchInfo(baseStore);
+		//break links by removing actual dir and file
+		ensureDoesNotExist(aDir);
+		ensureDoesNotExist(aFile);
+		assertChildInfosMatchFetchInfo(baseStore);
+	}
+
+	private void assertChildInfosMatchFetchInfo(IFileStore dir) {
+		IFileInfo[] infos = null;
+		String[] names = null;
+		try {
+			infos = dir.childInfos(EFS.NONE, getMonitor());
+			names = dir.childNames(EFS.NONE, getMonitor());
+		} catch (CoreException e) {
+			fail("childInfos", e);
+		}
+		assertEquals(names.length, infos.length);
+		for (int i = 0; i < infos.length; i++) {
+			IFileInfo expected = dir.getChild(infos[i].getName()).fetchInfo();
+			String name = expected.getName();
+			assertEquals(name, expected.exists(), infos[i].exists());
+			assertEquals(name, expected.isDirectory(), infos[i].isDirectory());
+			assertEquals(name, expected.getLength(), infos[i].getLength());
+			assertEquals(name, expected.getLastModified(), infos[i].getLastModified());
+			assertEquals(name, expected.getAttribute(EFS.ATTRIBUTE_SYMLINK), infos[i].getAttribute(EFS.ATTRIBUTE_SYMLINK));
+			assertEquals(name, expected.getAttribute(EFS.ATTRIBUTE_READ_ONLY), infos[i].getAttribute(EFS.ATTRIBUTE_READ_ONLY));
+			assertEquals(name, expected.getStringAttribute(EFS.ATTRIBUTE_LINK_TARGET), infos[i].getStringAttribute(EFS.ATTRIBUTE_LINK_TARGET));
+		}
+	}
+
 	public void testBrokenSymlinkMove() throws Exception {
 		//moving a broken symlink is possible
 		if (!isTestablePlatform()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -33,6 +33,8 @@ public class AllTests extends TestCase {
 		suite.addTest(EmptyDeltaTest.suite());
 		suite.addTest(MultiProjectBuildTest.suite());
 		suite.addTest(RelaxedSchedRuleBuilderTest.suite());
+		suite.addTest(ParallelBuildTest.suite());
+		suite.addTest(DeltaCacheTest.suite());
 		suite.addTest(BuildConfigurationsTest.suite());
 		suite.addTest(BuildContextTest.suite());
 		return suite;
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.builders;
+
+import junit.framework.*;
+import org.eclipse.core.internal.dtree.DeltaDataTree;
+import org.eclipse.core.internal.events.DeltaCache;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Tests the cache of the deltas computed during builds.
+ */
+public class DeltaCacheTest extends TestCase {
+	private static final IPath PROJECT1 = new Path("/Project1");
+	private static final IPath PROJECT2 = new Path("/Project2");
+
+	public DeltaCacheTest() {
+		super(null);
+	}
+
+	public DeltaCacheTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(DeltaCacheTest.class);
+	}
+
+	/**
+	 * Returns a delta tree with the given number of children.
+	 */
+	private DeltaDataTree newDelta(int childCount) {
+		ElementTree tree = new ElementTree();
+		for (int i = 0; i < childCount; i++)
+			tree.createElement(new Path("/Child" + i), null);
+		return tree.getDataTree();
+	}
+
+	public void testEviction() {
+		ElementTree oldTree = new ElementTree();
+		ElementTree newTree = new ElementTree();
+		DeltaDataTree delta1 = newDelta(10);
+		DeltaDataTree delta2 = newDelta(10);
+		DeltaDataTree delta3 = newDelta(10);
+		int deltaWeight = delta1.getLayerNodeCount();
+		DeltaCache cache = new DeltaCache(getName(), deltaWeight * 2);
+
+		cache.cache(PROJECT1, oldTree, newTree, delta1, 0);
+		cache.cache(PROJECT2, oldTree, newTree, delta2, 0);
+		assertEquals("1.0", deltaWeight * 2, cache.getWeight());
+		// using the first delta makes the second one the least recently used
+		assertSame("1.1", delta1, cache.getDelta(PROJECT1, oldTree, newTree));
+		cache.cache(null, oldTree, newTree, delta3, 0);
+		assertEquals("1.2", deltaWeight * 2, cache.getWeight());
+		assertSame("1.3", delta1, cache.getDelta(PROJECT1, oldTree, newTree));
+		assertNull("1.4", cache.getDelta(PROJECT2, oldTree, newTree));
+		assertSame("1.5", delta3, cache.getDelta(null, oldTree, newTree));
+
+		// a delta larger than the cache is not cached, and drops nothing
+		cache.cache(PROJECT2, oldTree, newTree, newDelta(30), 0);
+		assertNull("2.0", cache.getDelta(PROJECT2, oldTree, newTree));
+		assertEquals("2.1", deltaWeight * 2, cache.getWeight());
+
+		cache.flush();
+		assertEquals("3.0", 0, cache.getWeight());
+		assertNull("3.1", cache.getDelta(PROJECT1, oldTree, newTree));
+	}
+
+	public void testHits() {
+		ElementTree oldTree = new ElementTree();
+		ElementTree newTree = new ElementTree();
+		ElementTree otherTree = new ElementTree();
+		DeltaCache cache = new DeltaCache(getName(), 1000);
+		DeltaDataTree delta = newDelta(3);
+		assertNull("1.0", cache.getDelta(PROJECT1, oldTree, newTree));
+		cache.cache(PROJECT1, oldTree, newTree, delta, 0);
+		assertSame("1.1", delta, cache.getDelta(PROJECT1, oldTree, newTree));
+		assertSame("1.2", delta, cache.getDelta(new Path("/Project1"), oldTree, newTree));
+
+		// trees are compared by identity, and projects by path
+		assertNull("2.0", cache.getDelta(PROJECT2, oldTree, newTree));
+		assertNull("2.1", cache.getDelta(PROJECT1, otherTree, newTree));
+		assertNull("2.2", cache.getDelta(PROJECT1, oldTree, otherTree));
+		assertNull("2.3", cache.getDelta(null, oldTree, newTree));
+
+		// no delta is cached for unchanged projects
+		cache.cache(PROJECT2, oldTree, newTree, null, 0);
+		assertNull("3.0", cache.getDelta(PROJECT2, oldTree, newTree));
+		assertEquals("3.1", delta.getLayerNodeCount(), cache.getWeight());
+	}
+
+	public void testPrune() {
+		ElementTree oldTree = new ElementTree();
+		ElementTree newTree = new ElementTree();
+		ElementTree currentTree = new ElementTree();
+		DeltaCache cache = new DeltaCache(getName(), 1000);
+		DeltaDataTree staleDelta = newDelta(3);
+		DeltaDataTree currentDelta = newDelta(4);
+		cache.cache(PROJECT1, oldTree, newTree, staleDelta, 0);
+		cache.cache(PROJECT1, oldTree, currentTree, currentDelta, 0);
+		cache.cache(PROJECT2, newTree, currentTree, currentDelta, 0);
+
+		cache.prune(currentTree);
+		assertNull("1.0", cache.getDelta(PROJECT1, oldTree, newTree));
+		assertSame("1.1", currentDelta, cache.getDelta(PROJECT1, oldTree, currentTree));
+		assertSame("1.2", currentDelta, cache.getDelta(PROJECT2, newTree, currentTree));
+		assertEquals("1.3", currentDelta.getLayerNodeCount() * 2, cache.getWeight());
+
+		// once the workspace tree changes, all deltas are dropped
+		cache.prune(new ElementTree());
+		assertEquals("2.0", 0, cache.getWeight());
+		assertNull("2.1", cache.getDelta(PROJECT1, oldTree, currentTree));
+	}
+}
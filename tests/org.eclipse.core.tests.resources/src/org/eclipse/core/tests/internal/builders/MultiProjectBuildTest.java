@@ -14,9 +14,12 @@ package org.eclipse.core.tests.internal.builders;
 import java.util.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.eclipse.core.internal.resources.Workspace;
+import org.eclipse.core.internal.watson.ElementTree;
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.tests.internal.builders.TestBuilder.BuilderRuleCallback;
 import org.eclipse.core.tests.resources.TestPerformer;
 
 /**
@@ -118,6 +121,84 @@ public class MultiProjectBuildTest extends AbstractBuilderTest {
 		getWorkspace().getRoot().delete(true, getMonitor());
 	}
 
+	/**
+	 * Checks the deltas of project1 and project2 that the builder of project1
+	 * got in its last build, when only file2 has changed since the build
+	 * before.
+	 */
+	private void assertFile2Changed(String message, IResourceDelta[] deltas) {
+		assertNotNull(message + ".0", deltas[0]);
+		assertEquals(message + ".1", IResourceDelta.NO_CHANGE, deltas[0].getKind());
+		assertEquals(message + ".2", 0, deltas[0].getAffectedChildren().length);
+		assertNotNull(message + ".3", deltas[1]);
+		IResourceDelta fileDelta = deltas[1].findMember(file2.getProjectRelativePath());
+		assertNotNull(message + ".4", fileDelta);
+		assertEquals(message + ".5", IResourceDelta.CHANGED, fileDelta.getKind());
+		assertTrue(message + ".6", (fileDelta.getFlags() & IResourceDelta.CONTENT) != 0);
+	}
+
+	/**
+	 * Tests that a builder is only run for changes in its own and its
+	 * interesting projects, and gets their deltas, both when the workspace
+	 * tree has recorded the changed paths since the last build and when it
+	 * had too many changes to record them.
+	 */
+	public void testChangedProjects() throws CoreException {
+		setAutoBuilding(false);
+		addBuilder(project1, DeltaVerifierBuilder.BUILDER_NAME);
+		project1.build(IncrementalProjectBuilder.FULL_BUILD, getMonitor());
+		DeltaVerifierBuilder builder = DeltaVerifierBuilder.getInstance();
+		final IResourceDelta[] deltas = new IResourceDelta[2];
+		builder.setRuleCallback(new BuilderRuleCallback() {
+			public IProject[] build(int kind, Map<String, String> args, IProgressMonitor monitor) {
+				deltas[0] = getDelta(project1);
+				deltas[1] = getDelta(project2);
+				return new IProject[0];
+			}
+		});
+		//the builder asks for project2 in the next build
+		builder.requestDeltas(new IProject[] {project2});
+		file1.setContents(getRandomContents(), IResource.NONE, getMonitor());
+		getWorkspace().build(IncrementalProjectBuilder.INCREMENTAL_BUILD, getMonitor());
+		assertTrue("1.0", builder.wasBuilt());
+
+		//a change in a project the builder is not interested in
+		builder.reset();
+		file3.setContents(getRandomContents(), IResource.NONE, getMonitor());
+		getWorkspace().build(IncrementalProjectBuilder.INCREMENTAL_BUILD, getMonitor());
+		assertTrue("2.0", !builder.wasBuilt());
+
+		//a change in an interesting project
+		file2.setContents(getRandomContents(), IResource.NONE, getMonitor());
+		getWorkspace().build(IncrementalProjectBuilder.INCREMENTAL_BUILD, getMonitor());
+		assertTrue("3.0", builder.wasBuilt());
+		assertFile2Changed("3.1", deltas);
+
+		//no change
+		builder.reset();
+		getWorkspace().build(IncrementalProjectBuilder.INCREMENTAL_BUILD, getMonitor());
+		assertTrue("4.0", !builder.wasBuilt());
+
+		//more changes than the workspace tree records
+		deltas[0] = deltas[1] = null;
+		final Workspace workspace = (Workspace) getWorkspace();
+		ElementTree lastTree = workspace.getElementTree();
+		workspace.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				IFolder folder = project2.getFolder("Folder");
+				for (int i = 0; i < 5001; i++) {
+					folder.create(true, true, null);
+					folder.delete(true, null);
+				}
+				file2.setContents(getRandomContents(), IResource.NONE, null);
+			}
+		}, getMonitor());
+		assertTrue("5.0", !ElementTree.isJournaled(workspace.getElementTree(), lastTree));
+		getWorkspace().build(IncrementalProjectBuilder.INCREMENTAL_BUILD, getMonitor());
+		assertTrue("5.1", builder.wasBuilt());
+		assertFile2Changed("5.2", deltas);
+	}
+
 	/**
 	 * In this test, only project1 has a builder, but it is interested in deltas from the other projects.
 	 * We vary the set of projects that are changed, and the set of projects we request deltas for.
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.builders;
+
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.resources.PreferenceInitializer;
+import org.eclipse.core.internal.resources.WorkspaceDescription;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.tests.internal.builders.TestBuilder.BuilderRuleCallback;
+
+/**
+ * Tests building project configs in parallel, which is enabled by setting
+ * the maximum number of concurrent builds to more than one.
+ */
+public class ParallelBuildTest extends AbstractBuilderTest {
+	private static final int MAX_CONCURRENT_BUILDS = 3;
+
+	/**
+	 * Records the order in which the builders of the test projects run.
+	 */
+	class BuildRecorder {
+		int running = 0;
+		int maxRunning = 0;
+		final List<String> events = new ArrayList<String>();
+		final Set<String> projectsWithDelta = new HashSet<String>();
+
+		synchronized void started(IProject project) {
+			events.add("start:" + project.getName());
+			running++;
+			maxRunning = Math.max(maxRunning, running);
+		}
+
+		synchronized void finished(IProject project, boolean hasDelta) {
+			events.add("end:" + project.getName());
+			running--;
+			if (hasDelta)
+				projectsWithDelta.add(project.getName());
+		}
+
+		synchronized int indexOf(String event) {
+			return events.indexOf(event);
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(ParallelBuildTest.class);
+	}
+
+	final BuildRecorder recorder = new BuildRecorder();
+
+	/**
+	 * The test projects, and the projects each of them references.
+	 */
+	private final Map<IProject, IProject[]> references = new LinkedHashMap<IProject, IProject[]>();
+
+	public ParallelBuildTest() {
+		super(null);
+	}
+
+	public ParallelBuildTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Creates a project with the given references and an empty delta builder
+	 * that runs with the given scheduling rule, or with a rule on the project
+	 * itself if the rule is <code>null</code>.
+	 */
+	private IProject createProject(String name, IProject[] referenced, final ISchedulingRule rule) throws CoreException {
+		final IProject project = getWorkspace().getRoot().getProject(name);
+		project.create(getMonitor());
+		project.open(getMonitor());
+		IProjectDescription desc = project.getDescription();
+		desc.setReferencedProjects(referenced);
+		desc.setBuildSpec(new ICommand[] {createCommand(desc, EmptyDeltaBuilder.BUILDER_NAME, "Build0")});
+		project.setDescription(desc, getMonitor());
+		references.put(project, referenced);
+		//instantiate the builder
+		project.build(IncrementalProjectBuilder.CLEAN_BUILD, getMonitor());
+		EmptyDeltaBuilder.getInstance().setRuleCallback(new BuilderRuleCallback() {
+			public ISchedulingRule getRule(String builderName, IncrementalProjectBuilder builder, int trigger, Map<String, String> args) {
+				return rule == null ? project : rule;
+			}
+
+			public IProject[] build(int kind, Map<String, String> args, IProgressMonitor monitor) throws CoreException {
+				recorder.started(project);
+				boolean hasDelta = false;
+				try {
+					//give the other builders a chance to run at the same time
+					Thread.sleep(100);
+					hasDelta = kind != IncrementalProjectBuilder.FULL_BUILD && getDelta(project) != null;
+				} catch (InterruptedException e) {
+					//ignore
+				} finally {
+					recorder.finished(project, hasDelta);
+				}
+				return new IProject[0];
+			}
+		});
+		return project;
+	}
+
+	/**
+	 * Creates the test projects. Three projects reference a base project, a
+	 * fourth project references two of them, and two more projects do not
+	 * reference any project.
+	 */
+	private void createProjects(ISchedulingRule rule) throws CoreException {
+		IProject base = createProject("Base", new IProject[0], rule);
+		IProject left = createProject("Left", new IProject[] {base}, rule);
+		IProject right = createProject("Right", new IProject[] {base}, rule);
+		createProject("Middle", new IProject[] {base}, rule);
+		createProject("Top", new IProject[] {left, right}, rule);
+		createProject("Solo1", new IProject[0], rule);
+		createProject("Solo2", new IProject[0], rule);
+	}
+
+	private IBuildConfiguration[] getConfigs() throws CoreException {
+		List<IBuildConfiguration> configs = new ArrayList<IBuildConfiguration>();
+		for (IProject project : references.keySet())
+			configs.add(project.getActiveBuildConfig());
+		return configs.toArray(new IBuildConfiguration[configs.size()]);
+	}
+
+	private void setMaxConcurrentBuilds(int value) {
+		WorkspaceDescription desc = (WorkspaceDescription) getWorkspace().getDescription();
+		desc.setMaxConcurrentBuilds(value);
+		try {
+			getWorkspace().setDescription(desc);
+		} catch (CoreException e) {
+			fail("0.99", e);
+		}
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		setAutoBuilding(false);
+		setMaxConcurrentBuilds(MAX_CONCURRENT_BUILDS);
+	}
+
+	protected void tearDown() throws Exception {
+		setMaxConcurrentBuilds(PreferenceInitializer.PREF_MAX_CONCURRENT_BUILDS_DEFAULT);
+		super.tearDown();
+		getWorkspace().getRoot().delete(true, null);
+		TestBuilder builder = EmptyDeltaBuilder.getInstance();
+		if (builder != null)
+			builder.reset();
+	}
+
+	/**
+	 * Checks that every project was built, and was only built after all the
+	 * projects it references.
+	 */
+	private void assertBuildOrder(String message) {
+		for (Map.Entry<IProject, IProject[]> entry : references.entrySet()) {
+			String name = entry.getKey().getName();
+			int start = recorder.indexOf("start:" + name);
+			assertTrue(message + ".0 " + name, start >= 0);
+			assertTrue(message + ".1 " + name, recorder.indexOf("end:" + name) > start);
+			IProject[] referenced = entry.getValue();
+			for (int i = 0; i < referenced.length; i++)
+				assertTrue(message + ".2 " + name + " before " + referenced[i].getName(), recorder.indexOf("end:" + referenced[i].getName()) < start);
+		}
+	}
+
+	/**
+	 * Returns whether the builders of the given projects ran at the same time.
+	 */
+	private boolean ranAtSameTime(IProject project1, IProject project2) {
+		int start1 = recorder.indexOf("start:" + project1.getName());
+		int start2 = recorder.indexOf("start:" + project2.getName());
+		return start1 < recorder.indexOf("end:" + project2.getName()) && start2 < recorder.indexOf("end:" + project1.getName());
+	}
+
+	/**
+	 * Builders with conflicting scheduling rules must not run at the same
+	 * time, while the builders of other projects still do.
+	 */
+	public void testConflictingRules() throws CoreException {
+		IProject owner = createProject("Owner", new IProject[0], null);
+		//a rule on a folder of the other project conflicts with the rule on that project
+		IProject folderUser = createProject("FolderUser", new IProject[0], owner.getFolder("Folder"));
+		IProject fileUser = createProject("FileUser", new IProject[0], owner.getFolder("Folder").getFile("File"));
+		createProject("Other1", new IProject[0], null);
+		createProject("Other2", new IProject[0], null);
+		getWorkspace().build(getConfigs(), IncrementalProjectBuilder.FULL_BUILD, true, getMonitor());
+		assertBuildOrder("1");
+		assertFalse("2.0", ranAtSameTime(owner, folderUser));
+		assertFalse("2.1", ranAtSameTime(owner, fileUser));
+		assertFalse("2.2", ranAtSameTime(folderUser, fileUser));
+		assertTrue("2.3", recorder.maxRunning > 1);
+	}
+
+	/**
+	 * Builders with a rule on the workspace root run one at a time.
+	 */
+	public void testWorkspaceRootRule() throws CoreException {
+		createProjects(getWorkspace().getRoot());
+		getWorkspace().build(getConfigs(), IncrementalProjectBuilder.FULL_BUILD, true, getMonitor());
+		assertBuildOrder("1");
+		assertEquals("2.0", 1, recorder.maxRunning);
+	}
+
+	/**
+	 * Builders of projects that don't reference each other run at the same
+	 * time, and projects are only built after the projects they reference.
+	 */
+	public void testReferencedProjectsBuiltFirst() throws CoreException {
+		createProjects(null);
+		getWorkspace().build(getConfigs(), IncrementalProjectBuilder.FULL_BUILD, true, getMonitor());
+		assertBuildOrder("1");
+		assertTrue("2.0", recorder.maxRunning > 1);
+		assertTrue("2.1", recorder.maxRunning <= MAX_CONCURRENT_BUILDS);
+	}
+
+	/**
+	 * Each builder of an incremental parallel build gets the delta of its own project.
+	 */
+	public void testIncrementalBuildDeltas() throws CoreException {
+		createProjects(null);
+		getWorkspace().build(getConfigs(), IncrementalProjectBuilder.FULL_BUILD, true, getMonitor());
+		for (IProject project : references.keySet())
+			project.getFile("changed.txt").create(getRandomContents(), true, getMonitor());
+		recorder.events.clear();
+		getWorkspace().build(getConfigs(), IncrementalProjectBuilder.INCREMENTAL_BUILD, true, getMonitor());
+		assertBuildOrder("1");
+		for (IProject project : references.keySet())
+			assertTrue("2.0 " + project.getName(), recorder.projectsWithDelta.contains(project.getName()));
+	}
+
+	/**
+	 * The build of the whole workspace is also run in parallel.
+	 */
+	public void testWorkspaceBuild() throws CoreException {
+		createProjects(null);
+		getWorkspace().build(IncrementalProjectBuilder.FULL_BUILD, getMonitor());
+		assertBuildOrder("1");
+		assertTrue("2.0", recorder.maxRunning > 1);
+		assertTrue("2.1", recorder.maxRunning <= MAX_CONCURRENT_BUILDS);
+	}
+}
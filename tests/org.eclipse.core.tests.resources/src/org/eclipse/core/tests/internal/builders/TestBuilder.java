@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -172,7 +172,10 @@ public abstract class TestBuilder extends IncrementalProjectBuilder {
 	 * Logs the given plug-in lifecycle event for this builder's plugin.
 	 */
 	private void logPluginLifecycleEvent(String event) {
-		actualEvents.add(event);
+		//builders of different projects may run at the same time
+		synchronized (actualEvents) {
+			actualEvents.add(event);
+		}
 	}
 
 	/**
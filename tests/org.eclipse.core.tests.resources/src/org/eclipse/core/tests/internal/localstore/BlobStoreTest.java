@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -99,6 +99,55 @@ public class BlobStoreTest extends LocalStoreTest {
 		return root;
 	}
 
+	public void testContentAddressed() {
+		/* initialize common objects */
+		IFileStore root = createStore();
+		BlobStore store = new BlobStore(root, 64, true);
+		String content = "nothing important........tnatropmi gnihton";
+
+		/* identical contents are stored once */
+		IFileStore target1 = root.getChild("target1");
+		IFileStore target2 = root.getChild("target2");
+		UniversalUniqueIdentifier uuid1 = null;
+		UniversalUniqueIdentifier uuid2 = null;
+		try {
+			createFile(target1, content);
+			createFile(target2, content);
+			uuid1 = store.addBlob(target1, false);
+			uuid2 = store.addBlob(target2, true);
+		} catch (CoreException e) {
+			fail("1.0", e);
+		}
+		assertEquals("1.1", uuid1, uuid2);
+		assertTrue("1.2", BlobStore.isContentBlob(uuid1));
+		assertTrue("1.3", target1.fetchInfo().exists());
+		assertTrue("1.4", !target2.fetchInfo().exists());
+		try {
+			assertTrue("1.5", compareContent(getContents(content), store.getBlob(uuid1)));
+		} catch (CoreException e) {
+			fail("1.6", e);
+		}
+
+		/* different contents get different blobs */
+		UniversalUniqueIdentifier uuid3 = null;
+		try {
+			createFile(target2, content + "!");
+			uuid3 = store.addBlob(target2, false);
+		} catch (CoreException e) {
+			fail("2.0", e);
+		}
+		assertTrue("2.1", !uuid1.equals(uuid3));
+
+		/* blobs of a store that is not content addressed are unique */
+		UniversalUniqueIdentifier uuid4 = null;
+		try {
+			uuid4 = new BlobStore(root, 64).addBlob(target1, false);
+		} catch (CoreException e) {
+			fail("3.0", e);
+		}
+		assertTrue("3.1", !BlobStore.isContentBlob(uuid4));
+	}
+
 	public void testDeleteBlob() {
 		/* initialize common objects */
 		IFileStore root = createStore();
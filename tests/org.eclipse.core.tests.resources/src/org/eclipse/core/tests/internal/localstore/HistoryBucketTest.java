@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2005 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.core.tests.internal.localstore;
 
+import java.io.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.internal.localstore.HistoryBucket;
@@ -60,6 +61,114 @@ public class HistoryBucketTest extends ResourceTest {
 		}
 	}
 
+	/**
+	 * Ensures that indexes are kept in the cache of the bucket when another
+	 * index is loaded, and only written when all indexes are saved.
+	 */
+	public void testCachedIndexes() {
+		IPath baseLocation = getRandomLocation();
+		try {
+			HistoryBucket index1 = new HistoryBucket();
+			IPath location1 = baseLocation.append("location1");
+			IPath location2 = baseLocation.append("location2");
+			IPath path1 = new Path("/foo/bar");
+			IPath path2 = new Path("/foo/baz");
+			UniversalUniqueIdentifier uuid1 = new UniversalUniqueIdentifier();
+			UniversalUniqueIdentifier uuid2 = new UniversalUniqueIdentifier();
+			try {
+				index1.load("foo", location1.toFile());
+				index1.addBlob(path1, uuid1, 1);
+				index1.load("foo", location2.toFile());
+				index1.addBlob(path2, uuid2, 2);
+			} catch (CoreException e) {
+				fail("1.0", e);
+			}
+			// the first index has not been written yet
+			assertTrue("1.1", !location1.append("history.index").toFile().exists());
+			try {
+				index1.load("foo", location1.toFile());
+			} catch (CoreException e) {
+				fail("2.0", e);
+			}
+			assertEquals("2.1", 1, index1.getEntryCount());
+			assertEquals("2.2", uuid1, index1.getEntry(path1).getUUID(0));
+			try {
+				index1.saveAll();
+			} catch (CoreException e) {
+				fail("3.0", e);
+			}
+			HistoryBucket index2 = new HistoryBucket();
+			try {
+				index2.load("foo", location1.toFile());
+				assertEquals("3.1", 1, index2.getEntryCount());
+				assertEquals("3.2", uuid1, index2.getEntry(path1).getUUID(0));
+				index2.load("foo", location2.toFile());
+				assertEquals("3.3", 1, index2.getEntryCount());
+				assertEquals("3.4", uuid2, index2.getEntry(path2).getUUID(0));
+			} catch (CoreException e) {
+				fail("3.5", e);
+			}
+		} finally {
+			ensureDoesNotExistInFileSystem(baseLocation.toFile());
+		}
+	}
+
+	/**
+	 * Ensures that an index that cannot be read leaves the current index
+	 * loaded, with its changes still to be saved.
+	 */
+	public void testFailedLoad() {
+		IPath baseLocation = getRandomLocation();
+		try {
+			HistoryBucket index1 = new HistoryBucket();
+			IPath location1 = baseLocation.append("location1");
+			IPath location2 = baseLocation.append("location2");
+			IPath path1 = new Path("/foo/bar");
+			UniversalUniqueIdentifier uuid1 = new UniversalUniqueIdentifier();
+			// an index of an unknown version
+			location2.toFile().mkdirs();
+			try {
+				FileOutputStream output = new FileOutputStream(location2.append("history.index").toFile());
+				try {
+					output.write(Byte.MAX_VALUE);
+				} finally {
+					output.close();
+				}
+			} catch (IOException e) {
+				fail("0.0", e);
+			}
+			try {
+				index1.load("foo", location1.toFile());
+				index1.addBlob(path1, uuid1, 1);
+			} catch (CoreException e) {
+				fail("1.0", e);
+			}
+			try {
+				index1.load("foo", location2.toFile());
+				fail("1.1");
+			} catch (CoreException e) {
+				// expected
+			}
+			assertEquals("2.0", 1, index1.getEntryCount());
+			assertEquals("2.1", uuid1, index1.getEntry(path1).getUUID(0));
+			try {
+				index1.saveAll();
+			} catch (CoreException e) {
+				fail("3.0", e);
+			}
+			HistoryBucket index2 = new HistoryBucket();
+			try {
+				index2.load("foo", location1.toFile());
+			} catch (CoreException e) {
+				fail("3.1", e);
+			}
+			assertEquals("3.2", 1, index2.getEntryCount());
+			assertEquals("3.3", uuid1, index2.getEntry(path1).getUUID(0));
+		} finally {
+			ensureDoesNotExistInFileSystem(baseLocation.toFile());
+		}
+	}
+
 	public void testPersistence() {
 		IPath baseLocation = getRandomLocation();
 		try {
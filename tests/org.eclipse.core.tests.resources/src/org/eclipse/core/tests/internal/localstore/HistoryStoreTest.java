@@ -14,8 +14,9 @@ import java.io.*;
 import java.util.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
-import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.filesystem.*;
 import org.eclipse.core.filesystem.provider.FileInfo;
+import org.eclipse.core.internal.localstore.HistoryStore2;
 import org.eclipse.core.internal.localstore.IHistoryStore;
 import org.eclipse.core.internal.resources.*;
 import org.eclipse.core.internal.utils.UniversalUniqueIdentifier;
@@ -601,6 +602,62 @@ public class HistoryStoreTest extends ResourceTest {
 		}
 	}
 
+	/**
+	 * Tests that a blob shared by the states of two files in a content
+	 * addressed history store is only deleted once neither file refers to it.
+	 */
+	public void testContentAddressedSharedBlobs() throws CoreException {
+		IFileStore location = getTempStore();
+		location.mkdir(EFS.NONE, getMonitor());
+		HistoryStore2 store = new HistoryStore2((Workspace) getWorkspace(), location, 64, true);
+		IPath first = new Path("SharedBlobs/first.txt");
+		IPath second = new Path("SharedBlobs/second.txt");
+		IFileStore shared = getTempStore();
+		createFileInFileSystem(shared, getContents("shared contents"));
+		IFileStore other = getTempStore();
+		createFileInFileSystem(other, getContents("other contents"));
+		long now = System.currentTimeMillis();
+		try {
+			IFileState firstShared = store.addState(first, shared, stateInfo(shared, now - 1000), false);
+			IFileState secondShared = store.addState(second, shared, stateInfo(shared, now - 1000), false);
+			IFileState firstOther = store.addState(first, other, stateInfo(other, now), false);
+			assertEquals("1.0", ((FileState) firstShared).getUUID(), ((FileState) secondShared).getUUID());
+			assertTrue("1.1", store.exists(secondShared));
+
+			// clean drops the older state of the first file
+			IWorkspaceDescription description = getWorkspace().getDescription();
+			description.setFileStateLongevity(1000 * 3600 * 24);
+			description.setMaxFileStates(1);
+			description.setMaxFileStateSize(1024 * 1024);
+			getWorkspace().setDescription(description);
+			store.clean(getMonitor());
+			assertEquals("2.0", 1, store.getStates(first, getMonitor()).length);
+			assertTrue("2.1", store.exists(secondShared));
+
+			// removing the first file keeps the blob the second file refers to
+			store.remove(first, getMonitor());
+			store.removeGarbage();
+			assertEquals("3.0", 0, store.getStates(first, getMonitor()).length);
+			assertTrue("3.1", !store.exists(firstOther));
+			assertTrue("3.2", store.exists(secondShared));
+
+			// the blob goes once no file refers to it
+			store.remove(second, getMonitor());
+			store.removeGarbage();
+			assertTrue("4.0", !store.exists(secondShared));
+		} finally {
+			store.remove(first.uptoSegment(1), getMonitor());
+			store.shutdown(getMonitor());
+		}
+	}
+
+	private FileInfo stateInfo(IFileStore file, long lastModified) {
+		FileInfo info = new FileInfo(file.getName());
+		info.setLength(file.fetchInfo().getLength());
+		info.setLastModified(lastModified);
+		return info;
+	}
+
 	/**
 	 * Copy case for History Store of folder when the local history is being
 	 * copied.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,12 +11,15 @@
 package org.eclipse.core.tests.internal.localstore;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.internal.resources.PreferenceInitializer;
 import org.eclipse.core.resources.*;
-import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.*;
 import org.eclipse.core.tests.resources.ResourceTest;
 
 //
@@ -69,6 +72,7 @@ public class RefreshLocalPerformanceTest extends ResourceTest {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(RefreshLocalPerformanceTest.class.getName());
 		suite.addTest(new RefreshLocalPerformanceTest("testLocalRefreshPerformance"));
+		suite.addTest(new RefreshLocalPerformanceTest("testParallelRefreshPerformance"));
 		return suite;
 	}
 
@@ -126,4 +130,58 @@ public class RefreshLocalPerformanceTest extends ResourceTest {
 		System.out.println("Average without tree: " + averageWithoutTree);
 		System.out.println("Average with tree: " + averageWithTree);
 	}
+
+	/**
+	 * Compares refreshing a synthetic tree of 200,000 files with and without
+	 * fetching directory listings in parallel, and with the whole local tree
+	 * fetched up front. The difference is small on a
+	 * local disk, it is meant to be run against a network file system by
+	 * setting the temporary directory accordingly.
+	 */
+	public void testParallelRefreshPerformance() throws Exception {
+		final int folders = 200, subfolders = 10, files = 100;
+		final int[] threadCounts = new int[] {0, 2, 4, 8, 16};
+		IFileStore location = getTempStore();
+		File root = location.toLocalFile(EFS.NONE, null);
+		for (int i = 0; i < folders; i++) {
+			for (int j = 0; j < subfolders; j++) {
+				File folder = new File(root, "folder" + i + "/sub" + j);
+				assertTrue("1.0", folder.mkdirs());
+				for (int k = 0; k < files; k++)
+					if (!new File(folder, "file" + k).createNewFile())
+						throw new IOException("Could not create file in " + folder);
+			}
+		}
+		System.out.println("Number of local resources: " + countChildren(root));
+
+		IProject project = getWorkspace().getRoot().getProject("ParallelRefresh");
+		IProjectDescription description = getWorkspace().newProjectDescription(project.getName());
+		description.setLocationURI(location.toURI());
+		Preferences preferences = ResourcesPlugin.getPlugin().getPluginPreferences();
+		try {
+			for (int i = 0; i < threadCounts.length; i++) {
+				preferences.setValue(PreferenceInitializer.PREF_REFRESH_FETCH_THREADS, threadCounts[i]);
+				project.create(description, null);
+				project.open(null);
+				startClock();
+				project.refreshLocal(IResource.DEPTH_INFINITE, null);
+				long elapsed = stopClock();
+				System.out.println("Fetch threads " + threadCounts[i] + ": " + dispTime(elapsed));
+				// delete project but leave contents
+				project.delete(false, false, null);
+			}
+			preferences.setToDefault(PreferenceInitializer.PREF_REFRESH_FETCH_THREADS);
+			preferences.setValue(PreferenceInitializer.PREF_REFRESH_FETCH_FILE_TREE, true);
+			project.create(description, null);
+			project.open(null);
+			startClock();
+			project.refreshLocal(IResource.DEPTH_INFINITE, null);
+			long elapsed = stopClock();
+			System.out.println("Fetch file tree: " + dispTime(elapsed));
+			project.delete(false, false, null);
+		} finally {
+			preferences.setToDefault(PreferenceInitializer.PREF_REFRESH_FETCH_THREADS);
+			preferences.setToDefault(PreferenceInitializer.PREF_REFRESH_FETCH_FILE_TREE);
+		}
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -225,6 +225,76 @@ public class SafeChunkyInputOutputStreamTest extends LocalStoreTest {
 		}
 	}
 
+	/**
+	 * Chunks are read the same way from the contents of a file that were read
+	 * into memory as from the file itself.
+	 */
+	public void testReadFromStream() {
+		File target = new File(temp, "target");
+		Workspace.clear(target); // make sure there was nothing here before
+		assertTrue("1.0", !target.exists());
+
+		// write chunks, one of them incomplete
+		byte[] chunk1 = getRandomString().getBytes();
+		byte[] chunk2 = getRandomString().getBytes();
+		byte[] chunk3 = getRandomString().getBytes();
+		SafeChunkyOutputStream output = null;
+		try {
+			output = new SafeChunkyOutputStream(target);
+			try {
+				output.write(chunk1);
+				output.succeed();
+				output = new SafeChunkyOutputStream(target);
+				// fake failure
+				output.write(chunk2);
+				output.write(ILocalStoreConstants.BEGIN_CHUNK); // another begin
+				output.succeed();
+				//
+				output = new SafeChunkyOutputStream(target);
+				output.write(chunk3);
+				output.succeed();
+			} finally {
+				output.close();
+			}
+		} catch (IOException e) {
+			fail("2.0", e);
+		}
+
+		// read the file into memory
+		ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		try {
+			InputStream in = new FileInputStream(target);
+			try {
+				int b;
+				while ((b = in.read()) != -1)
+					contents.write(b);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			fail("3.0", e);
+		}
+
+		// read chunks
+		SafeChunkyInputStream input = new SafeChunkyInputStream(new ByteArrayInputStream(contents.toByteArray()));
+		try {
+			try {
+				byte[] read1 = new byte[chunk1.length];
+				byte[] read3 = new byte[chunk3.length];
+				assertTrue("4.0", input.read(read1) == chunk1.length);
+				assertTrue("4.1", input.read(read3) == chunk3.length);
+				assertTrue("4.2", input.read() == -1);
+				assertTrue("4.3", compare(chunk1, read1));
+				assertTrue("4.4", compare(chunk3, read3));
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			fail("4.10", e);
+		}
+		Workspace.clear(target); // make sure there was nothing here before
+	}
+
 	public void testSimple() {
 		File target = new File(temp, "target");
 		Workspace.clear(target); // make sure there was nothing here before
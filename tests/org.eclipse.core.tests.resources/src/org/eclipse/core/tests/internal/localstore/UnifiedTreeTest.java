@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2011 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -12,12 +12,13 @@ package org.eclipse.core.tests.internal.localstore;
 
 import java.io.*;
 import java.net.URI;
-import java.util.Hashtable;
+import java.util.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.internal.localstore.*;
+import org.eclipse.core.internal.resources.PreferenceInitializer;
 import org.eclipse.core.internal.resources.Resource;
 import org.eclipse.core.internal.resources.Workspace;
 import org.eclipse.core.resources.*;
@@ -246,6 +247,76 @@ public class UnifiedTreeTest extends LocalStoreTest {
 		assertTrue("2.0", set.isEmpty());
 	}
 
+	/**
+	 * Makes sure that fetching directory listings ahead of the traversal does not
+	 * change which nodes are visited, nor the order in which they are visited.
+	 */
+	public void testTraverseMechanismWithFetchThreads() throws Throwable {
+		/* create common objects */
+		IProject project = projects[0];
+		final Hashtable set = new Hashtable();
+
+		/* create some workspace and file system structure */
+		createResourcesInWorkspace(project, set);
+		createResourcesInFileSystem(((Resource) project).getStore(), set);
+
+		/* create a visitor recording the visited resources */
+		class RecordingVisitor implements IUnifiedTreeVisitor {
+			List visited = new ArrayList();
+
+			public boolean visit(UnifiedTreeNode node) {
+				visited.add(node.getResource().getFullPath().toString() + (node.existsInFileSystem() ? "" : " (workspace)"));
+				return true;
+			}
+		}
+
+		RecordingVisitor sequential = new RecordingVisitor();
+		new UnifiedTree(project).accept(sequential);
+
+		UnifiedTree tree = new UnifiedTree(project);
+		tree.setFetchThreads(4);
+		RecordingVisitor parallel = new RecordingVisitor();
+		tree.accept(parallel);
+
+		assertTrue("1.0", sequential.visited.size() > set.size());
+		assertEquals("2.0", sequential.visited, parallel.visited);
+	}
+
+	/**
+	 * Refreshing with a local file tree fetched up front finds the resources
+	 * on disk, and a project with resource filters leaves out the filtered
+	 * resources.
+	 */
+	public void testRefreshWithFileTree() throws Exception {
+		IProject project = projects[0];
+		File root = ((Resource) project).getStore().toLocalFile(EFS.NONE, getMonitor());
+		File folder = new File(root, "fetched/sub");
+		assertTrue("0.0", folder.mkdirs());
+		assertTrue("0.1", new File(folder, "file.txt").createNewFile());
+		File excluded = new File(root, "excluded");
+		assertTrue("0.2", excluded.mkdirs());
+		assertTrue("0.3", new File(excluded, "file.txt").createNewFile());
+		Preferences preferences = ResourcesPlugin.getPlugin().getPluginPreferences();
+		try {
+			preferences.setValue(PreferenceInitializer.PREF_REFRESH_FETCH_FILE_TREE, true);
+			project.refreshLocal(IResource.DEPTH_INFINITE, getMonitor());
+			assertTrue("1.0", project.getFile("fetched/sub/file.txt").exists());
+			assertTrue("1.1", project.getFile("excluded/file.txt").exists());
+
+			project.getFolder("excluded").delete(true, getMonitor());
+			assertTrue("2.0", excluded.mkdirs());
+			assertTrue("2.1", new File(excluded, "file.txt").createNewFile());
+			assertTrue("2.2", new File(folder, "other.txt").createNewFile());
+			FileInfoMatcherDescription matcher = new FileInfoMatcherDescription("org.eclipse.core.resources.regexFilterMatcher", "excluded");
+			project.createFilter(IResourceFilterDescription.EXCLUDE_ALL | IResourceFilterDescription.FOLDERS, matcher, 0, getMonitor());
+			project.refreshLocal(IResource.DEPTH_INFINITE, getMonitor());
+			assertTrue("3.0", project.getFile("fetched/sub/other.txt").exists());
+			assertFalse("3.1", project.getFolder("excluded").exists());
+		} finally {
+			preferences.setToDefault(PreferenceInitializer.PREF_REFRESH_FETCH_FILE_TREE);
+		}
+	}
+
 	/**
 	 * Regression test for 342968 - Resource layers asks IFileTree for info of linked resources
 	 */
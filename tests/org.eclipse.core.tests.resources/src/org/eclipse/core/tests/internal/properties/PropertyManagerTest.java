@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,12 +10,15 @@
  *******************************************************************************/
 package org.eclipse.core.tests.internal.properties;
 
+import java.io.File;
+import java.io.RandomAccessFile;
 import java.util.Enumeration;
 import java.util.Vector;
 import junit.framework.Test;
 import junit.framework.TestSuite;
-import org.eclipse.core.internal.properties.IPropertyManager;
+import org.eclipse.core.internal.properties.*;
 import org.eclipse.core.internal.resources.ResourcesCompatibilityHelper;
+import org.eclipse.core.internal.resources.Workspace;
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.tests.internal.localstore.LocalStoreTest;
@@ -504,6 +507,142 @@ public class PropertyManagerTest extends LocalStoreTest {
 		target.delete(false, monitor);
 	}
 
+	/**
+	 * Tests that the single file property store keeps properties across
+	 * restarts, and takes over the properties of the bucket based store.
+	 */
+	public void testPropertyLog() throws Throwable {
+		Workspace workspace = (Workspace) getWorkspace();
+		IFolder folder = projects[0].getFolder("folder");
+		IFile target = folder.getFile("target");
+		ensureExistsInWorkspace(target, true);
+		QualifiedName propName1 = new QualifiedName("org.eclipse.core.tests", "prop1");
+		QualifiedName propName2 = new QualifiedName("org.eclipse.core.tests", "prop2");
+
+		// properties of the bucket based store are migrated
+		PropertyManager2 oldManager = new PropertyManager2(workspace);
+		oldManager.setProperty(target, propName1, "old value");
+		oldManager.shutdown(getMonitor());
+		PropertyManager3 manager = new PropertyManager3(workspace);
+		assertEquals("1.0", "old value", manager.getProperty(target, propName1));
+
+		manager.setProperty(target, propName1, "value1");
+		manager.setProperty(target, propName2, "value2");
+		manager.setProperty(folder, propName1, "folder value");
+		manager.setProperty(projects[0], propName1, "project value");
+		manager.setProperty(target, propName2, null);
+		manager.shutdown(getMonitor());
+
+		// the properties are read back from the log
+		manager = new PropertyManager3(workspace);
+		assertEquals("2.0", "value1", manager.getProperty(target, propName1));
+		assertNull("2.1", manager.getProperty(target, propName2));
+		assertEquals("2.2", 1, manager.getProperties(target).size());
+		assertEquals("2.3", "folder value", manager.getProperty(folder, propName1));
+		assertEquals("2.4", "project value", manager.getProperty(projects[0], propName1));
+
+		manager.deleteProperties(folder, IResource.DEPTH_ZERO);
+		assertNull("3.0", manager.getProperty(folder, propName1));
+		assertEquals("3.1", "value1", manager.getProperty(target, propName1));
+		manager.deleteProperties(projects[0], IResource.DEPTH_INFINITE);
+		assertNull("3.2", manager.getProperty(target, propName1));
+		assertNull("3.3", manager.getProperty(projects[0], propName1));
+		manager.shutdown(getMonitor());
+	}
+
+	/**
+	 * Tests that a log holding mostly overwritten values is compacted in the
+	 * background, and keeps the current values.
+	 */
+	public void testPropertyLogCompaction() throws Throwable {
+		Workspace workspace = (Workspace) getWorkspace();
+		IFile target = projects[0].getFile("target");
+		ensureExistsInWorkspace(target, true);
+		QualifiedName propName = new QualifiedName("org.eclipse.core.tests", "prop");
+		File log = workspace.getMetaArea().locationFor(projects[0]).append("properties.log").toFile();
+		StringBuffer value = new StringBuffer();
+		for (int i = 0; i < 1000; i++)
+			value.append('x');
+		PropertyManager3 manager = new PropertyManager3(workspace);
+		// each value makes the previous one garbage
+		for (int i = 0; i < 200; i++)
+			manager.setProperty(target, propName, value.toString() + i);
+		// without compaction the log would hold all 200 values
+		for (int i = 0; i < 100 && log.length() > 100 * 1000; i++)
+			Thread.sleep(100);
+		assertTrue("1.0", log.length() <= 100 * 1000);
+		assertEquals("1.1", value.toString() + 199, manager.getProperty(target, propName));
+		manager.setProperty(target, propName, "after compaction");
+		manager.shutdown(getMonitor());
+
+		manager = new PropertyManager3(workspace);
+		assertEquals("2.0", "after compaction", manager.getProperty(target, propName));
+		manager.shutdown(getMonitor());
+	}
+
+	/**
+	 * Tests that a log ending with an incomplete record, left by an
+	 * interrupted write, is truncated after its last complete record.
+	 */
+	public void testPropertyLogTruncatedRecord() throws Throwable {
+		Workspace workspace = (Workspace) getWorkspace();
+		IFile target = projects[0].getFile("target");
+		ensureExistsInWorkspace(target, true);
+		QualifiedName propName1 = new QualifiedName("org.eclipse.core.tests", "prop1");
+		QualifiedName propName2 = new QualifiedName("org.eclipse.core.tests", "prop2");
+		File log = workspace.getMetaArea().locationFor(projects[0]).append("properties.log").toFile();
+		PropertyManager3 manager = new PropertyManager3(workspace);
+		manager.setProperty(target, propName1, "value1");
+		manager.shutdown(getMonitor());
+		long complete = log.length();
+
+		// the length and kind of a record whose write was interrupted
+		RandomAccessFile file = new RandomAccessFile(log, "rw");
+		try {
+			file.seek(complete);
+			file.writeInt(100);
+			file.writeByte(1);
+		} finally {
+			file.close();
+		}
+
+		manager = new PropertyManager3(workspace);
+		assertEquals("1.0", "value1", manager.getProperty(target, propName1));
+		assertEquals("1.1", complete, log.length());
+		manager.setProperty(target, propName2, "value2");
+		manager.shutdown(getMonitor());
+
+		manager = new PropertyManager3(workspace);
+		assertEquals("2.0", "value1", manager.getProperty(target, propName1));
+		assertEquals("2.1", "value2", manager.getProperty(target, propName2));
+		manager.shutdown(getMonitor());
+	}
+
+	/**
+	 * Tests that deleting the properties of a subtree of the single file
+	 * property store leaves the properties of siblings with similar names.
+	 */
+	public void testPropertyLogDeleteSubtree() throws Throwable {
+		Workspace workspace = (Workspace) getWorkspace();
+		IFolder folder = projects[0].getFolder("folder");
+		IFile child = folder.getFile("child");
+		IFolder similarFolder = projects[0].getFolder("folder2");
+		IFile similarFile = projects[0].getFile("folder.txt");
+		ensureExistsInWorkspace(new IResource[] {folder, child, similarFolder, similarFile}, true);
+		QualifiedName propName = new QualifiedName("org.eclipse.core.tests", "prop");
+		PropertyManager3 manager = new PropertyManager3(workspace);
+		IResource[] resources = new IResource[] {folder, child, similarFolder, similarFile};
+		for (int i = 0; i < resources.length; i++)
+			manager.setProperty(resources[i], propName, "value" + i);
+
+		manager.deleteProperties(folder, IResource.DEPTH_INFINITE);
+		assertNull("1.0", manager.getProperty(folder, propName));
+		assertNull("1.1", manager.getProperty(child, propName));
+		assertEquals("1.2", "value2", manager.getProperty(similarFolder, propName));
+		assertEquals("1.3", "value3", manager.getProperty(similarFile, propName));
+		manager.shutdown(getMonitor());
+	}
+
 	public void testSimpleUpdate() {
 
 		// create common objects
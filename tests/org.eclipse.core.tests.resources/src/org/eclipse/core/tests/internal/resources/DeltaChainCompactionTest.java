@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.resources.DeltaChainCompactionJob;
+import org.eclipse.core.internal.resources.Workspace;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.tests.resources.ResourceTest;
+
+/**
+ * Tests that compacting the delta chain of the workspace tree keeps the trees
+ * that the next snapshot and the next notification are computed against, so
+ * that later deltas are still computed from the layers that follow them.
+ */
+public class DeltaChainCompactionTest extends ResourceTest {
+	private static final int FILE_COUNT = 20;
+
+	/**
+	 * Runs the compaction in the calling thread, so that it can be nested in
+	 * the operation that built the delta chain.
+	 */
+	class Compaction extends DeltaChainCompactionJob {
+		Compaction(Workspace workspace) {
+			super(workspace, workspace.getSaveManager());
+		}
+
+		IStatus runInThread() {
+			return run(getMonitor());
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(DeltaChainCompactionTest.class);
+	}
+
+	public DeltaChainCompactionTest() {
+		super();
+	}
+
+	public DeltaChainCompactionTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Returns whether the delta chain of the given tree reaches the other
+	 * given tree.
+	 */
+	private boolean isInChain(ElementTree tree, ElementTree ancestor) {
+		for (ElementTree current = tree; current != null; current = current.getParent())
+			if (current == ancestor)
+				return true;
+		return false;
+	}
+
+	public void testCompactedChain() throws CoreException {
+		final Workspace workspace = (Workspace) getWorkspace();
+		IProject project = workspace.getRoot().getProject(getUniqueString());
+		ensureExistsInWorkspace(project, true);
+		final IFile[] files = new IFile[FILE_COUNT];
+		// one operation, and one layer of the tree, per file
+		for (int i = 0; i < files.length; i++) {
+			files[i] = project.getFile("file" + i);
+			ensureExistsInWorkspace(files[i], true);
+		}
+		waitForBuild();
+		// the snapshot at the bottom of the chain
+		workspace.save(true, getMonitor());
+		final ElementTree snapshotTree = workspace.getElementTree();
+		// the current tree is rerooted at the end of each top level operation,
+		// so the chain is built in one operation, with one layer per file
+		workspace.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				//keep the layers in the chain, as while working layers are live
+				workspace.getElementTree().setRerootDeferred(true);
+				ElementTree notifiedTree = null;
+				for (int i = 0; i < files.length; i++) {
+					files[i].touch(getMonitor());
+					if (i == files.length / 2) {
+						// a notification in the middle of the chain
+						workspace.checkpoint(false);
+						notifiedTree = workspace.getElementTree();
+					} else
+						workspace.getElementTree().immutable();
+				}
+				int depth = workspace.getElementTree().getDeltaDepth();
+				assertTrue("1.0", depth > FILE_COUNT);
+
+				assertTrue("1.1", new Compaction(workspace).runInThread().isOK());
+
+				// the current tree, the notified tree and the snapshot tree are left
+				ElementTree tree = workspace.getElementTree();
+				assertTrue("1.2", tree.getDeltaDepth() < depth);
+				assertTrue("1.3", tree.getDeltaDepth() <= 3);
+				assertTrue("1.4", isInChain(tree, snapshotTree));
+				assertTrue("1.5", isInChain(tree, notifiedTree));
+			}
+		}, workspace.getRoot(), IResource.NONE, getMonitor());
+		waitForBuild();
+
+		// the next notification only reports the next change
+		final List<IResourceDelta> changes = new ArrayList<IResourceDelta>();
+		IResourceChangeListener listener = new IResourceChangeListener() {
+			public void resourceChanged(IResourceChangeEvent event) {
+				try {
+					event.getDelta().accept(new IResourceDeltaVisitor() {
+						public boolean visit(IResourceDelta delta) {
+							if (delta.getResource().getType() == IResource.FILE)
+								changes.add(delta);
+							return true;
+						}
+					});
+				} catch (CoreException e) {
+					fail("2.3", e);
+				}
+			}
+		};
+		workspace.addResourceChangeListener(listener, IResourceChangeEvent.POST_CHANGE);
+		try {
+			files[3].touch(getMonitor());
+		} finally {
+			workspace.removeResourceChangeListener(listener);
+		}
+		assertEquals("2.0", 1, changes.size());
+		IResourceDelta change = changes.get(0);
+		assertEquals("2.1", files[3], change.getResource());
+		assertEquals("2.2", IResourceDelta.CHANGED, change.getKind());
+
+		// the next snapshot is written as a delta against the snapshot tree
+		workspace.save(false, getMonitor());
+	}
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.resources;
+
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.tests.resources.ResourceTest;
+
+/**
+ * Tests that the deep marker searches and maximum severities, which are
+ * answered from the marker type and severity indexes, are the same as those
+ * of the markers found on each resource of the subtree, while markers and
+ * resources are changed at random.
+ */
+public class MarkerIndexTest extends ResourceTest {
+	private static final String TEST_PROBLEM_MARKER = "org.eclipse.core.tests.resources.testproblem";
+	private static final String[] TYPES = new String[] {IMarker.PROBLEM, IMarker.TASK, IMarker.BOOKMARK, TEST_PROBLEM_MARKER};
+	private static final int STEPS = 300;
+
+	private int moveCount;
+	private Random random;
+
+	public static Test suite() {
+		return new TestSuite(MarkerIndexTest.class);
+	}
+
+	public MarkerIndexTest() {
+		super();
+	}
+
+	public MarkerIndexTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Asserts that the markers found in the subtree of every container, and
+	 * their maximum severity, are those of the markers found on each resource
+	 * of the subtree, for every type.
+	 */
+	private void assertSameResults(String message) throws CoreException {
+		final List<IResource> resources = new ArrayList<IResource>();
+		getWorkspace().getRoot().accept(new IResourceVisitor() {
+			public boolean visit(IResource resource) {
+				resources.add(resource);
+				return true;
+			}
+		});
+		String[] types = new String[TYPES.length + 1];
+		System.arraycopy(TYPES, 0, types, 1, TYPES.length);
+		for (Iterator<IResource> i = resources.iterator(); i.hasNext();) {
+			IResource container = i.next();
+			if (container.getType() == IResource.FILE)
+				continue;
+			for (int j = 0; j < types.length; j++) {
+				for (int k = 0; k < 2; k++) {
+					boolean includeSubtypes = k == 0;
+					String name = message + "." + container.getFullPath() + "." + types[j] + "." + includeSubtypes;
+					Set<IMarker> expected = new HashSet<IMarker>();
+					for (Iterator<IResource> m = resources.iterator(); m.hasNext();) {
+						IResource resource = m.next();
+						if (container.getFullPath().isPrefixOf(resource.getFullPath()))
+							expected.addAll(Arrays.asList(resource.findMarkers(types[j], includeSubtypes, IResource.DEPTH_ZERO)));
+					}
+					IMarker[] markers = container.findMarkers(types[j], includeSubtypes, IResource.DEPTH_INFINITE);
+					assertEquals(name + ".count", expected.size(), markers.length);
+					assertEquals(name + ".markers", expected, new HashSet<IMarker>(Arrays.asList(markers)));
+					int expectedSeverity = -1;
+					for (Iterator<IMarker> m = expected.iterator(); m.hasNext();)
+						expectedSeverity = Math.max(expectedSeverity, m.next().getAttribute(IMarker.SEVERITY, -1));
+					assertEquals(name + ".severity", expectedSeverity, container.findMaxProblemSeverity(types[j], includeSubtypes, IResource.DEPTH_INFINITE));
+				}
+			}
+		}
+	}
+
+	private List<IMarker> allMarkers() throws CoreException {
+		return new ArrayList<IMarker>(Arrays.asList(getWorkspace().getRoot().findMarkers(null, true, IResource.DEPTH_INFINITE)));
+	}
+
+	private void createHierarchy(IProject project) {
+		List<IResource> resources = new ArrayList<IResource>();
+		resources.add(project);
+		for (int i = 0; i < 3; i++) {
+			IFolder folder = project.getFolder("folder" + i);
+			resources.add(folder);
+			resources.add(folder.getFile("file.txt"));
+			for (int j = 0; j < 3; j++) {
+				IFolder child = folder.getFolder("child" + j);
+				resources.add(child);
+				resources.add(child.getFile("a.txt"));
+				resources.add(child.getFile("b.txt"));
+			}
+		}
+		ensureExistsInWorkspace(resources.toArray(new IResource[resources.size()]), true);
+	}
+
+	private IResource randomResource() throws CoreException {
+		final List<IResource> resources = new ArrayList<IResource>();
+		getWorkspace().getRoot().accept(new IResourceVisitor() {
+			public boolean visit(IResource resource) {
+				resources.add(resource);
+				return true;
+			}
+		});
+		return resources.get(random.nextInt(resources.size()));
+	}
+
+	/**
+	 * Returns a severity, or <code>null</code> for no severity.
+	 */
+	private Integer randomSeverity() {
+		int severity = random.nextInt(4) - 1;
+		return severity < 0 ? null : new Integer(severity);
+	}
+
+	private void randomStep(IProject[] projects) throws CoreException {
+		switch (random.nextInt(8)) {
+			case 0 :
+			case 1 : {
+				//create a marker
+				IMarker marker = randomResource().createMarker(TYPES[random.nextInt(TYPES.length)]);
+				Integer severity = randomSeverity();
+				if (severity != null)
+					marker.setAttribute(IMarker.SEVERITY, severity);
+				break;
+			}
+			case 2 : {
+				//change the severity of a marker
+				List<IMarker> markers = allMarkers();
+				if (markers.isEmpty())
+					break;
+				IMarker marker = markers.get(random.nextInt(markers.size()));
+				if (random.nextBoolean())
+					marker.setAttribute(IMarker.SEVERITY, randomSeverity());
+				else
+					marker.setAttributes(new String[] {IMarker.MESSAGE, IMarker.SEVERITY}, new Object[] {"message", randomSeverity()});
+				break;
+			}
+			case 3 : {
+				//delete a marker
+				List<IMarker> markers = allMarkers();
+				if (!markers.isEmpty())
+					markers.get(random.nextInt(markers.size())).delete();
+				break;
+			}
+			case 4 :
+				//delete the markers of a type in a subtree
+				randomResource().deleteMarkers(TYPES[random.nextInt(TYPES.length)], random.nextBoolean(), IResource.DEPTH_INFINITE);
+				break;
+			case 5 : {
+				//move a folder or file within its project
+				IResource resource = randomResource();
+				if (resource.getType() == IResource.FOLDER || resource.getType() == IResource.FILE)
+					resource.move(resource.getProject().getFullPath().append(resource.getName() + moveCount++), true, getMonitor());
+				break;
+			}
+			case 6 : {
+				//delete a folder or file
+				IResource resource = randomResource();
+				if (resource.getType() == IResource.FOLDER || resource.getType() == IResource.FILE)
+					resource.delete(true, getMonitor());
+				break;
+			}
+			case 7 : {
+				//close and open a project, which restores its persistent markers
+				IProject project = projects[random.nextInt(projects.length)];
+				project.close(getMonitor());
+				project.open(getMonitor());
+				break;
+			}
+		}
+	}
+
+	public void testRandomChanges() throws CoreException {
+		long seed = System.currentTimeMillis();
+		random = new Random(seed);
+		final IProject[] projects = new IProject[] {getWorkspace().getRoot().getProject("p0"), getWorkspace().getRoot().getProject("p1")};
+		for (int i = 0; i < projects.length; i++)
+			createHierarchy(projects[i]);
+		for (int i = 0; i < STEPS; i++) {
+			if (random.nextInt(4) == 0) {
+				//several changes in one operation
+				getWorkspace().run(new IWorkspaceRunnable() {
+					public void run(IProgressMonitor monitor) throws CoreException {
+						for (int j = 0; j < 5; j++)
+							randomStep(projects);
+					}
+				}, getMonitor());
+			} else
+				randomStep(projects);
+			assertSameResults("seed " + seed + ", step " + i);
+		}
+	}
+
+	public void testRestore() throws CoreException {
+		IProject project = getWorkspace().getRoot().getProject("p0");
+		createHierarchy(project);
+		IFolder folder = project.getFolder("folder1");
+		IMarker problem = folder.getFolder("child2").getFile("a.txt").createMarker(IMarker.PROBLEM);
+		problem.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
+		IMarker task = folder.createMarker(IMarker.TASK);
+		task.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+		IMarker transientProblem = project.createMarker(TEST_PROBLEM_MARKER);
+		transientProblem.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_INFO);
+		assertEquals("1.0", IMarker.SEVERITY_ERROR, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		assertEquals("1.1", IMarker.SEVERITY_INFO, project.findMaxProblemSeverity(TEST_PROBLEM_MARKER, false, IResource.DEPTH_INFINITE));
+		assertSameResults("1.2");
+
+		//markers of types that are not persistent are not restored
+		project.close(getMonitor());
+		assertEquals("2.0", -1, getWorkspace().getRoot().findMaxProblemSeverity(null, true, IResource.DEPTH_INFINITE));
+		project.open(getMonitor());
+		assertEquals("2.1", IMarker.SEVERITY_ERROR, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		assertEquals("2.2", IMarker.SEVERITY_WARNING, folder.findMaxProblemSeverity(IMarker.TASK, true, IResource.DEPTH_INFINITE));
+		assertEquals("2.3", -1, project.findMaxProblemSeverity(TEST_PROBLEM_MARKER, false, IResource.DEPTH_INFINITE));
+		assertSameResults("2.4");
+	}
+
+	/**
+	 * Tests that the markers of resources whose names start with the name of
+	 * a folder are not found in the folder.
+	 */
+	public void testSimilarNames() throws CoreException {
+		IProject project = getWorkspace().getRoot().getProject("p0");
+		IFolder folder = project.getFolder("a");
+		IResource[] resources = new IResource[] {project, folder, folder.getFile("b.txt"), project.getFile("a.txt"), project.getFolder("a-b"), project.getFolder("ab"), project.getFolder("a-b").getFile("b.txt")};
+		ensureExistsInWorkspace(resources, true);
+		for (int i = 0; i < resources.length; i++)
+			resources[i].createMarker(IMarker.PROBLEM).setAttribute(IMarker.SEVERITY, i == 1 || i == 2 ? IMarker.SEVERITY_INFO : IMarker.SEVERITY_ERROR);
+		assertEquals("1.0", 2, folder.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE).length);
+		assertEquals("1.1", IMarker.SEVERITY_INFO, folder.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		assertEquals("1.2", 7, project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE).length);
+		assertEquals("1.3", 7, getWorkspace().getRoot().findMarkers(null, true, IResource.DEPTH_INFINITE).length);
+		assertSameResults("1.4");
+	}
+
+	public void testSeverityChanges() throws CoreException {
+		IProject project = getWorkspace().getRoot().getProject("p0");
+		createHierarchy(project);
+		IFolder folder = project.getFolder("folder0");
+		final IFile file = folder.getFolder("child0").getFile("a.txt");
+		IMarker marker = file.createMarker(IMarker.PROBLEM);
+		assertEquals("1.0", -1, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+		assertEquals("1.1", IMarker.SEVERITY_WARNING, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		marker.setAttributes(new String[] {IMarker.SEVERITY}, new Object[] {new Integer(IMarker.SEVERITY_ERROR)});
+		assertEquals("1.2", IMarker.SEVERITY_ERROR, folder.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		marker.setAttribute(IMarker.SEVERITY, "not a severity");
+		assertEquals("1.3", -1, folder.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+
+		//a marker changed in the operation that creates it
+		getWorkspace().run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				IMarker task = file.createMarker(IMarker.TASK);
+				task.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
+				task.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_INFO);
+			}
+		}, getMonitor());
+		assertEquals("2.0", IMarker.SEVERITY_INFO, project.findMaxProblemSeverity(IMarker.TASK, false, IResource.DEPTH_INFINITE));
+		assertEquals("2.1", IMarker.SEVERITY_INFO, project.findMaxProblemSeverity(null, false, IResource.DEPTH_INFINITE));
+
+		file.delete(true, getMonitor());
+		assertEquals("3.0", -1, getWorkspace().getRoot().findMaxProblemSeverity(null, true, IResource.DEPTH_INFINITE));
+		assertSameResults("3.1");
+	}
+}
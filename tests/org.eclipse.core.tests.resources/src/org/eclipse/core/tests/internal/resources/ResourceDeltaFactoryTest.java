@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.resources;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.events.ResourceDelta;
+import org.eclipse.core.internal.events.ResourceDeltaFactory;
+import org.eclipse.core.internal.resources.Workspace;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.tests.resources.ResourceTest;
+
+/**
+ * Tests that the deltas computed on several threads, and the deltas whose
+ * children are created lazily, are the same as the deltas computed on a
+ * single thread.
+ */
+public class ResourceDeltaFactoryTest extends ResourceTest {
+	private static final String PARALLEL_DELTA = ResourcesPlugin.PI_RESOURCES + ".parallelDelta";
+	private static final String LAZY_DELTA = ResourcesPlugin.PI_RESOURCES + ".lazyDelta";
+
+	public static Test suite() {
+		return new TestSuite(ResourceDeltaFactoryTest.class);
+	}
+
+	public ResourceDeltaFactoryTest() {
+		super();
+	}
+
+	public ResourceDeltaFactoryTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Computes the delta between the given trees on a single thread, and with
+	 * each of the given system properties set, and asserts that the deltas
+	 * are the same.
+	 */
+	private void assertSameDeltas(String message, ElementTree oldTree, ElementTree newTree, long markerGeneration) {
+		Workspace workspace = (Workspace) getWorkspace();
+		String[] modes = new String[] {PARALLEL_DELTA, LAZY_DELTA};
+		String[] values = new String[modes.length];
+		for (int i = 0; i < modes.length; i++) {
+			values[i] = System.getProperty(modes[i]);
+			System.getProperties().remove(modes[i]);
+		}
+		try {
+			ResourceDelta expected = ResourceDeltaFactory.computeDelta(workspace, oldTree, newTree, Path.ROOT, markerGeneration);
+			for (int i = 0; i < modes.length; i++) {
+				System.setProperty(modes[i], "true");
+				ResourceDelta actual = ResourceDeltaFactory.computeDelta(workspace, oldTree, newTree, Path.ROOT, markerGeneration);
+				System.getProperties().remove(modes[i]);
+				//compare the structure first, since the debug string creates all lazy deltas
+				assertSameDeltas(message + "." + modes[i], expected, actual);
+				assertEquals(message + "." + modes[i], expected.toDeepDebugString(), actual.toDeepDebugString());
+			}
+		} finally {
+			for (int i = 0; i < modes.length; i++) {
+				if (values[i] != null)
+					System.setProperty(modes[i], values[i]);
+			}
+		}
+	}
+
+	private void assertSameDeltas(String message, IResourceDelta expected, IResourceDelta actual) {
+		assertEquals(message + ".path", expected.getFullPath(), actual.getFullPath());
+		assertEquals(message + ".kind." + expected.getFullPath(), expected.getKind(), actual.getKind());
+		assertEquals(message + ".flags." + expected.getFullPath(), expected.getFlags(), actual.getFlags());
+		assertEquals(message + ".movedFrom." + expected.getFullPath(), expected.getMovedFromPath(), actual.getMovedFromPath());
+		assertEquals(message + ".movedTo." + expected.getFullPath(), expected.getMovedToPath(), actual.getMovedToPath());
+		assertEquals(message + ".markers." + expected.getFullPath(), expected.getMarkerDeltas().length, actual.getMarkerDeltas().length);
+		int memberFlags = IContainer.INCLUDE_PHANTOMS | IContainer.INCLUDE_HIDDEN | IContainer.INCLUDE_TEAM_PRIVATE_MEMBERS;
+		IResourceDelta[] expectedChildren = expected.getAffectedChildren(IResourceDelta.ALL_WITH_PHANTOMS, memberFlags);
+		IResourceDelta[] actualChildren = actual.getAffectedChildren(IResourceDelta.ALL_WITH_PHANTOMS, memberFlags);
+		assertEquals(message + ".children." + expected.getFullPath(), expectedChildren.length, actualChildren.length);
+		for (int i = 0; i < expectedChildren.length; i++)
+			assertSameDeltas(message, expectedChildren[i], actualChildren[i]);
+	}
+
+	private IProject[] createProjects(int count) {
+		IProject[] projects = new IProject[count];
+		for (int i = 0; i < count; i++) {
+			projects[i] = getWorkspace().getRoot().getProject("Project" + i);
+			ensureExistsInWorkspace(buildResources(projects[i], new String[] {"/a/", "/a/b/", "/a/b/file1.txt", "/a/file2.txt", "/c/", "/c/file3.txt", "/file4.txt"}), true);
+		}
+		return projects;
+	}
+
+	/**
+	 * Changes in many projects, including moves between projects.
+	 */
+	public void testManyProjects() throws CoreException {
+		final IProject[] projects = createProjects(8);
+		Workspace workspace = (Workspace) getWorkspace();
+		ElementTree oldTree = workspace.getElementTree();
+		long markerGeneration = workspace.getMarkerManager().getChangeId() + 1;
+		getWorkspace().run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				projects[0].getFile("new.txt").create(getRandomContents(), true, null);
+				projects[0].getFolder("newFolder").create(true, true, null);
+				projects[1].getFolder("a").delete(true, null);
+				projects[2].getFile("file4.txt").move(projects[3].getFullPath().append("moved.txt"), true, null);
+				projects[3].getFolder("c").move(projects[4].getFullPath().append("c2"), true, null);
+				projects[4].getFile("a/b/file1.txt").setContents(getRandomContents(), true, false, null);
+				projects[5].getFile("a/file2.txt").createMarker(IMarker.PROBLEM);
+				projects[5].getFolder("c").setDerived(true, null);
+				projects[6].close(null);
+				projects[7].move(new Path("Renamed"), true, null);
+				IProject added = getWorkspace().getRoot().getProject("Added");
+				added.create(null);
+				added.open(null);
+			}
+		}, null);
+		ElementTree newTree = workspace.getElementTree();
+		assertSameDeltas("1.0", oldTree, newTree, markerGeneration);
+		assertSameDeltas("2.0", oldTree, newTree, -1);
+	}
+
+	/**
+	 * A lazy delta gives the same answers when only some of its children are
+	 * looked at.
+	 */
+	public void testFindMember() throws CoreException {
+		IProject[] projects = createProjects(3);
+		Workspace workspace = (Workspace) getWorkspace();
+		ElementTree oldTree = workspace.getElementTree();
+		long markerGeneration = workspace.getMarkerManager().getChangeId() + 1;
+		IFile moved = projects[1].getFile("a/b/moved.txt");
+		projects[0].getFile("a/b/file1.txt").move(moved.getFullPath(), true, null);
+		ElementTree newTree = workspace.getElementTree();
+		String lazy = System.getProperty(LAZY_DELTA);
+		ResourceDelta expected, actual;
+		try {
+			System.getProperties().remove(LAZY_DELTA);
+			expected = ResourceDeltaFactory.computeDelta(workspace, oldTree, newTree, Path.ROOT, markerGeneration);
+			System.setProperty(LAZY_DELTA, "true");
+			actual = ResourceDeltaFactory.computeDelta(workspace, oldTree, newTree, Path.ROOT, markerGeneration);
+		} finally {
+			if (lazy == null)
+				System.getProperties().remove(LAZY_DELTA);
+			else
+				System.setProperty(LAZY_DELTA, lazy);
+		}
+		IResourceDelta member = actual.findMember(moved.getFullPath());
+		assertNotNull("1.0", member);
+		assertEquals("1.1", IResourceDelta.ADDED, member.getKind());
+		assertEquals("1.2", projects[0].getFile("a/b/file1.txt").getFullPath(), member.getMovedFromPath());
+		assertEquals("1.3", expected.findMember(moved.getFullPath()).getFlags(), member.getFlags());
+		assertNull("1.4", actual.findMember(projects[2].getFullPath()));
+		assertSameDeltas("2.0", expected, actual);
+	}
+
+	/**
+	 * Deltas with no project, and with a single project.
+	 */
+	public void testFewProjects() throws CoreException {
+		Workspace workspace = (Workspace) getWorkspace();
+		ElementTree emptyTree = workspace.getElementTree();
+		assertSameDeltas("1.0", emptyTree, emptyTree, -1);
+		IProject[] projects = createProjects(1);
+		ElementTree oldTree = workspace.getElementTree();
+		assertSameDeltas("2.0", emptyTree, oldTree, -1);
+		projects[0].getFile("file4.txt").move(projects[0].getFullPath().append("moved.txt"), true, null);
+		assertSameDeltas("3.0", oldTree, workspace.getElementTree(), -1);
+	}
+}
@@ -0,0 +1,467 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.resources;
+
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.resources.Workspace;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.tests.harness.TestBarrier;
+import org.eclipse.core.tests.resources.ResourceTest;
+
+/**
+ * Tests operations on disjoint projects that run concurrently in working
+ * layers, which is enabled by the
+ * <code>org.eclipse.core.resources.concurrentProjects</code> system property.
+ */
+public class WorkingLayerTest extends ResourceTest {
+	private static final String CONCURRENT_PROJECTS = ResourcesPlugin.PI_RESOURCES + ".concurrentProjects";
+
+	/**
+	 * Records the POST_CHANGE deltas, with the names of the given projects
+	 * replaced by their index, so that the deltas of operations on different
+	 * projects can be compared.
+	 */
+	class DeltaRecorder implements IResourceChangeListener {
+		final Set<String> changes = new HashSet<String>();
+		private final List<String> names = new ArrayList<String>();
+
+		DeltaRecorder(IProject[] projects) {
+			for (int i = 0; i < projects.length; i++)
+				names.add(projects[i].getName());
+		}
+
+		private String normalize(IPath path) {
+			int index = names.indexOf(path.segment(0));
+			return index < 0 ? null : new Path(Integer.toString(index)).append(path.removeFirstSegments(1)).toString();
+		}
+
+		public synchronized void resourceChanged(IResourceChangeEvent event) {
+			try {
+				event.getDelta().accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta delta) {
+						if (delta.getResource().getType() == IResource.ROOT)
+							return true;
+						String path = normalize(delta.getFullPath());
+						if (path == null)
+							return false;
+						changes.add(path + " kind: " + delta.getKind() + " flags: " + delta.getFlags());
+						IMarkerDelta[] markers = delta.getMarkerDeltas();
+						for (int i = 0; i < markers.length; i++)
+							changes.add(path + " marker: " + markers[i].getKind() + " " + markers[i].getType() + " " + markers[i].getAttribute(IMarker.SEVERITY, -1));
+						return true;
+					}
+				});
+			} catch (CoreException e) {
+				fail("DeltaRecorder", e);
+			}
+		}
+	}
+
+	/**
+	 * A workspace operation with a project rule, run in a thread of its own.
+	 */
+	class Operation extends Thread {
+		Throwable failure;
+		private final IWorkspaceRunnable runnable;
+		private final IProject rule;
+
+		Operation(IProject rule, IWorkspaceRunnable runnable) {
+			super("WorkingLayerTest: " + rule.getName());
+			this.rule = rule;
+			this.runnable = runnable;
+		}
+
+		void finish() {
+			try {
+				join(60000);
+			} catch (InterruptedException e) {
+				fail("Operation.finish", e);
+			}
+			assertFalse("Operation.finish: " + getName(), isAlive());
+		}
+
+		public void run() {
+			try {
+				getWorkspace().run(runnable, rule, IResource.NONE, null);
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(WorkingLayerTest.class);
+	}
+
+	public WorkingLayerTest() {
+		super("");
+	}
+
+	public WorkingLayerTest(String name) {
+		super(name);
+	}
+
+	private IProject[] createProjects(String prefix, int count) {
+		IProject[] projects = new IProject[count];
+		for (int i = 0; i < count; i++)
+			projects[i] = getWorkspace().getRoot().getProject(prefix + i);
+		ensureExistsInWorkspace(projects, true);
+		return projects;
+	}
+
+	/**
+	 * Creates a folder, a file and a problem marker in the given project.
+	 */
+	void changeProject(IProject project) throws CoreException {
+		IFolder folder = project.getFolder("folder");
+		folder.create(true, true, null);
+		IFile file = folder.getFile("file.txt");
+		file.create(getRandomContents(), true, null);
+		createProblem(file);
+	}
+
+	IMarker createProblem(IResource resource) throws CoreException {
+		IMarker marker = resource.createMarker(IMarker.PROBLEM);
+		marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
+		return marker;
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		System.setProperty(CONCURRENT_PROJECTS, Boolean.TRUE.toString());
+	}
+
+	protected void tearDown() throws Exception {
+		System.getProperties().remove(CONCURRENT_PROJECTS);
+		super.tearDown();
+	}
+
+	/**
+	 * Operations on disjoint projects run at the same time, and report the
+	 * same resource and marker deltas as when they run one after the other.
+	 */
+	public void testConcurrentOperations() throws CoreException {
+		final IProject[] concurrent = createProjects("Concurrent", 2);
+		final int[] status = new int[2];
+		Operation[] operations = new Operation[2];
+		DeltaRecorder concurrentDeltas = new DeltaRecorder(concurrent);
+		getWorkspace().addResourceChangeListener(concurrentDeltas, IResourceChangeEvent.POST_CHANGE);
+		try {
+			for (int i = 0; i < operations.length; i++) {
+				final int index = i;
+				operations[i] = new Operation(concurrent[i], new IWorkspaceRunnable() {
+					public void run(IProgressMonitor monitor) throws CoreException {
+						changeProject(concurrent[index]);
+						//both operations must be running at the same time
+						status[index] = TestBarrier.STATUS_RUNNING;
+						TestBarrier.waitForStatus(status, 1 - index, TestBarrier.STATUS_RUNNING);
+					}
+				});
+				operations[i].start();
+			}
+			for (int i = 0; i < operations.length; i++) {
+				operations[i].finish();
+				if (operations[i].failure != null)
+					fail("1." + i, operations[i].failure);
+			}
+		} finally {
+			getWorkspace().removeResourceChangeListener(concurrentDeltas);
+		}
+
+		System.getProperties().remove(CONCURRENT_PROJECTS);
+		IProject[] serial = createProjects("Serial", 2);
+		DeltaRecorder serialDeltas = new DeltaRecorder(serial);
+		getWorkspace().addResourceChangeListener(serialDeltas, IResourceChangeEvent.POST_CHANGE);
+		try {
+			for (int i = 0; i < serial.length; i++) {
+				final IProject project = serial[i];
+				getWorkspace().run(new IWorkspaceRunnable() {
+					public void run(IProgressMonitor monitor) throws CoreException {
+						changeProject(project);
+					}
+				}, project, IResource.NONE, getMonitor());
+			}
+		} finally {
+			getWorkspace().removeResourceChangeListener(serialDeltas);
+		}
+
+		assertFalse("2.0", serialDeltas.changes.isEmpty());
+		assertEquals("2.1", serialDeltas.changes, concurrentDeltas.changes);
+		for (int i = 0; i < concurrent.length; i++) {
+			assertTrue("3.0." + i, concurrent[i].getFile(new Path("folder/file.txt")).exists());
+			assertEquals("3.1." + i, 1, concurrent[i].findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE).length);
+			assertEquals("3.2." + i, IMarker.SEVERITY_ERROR, concurrent[i].findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		}
+	}
+
+	/**
+	 * An operation that changes a project claimed by another operation waits
+	 * until the other operation has ended, and keeps its changes.
+	 */
+	public void testChangeClaimedProject() throws CoreException {
+		final IProject[] projects = createProjects("Claimed", 2);
+		final int[] status = new int[2];
+		Operation owner = new Operation(projects[1], new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				changeProject(projects[1]);
+				status[1] = TestBarrier.STATUS_RUNNING;
+				TestBarrier.waitForStatus(status, 1, TestBarrier.STATUS_WAIT_FOR_DONE);
+			}
+		});
+		Operation waiter = new Operation(projects[0], new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				projects[0].getFile("file.txt").create(getRandomContents(), true, null);
+				status[0] = TestBarrier.STATUS_RUNNING;
+				//waits for the owner to end
+				createProblem(projects[1].getFile(new Path("folder/file.txt")));
+			}
+		});
+		owner.start();
+		TestBarrier.waitForStatus(status, 1, TestBarrier.STATUS_RUNNING);
+		waiter.start();
+		TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_RUNNING);
+		//give the waiter time to block on the claim
+		try {
+			Thread.sleep(200);
+		} catch (InterruptedException e) {
+			//ignore
+		}
+		assertTrue("1.0", waiter.isAlive());
+		status[1] = TestBarrier.STATUS_WAIT_FOR_DONE;
+		owner.finish();
+		waiter.finish();
+		if (owner.failure != null)
+			fail("2.0", owner.failure);
+		if (waiter.failure != null)
+			fail("2.1", waiter.failure);
+		assertTrue("3.0", projects[0].getFile("file.txt").exists());
+		assertTrue("3.1", projects[1].getFile(new Path("folder/file.txt")).exists());
+		assertEquals("3.2", 2, projects[1].findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE).length);
+	}
+
+	/**
+	 * An operation that changes a project that another operation has changed
+	 * since it started sees the changes of the other operation, and both
+	 * keep their changes.
+	 */
+	public void testChangeMergedProject() throws CoreException {
+		final IProject[] projects = createProjects("Merged", 2);
+		final int[] status = new int[1];
+		Operation operation = new Operation(projects[0], new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				projects[0].getFile("file.txt").create(getRandomContents(), true, null);
+				status[0] = TestBarrier.STATUS_RUNNING;
+				TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_WAIT_FOR_DONE);
+				//the file was created by an operation that ended after this one started
+				createProblem(projects[1].getFile(new Path("folder/file.txt")));
+			}
+		});
+		operation.start();
+		TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_RUNNING);
+		getWorkspace().run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				changeProject(projects[1]);
+			}
+		}, projects[1], IResource.NONE, getMonitor());
+		status[0] = TestBarrier.STATUS_WAIT_FOR_DONE;
+		operation.finish();
+		if (operation.failure != null)
+			fail("1.0", operation.failure);
+		assertTrue("2.0", projects[0].getFile("file.txt").exists());
+		assertTrue("2.1", projects[1].getFile(new Path("folder/file.txt")).exists());
+		assertEquals("2.2", 2, projects[1].findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE).length);
+	}
+
+	/**
+	 * Two operations that wait for each other's projects cannot both go on.
+	 * One of them fails with a CoreException, the other one ends normally.
+	 */
+	public void testClaimCycle() {
+		final IProject[] projects = createProjects("Cycle", 2);
+		final int[] status = new int[2];
+		Operation[] operations = new Operation[2];
+		for (int i = 0; i < operations.length; i++) {
+			final int index = i;
+			operations[i] = new Operation(projects[i], new IWorkspaceRunnable() {
+				public void run(IProgressMonitor monitor) throws CoreException {
+					projects[index].getFile("file.txt").create(getRandomContents(), true, null);
+					status[index] = TestBarrier.STATUS_RUNNING;
+					TestBarrier.waitForStatus(status, 1 - index, TestBarrier.STATUS_RUNNING);
+					createProblem(projects[1 - index]);
+				}
+			});
+			operations[i].start();
+		}
+		int failed = 0;
+		for (int i = 0; i < operations.length; i++) {
+			operations[i].finish();
+			Throwable failure = operations[i].failure;
+			if (failure == null)
+				continue;
+			failed++;
+			assertTrue("1.0", failure instanceof CoreException);
+			assertEquals("1.1", IResourceStatus.OPERATION_FAILED, ((CoreException) failure).getStatus().getCode());
+		}
+		assertEquals("2.0", 1, failed);
+		for (int i = 0; i < projects.length; i++)
+			assertTrue("3." + i, projects[i].getFile("file.txt").exists());
+	}
+
+	/**
+	 * An operation that cannot run in a working layer waits until the
+	 * operations running in layers have ended.
+	 */
+	public void testExclusiveOperationWaits() throws CoreException {
+		final IProject[] projects = createProjects("Exclusive", 1);
+		final int[] status = new int[1];
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		Operation layered = new Operation(projects[0], new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				status[0] = TestBarrier.STATUS_RUNNING;
+				TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_WAIT_FOR_DONE);
+				projects[0].getFile("file.txt").create(getRandomContents(), true, null);
+				events.add("layered");
+			}
+		});
+		layered.start();
+		TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_RUNNING);
+		Thread exclusive = new Thread("WorkingLayerTest: exclusive") {
+			public void run() {
+				try {
+					getWorkspace().run(new IWorkspaceRunnable() {
+						public void run(IProgressMonitor monitor) {
+							events.add("exclusive");
+						}
+					}, null, IResource.NONE, null);
+				} catch (CoreException e) {
+					events.add(e.getMessage());
+				}
+			}
+		};
+		exclusive.start();
+		try {
+			Thread.sleep(200);
+			assertTrue("1.0", events.isEmpty());
+			status[0] = TestBarrier.STATUS_WAIT_FOR_DONE;
+			layered.finish();
+			exclusive.join(60000);
+		} catch (InterruptedException e) {
+			fail("1.99", e);
+		}
+		if (layered.failure != null)
+			fail("2.0", layered.failure);
+		assertEquals("2.1", Arrays.asList(new String[] {"layered", "exclusive"}), events);
+	}
+
+	/**
+	 * An operation that merges its layer while another operation is still
+	 * reading and changing its branch does not change what the other
+	 * operation sees. The delta chain of the workspace tree is rerooted once
+	 * the last layer is merged.
+	 */
+	public void testMergeWhileBranchInUse() throws CoreException {
+		final IProject[] projects = createProjects("Branch", 2);
+		final IFile[] existing = new IFile[20];
+		for (int i = 0; i < existing.length; i++)
+			existing[i] = projects[1].getFile("existing" + i + ".txt");
+		ensureExistsInWorkspace(existing, true);
+		final int[] status = new int[1];
+		final int[] rounds = new int[1];
+		final IFile file = projects[0].getFile("file.txt");
+		Operation reader = new Operation(projects[0], new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				file.create(getRandomContents(), true, null);
+				status[0] = TestBarrier.STATUS_RUNNING;
+				while (status[0] != TestBarrier.STATUS_WAIT_FOR_DONE) {
+					//read through the trees that the merges below build on
+					for (int i = 0; i < existing.length; i++)
+						assertTrue("reader.0." + i, existing[i].exists());
+					assertTrue("reader.1", file.exists());
+					createProblem(file);
+					rounds[0]++;
+				}
+			}
+		});
+		reader.start();
+		TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_RUNNING);
+		IFile[] merged = new IFile[20];
+		for (int i = 0; i < merged.length; i++) {
+			final IFile mergedFile = merged[i] = projects[1].getFile("merged" + i + ".txt");
+			getWorkspace().run(new IWorkspaceRunnable() {
+				public void run(IProgressMonitor monitor) throws CoreException {
+					mergedFile.create(getRandomContents(), true, null);
+				}
+			}, projects[1], IResource.NONE, getMonitor());
+		}
+		status[0] = TestBarrier.STATUS_WAIT_FOR_DONE;
+		reader.finish();
+		if (reader.failure != null)
+			fail("1.0", reader.failure);
+
+		assertTrue("2.0", rounds[0] > 0);
+		assertTrue("2.1", file.exists());
+		assertEquals("2.2", rounds[0], file.findMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO).length);
+		for (int i = 0; i < merged.length; i++)
+			assertTrue("2.3." + i, merged[i].exists());
+		for (int i = 0; i < existing.length; i++)
+			assertTrue("2.4." + i, existing[i].exists());
+		waitForBuild();
+		assertNull("3.0", ((Workspace) getWorkspace()).getElementTree().getParent());
+	}
+
+	/**
+	 * The marker indexes only see the marker changes of an operation that
+	 * runs in a working layer once its layer is merged, while the operation
+	 * sees its own changes.
+	 */
+	public void testMarkerIndexes() throws CoreException {
+		final IProject project = createProjects("Markers", 1)[0];
+		final IFile file = project.getFile("file.txt");
+		ensureExistsInWorkspace(file, true);
+		final IMarker error = createProblem(file);
+		final int[] status = new int[1];
+		Operation operation = new Operation(project, new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				error.delete();
+				IMarker warning = file.createMarker(IMarker.PROBLEM);
+				warning.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+				IMarker[] markers = project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+				assertEquals("operation.0", 1, markers.length);
+				assertEquals("operation.1", warning, markers[0]);
+				assertEquals("operation.2", IMarker.SEVERITY_WARNING, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+				status[0] = TestBarrier.STATUS_RUNNING;
+				TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_WAIT_FOR_DONE);
+			}
+		});
+		operation.start();
+		TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_RUNNING);
+		try {
+			//the changes of the operation are not in the workspace tree yet
+			IMarker[] markers = project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+			assertEquals("1.0", 1, markers.length);
+			assertEquals("1.1", error, markers[0]);
+			assertEquals("1.2", IMarker.SEVERITY_ERROR, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+			assertEquals("1.3", IMarker.SEVERITY_ERROR, getWorkspace().getRoot().findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+		} finally {
+			status[0] = TestBarrier.STATUS_WAIT_FOR_DONE;
+			operation.finish();
+		}
+		if (operation.failure != null)
+			fail("2.0", operation.failure);
+		IMarker[] markers = project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+		assertEquals("3.0", 1, markers.length);
+		assertEquals("3.1", IMarker.SEVERITY_WARNING, markers[0].getAttribute(IMarker.SEVERITY, -1));
+		assertEquals("3.2", IMarker.SEVERITY_WARNING, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+	}
+}
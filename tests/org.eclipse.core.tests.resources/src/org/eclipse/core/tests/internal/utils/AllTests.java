@@ -18,6 +18,7 @@ public class AllTests extends TestCase {
 		suite.addTest(QueueTest.suite());
 		suite.addTest(ObjectMapTest.suite());
 		suite.addTest(CacheTest.suite());
+		suite.addTest(PipelinedOutputStreamTest.suite());
 		return suite;
 	}
 }
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.utils;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.*;
+import org.eclipse.core.internal.utils.PipelinedOutputStream;
+
+public class PipelinedOutputStreamTest extends TestCase {
+	private static final int BUFFER_SIZE = 16;
+
+	/**
+	 * A stream that records what is done to it, and that fails after a given
+	 * number of bytes.
+	 */
+	static class RecordingStream extends ByteArrayOutputStream {
+		final List<String> events = new ArrayList<String>();
+		final int failAfter;
+		boolean failClose;
+
+		RecordingStream(int failAfter) {
+			this.failAfter = failAfter;
+		}
+
+		public synchronized void close() throws IOException {
+			events.add("close");
+			if (failClose)
+				throw new IOException("close failed");
+		}
+
+		public synchronized void flush() {
+			events.add("flush");
+		}
+
+		public synchronized void write(byte[] b, int off, int len) {
+			if (size() + len > failAfter)
+				throw new IllegalStateException("write failed");
+			if (events.contains("close"))
+				events.add("write after close");
+			super.write(b, off, len);
+		}
+	}
+
+	public PipelinedOutputStreamTest() {
+		super(null);
+	}
+
+	public PipelinedOutputStreamTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(PipelinedOutputStreamTest.class);
+	}
+
+	private byte[] bytes(int length) {
+		byte[] result = new byte[length];
+		for (int i = 0; i < length; i++)
+			result[i] = (byte) i;
+		return result;
+	}
+
+	/**
+	 * Tests that all data reaches the other stream before it is closed.
+	 */
+	public void testClose() throws IOException {
+		RecordingStream target = new RecordingStream(Integer.MAX_VALUE);
+		PipelinedOutputStream out = new PipelinedOutputStream(target, BUFFER_SIZE, getName());
+		byte[] data = bytes(BUFFER_SIZE * 10 + 3);
+		out.write(data, 0, 5);
+		out.write(data[5]);
+		out.write(data, 6, data.length - 6);
+		out.close();
+		assertTrue("1.0", Arrays.equals(data, target.toByteArray()));
+		assertEquals("1.1", 1, target.events.size());
+		assertEquals("1.2", "close", target.events.get(0));
+
+		//closing again does nothing
+		out.close();
+		assertEquals("2.0", 1, target.events.size());
+		try {
+			out.write(0);
+			fail("2.1");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Tests that a failure to close the other stream is reported.
+	 */
+	public void testCloseFailure() {
+		RecordingStream target = new RecordingStream(Integer.MAX_VALUE);
+		target.failClose = true;
+		PipelinedOutputStream out = new PipelinedOutputStream(target, BUFFER_SIZE, getName());
+		try {
+			out.write(bytes(3));
+			out.close();
+			fail("1.0");
+		} catch (IOException e) {
+			assertEquals("1.1", "close failed", e.getMessage());
+		}
+		assertEquals("1.2", 3, target.size());
+	}
+
+	/**
+	 * Tests that a failure of the other stream is thrown by a later write,
+	 * and by close, which still closes the other stream.
+	 */
+	public void testFailure() {
+		RecordingStream target = new RecordingStream(BUFFER_SIZE);
+		PipelinedOutputStream out = new PipelinedOutputStream(target, BUFFER_SIZE, getName());
+		IOException failure = null;
+		byte[] data = bytes(BUFFER_SIZE);
+		try {
+			//the producer is never blocked by the failed writer
+			for (int i = 0; i < 100; i++)
+				out.write(data);
+			fail("1.0");
+		} catch (IOException e) {
+			failure = e;
+		}
+		assertTrue("1.1", failure.getCause() instanceof IllegalStateException);
+		try {
+			out.flush();
+			fail("2.0");
+		} catch (IOException e) {
+			assertSame("2.1", failure, e);
+		}
+		try {
+			out.close();
+			fail("3.0");
+		} catch (IOException e) {
+			assertSame("3.1", failure, e);
+		}
+		assertTrue("3.2", target.events.contains("close"));
+		assertEquals("3.3", BUFFER_SIZE, target.size());
+	}
+
+	/**
+	 * Tests that flush hands data over without flushing the other stream.
+	 */
+	public void testFlush() throws IOException {
+		RecordingStream target = new RecordingStream(Integer.MAX_VALUE);
+		PipelinedOutputStream out = new PipelinedOutputStream(target, BUFFER_SIZE, getName());
+		out.write(bytes(3));
+		out.flush();
+		out.write(bytes(2));
+		out.close();
+		assertEquals("1.0", 5, target.size());
+		assertFalse("1.1", target.events.contains("flush"));
+		assertFalse("1.2", target.events.contains("write after close"));
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -33,8 +33,10 @@ public class AllTests extends TestCase {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		suite.addTest(DeltaChainFlatteningTest.suite());
 		suite.addTest(DeltaFlatteningTest.suite());
+		suite.addTest(ElementTreeBranchTest.suite());
 		suite.addTest(ElementTreeDeltaChainTest.suite());
 		suite.addTest(ElementTreeIteratorTest.suite());
+		suite.addTest(ElementTreeJournalTest.suite());
 		suite.addTest(TreeFlatteningTest.suite());
 		return suite;
 	}
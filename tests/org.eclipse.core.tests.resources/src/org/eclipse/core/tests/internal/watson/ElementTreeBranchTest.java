@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.watson;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.watson.ElementTree;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Tests the ElementTree.newBranch() and ElementTree.rebase() methods.
+ */
+public class ElementTreeBranchTest extends WatsonTest implements IPathConstants {
+	private static final IPath a = root.append("a");
+	private static final IPath b = root.append("b");
+	private static final IPath c = root.append("c");
+
+	private ElementTree base;
+
+	public ElementTreeBranchTest() {
+		super(null);
+	}
+
+	public ElementTreeBranchTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ElementTreeBranchTest.class);
+	}
+
+	protected void setUp() throws Exception {
+		base = new ElementTree();
+		base.createElement(a, "a");
+		base.createElement(a.append("x"), "x");
+		base.createElement(b, "b");
+		base.createElement(b.append("y"), "y");
+		base.immutable();
+	}
+
+	protected void tearDown() throws Exception {
+		//ElementTree tests don't use the CoreTest infrastructure
+	}
+
+	/**
+	 * Changes two branches of the same tree, and carries the changes of each
+	 * over to a tree that has changed since.
+	 */
+	public void testRebase() {
+		ElementTree branchA = base.newBranch();
+		branchA.setElementData(a.append("x"), "x2");
+		branchA = branchA.newEmptyDelta();
+		branchA.createElement(a.append("z"), "z");
+		//not carried over
+		branchA.setElementData(b, "b2");
+
+		ElementTree branchB = base.newBranch();
+		branchB.deleteElement(b.append("y"));
+		branchB = branchB.newEmptyDelta();
+		branchB.createElement(b.append("w"), "w");
+
+		ElementTree current = base.newEmptyDelta();
+		current.createElement(c, "c");
+		current.immutable();
+
+		ElementTree merged = branchA.rebase(base, current, new String[] {"a"});
+		assertTrue("1.0", merged.isImmutable());
+		assertEquals("1.1", current, merged.getParent());
+		assertEquals("1.2", "x2", merged.getElementData(a.append("x")));
+		assertEquals("1.3", "z", merged.getElementData(a.append("z")));
+		assertEquals("1.4", "b", merged.getElementData(b));
+		assertTrue("1.5", merged.includes(b.append("y")));
+		assertEquals("1.6", "c", merged.getElementData(c));
+
+		merged = branchB.rebase(base, merged, new String[] {"b"});
+		assertEquals("2.0", "x2", merged.getElementData(a.append("x")));
+		assertEquals("2.1", "z", merged.getElementData(a.append("z")));
+		assertTrue("2.2", !merged.includes(b.append("y")));
+		assertEquals("2.3", "w", merged.getElementData(b.append("w")));
+		assertEquals("2.4", "c", merged.getElementData(c));
+
+		//the trees the branches started from are unchanged
+		assertEquals("3.0", "x", base.getElementData(a.append("x")));
+		assertTrue("3.1", !base.includes(a.append("z")));
+		assertTrue("3.2", base.includes(b.append("y")));
+		assertTrue("3.3", !base.includes(c));
+		assertTrue("3.4", !current.includes(b.append("w")));
+	}
+
+	/**
+	 * Creates and deletes children of the root in a branch.
+	 */
+	public void testRebaseRootChildren() {
+		ElementTree branch = base.newBranch();
+		branch.deleteElement(a);
+		branch.createElement(c, "c");
+		branch.createElement(c.append("v"), "v");
+
+		ElementTree current = base.newEmptyDelta();
+		current.setElementData(b, "b2");
+		current.immutable();
+
+		ElementTree merged = branch.rebase(base, current, new String[] {"a", "c"});
+		assertTrue("1.0", !merged.includes(a));
+		assertEquals("1.1", "v", merged.getElementData(c.append("v")));
+		assertEquals("1.2", "b2", merged.getElementData(b));
+		assertEquals("1.3", 2, merged.getChildCount(root));
+
+		//the merged tree can be the base of further deltas
+		ElementTree next = merged.newEmptyDelta();
+		next.createElement(a, "a3");
+		next.immutable();
+		assertEquals("2.0", 3, next.getChildCount(root));
+		assertEquals("2.1", "v", next.getElementData(c.append("v")));
+	}
+
+	/**
+	 * Leaves the delta chain as it is while branches read it, and reroots it
+	 * once they are done.
+	 */
+	public void testDeferredReroot() {
+		base.setRerootDeferred(true);
+		ElementTree branch = base.newBranch();
+		ElementTree current = base.newEmptyDelta();
+		current.createElement(c, "c");
+		current.immutable();
+		assertEquals("1.0", base, current.getParent());
+		assertNull("1.1", base.getParent());
+		branch.createElement(c.append("v"), "v");
+		ElementTree merged = branch.rebase(base, current, new String[] {"c"});
+		ElementTree next = merged.newEmptyDelta();
+		next.setElementData(a, "a2");
+		next.immutable();
+		assertEquals("1.2", merged, next.getParent());
+		assertEquals("1.3", current, merged.getParent());
+
+		next.setRerootDeferred(false);
+		assertNull("2.0", next.getParent());
+		assertEquals("2.1", next, merged.getParent());
+		assertEquals("2.2", current, base.getParent());
+		assertEquals("2.3", "v", next.getElementData(c.append("v")));
+		assertEquals("2.4", "a2", next.getElementData(a));
+		assertEquals("2.5", "a", base.getElementData(a));
+		assertTrue("2.6", !base.includes(c));
+	}
+}
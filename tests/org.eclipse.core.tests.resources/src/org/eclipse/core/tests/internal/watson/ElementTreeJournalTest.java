@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.watson;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.watson.*;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Tests the changes an ElementTree records, and their use by
+ * ElementTree.getChangedPaths() and ElementTree.hasChanges().
+ */
+public class ElementTreeJournalTest extends WatsonTest implements IPathConstants {
+	private static final IPath a = root.append("a");
+	private static final IPath b = root.append("b");
+	private static final IPath c = root.append("c");
+
+	private ElementTree base;
+	private IElementComparator comparator = DefaultElementComparator.getComparator();
+
+	public ElementTreeJournalTest() {
+		super(null);
+	}
+
+	public ElementTreeJournalTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ElementTreeJournalTest.class);
+	}
+
+	protected void setUp() throws Exception {
+		base = new ElementTree().newEmptyDelta();
+		base.createElement(a, "a");
+		base.createElement(a.append("x"), "x");
+		base.createElement(b, "b");
+		base.createElement(b.append("y"), "y");
+		base.immutable();
+	}
+
+	protected void tearDown() throws Exception {
+		//ElementTree tests don't use the CoreTest infrastructure
+	}
+
+	private void assertPaths(String message, IPath[] expected, IPath[] actual) {
+		assertNotNull(message, actual);
+		assertEquals(message, new HashSet<IPath>(Arrays.asList(expected)), new HashSet<IPath>(Arrays.asList(actual)));
+	}
+
+	/**
+	 * Finds the paths changed in a line of trees.
+	 */
+	public void testChangedPaths() {
+		ElementTree first = base.newEmptyDelta();
+		first.setElementData(a.append("x"), "x2");
+		//the same data is not a change
+		first.setElementData(b, "b");
+		assertPaths("1.0", new IPath[] {a.append("x")}, ElementTree.getChangedPaths(first, base, comparator));
+
+		ElementTree second = first.newEmptyDelta();
+		second.deleteElement(b.append("y"));
+		second.createElement(c, "c");
+		second.immutable();
+		assertPaths("2.0", new IPath[] {a.append("x"), b.append("y"), c}, ElementTree.getChangedPaths(second, base, comparator));
+		assertPaths("2.1", new IPath[] {b.append("y"), c}, ElementTree.getChangedPaths(second, first, comparator));
+		assertPaths("2.2", new IPath[0], ElementTree.getChangedPaths(second, second, comparator));
+
+		//data that is changed back is not a change
+		ElementTree third = second.newEmptyDelta();
+		third.setElementData(a.append("x"), "x");
+		assertPaths("3.0", new IPath[] {b.append("y"), c}, ElementTree.getChangedPaths(third, base, comparator));
+	}
+
+	/**
+	 * Tells changes that make a difference to the comparator from those that
+	 * don't.
+	 */
+	public void testHasChanges() {
+		ElementTree tree = base.newEmptyDelta();
+		tree.setElementData(a, "a");
+		assertTrue("1.0", !ElementTree.hasChanges(tree, base, comparator, false));
+		tree.immutable();
+		assertTrue("1.1", !ElementTree.hasChanges(tree, base, comparator, false));
+
+		tree = tree.newEmptyDelta();
+		tree.setElementData(b, "b2");
+		assertTrue("2.0", ElementTree.hasChanges(tree, base, comparator, false));
+		tree.setElementData(b, "b");
+		assertTrue("2.1", !ElementTree.hasChanges(tree, base, comparator, false));
+	}
+
+	/**
+	 * Trees that are not in the same line of trees have no changes recorded
+	 * between them.
+	 */
+	public void testUnrecordedChanges() {
+		ElementTree first = base.newEmptyDelta();
+		ElementTree second = base.newEmptyDelta();
+		second.createElement(c, "c");
+		assertNotNull("1.0", ElementTree.getChangedPaths(first, base, comparator));
+		assertNull("1.1", ElementTree.getChangedPaths(second, base, comparator));
+		assertTrue("1.2", ElementTree.hasChanges(second, base, comparator, false));
+
+		ElementTree branch = base.newBranch();
+		assertNull("2.0", ElementTree.getChangedPaths(branch, base, comparator));
+
+		//a mutable tree can still change
+		assertNull("3.0", ElementTree.getChangedPaths(second, first, comparator));
+		assertNull("3.1", ElementTree.getChangedPaths(base, new ElementTree(), comparator));
+	}
+
+	/**
+	 * A journal that is full records no more changes, and the trees after it
+	 * are compared without it.
+	 */
+	public void testFullJournal() {
+		ElementTree tree = base.newEmptyDelta();
+		tree.setElementData(a, "a2");
+		assertTrue("1.0", ElementTree.isJournaled(tree, base));
+		//each create and delete is recorded, until the journal is full
+		for (int i = 0; i < 5001; i++) {
+			tree.createElement(c, "c");
+			tree.deleteElement(c);
+		}
+		assertTrue("1.1", !ElementTree.isJournaled(tree, base));
+		assertNull("1.2", ElementTree.getChangedPaths(tree, base, comparator));
+		assertTrue("1.3", ElementTree.hasChanges(tree, base, comparator, false));
+		tree.immutable();
+		assertTrue("1.4", !ElementTree.isJournaled(tree, base));
+		assertTrue("1.5", ElementTree.hasChanges(tree, base, comparator, false));
+
+		//the trees created afterwards start a new journal
+		ElementTree next = tree.newEmptyDelta();
+		next.immutable();
+		ElementTree last = next.newEmptyDelta();
+		last.setElementData(b, "b2");
+		assertTrue("2.0", !ElementTree.isJournaled(next, tree));
+		assertTrue("2.1", ElementTree.isJournaled(last, next));
+		assertPaths("2.2", new IPath[] {b}, ElementTree.getChangedPaths(last, next, comparator));
+	}
+
+	/**
+	 * Tells which layers have their changes recorded.
+	 */
+	public void testIsJournaled() {
+		ElementTree first = base.newEmptyDelta();
+		first.immutable();
+		ElementTree second = first.newEmptyDelta();
+		assertTrue("1.0", ElementTree.isJournaled(first, base));
+		assertTrue("1.1", ElementTree.isJournaled(second, base));
+		assertTrue("1.2", ElementTree.isJournaled(first, first));
+		//a mutable old layer can still change
+		assertTrue("1.3", !ElementTree.isJournaled(base, second));
+		assertTrue("1.4", !ElementTree.isJournaled(base.newBranch(), base));
+		assertTrue("1.5", !ElementTree.isJournaled(base, new ElementTree()));
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.core.tests.resources;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.internal.resources.Workspace;
@@ -422,6 +423,108 @@ public class IResourceChangeListenerTest extends ResourceTest {
 		}
 	}
 
+	/**
+	 * Records the POST_CHANGE events received by an asynchronous listener.
+	 * The listener can be held up to let events pile up in its queue.
+	 */
+	class AsyncListener implements IResourceChangeListener {
+		final List<IResourceDelta> deltas = new ArrayList<IResourceDelta>();
+		boolean held = false;
+		final Set<Thread> threads = new HashSet<Thread>();
+
+		synchronized void hold() {
+			held = true;
+		}
+
+		synchronized void release() {
+			held = false;
+			notifyAll();
+		}
+
+		public synchronized void resourceChanged(IResourceChangeEvent event) {
+			assertEquals("type", IResourceChangeEvent.POST_CHANGE, event.getType());
+			threads.add(Thread.currentThread());
+			deltas.add(event.getDelta());
+			notifyAll();
+			while (held) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					//keep waiting
+				}
+			}
+		}
+
+		synchronized void waitForDeltas(int count) {
+			long end = System.currentTimeMillis() + 10000;
+			while (deltas.size() < count && System.currentTimeMillis() < end) {
+				try {
+					wait(100);
+				} catch (InterruptedException e) {
+					//keep waiting
+				}
+			}
+			assertTrue("waiting for " + count + " deltas", deltas.size() >= count);
+		}
+	}
+
+	/**
+	 * An asynchronous listener gets the same changes as the other listeners,
+	 * but in a thread of its own.
+	 */
+	public void testAsyncListener() {
+		AsyncListener listener = new AsyncListener();
+		((Workspace) getWorkspace()).addAsyncResourceChangeListener(listener, 10);
+		try {
+			verifier.addExpectedChange(folder2, IResourceDelta.ADDED, 0);
+			folder2.create(true, true, getMonitor());
+			assertDelta();
+			listener.waitForDeltas(1);
+			IResourceDelta delta = listener.deltas.get(0).findMember(folder2.getFullPath());
+			assertNotNull("1.0", delta);
+			assertEquals("1.1", IResourceDelta.ADDED, delta.getKind());
+			assertFalse("1.2", listener.threads.contains(Thread.currentThread()));
+		} catch (CoreException e) {
+			handleCoreException(e);
+		} finally {
+			getWorkspace().removeResourceChangeListener(listener);
+		}
+	}
+
+	/**
+	 * When the queue of an asynchronous listener is full, further changes are
+	 * merged into the last queued event, and no change is lost.
+	 */
+	public void testAsyncListenerMergesEvents() {
+		AsyncListener listener = new AsyncListener();
+		((Workspace) getWorkspace()).addAsyncResourceChangeListener(listener, 1);
+		try {
+			//hold up the listener in the first event
+			listener.hold();
+			file2.create(getRandomContents(), true, getMonitor());
+			listener.waitForDeltas(1);
+			//the first change fills the queue, the other two are merged into it
+			folder2.create(true, true, getMonitor());
+			file3.create(getRandomContents(), true, getMonitor());
+			IMarker marker = file1.createMarker(IMarker.PROBLEM);
+			listener.release();
+			listener.waitForDeltas(2);
+			assertEquals("1.0", 2, listener.deltas.size());
+			IResourceDelta delta = listener.deltas.get(1);
+			assertNotNull("1.1", delta.findMember(folder2.getFullPath()));
+			assertEquals("1.2", IResourceDelta.ADDED, delta.findMember(file3.getFullPath()).getKind());
+			IMarkerDelta[] markerDeltas = delta.findMember(file1.getFullPath()).getMarkerDeltas();
+			assertEquals("1.3", 1, markerDeltas.length);
+			assertEquals("1.4", marker.getId(), markerDeltas[0].getId());
+			assertEquals("1.5", IResourceDelta.ADDED, markerDeltas[0].getKind());
+		} catch (CoreException e) {
+			handleCoreException(e);
+		} finally {
+			listener.release();
+			getWorkspace().removeResourceChangeListener(listener);
+		}
+	}
+
 	/*
 	 * Create a resource change listener and register it for POST_CHANGE events.
 	 * Ensure that you are NOT able to modify the workspace tree.
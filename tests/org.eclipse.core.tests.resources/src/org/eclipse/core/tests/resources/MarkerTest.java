@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2011 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -1789,6 +1789,82 @@ public class MarkerTest extends ResourceTest {
 		assertTrue("5.0", marker.exists());
 	}
 
+	/**
+	 * Tests public API method IWorkspace#replaceMarkers
+	 */
+	public void testReplaceMarkers() throws CoreException {
+		IMarker[] oldProblems = new IMarker[resources.length];
+		IMarker[] tasks = new IMarker[resources.length];
+		int[] counts = new int[resources.length];
+		int markerCount = 0;
+		for (int i = 0; i < resources.length; i++) {
+			oldProblems[i] = resources[i].createMarker(IMarker.PROBLEM);
+			tasks[i] = resources[i].createMarker(IMarker.TASK);
+			counts[i] = i % 3;
+			markerCount += counts[i];
+		}
+		String[] names = new String[] {IMarker.MESSAGE, IMarker.PRIORITY};
+		Object[] values = new Object[markerCount * names.length];
+		String[] intNames = new String[] {IMarker.SEVERITY, IMarker.LINE_NUMBER};
+		int[] intValues = new int[markerCount * intNames.length];
+		for (int i = 0; i < markerCount; i++) {
+			values[i * names.length] = i % 2 == 0 ? null : "message " + i;
+			values[i * names.length + 1] = new Integer(IMarker.PRIORITY_HIGH);
+			intValues[i * intNames.length] = i % 3;
+			intValues[i * intNames.length + 1] = i;
+		}
+
+		MarkersChangeListener listener = new MarkersChangeListener();
+		getWorkspace().addResourceChangeListener(listener);
+		try {
+			getWorkspace().replaceMarkers(resources, IMarker.PROBLEM, counts, names, values, intNames, intValues);
+			assertEquals("1.0", resources.length, listener.numAffectedResources());
+			int marker = 0;
+			for (int i = 0; i < resources.length; i++) {
+				String name = "1.1." + resources[i].getFullPath();
+				assertDoesNotExist(name, oldProblems[i]);
+				assertExists(name, tasks[i]);
+				IMarker[] problems = resources[i].findMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
+				assertEquals(name, counts[i], problems.length);
+				//markers are found in no particular order
+				Arrays.sort(problems, new Comparator<IMarker>() {
+					public int compare(IMarker a, IMarker b) {
+						return a.getAttribute(IMarker.LINE_NUMBER, 0) - b.getAttribute(IMarker.LINE_NUMBER, 0);
+					}
+				});
+				for (int j = 0; j < problems.length; j++, marker++) {
+					assertEquals(name + ".severity", marker % 3, problems[j].getAttribute(IMarker.SEVERITY, -1));
+					assertEquals(name + ".message", values[marker * names.length], problems[j].getAttribute(IMarker.MESSAGE));
+					assertEquals(name + ".priority", IMarker.PRIORITY_HIGH, problems[j].getAttribute(IMarker.PRIORITY, -1));
+					assertEquals(name + ".line", marker, problems[j].getAttribute(IMarker.LINE_NUMBER, -1));
+					//int attributes are seen as Integer objects
+					assertEquals(name + ".lineObject", new Integer(marker), problems[j].getAttribute(IMarker.LINE_NUMBER));
+					assertEquals(name + ".attributes", new Integer(marker % 3), problems[j].getAttributes().get(IMarker.SEVERITY));
+				}
+				assertTrue(name + ".delta", listener.checkChanges(resources[i], problems, new IMarker[] {oldProblems[i]}, null));
+			}
+
+			//replacing with no markers only deletes
+			listener.reset();
+			getWorkspace().replaceMarkers(resources, IMarker.PROBLEM, new int[resources.length], names, new Object[0], intNames, new int[0]);
+			assertEquals("2.0", resources.length - (resources.length + 2) / 3, listener.numAffectedResources());
+			assertEquals("2.1", 0, getWorkspace().getRoot().findMarkers(IMarker.PROBLEM, false, IResource.DEPTH_INFINITE).length);
+			assertEquals("2.2", resources.length, getWorkspace().getRoot().findMarkers(IMarker.TASK, false, IResource.DEPTH_INFINITE).length);
+		} finally {
+			getWorkspace().removeResourceChangeListener(listener);
+		}
+
+		//markers of resources that do not exist cannot be replaced
+		IFile missing = getWorkspace().getRoot().getProject("missing").getFile("missing.txt");
+		try {
+			getWorkspace().replaceMarkers(new IResource[] {resources[0], missing}, IMarker.PROBLEM, new int[] {1, 1}, new String[0], new Object[0], new String[0], new int[0]);
+			fail("3.0");
+		} catch (CoreException e) {
+			// expected
+		}
+		assertEquals("3.1", 0, resources[0].findMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO).length);
+	}
+
 	public void testSetGetAttribute() {
 		debug("testSetGetAttribute");
 
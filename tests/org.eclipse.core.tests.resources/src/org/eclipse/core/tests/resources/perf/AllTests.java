@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2004, 2009 IBM Corporation and others.
+ *  Copyright (c) 2004, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -22,6 +22,8 @@ public class AllTests extends TestSuite {
 		suite.addTest(BenchFileStore.suite());
 		suite.addTest(BenchWorkspace.suite());
 		suite.addTest(BenchMiscWorkspace.suite());
+		suite.addTest(BenchNodeIDMap.suite());
+		suite.addTest(BenchMarkerIndex.suite());
 		suite.addTest(BuilderPerformanceTest.suite());
 		suite.addTest(MarkerPerformanceTest.suite());
 		suite.addTest(LocalHistoryPerformanceTest.suite());
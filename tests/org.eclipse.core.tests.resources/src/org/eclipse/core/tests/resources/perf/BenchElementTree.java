@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,9 +14,10 @@ package org.eclipse.core.tests.resources.perf;
 import java.util.Vector;
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.eclipse.core.internal.resources.ResourceInfo;
 import org.eclipse.core.internal.watson.ElementTree;
-import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.*;
 import org.eclipse.core.tests.harness.PerformanceTestRunner;
 import org.eclipse.core.tests.resources.OldCorePerformanceTest;
 
@@ -100,6 +101,43 @@ public class BenchElementTree extends OldCorePerformanceTest {
 		stopBench("benchGetElementData", repeat * files.length);
 	}
 
+	/**
+	 * Tests the scaling of the getElementData operation when many threads
+	 * look up elements in their own trees concurrently. Every lookup misses
+	 * the tree's lookup cache, so each one goes through DeltaDataTree.lookup().
+	 */
+	public void benchConcurrentGetElementData() {
+		final int repeat = 2000;
+		for (int threadCount = 1; threadCount <= 32; threadCount *= 2) {
+			final ElementTree[] trees = new ElementTree[threadCount];
+			for (int i = 0; i < threadCount; i++)
+				trees[i] = createTestTree(true);
+			Thread[] threads = new Thread[threadCount];
+			for (int i = 0; i < threadCount; i++) {
+				final ElementTree tree = trees[i];
+				threads[i] = new Thread("Lookup " + i) {
+					public void run() {
+						for (int rep = repeat; --rep >= 0;) {
+							for (int f = 0, len = files.length; f < len; ++f) {
+								tree.getElementData(files[f]);
+							}
+						}
+					}
+				};
+			}
+			startBench();
+			for (int i = 0; i < threadCount; i++)
+				threads[i].start();
+			try {
+				for (int i = 0; i < threadCount; i++)
+					threads[i].join();
+			} catch (InterruptedException e) {
+				fail("1.0", e);
+			}
+			stopBench("benchConcurrentGetElementData (" + threadCount + " threads)", threadCount * repeat * files.length);
+		}
+	}
+
 	/**
 	 * Tests the performance of the mergeDeltaChain operation.
 	 */
@@ -139,6 +177,76 @@ public class BenchElementTree extends OldCorePerformanceTest {
 		stopBench("benchRoutineOperations", opCount);
 	}
 
+	/**
+	 * Measures the heap used by the resource infos of a generated workspace
+	 * tree. The heap used by a tree whose elements all share one data object
+	 * is subtracted from the heap used by the same tree with a resource info
+	 * for every element, which leaves the bytes used per info. This is
+	 * reported for plain infos, and for infos of which one in a hundred has
+	 * a session property.
+	 */
+	public void benchResourceInfoFootprint() {
+		final int folderCount = 500;
+		final int filesPerFolder = 200;
+		IPath[] paths = new IPath[folderCount * (filesPerFolder + 1)];
+		int next = 0;
+		for (int i = 0; i < folderCount; i++) {
+			IPath folderPath = project.append("folder" + i);
+			paths[next++] = folderPath;
+			for (int j = 0; j < filesPerFolder; j++)
+				paths[next++] = folderPath.append("file" + j + ".java");
+		}
+		long skeleton = measureTreeFootprint(paths, false, 0);
+		long plain = measureTreeFootprint(paths, true, 0);
+		long withProperties = measureTreeFootprint(paths, true, 100);
+		perfLog("benchResourceInfoFootprint: " + ((plain - skeleton) / paths.length) + " bytes per resource");
+		perfLog("benchResourceInfoFootprint (1% with session properties): " + ((withProperties - skeleton) / paths.length) + " bytes per resource");
+	}
+
+	/**
+	 * Returns the heap used by a tree containing the given paths. If
+	 * createInfos is true, each element gets its own resource info, and
+	 * every propertyInterval'th info gets a session property.
+	 */
+	private long measureTreeFootprint(IPath[] paths, boolean createInfos, int propertyInterval) {
+		QualifiedName key = new QualifiedName("org.eclipse.core.tests.resources", "footprint");
+		Object shared = new Object();
+		long before = usedMemory();
+		ElementTree tree = new ElementTree();
+		tree.createElement(solution, shared);
+		tree.createElement(project, shared);
+		for (int i = 0; i < paths.length; i++) {
+			Object data = shared;
+			if (createInfos) {
+				ResourceInfo info = new ResourceInfo();
+				info.setType(paths[i].segmentCount() == 3 ? IResource.FOLDER : IResource.FILE);
+				info.setNodeId(i + 1);
+				if (propertyInterval > 0 && i % propertyInterval == 0)
+					info.setSessionProperty(key, Boolean.TRUE);
+				data = info;
+			}
+			tree.createElement(paths[i], data);
+		}
+		tree.immutable();
+		long after = usedMemory();
+		//keep the tree reachable until the heap has been measured
+		assertNotNull("1.0", tree.getElementData(project));
+		return after - before;
+	}
+
+	private long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				//ignore
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
 	/**
 	 * Tests the performance of the setElementData operation.
 	 */
@@ -283,6 +391,7 @@ public class BenchElementTree extends OldCorePerformanceTest {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(BenchElementTree.class.getName());
 
+		suite.addTest(new BenchElementTree("benchConcurrentGetElementData"));
 		suite.addTest(new BenchElementTree("benchCreateElement"));
 		suite.addTest(new BenchElementTree("benchDeleteElement"));
 		suite.addTest(new BenchElementTree("benchDeltaLargeTreeFewChanges"));
@@ -292,6 +401,7 @@ public class BenchElementTree extends OldCorePerformanceTest {
 		//	suite.addTest(new BenchElementTree("benchMergeDeltaChain"));
 		suite.addTest(new BenchElementTree("benchReverseDeltaLargeTreeFewChanges"));
 		suite.addTest(new BenchElementTree("benchReverseDeltaLargeTreeManyChangesInOneLayer"));
+		suite.addTest(new BenchElementTree("benchResourceInfoFootprint"));
 		suite.addTest(new BenchElementTree("benchReverseDeltaSmallTreeManyChangesInSeperateLayers"));
 		suite.addTest(new BenchElementTree("benchRoutineOperations"));
 		suite.addTest(new BenchElementTree("benchSetElementData"));
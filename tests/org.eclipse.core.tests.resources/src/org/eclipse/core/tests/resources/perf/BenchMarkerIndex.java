@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.resources.perf;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.resources.Workspace;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.core.tests.resources.ResourceTest;
+
+/**
+ * Benchmarks for the deep marker searches that the problems and tasks views,
+ * and label decorators, run against a workspace with a million resources and
+ * few markers.
+ */
+public class BenchMarkerIndex extends ResourceTest {
+	private static final int FOLDERS = 1000;
+	private static final int FILES_PER_FOLDER = 999;
+	private static final int MARKERS = 500;
+
+	private IProject project;
+
+	public static Test suite() {
+		return new TestSuite(BenchMarkerIndex.class);
+	}
+
+	public BenchMarkerIndex() {
+		super();
+	}
+
+	public BenchMarkerIndex(String name) {
+		super(name);
+	}
+
+	/**
+	 * Creates a project with a million resources in the workspace tree only,
+	 * and a problem and a task marker on some of its files.
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		project = getWorkspace().getRoot().getProject("BenchMarkerIndex");
+		ensureExistsInWorkspace(project, true);
+		final Workspace workspace = (Workspace) getWorkspace();
+		workspace.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < FOLDERS; i++) {
+					IFolder folder = project.getFolder("folder" + i);
+					workspace.createResource(folder, false);
+					for (int j = 0; j < FILES_PER_FOLDER; j++)
+						workspace.createResource(folder.getFile("file" + j + ".txt"), false);
+				}
+				for (int i = 0; i < MARKERS; i++) {
+					IFile file = project.getFolder("folder" + (i * FOLDERS / MARKERS)).getFile("file" + i + ".txt");
+					file.createMarker(IMarker.PROBLEM).setAttribute(IMarker.SEVERITY, i % 3);
+					file.createMarker(IMarker.TASK);
+				}
+			}
+		}, getMonitor());
+	}
+
+	protected void tearDown() throws Exception {
+		project.delete(true, true, getMonitor());
+		super.tearDown();
+	}
+
+	/**
+	 * Finds the problems of the workspace, like the problems view does.
+	 */
+	public void testFindMarkers() {
+		final IWorkspaceRoot root = getWorkspace().getRoot();
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					assertEquals("1.0", MARKERS, root.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE).length);
+					assertEquals("1.1", MARKERS, root.findMarkers(IMarker.TASK, false, IResource.DEPTH_INFINITE).length);
+				} catch (CoreException e) {
+					fail("1.2", e);
+				}
+			}
+		}.run(this, 10, 10);
+	}
+
+	/**
+	 * Finds the maximum problem severity of the project and each of its
+	 * folders, like a label decorator does.
+	 */
+	public void testFindMaxProblemSeverity() {
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					assertEquals("1.0", IMarker.SEVERITY_ERROR, project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE));
+					for (int i = 0; i < FOLDERS; i++)
+						project.getFolder("folder" + i).findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+				} catch (CoreException e) {
+					fail("1.1", e);
+				}
+			}
+		}.run(this, 10, 10);
+	}
+}
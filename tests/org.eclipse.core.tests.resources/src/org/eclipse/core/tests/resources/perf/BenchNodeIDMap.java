@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.resources.perf;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.events.NodeIDMap;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.core.tests.resources.ResourceTest;
+
+/**
+ * Benchmarks for <code>NodeIDMap</code>, which holds the moves found while
+ * computing a resource delta.
+ */
+public class BenchNodeIDMap extends ResourceTest {
+	private static final IPath OLD_PATH = new Path("/project/old/file.txt");
+	private static final IPath NEW_PATH = new Path("/project/new/file.txt");
+
+	public static Test suite() {
+		return new TestSuite(BenchNodeIDMap.class);
+	}
+
+	public BenchNodeIDMap() {
+		super();
+	}
+
+	public BenchNodeIDMap(String name) {
+		super(name);
+	}
+
+	/**
+	 * Adds the old and new paths of the given number of moved nodes to a map,
+	 * and looks them up again, like a resource delta with that many moves does.
+	 */
+	void fillAndQuery(int count, boolean presized) {
+		NodeIDMap map = presized ? new NodeIDMap(count) : new NodeIDMap();
+		//node ids are handed out in sequence, starting at one
+		for (long id = 1; id <= count; id++)
+			map.putOldPath(id, OLD_PATH);
+		for (long id = 1; id <= count; id++)
+			map.putNewPath(id, NEW_PATH);
+		for (long id = 1; id <= count; id++) {
+			if (map.getOldPath(id) != OLD_PATH || map.getNewPath(id) != NEW_PATH)
+				fail("1.0." + id);
+		}
+		//misses are the common case for nodes that were not moved
+		for (long id = count + 1; id <= 2L * count; id++) {
+			if (map.getOldPath(id) != null)
+				fail("2.0." + id);
+		}
+	}
+
+	private void bench(final int count, final boolean presized, int innerLoop) {
+		new PerformanceTestRunner() {
+			protected void test() {
+				fillAndQuery(count, presized);
+			}
+		}.run(this, 10, innerLoop);
+	}
+
+	public void testThousandEntries() {
+		bench(1000, false, 1000);
+	}
+
+	public void testHundredThousandEntries() {
+		bench(100000, false, 10);
+	}
+
+	public void testMillionEntries() {
+		bench(1000000, false, 1);
+	}
+
+	public void testMillionEntriesPresized() {
+		bench(1000000, true, 1);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2004, 2007 IBM Corporation and others.
+ *  Copyright (c) 2004, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -12,6 +12,9 @@ package org.eclipse.core.tests.resources.perf;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.internal.localstore.HistoryStore2;
 import org.eclipse.core.internal.localstore.IHistoryStore;
 import org.eclipse.core.internal.resources.Workspace;
 import org.eclipse.core.resources.*;
@@ -130,6 +133,63 @@ public class LocalHistoryPerformanceTest extends ResourceTest {
 		}.run(LocalHistoryPerformanceTest.this, 10, 30);
 	}
 
+	/**
+	 * Compares the disk usage and the time taken to add states of a history
+	 * store that names blobs after their contents with those of the default
+	 * store, on a workload in which files go back and forth between a few
+	 * versions and are copied to a second project.
+	 */
+	public void testContentAddressedAddState() throws CoreException {
+		final int files = 20;
+		final int versions = 5;
+		final int saves = 50;
+		IFileStore contents = getTempStore();
+		contents.mkdir(EFS.NONE, getMonitor());
+		IFileStore[][] versionStores = new IFileStore[files][versions];
+		for (int i = 0; i < files; i++) {
+			for (int j = 0; j < versions; j++) {
+				versionStores[i][j] = contents.getChild("file" + i + "v" + j);
+				createFileInFileSystem(versionStores[i][j], getRandomContents());
+			}
+		}
+		long[] sizes = new long[2];
+		long[] times = new long[2];
+		for (int mode = 0; mode < 2; mode++) {
+			boolean contentAddressed = mode == 1;
+			IFileStore location = getTempStore();
+			location.mkdir(EFS.NONE, getMonitor());
+			HistoryStore2 store = new HistoryStore2((Workspace) getWorkspace(), location, 256, contentAddressed);
+			String[] projects = new String[] {"HistoryBench" + mode + "a", "HistoryBench" + mode + "b"};
+			long start = System.nanoTime();
+			for (int k = 0; k < saves; k++) {
+				for (int i = 0; i < files; i++) {
+					IFileStore version = versionStores[i][k % versions];
+					for (int p = 0; p < projects.length; p++)
+						store.addState(new Path(projects[p]).append("file" + i), version, version.fetchInfo(), false);
+				}
+			}
+			times[mode] = System.nanoTime() - start;
+			sizes[mode] = getSize(location.toLocalFile(EFS.NONE, getMonitor()));
+			for (int p = 0; p < projects.length; p++)
+				store.remove(new Path(projects[p]), getMonitor());
+			store.removeGarbage();
+		}
+		int states = saves * files * 2;
+		System.out.println("Local history, default store: " + sizes[0] / 1024 + "KB, " + times[0] / states / 1000 + "us per state");
+		System.out.println("Local history, content addressed store: " + sizes[1] / 1024 + "KB, " + times[1] / states / 1000 + "us per state");
+		assertTrue("1.0", sizes[1] < sizes[0]);
+	}
+
+	private long getSize(java.io.File file) {
+		if (!file.isDirectory())
+			return file.length();
+		long size = 0;
+		java.io.File[] children = file.listFiles();
+		for (int i = 0; children != null && i < children.length; i++)
+			size += getSize(children[i]);
+		return size;
+	}
+
 	public void testBug28603() {
 		final IProject project = getWorkspace().getRoot().getProject("myproject");
 		final IFolder folder1 = project.getFolder("myfolder1");
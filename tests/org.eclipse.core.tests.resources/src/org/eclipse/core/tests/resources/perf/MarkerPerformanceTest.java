@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2007 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.core.tests.resources.perf;
 
+import java.util.Arrays;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.resources.*;
@@ -94,6 +95,82 @@ public class MarkerPerformanceTest extends ResourceTest {
 		}.run(this, 1, 1);
 	}
 
+	private static final int BUILD_FILES = 500;
+	private static final int BUILD_MARKERS_PER_FILE = 100;
+	private static final String[] BUILD_ATTRIBUTES = new String[] {IMarker.SEVERITY, IMarker.MESSAGE, IMarker.LINE_NUMBER, IMarker.CHAR_START, IMarker.CHAR_END};
+	private static final String[] BUILD_MESSAGE_ATTRIBUTES = new String[] {IMarker.MESSAGE};
+	private static final String[] BUILD_INT_ATTRIBUTES = new String[] {IMarker.SEVERITY, IMarker.LINE_NUMBER, IMarker.CHAR_START, IMarker.CHAR_END};
+
+	private IFile[] createBuildFiles() {
+		IFile[] files = new IFile[BUILD_FILES];
+		for (int i = 0; i < files.length; i++)
+			files[i] = project.getFolder("src" + (i % 10)).getFile("Source" + i + ".java");
+		ensureExistsInWorkspace(files, true);
+		return files;
+	}
+
+	private Object[] buildAttributeValues(int marker) {
+		return new Object[] {new Integer(marker % 3), "Problem " + marker, new Integer(marker), new Integer(marker * 10), new Integer(marker * 10 + 5)};
+	}
+
+	/**
+	 * Benchmarks replacing the problems of the files of a build, 50000 in
+	 * all, one marker at a time, like builders do.
+	 */
+	public void testReplaceMarkersOneAtATime() {
+		final IFile[] files = createBuildFiles();
+		final IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				int marker = 0;
+				for (int i = 0; i < files.length; i++) {
+					files[i].deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
+					for (int j = 0; j < BUILD_MARKERS_PER_FILE; j++)
+						files[i].createMarker(IMarker.PROBLEM).setAttributes(BUILD_ATTRIBUTES, buildAttributeValues(marker++));
+				}
+			}
+		};
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					getWorkspace().run(runnable, null);
+				} catch (CoreException e) {
+					fail("1.0", e);
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Benchmarks replacing the problems of the files of a build, 50000 in
+	 * all, with <code>IWorkspace#replaceMarkers</code>.
+	 */
+	public void testReplaceMarkersInBulk() {
+		final IFile[] files = createBuildFiles();
+		final int[] counts = new int[files.length];
+		Arrays.fill(counts, BUILD_MARKERS_PER_FILE);
+		new PerformanceTestRunner() {
+			protected void test() {
+				//the attribute values are collected as part of the work
+				int markerCount = files.length * BUILD_MARKERS_PER_FILE;
+				Object[] values = new Object[markerCount];
+				int[] intValues = new int[markerCount * BUILD_INT_ATTRIBUTES.length];
+				for (int marker = 0; marker < markerCount; marker++) {
+					int offset = marker * BUILD_INT_ATTRIBUTES.length;
+					values[marker] = "Problem " + marker;
+					intValues[offset] = marker % 3;
+					intValues[offset + 1] = marker;
+					intValues[offset + 2] = marker * 10;
+					intValues[offset + 3] = marker * 10 + 5;
+				}
+				try {
+					getWorkspace().replaceMarkers(files, IMarker.PROBLEM, counts, BUILD_MESSAGE_ATTRIBUTES, values, BUILD_INT_ATTRIBUTES, intValues);
+				} catch (CoreException e) {
+					fail("1.0", e);
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
 	/**
 	 * @see ResourceTest#setUp()
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -30,6 +30,7 @@ public class WorkspacePerformanceTest extends ResourceTest {
 	static final int REPEATS = 5;
 	private static final int TREE_WIDTH = 10;
 	private static final int DEFAULT_TOTAL_RESOURCES = 10000;
+	private static final String REGEX_FILTER_PROVIDER = "org.eclipse.core.resources.regexFilterMatcher";
 
 	private final Random random = new Random();
 	IFolder testFolder;
@@ -225,6 +226,39 @@ public class WorkspacePerformanceTest extends ResourceTest {
 		}.run(this, REPEATS, 1);
 	}
 
+	/**
+	 * Copies a large folder while a listener looks at a few paths of the
+	 * POST_CHANGE delta. Run with the org.eclipse.core.resources.lazyDelta
+	 * system property set to compare the heap used by deltas whose children
+	 * are created lazily.
+	 */
+	public void testFolderCopyNotification() {
+		final IPath[] paths = new IPath[] {testProject.getFullPath().append(".project"), testFolder.getFullPath(), new Path("/Other/file.txt")};
+		final IResourceChangeListener listener = new IResourceChangeListener() {
+			public void resourceChanged(IResourceChangeEvent event) {
+				IResourceDelta delta = event.getDelta();
+				for (int i = 0; i < paths.length; i++)
+					delta.findMember(paths[i]);
+			}
+		};
+		new PerformanceTestRunner() {
+			protected void setUp() {
+				createAndPopulateProject(DEFAULT_TOTAL_RESOURCES);
+				waitForBackgroundActivity();
+				getWorkspace().addResourceChangeListener(listener, IResourceChangeEvent.POST_CHANGE);
+			}
+
+			protected void tearDown() throws CoreException {
+				getWorkspace().removeResourceChangeListener(listener);
+				testProject.delete(IResource.FORCE, null);
+			}
+
+			protected void test() {
+				copyFolder();
+			}
+		}.run(this, REPEATS, 1);
+	}
+
 	public void testRefreshProject() {
 		PerformanceTestRunner runner = new PerformanceTestRunner() {
 			protected void setUp() throws CoreException {
@@ -249,6 +283,37 @@ public class WorkspacePerformanceTest extends ResourceTest {
 		runner.run(this, REPEATS, 1);
 	}
 
+	/**
+	 * Benchmark test of refreshing a project with 100k files whose listings
+	 * are filtered by inheritable regular expression filters.
+	 */
+	public void testRefreshFilteredProject() {
+		PerformanceTestRunner runner = new PerformanceTestRunner() {
+			protected void setUp() throws CoreException {
+				createAndPopulateProject(100000);
+				deleteAndRecreateProject();
+				int type = IResourceFilterDescription.EXCLUDE_ALL | IResourceFilterDescription.FILES | IResourceFilterDescription.INHERITABLE;
+				testProject.createFilter(type, new FileInfoMatcherDescription(REGEX_FILTER_PROVIDER, "a.*"), IResource.NONE, null);
+				testProject.createFilter(type, new FileInfoMatcherDescription(REGEX_FILTER_PROVIDER, ".*z"), IResource.NONE, null);
+				waitForBackgroundActivity();
+			}
+
+			protected void tearDown() throws CoreException {
+				testProject.delete(IResource.FORCE, null);
+			}
+
+			protected void test() {
+				try {
+					testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+				} catch (CoreException e) {
+					fail("Failed to refresh during testRefreshFilteredProject", e);
+				}
+			}
+		};
+		runner.setFingerprintName("Refresh Filtered Project");
+		runner.run(this, REPEATS, 1);
+	}
+
 	public void testCloseOpenProject() {
 		// 8 minutes total test time, 400 msec test execution time (*3 inner loops)
 		new PerformanceTestRunner() {
@@ -306,6 +371,28 @@ public class WorkspacePerformanceTest extends ResourceTest {
 		}.run(this, REPEATS, 1);
 	}
 
+	/**
+	 * Exports a refresh snapshot of a large project. The compression level can
+	 * be changed with the org.eclipse.core.resources.refreshSnapshotLevel
+	 * system property.
+	 */
+	public void testSaveSnapshot() {
+		IProject snapProject = getWorkspace().getRoot().getProject("SnapProject");
+		ensureExistsInWorkspace(snapProject, true);
+		final URI snapshotLocation = snapProject.getFile("snapshot.zip").getLocationURI();
+		createAndPopulateProject(300000);
+		waitForBackgroundActivity();
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					testProject.saveSnapshot(IProject.SNAPSHOT_TREE, snapshotLocation, null);
+				} catch (CoreException e) {
+					fail("Failed to save snapshot during testSaveSnapshot", e);
+				}
+			}
+		}.run(this, REPEATS, 1);
+	}
+
 	/**
 	 * Waits until background activity settles down before running a performance test.
 	 *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2011 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -25,6 +25,8 @@ public class AllTests extends TestCase {
 		suite.addTest(TestSaveSnap.suite());
 		suite.addTest(TestSaveWithClosedProject.suite());
 		suite.addTest(TestSnapSaveSnap.suite());
+		suite.addTest(TestSnapshotConsolidation.suite());
+		suite.addTest(TestParallelRestore.suite());
 		suite.addTest(TestBug6995.suite());
 		suite.addTest(TestInterestingProjectPersistence.suite());
 		suite.addTest(TestBuilderDeltaSerialization.suite());
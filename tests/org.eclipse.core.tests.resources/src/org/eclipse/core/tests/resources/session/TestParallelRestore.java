@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.resources.session;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.tests.resources.AutomatedTests;
+import org.eclipse.core.tests.session.SetupManager.SetupException;
+import org.eclipse.core.tests.session.WorkspaceSessionTestSuite;
+
+/**
+ * Tests that a workspace restored with its project files read in parallel has
+ * the same markers, sync info, project locations and descriptions as one
+ * restored serially. The same workspace is saved, restored and restored from
+ * snapshots once in each mode, and the state after each restore is compared
+ * with the state that was saved.
+ * <p>
+ * The workspace has enough projects for the restore times recorded under the
+ * perf/restore stats event to compare the two modes.
+ * </p>
+ */
+public class TestParallelRestore extends WorkspaceSerializationTest {
+	private static final String PARALLEL_RESTORE = ResourcesPlugin.PI_RESOURCES + ".parallelRestore";
+	private static final QualifiedName PARTNER = new QualifiedName(AutomatedTests.PI_RESOURCES_TESTS, "parallelRestore");
+	private static final int PROJECT_COUNT = 20;
+	private static final int FILE_COUNT = 10;
+	private static final String STATE_FILE = "restoredState.txt";
+
+	public TestParallelRestore() {
+		super();
+	}
+
+	public TestParallelRestore(String name) {
+		super(name);
+	}
+
+	/**
+	 * Returns the location of the project that is not in the default location.
+	 */
+	private IPath getCustomLocation() {
+		String mode = Boolean.getBoolean(PARALLEL_RESTORE) ? "parallel" : "serial";
+		return getTempDir().append(getClass().getName() + "." + mode);
+	}
+
+	private IProject getProject(int index) {
+		return getWorkspace().getRoot().getProject(PROJECT + index);
+	}
+
+	/**
+	 * Returns the file the state of the workspace is written to before the
+	 * workspace is shut down. It is not a resource.
+	 */
+	private File getStateFile() {
+		return getWorkspace().getRoot().getLocation().append(STATE_FILE).toFile();
+	}
+
+	/**
+	 * Returns a description of the state of the workspace that is written
+	 * when it is saved and read when it is restored.
+	 */
+	private String describeWorkspace() throws CoreException {
+		final StringBuffer result = new StringBuffer();
+		final IPath rootLocation = getWorkspace().getRoot().getLocation();
+		getWorkspace().getRoot().accept(new IResourceVisitor() {
+			public boolean visit(IResource resource) throws CoreException {
+				result.append(resource.getFullPath()).append(' ').append(resource.getType()).append('\n');
+				if (resource.getType() == IResource.PROJECT) {
+					IProject project = (IProject) resource;
+					IPath location = project.getLocation();
+					result.append("  open: ").append(project.isOpen()).append('\n');
+					result.append("  location: ").append(rootLocation.isPrefixOf(location) ? "default" : location.lastSegment()).append('\n');
+					if (!project.isOpen())
+						return false;
+					IProjectDescription description = project.getDescription();
+					result.append("  comment: ").append(description.getComment()).append('\n');
+					result.append("  references: ").append(Arrays.asList(description.getReferencedProjects())).append('\n');
+				}
+				IMarker[] markers = resource.findMarkers(null, false, IResource.DEPTH_ZERO);
+				Arrays.sort(markers, new Comparator<IMarker>() {
+					public int compare(IMarker marker1, IMarker marker2) {
+						return marker1.getId() < marker2.getId() ? -1 : marker1.getId() == marker2.getId() ? 0 : 1;
+					}
+				});
+				for (int i = 0; i < markers.length; i++)
+					result.append("  marker: ").append(markers[i].getId()).append(' ').append(markers[i].getType()).append(' ').append(new TreeMap<String, Object>(markers[i].getAttributes())).append('\n');
+				byte[] syncInfo = getWorkspace().getSynchronizer().getSyncInfo(PARTNER, resource);
+				if (syncInfo != null)
+					result.append("  sync info: ").append(new String(syncInfo)).append('\n');
+				return true;
+			}
+		}, IResource.DEPTH_INFINITE, IContainer.INCLUDE_HIDDEN);
+		return result.toString();
+	}
+
+	private void writeState() throws CoreException, IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(getStateFile()), "UTF-8");
+		try {
+			writer.write(describeWorkspace());
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void assertSameState(String message) throws CoreException, IOException {
+		File stateFile = getStateFile();
+		InputStream input = new FileInputStream(stateFile);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try {
+			transferStreams(input, expected, null, getMonitor());
+		} finally {
+			input.close();
+		}
+		assertEquals(message, expected.toString("UTF-8"), describeWorkspace());
+	}
+
+	private void addMarkersAndSyncInfo(IResource resource, String label) throws CoreException {
+		IMarker marker = resource.createMarker(IMarker.TASK);
+		marker.setAttribute(IMarker.MESSAGE, label);
+		marker.setAttribute(IMarker.PRIORITY, IMarker.PRIORITY_HIGH);
+		marker = resource.createMarker(IMarker.PROBLEM);
+		marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+		marker.setAttribute(IMarker.LINE_NUMBER, label.length());
+		getWorkspace().getSynchronizer().setSyncInfo(PARTNER, resource, label.getBytes());
+	}
+
+	/**
+	 * Creates projects with markers and sync info, one of them closed and one
+	 * of them outside the workspace, and saves the workspace.
+	 */
+	public void test1() throws Exception {
+		getWorkspace().getSynchronizer().add(PARTNER);
+		addMarkersAndSyncInfo(getWorkspace().getRoot(), "root");
+		for (int i = 0; i < PROJECT_COUNT; i++) {
+			IProject project = getProject(i);
+			IProjectDescription description = getWorkspace().newProjectDescription(project.getName());
+			if (i == 1)
+				description.setLocation(getCustomLocation());
+			description.setComment("comment" + i);
+			if (i > 0)
+				description.setReferencedProjects(new IProject[] {getProject(i - 1)});
+			project.create(description, getMonitor());
+			project.open(getMonitor());
+			addMarkersAndSyncInfo(project, "project" + i);
+			IFolder folder = project.getFolder(FOLDER);
+			folder.create(true, true, getMonitor());
+			for (int j = 0; j < FILE_COUNT; j++) {
+				IFile file = folder.getFile(FILE + j);
+				file.create(getRandomContents(), true, getMonitor());
+				addMarkersAndSyncInfo(file, "file" + i + "." + j);
+			}
+		}
+		getProject(0).close(getMonitor());
+		workspace.save(true, getMonitor());
+		writeState();
+	}
+
+	/**
+	 * Checks the restored state, then changes it and only takes a snapshot.
+	 */
+	public void test2() throws Exception {
+		getWorkspace().getSynchronizer().add(PARTNER);
+		assertSameState("1.0");
+
+		IFolder folder = getProject(2).getFolder(FOLDER);
+		folder.getFile(FILE + 0).delete(true, getMonitor());
+		IFile file = folder.getFile(FILE + 1);
+		IMarker[] markers = file.findMarkers(IMarker.TASK, false, IResource.DEPTH_ZERO);
+		markers[0].delete();
+		addMarkersAndSyncInfo(file, "changed");
+		getProject(3).close(getMonitor());
+		workspace.save(false, getMonitor());
+		writeState();
+
+		//exit without saving
+	}
+
+	/**
+	 * Checks the state restored from the snapshot.
+	 */
+	public void test3() throws Exception {
+		getWorkspace().getSynchronizer().add(PARTNER);
+		try {
+			assertSameState("2.0");
+		} finally {
+			ensureDoesNotExistInFileSystem(getCustomLocation().toFile());
+		}
+	}
+
+	private static Test newSuite(boolean parallel) {
+		WorkspaceSessionTestSuite suite = new WorkspaceSessionTestSuite(AutomatedTests.PI_RESOURCES_TESTS, TestParallelRestore.class);
+		try {
+			suite.getSetup().setSystemProperty(PARALLEL_RESTORE, Boolean.toString(parallel));
+		} catch (SetupException e) {
+			fail("0.0", e);
+		}
+		return suite;
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(TestParallelRestore.class.getName());
+		suite.addTest(newSuite(false));
+		suite.addTest(newSuite(true));
+		return suite;
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.resources.session;
+
+import junit.framework.Test;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.tests.resources.AutomatedTests;
+import org.eclipse.core.tests.session.WorkspaceSessionTestSuite;
+
+/**
+ * Tests performing more snapshots than the snapshot file keeps segments for,
+ * so that they are consolidated, then crashing and recovering.
+ */
+public class TestSnapshotConsolidation extends WorkspaceSerializationTest {
+	private static final int SNAPSHOTS = 40;
+
+	public TestSnapshotConsolidation() {
+		super();
+	}
+
+	public TestSnapshotConsolidation(String name) {
+		super(name);
+	}
+
+	public void test1() throws Exception {
+		IProject project = getWorkspace().getRoot().getProject(PROJECT);
+		project.create(getMonitor());
+		project.open(getMonitor());
+		IFolder folder = project.getFolder(FOLDER);
+		folder.create(true, true, getMonitor());
+
+		/* full save */
+		workspace.save(true, getMonitor());
+
+		/* create, change and delete files between snapshots */
+		for (int i = 0; i < SNAPSHOTS; i++) {
+			folder.getFile(FILE + i).create(getRandomContents(), true, getMonitor());
+			if (i > 0)
+				folder.getFile(FILE + (i - 1)).setContents(getRandomContents(), true, false, getMonitor());
+			if (i % 3 == 0 && i > 0)
+				folder.getFile(FILE + (i - 2)).delete(true, getMonitor());
+			workspace.save(false, getMonitor());
+		}
+
+		//exit without saving
+	}
+
+	public void test2() throws CoreException {
+		IProject project = getWorkspace().getRoot().getProject(PROJECT);
+		IFolder folder = project.getFolder(FOLDER);
+		// wait for background crash recovery to complete
+		waitForRefresh();
+
+		assertTrue("1.0", project.isOpen());
+		for (int i = 0; i < SNAPSHOTS; i++) {
+			IFile file = folder.getFile(FILE + i);
+			boolean deleted = i % 3 == 1 && i + 2 < SNAPSHOTS;
+			assertEquals("1.1." + i, !deleted, file.exists());
+		}
+	}
+
+	public static Test suite() {
+		return new WorkspaceSessionTestSuite(AutomatedTests.PI_RESOURCES_TESTS, TestSnapshotConsolidation.class);
+	}
+}